@@ -15,26 +15,33 @@ package oncue.agent;
 
 import static akka.actor.SupervisorStrategy.stop;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import oncue.common.comparators.JobComparator;
 import oncue.common.messages.Job;
 import oncue.common.messages.Job.State;
+import oncue.common.messages.JobBatch;
 import oncue.common.messages.JobFailed;
 import oncue.common.messages.JobProgress;
+import oncue.common.messages.JobProgressDelta;
 import oncue.common.messages.SimpleMessages.SimpleMessage;
 import oncue.common.messages.WorkAvailable;
 import oncue.common.messages.WorkResponse;
 import oncue.common.settings.Settings;
 import oncue.common.settings.SettingsProvider;
+import oncue.worker.AbstractBatchWorker;
 import oncue.worker.AbstractWorker;
 
 import scala.concurrent.duration.Duration;
-import akka.actor.Actor;
 import akka.actor.ActorRef;
 import akka.actor.Cancellable;
 import akka.actor.OneForOneStrategy;
@@ -43,19 +50,60 @@ import akka.actor.Scheduler;
 import akka.actor.SupervisorStrategy;
 import akka.actor.SupervisorStrategy.Directive;
 import akka.actor.UntypedActor;
-import akka.actor.UntypedActorFactory;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.japi.Function;
 
 public abstract class AbstractAgent extends UntypedActor {
 
+	// Relay the coalesced progress reports to the scheduler
+	private static final String FLUSH_PROGRESS = "FLUSH_PROGRESS";
+
+	// Request work once the agent has processed the messages already in its mailbox
+	private static final String REQUEST_WORK = "REQUEST_WORK";
+
 	// The scheduled heartbeat
 	private Cancellable heartbeat;
 
+	// Map a job ID to its latest progress report, waiting to be relayed to the scheduler
+	private Map<Long, JobProgress> pendingProgress = new LinkedHashMap<>();
+
+	// The scheduled relay of coalesced progress reports
+	private Cancellable progressFlush;
+
+	// The number of progress reports that were superseded before being relayed
+	private long suppressedProgressCount;
+
 	// Map jobs in progress to their workers
 	protected Map<String, Job> jobsInProgress = new HashMap<>();
 
+	// Map batch workers to the jobs in their batch that haven't been reported on yet
+	protected Map<String, List<Job>> batchesInProgress = new HashMap<>();
+
+	// Map batch workers to the number of jobs they were given
+	private Map<String, Integer> batchSizesInProgress = new HashMap<>();
+
+	// Map a worker dispatcher to the number of workers running on it
+	private Map<String, Integer> busyWorkers = new HashMap<>();
+
+	// Map busy workers to when they were given their work, in nanoseconds
+	private Map<String, Long> workerStartTimes = new HashMap<>();
+
+	// Map a worker type to its idle reusable workers
+	private Map<String, Deque<ActorRef>> idleWorkers = new HashMap<>();
+
+	// The number of reusable workers spawned, used to name them
+	private long reusableWorkerCount;
+
+	// Orders jobs by priority
+	private final JobComparator jobComparator = new JobComparator();
+
+	// Jobs that have been assigned to this agent, waiting for a free slot
+	protected PriorityQueue<Job> prefetchedJobs = new PriorityQueue<>(11, jobComparator);
+
+	// Batches of jobs for batch workers, waiting for a free slot
+	protected Deque<List<Job>> prefetchedBatches = new ArrayDeque<>();
+
 	protected LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 
 	final protected Settings settings = SettingsProvider.SettingsProvider
@@ -67,6 +115,9 @@ public abstract class AbstractAgent extends UntypedActor {
 	// The list of worker types this agent can spawn
 	private final Set<String> workerTypes;
 
+	// The resolved worker classes, ready to spawn
+	private final WorkerRegistry workerRegistry;
+
 	// A scheduled request for new work
 	private Cancellable workRequest;
 
@@ -79,34 +130,49 @@ public abstract class AbstractAgent extends UntypedActor {
 	 * @throws MissingWorkerException thrown if a class representing a worker cannot be found
 	 */
 	public AbstractAgent(Set<String> workerTypes) {
-		for(String workerType : workerTypes) {
-			if (fetchWorkerClass(workerType.trim()) == null) {
-				workerTypes.remove(workerType);
-			}
-		}
-		this.workerTypes = workerTypes;
+		workerRegistry = new WorkerRegistry(workerTypes, settings, log);
+		this.workerTypes = workerRegistry.getWorkerTypes();
 	}
 
 	/**
-	 * Try to load the Class for the worker of type workerType.
+	 * Determine whether this agent can start another worker straight away. Jobs that arrive when
+	 * there is no free slot are kept in the prefetch buffer until a worker finishes.
 	 * 
-	 * @param workerType
-	 * @return
-	 * @throws MissingWorkerException If the class cannot be instantiated or the class does not
-	 * extend AbstractWorker
+	 * @return true by default, as an agent may process any number of jobs at once
 	 */
-	@SuppressWarnings("unchecked")
-	private Class<? extends AbstractWorker> fetchWorkerClass(String workerType) {
-		try {
-			return (Class<? extends AbstractWorker>) Class.forName(workerType);
-		} catch (ClassNotFoundException e) {
-			log.error(String.format("Cannot find a class for the worker type '%s'", workerType));
-			return null;
-		} catch (ClassCastException e) {
-			throw new IllegalStateException(String.format(
-					"The class for worker type '%s' doesn't extend the AbstractWorker base class",
-					workerType), e);
+	protected boolean hasFreeSlot() {
+		return true;
+	}
+
+	/**
+	 * @return true if the job is already in progress or waiting in the prefetch buffer
+	 */
+	private boolean isJobAssigned(Job job) {
+		for (Job activeJob : jobsInProgress.values()) {
+			if (job.getId() == activeJob.getId())
+				return true;
+		}
+		for (Job prefetchedJob : prefetchedJobs) {
+			if (job.getId() == prefetchedJob.getId())
+				return true;
+		}
+		for (List<Job> batch : batchesInProgress.values()) {
+			if (containsJob(batch, job.getId()))
+				return true;
+		}
+		for (List<Job> batch : prefetchedBatches) {
+			if (containsJob(batch, job.getId()))
+				return true;
 		}
+		return false;
+	}
+
+	private static boolean containsJob(List<Job> jobs, long jobId) {
+		for (Job job : jobs) {
+			if (job.getId() == jobId)
+				return true;
+		}
+		return false;
 	}
 
 	/**
@@ -128,6 +194,49 @@ public abstract class AbstractAgent extends UntypedActor {
 		return workerTypes;
 	}
 
+	/**
+	 * @return the number of jobs this agent hands to each batch worker, by worker type. Work
+	 *         requests include these, so that the scheduler can count a batch as a single job.
+	 */
+	protected Map<String, Integer> getBatchSizes() {
+		return workerRegistry.getBatchSizes();
+	}
+
+	/**
+	 * @return the number of workers of each limited worker type that can still be given work, after
+	 *         the jobs and batches in progress or prefetched. Work requests include these, so that
+	 *         the scheduler fills the slots of each worker type separately.
+	 */
+	protected Map<String, Integer> getFreeWorkerTypeSlots() {
+		Map<String, Integer> freeSlots = new HashMap<>();
+		for (Map.Entry<String, Integer> slots : settings.AGENT_WORKER_TYPE_SLOTS.entrySet()) {
+			if (workerTypes.contains(slots.getKey()))
+				freeSlots.put(slots.getKey(), slots.getValue());
+		}
+		if (freeSlots.isEmpty())
+			return freeSlots;
+
+		for (Job job : jobsInProgress.values()) {
+			useSlot(freeSlots, job.getWorkerType());
+		}
+		for (Job job : prefetchedJobs) {
+			useSlot(freeSlots, job.getWorkerType());
+		}
+		for (List<Job> batch : batchesInProgress.values()) {
+			useSlot(freeSlots, batch.get(0).getWorkerType());
+		}
+		for (List<Job> batch : prefetchedBatches) {
+			useSlot(freeSlots, batch.get(0).getWorkerType());
+		}
+		return freeSlots;
+	}
+
+	private static void useSlot(Map<String, Integer> freeSlots, String workerType) {
+		Integer free = freeSlots.get(workerType);
+		if (free != null)
+			freeSlots.put(workerType, Math.max(0, free - 1));
+	}
+
 	public void injectProbe(ActorRef testProbe) {
 		this.testProbe = testProbe;
 	}
@@ -147,9 +256,45 @@ public abstract class AbstractAgent extends UntypedActor {
 			log.debug("Agent {} got a response to my work request: {}", getSelf().path().toString(),
 					message);
 			List<Job> jobs = ((WorkResponse) message).getJobs();
-			Collections.sort(jobs, new JobComparator());
+			List<Job> singleJobs = new ArrayList<>();
+			List<List<Job>> batches = new ArrayList<>();
+
+			// Batch worker jobs are grouped in the order the scheduler counted them
+			Map<String, List<Job>> openBatches = new HashMap<>();
 			for (Job job : jobs) {
-				spawnWorker(job);
+				// If this agent thinks that it is already running or holding the job then do
+				// nothing. This can happen during a network partition where an agent reconnects
+				// and get scheduled the same job that it's already processing.
+				if (isJobAssigned(job))
+					log.error("Job {} is already in progress. Ignoring scheduler response",
+							job.getId());
+				else if (workerRegistry.isBatch(job.getWorkerType())) {
+					List<Job> batch = openBatches.get(job.getWorkerType());
+					if (batch == null) {
+						batch = new ArrayList<>();
+						openBatches.put(job.getWorkerType(), batch);
+						batches.add(batch);
+					}
+					batch.add(job);
+					if (batch.size() == getBatchSizes().get(job.getWorkerType()))
+						openBatches.remove(job.getWorkerType());
+				} else
+					singleJobs.add(job);
+			}
+
+			for (List<Job> batch : batches) {
+				if (hasFreeSlot())
+					spawnBatchWorker(batch);
+				else
+					prefetchedBatches.add(batch);
+			}
+
+			Collections.sort(singleJobs, jobComparator);
+			for (Job job : singleJobs) {
+				if (hasFreeSlot())
+					spawnWorker(job);
+				else
+					prefetchedJobs.add(job);
 			}
 		}
 
@@ -171,6 +316,28 @@ public abstract class AbstractAgent extends UntypedActor {
 			recordProgress((JobProgress) message, getSender());
 		}
 
+		else if (message instanceof JobFailed) {
+			Job job = ((JobFailed) message).getJob();
+			log.debug("Batch worker reported a failed job {} ({})", job, job.getErrorMessage());
+			if (pendingProgress.remove(job.getId()) != null)
+				suppressedProgressCount++;
+			getScheduler().tell(message, getSelf());
+			if (removeBatchJob(getSender().path().toString(), job.getId())) {
+				startPrefetchedJobs();
+				scheduleWorkRequest();
+			}
+		}
+
+		else if (FLUSH_PROGRESS.equals(message)) {
+			progressFlush = null;
+			flushProgress();
+		}
+
+		else if (REQUEST_WORK.equals(message)) {
+			workRequest = null;
+			requestWork();
+		}
+
 		else {
 			log.error("Unrecognised message: {}", message);
 			unhandled(message);
@@ -181,6 +348,10 @@ public abstract class AbstractAgent extends UntypedActor {
 	public void postStop() {
 		super.postStop();
 		heartbeat.cancel();
+		if (progressFlush != null)
+			progressFlush.cancel();
+		flushProgress();
+		log.info("Suppressed {} progress reports in total", suppressedProgressCount);
 		if (workRequest != null && !workRequest.isCancelled())
 			workRequest.cancel();
 		log.info("Shut down.");
@@ -220,6 +391,60 @@ public abstract class AbstractAgent extends UntypedActor {
 		heartbeat.cancel();
 	}
 
+	/**
+	 * @return the number of progress reports that were superseded before being relayed to the
+	 *         scheduler
+	 */
+	public long getSuppressedProgressCount() {
+		return suppressedProgressCount;
+	}
+
+	/**
+	 * Relay every coalesced progress report to the scheduler
+	 */
+	private void flushProgress() {
+		if (pendingProgress.isEmpty())
+			return;
+
+		for (JobProgress jobProgress : pendingProgress.values()) {
+			getScheduler().tell(jobProgress, getSelf());
+		}
+		log.debug("Relayed {} progress reports, {} suppressed so far", pendingProgress.size(),
+				suppressedProgressCount);
+		pendingProgress.clear();
+	}
+
+	/**
+	 * Relay the progress of a job to the scheduler. Progress that doesn't change the state of the
+	 * job is coalesced, so that only the latest report for each job is relayed once the flush
+	 * interval has elapsed. State changes and completion are relayed immediately, superseding any
+	 * coalesced report for the same job.
+	 * 
+	 * @param jobProgress is the {@linkplain JobProgress} made against a job
+	 */
+	private void relayProgress(JobProgress jobProgress) {
+		boolean coalesce = jobProgress instanceof JobProgressDelta
+				&& jobProgress.getJob().getProgress() < 1.0
+				&& settings.AGENT_PROGRESS_FLUSH_INTERVAL.toMillis() > 0;
+		long jobId = jobProgress.getJob().getId();
+
+		if (pendingProgress.remove(jobId) != null)
+			suppressedProgressCount++;
+
+		if (!coalesce) {
+			getScheduler().tell(jobProgress, getSelf());
+			return;
+		}
+
+		pendingProgress.put(jobId, jobProgress);
+		if (progressFlush == null)
+			progressFlush = getContext()
+					.system()
+					.scheduler()
+					.scheduleOnce(settings.AGENT_PROGRESS_FLUSH_INTERVAL, getSelf(), FLUSH_PROGRESS,
+							getContext().dispatcher());
+	}
+
 	/**
 	 * Note the progress against a job. If it is complete, remove it from the jobs in progress map.
 	 * 
@@ -227,13 +452,83 @@ public abstract class AbstractAgent extends UntypedActor {
 	 * @param worker is the {@linkplain AbstractWorker} completing the job
 	 */
 	private void recordProgress(JobProgress jobProgress, ActorRef worker) {
-		getScheduler().tell(jobProgress, getSelf());
-		if (jobProgress.getJob().getProgress() == 1.0) {
-			jobsInProgress.remove(worker.path().toString());
+		relayProgress(jobProgress);
+		Job job = jobProgress.getJob();
+		if (job.getProgress() == 1.0) {
+			String workerPath = worker.path().toString();
+
+			// A batch worker only frees its slot once every job in the batch is done
+			if (batchesInProgress.containsKey(workerPath)) {
+				if (removeBatchJob(workerPath, job.getId())) {
+					startPrefetchedJobs();
+					scheduleWorkRequest();
+				}
+				return;
+			}
+
+			// A reusable worker may already be working on its next job
+			Job jobInProgress = jobsInProgress.get(workerPath);
+			if (jobInProgress != null && jobInProgress.getId() == job.getId())
+				removeJobInProgress(workerPath, false);
+
+			// A reusable worker is only free once it has finished the job
+			if (job.getState() == State.COMPLETE && workerRegistry.isReusable(job.getWorkerType()))
+				releaseWorker(job.getWorkerType(), worker);
+
+			startPrefetchedJobs();
 			scheduleWorkRequest();
 		}
 	}
 
+	/**
+	 * Return a reusable worker to the idle workers for its worker type
+	 */
+	private void releaseWorker(String workerType, ActorRef worker) {
+		Deque<ActorRef> workers = idleWorkers.get(workerType);
+		if (workers == null) {
+			workers = new ArrayDeque<>();
+			idleWorkers.put(workerType, workers);
+		}
+		workers.push(worker);
+	}
+
+	/**
+	 * @return an idle reusable worker for a worker type, or null if there is none
+	 */
+	private ActorRef takeIdleWorker(String workerType) {
+		Deque<ActorRef> workers = idleWorkers.get(workerType);
+		if (workers == null || workers.isEmpty())
+			return null;
+		return workers.pop();
+	}
+
+	/**
+	 * Stop handing out a reusable worker that has died
+	 */
+	private void removeIdleWorker(ActorRef worker) {
+		for (Deque<ActorRef> workers : idleWorkers.values())
+			workers.remove(worker);
+	}
+
+	/**
+	 * Start workers for prefetched jobs and batches, in priority order, while there are free slots.
+	 * Prefetched jobs start without waiting for a round trip to the scheduler. A batch is ordered by
+	 * its first job.
+	 */
+	private void startPrefetchedJobs() {
+		while (hasFreeSlot()) {
+			List<Job> batch = prefetchedBatches.peek();
+			Job job = prefetchedJobs.peek();
+			if (batch == null && job == null)
+				return;
+
+			if (job == null || (batch != null && jobComparator.compare(batch.get(0), job) <= 0))
+				spawnBatchWorker(prefetchedBatches.poll());
+			else
+				spawnWorker(prefetchedJobs.poll());
+		}
+	}
+
 	/**
 	 * Request work from the {@linkplain Scheduler}.
 	 */
@@ -247,14 +542,110 @@ public abstract class AbstractAgent extends UntypedActor {
 		if (workRequest != null && !workRequest.isCancelled())
 			workRequest.cancel();
 
-		workRequest = getContext().system().scheduler().scheduleOnce(Duration.Zero(),
-				new Runnable() {
+		workRequest = getContext().system().scheduler()
+				.scheduleOnce(Duration.Zero(), getSelf(), REQUEST_WORK, getContext().dispatcher());
+	}
 
-					@Override
-					public void run() {
-						requestWork();
-					}
-				}, getContext().dispatcher());
+	/**
+	 * @return the number of workers running on each worker dispatcher. As each worker blocks a
+	 *         thread until its job is done, this is the number of busy threads in each pool.
+	 */
+	public Map<String, Integer> getBusyWorkers() {
+		return Collections.unmodifiableMap(busyWorkers);
+	}
+
+	/**
+	 * Stop tracking a job once its worker has finished
+	 * 
+	 * @return the job the worker was processing
+	 */
+	private Job removeJobInProgress(String worker, boolean failed) {
+		Job job = jobsInProgress.remove(worker);
+		if (job != null)
+			finishWorker(worker, job.getWorkerType(), 1, failed);
+		return job;
+	}
+
+	/**
+	 * Stop tracking a job in a batch once the batch worker has reported on it
+	 * 
+	 * @return true if that was the last job in the batch, so the batch worker has finished
+	 */
+	private boolean removeBatchJob(String worker, long jobId) {
+		List<Job> batch = batchesInProgress.get(worker);
+		if (batch == null)
+			return false;
+
+		for (int i = 0; i < batch.size(); i++) {
+			if (batch.get(i).getId() == jobId) {
+				batch.remove(i);
+				break;
+			}
+		}
+		if (!batch.isEmpty())
+			return false;
+
+		removeBatchInProgress(worker, false);
+		return true;
+	}
+
+	/**
+	 * Stop tracking a batch worker
+	 * 
+	 * @return the jobs in the batch that the worker hadn't reported on
+	 */
+	private List<Job> removeBatchInProgress(String worker, boolean failed) {
+		List<Job> batch = batchesInProgress.remove(worker);
+		if (batch != null)
+			finishWorker(worker, batch.get(0).getWorkerType(), batchSizesInProgress.remove(worker),
+					failed);
+		return batch;
+	}
+
+	/**
+	 * Note that a worker has been given its work
+	 */
+	private void startWorker(String worker, List<Job> jobs) {
+		String workerType = jobs.get(0).getWorkerType();
+		workerStartTimes.put(worker, System.nanoTime());
+		String dispatcher = workerRegistry.getDispatcher(workerType);
+		Integer busy = busyWorkers.get(dispatcher);
+		busyWorkers.put(dispatcher, busy == null ? 1 : busy + 1);
+		log.debug("{} workers are busy on dispatcher {}", busyWorkers.get(dispatcher), dispatcher);
+		onWorkerStarted(workerType, jobs);
+	}
+
+	/**
+	 * Note that a worker has finished its work, successfully or not
+	 */
+	private void finishWorker(String worker, String workerType, int jobs, boolean failed) {
+		String dispatcher = workerRegistry.getDispatcher(workerType);
+		busyWorkers.put(dispatcher, busyWorkers.get(dispatcher) - 1);
+		Long startedAt = workerStartTimes.remove(worker);
+		if (startedAt != null)
+			onWorkerFinished(workerType, jobs, System.nanoTime() - startedAt, failed);
+	}
+
+	/**
+	 * Called whenever a worker is given its work.
+	 * 
+	 * @param workerType is the type of the worker
+	 * @param jobs is the work given to the worker, which is more than one job for a batch
+	 */
+	protected void onWorkerStarted(String workerType, List<Job> jobs) {
+		// Do nothing by default
+	}
+
+	/**
+	 * Called whenever a worker finishes its work and frees its slot.
+	 * 
+	 * @param workerType is the type of the worker
+	 * @param jobs is the number of jobs the worker was given, which is more than one for a batch
+	 * @param elapsedNanos is the time from handing the work to the worker until it finished
+	 * @param failed is true if the worker died, rather than finishing its work
+	 */
+	protected void onWorkerFinished(String workerType, int jobs, long elapsedNanos, boolean failed) {
+		// Do nothing by default
 	}
 
 	/**
@@ -262,40 +653,42 @@ public abstract class AbstractAgent extends UntypedActor {
 	 * 
 	 * @param job is the job that a {@linkplain Worker} should complete.
 	 */
-	@SuppressWarnings("serial")
 	private void spawnWorker(Job job) {
-		final Class<? extends AbstractWorker> workerClass = fetchWorkerClass(job.getWorkerType());
+		Props workerProps = workerRegistry.getProps(job.getWorkerType());
 
-		if (workerClass == null) {
-			sendFailure(job, String.format("Could not find worker for job type %s", workerClass));
+		if (workerProps == null) {
+			sendFailure(job,
+					String.format("Could not find worker for job type %s", job.getWorkerType()));
 			return;
 		}
 
-		// The agent has connected to a scheduler and received a job. If this agent thinks that
-		// it is already running that job then do nothing. This can happen during a network
-		// partition where an agent reconnects and get scheduled the same job that it's already
-		// processing.
-		boolean jobInProgress = false;
-		for (Job activeJob : jobsInProgress.values()) {
-			if (job.getId() == activeJob.getId()) {
-				jobInProgress = true;
-				break;
-			}
-		}
-
-		if (!jobInProgress) {
-			ActorRef worker = getContext().actorOf(new Props(new UntypedActorFactory() {
+		// The worker runs away from the agent on its own dispatcher (see the worker props), as it
+		// blocks its thread until the job is done
+		ActorRef worker;
+		if (workerRegistry.isReusable(job.getWorkerType())) {
+			worker = takeIdleWorker(job.getWorkerType());
+			if (worker == null)
+				worker = getContext().actorOf(workerProps, "worker-" + ++reusableWorkerCount);
+		} else
+			worker = getContext().actorOf(workerProps, "job-" + job.getId());
+		jobsInProgress.put(worker.path().toString(), job);
+		startWorker(worker.path().toString(), Collections.singletonList(job));
+		worker.tell(job.clone(), getSelf());
+	}
 
-				@Override
-				public Actor create() throws Exception {
-					return workerClass.newInstance();
-				}
-			}), "job-" + job.getId());
-			jobsInProgress.put(worker.path().toString(), job);
-			worker.tell(job.clone(), getSelf());
-		} else {
-			log.error("Job {} is already in progress. Ignoring scheduler response", job.getId());
-		}
+	/**
+	 * Spawn a new batch worker to complete a batch of jobs of the same worker type.
+	 * 
+	 * @param batch is the list of jobs that a {@linkplain AbstractBatchWorker} should complete.
+	 */
+	private void spawnBatchWorker(List<Job> batch) {
+		String workerType = batch.get(0).getWorkerType();
+		ActorRef worker = getContext().actorOf(workerRegistry.getProps(workerType),
+				"batch-" + batch.get(0).getId());
+		batchesInProgress.put(worker.path().toString(), batch);
+		batchSizesInProgress.put(worker.path().toString(), batch.size());
+		startWorker(worker.path().toString(), batch);
+		worker.tell(new JobBatch(batch), getSelf());
 	}
 
 	/**
@@ -322,7 +715,9 @@ public abstract class AbstractAgent extends UntypedActor {
 
 	/**
 	 * Supervise all workers for unexpected exceptions. When an exception is encountered, tell the
-	 * scheduler about it, stop the worker and remove it from the jobs in progress map.
+	 * scheduler about it, stop the worker and remove it from the jobs in progress map and the idle
+	 * reusable workers. When a batch worker dies, every job in its batch that it hadn't reported on
+	 * fails.
 	 */
 	@Override
 	public SupervisorStrategy supervisorStrategy() {
@@ -331,9 +726,25 @@ public abstract class AbstractAgent extends UntypedActor {
 			@Override
 			public Directive apply(Throwable error) {
 				log.error(error, "The worker {} has died a horrible death!", getSender());
-				Job job = jobsInProgress.remove(getSender().path().toString());
-				onWorkerDeath(job, error);
-				sendFailure(job, error.toString());
+				String worker = getSender().path().toString();
+				removeIdleWorker(getSender());
+				List<Job> jobs;
+				if (batchesInProgress.containsKey(worker))
+					jobs = removeBatchInProgress(worker, true);
+				else {
+					// A reusable worker may die between jobs
+					Job job = removeJobInProgress(worker, true);
+					jobs = job == null ? Collections.<Job> emptyList() : Collections
+							.singletonList(job);
+				}
+
+				for (Job job : jobs) {
+					if (pendingProgress.remove(job.getId()) != null)
+						suppressedProgressCount++;
+					onWorkerDeath(job, error);
+					sendFailure(job, error.toString());
+				}
+				startPrefetchedJobs();
 				return stop();
 			}
 		});
@@ -13,6 +13,7 @@
  ******************************************************************************/
 package oncue.agent;
 
+import java.util.List;
 import java.util.Set;
 
 import oncue.common.messages.CapacityWorkRequest;
@@ -32,6 +33,10 @@ import oncue.common.messages.Job;
  * The total "memory" available to the agent must be configured with the configuration propery
  * "oncue.agent.capacity-agent.total-memory". The Agent will crash on startup if this is not
  * provided.
+ * 
+ * The "memory" of jobs of particular worker types can be scaled with
+ * "oncue.agent.worker-type-memory-weights", for workers that use more or less memory than their
+ * jobs declare.
  */
 public class CapacityAgent extends AbstractAgent {
 
@@ -48,13 +53,28 @@ public class CapacityAgent extends AbstractAgent {
 	protected void requestWork() {
 		int usedMemory = 0;
 		for (Job job : jobsInProgress.values()) {
-			usedMemory += Integer.parseInt(job.getParams().get("memory"));
+			usedMemory += getRequiredMemory(job);
+		}
+
+		// A batch worker works on one job at a time, so it needs the memory of its largest job
+		for (List<Job> batch : batchesInProgress.values()) {
+			int batchMemory = 0;
+			for (Job job : batch) {
+				batchMemory = Math.max(batchMemory, getRequiredMemory(job));
+			}
+			usedMemory += batchMemory;
 		}
 		int availableMemory = TOTAL_MEMORY - usedMemory;
 		log.debug("Requesting work with memory capacity of {}", availableMemory);
 		getScheduler().tell(
-				new CapacityWorkRequest(getSelf(), getWorkerTypes(), availableMemory),
-				getSelf());
+				new CapacityWorkRequest(getSelf(), getWorkerTypes(), availableMemory, getBatchSizes(),
+						getFreeWorkerTypeSlots(), settings.AGENT_WORKER_TYPE_MEMORY_WEIGHTS), getSelf());
+	}
+
+	private int getRequiredMemory(Job job) {
+		int memory = job.getMemory();
+		Double memoryWeight = settings.AGENT_WORKER_TYPE_MEMORY_WEIGHTS.get(job.getWorkerType());
+		return memoryWeight == null ? memory : (int) Math.ceil(memory * memoryWeight);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.agent;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import oncue.common.messages.HostCapacityWorkRequest;
+import oncue.common.messages.Job;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+import akka.actor.Cancellable;
+
+import com.typesafe.config.Config;
+
+/**
+ * This agent samples the resources of its host, and of the control groups it runs in, from the
+ * proc and cgroup filesystems. Unlike the <code>JVMCapacityAgent</code>, it sees the memory limit
+ * and CPU quota of its container, so its capacity follows the container when it is resized.
+ * 
+ * Samples are smoothed with an exponentially weighted moving average and reported in a
+ * {@linkplain HostCapacityWorkRequest}, for use with the
+ * <code>oncue.scheduler.HostCapacityScheduler</code>. As workers are actors in the same process,
+ * the memory used by each worker is estimated from the growth of the process above its size when
+ * no workers are running. Until it has been estimated, each worker is assumed to use the configured
+ * worker memory.
+ * 
+ * Workers started since the latest sample are not yet reflected in it, so the memory and processors
+ * they were scheduled for are taken off the sample until the next one is taken.
+ */
+public class HostCapacityAgent extends AbstractAgent {
+
+	// Take a sample of the resources
+	private static final String SAMPLE_RESOURCES = "SAMPLE_RESOURCES";
+
+	private final HostResources hostResources;
+
+	private final FiniteDuration sampleInterval;
+
+	// The weight of each new sample
+	private final double smoothing;
+
+	// Memory to leave free for anything other than the workers
+	private final long reservedMemory;
+
+	// The processors charged for a job without a "cpu" parameter, as by the scheduler
+	private final double defaultCpu;
+
+	// The scheduled sampling
+	private Cancellable sampling;
+
+	// The smoothed samples
+	private boolean sampled;
+	private double availableMemory;
+	private double cpuQuota;
+	private double cpuUsage;
+	private double loadAverage;
+
+	// The size of the process while no workers are running
+	private double idleRss;
+
+	// The estimated memory used by each worker
+	private double workerMemory;
+
+	// The resources scheduled for the workers started since the latest sample
+	private long startedMemory;
+	private double startedCpu;
+
+	public HostCapacityAgent(Set<String> workerTypes) {
+		super(workerTypes);
+		Config config = getContext().system().settings().config()
+				.getConfig("oncue.agent.host-capacity-agent");
+		hostResources = new HostResources(new File(config.getString("proc-path")), new File(
+				config.getString("cgroup-path")));
+		sampleInterval = Duration.create(config.getMilliseconds("sample-interval"),
+				TimeUnit.MILLISECONDS);
+		smoothing = config.getDouble("smoothing");
+		reservedMemory = config.getBytes("reserved-memory");
+		workerMemory = config.getBytes("worker-memory");
+		defaultCpu = getContext().system().settings().config()
+				.getDouble("oncue.scheduler.host-capacity-scheduler.default-cpu");
+	}
+
+	@Override
+	public void preStart() {
+		super.preStart();
+		sampling = getContext().system().scheduler()
+				.schedule(Duration.Zero(), sampleInterval, getSelf(), SAMPLE_RESOURCES,
+						getContext().dispatcher());
+	}
+
+	@Override
+	public void postStop() {
+		if (sampling != null)
+			sampling.cancel();
+		super.postStop();
+	}
+
+	@Override
+	public void onReceive(Object message) {
+		if (SAMPLE_RESOURCES.equals(message))
+			sampleResources();
+		else
+			super.onReceive(message);
+	}
+
+	/**
+	 * @return the number of workers currently running
+	 */
+	private int getRunningWorkers() {
+		return jobsInProgress.size() + batchesInProgress.size();
+	}
+
+	/**
+	 * Take a sample of the resources and fold it into the smoothed values
+	 */
+	private void sampleResources() {
+		HostResources.Sample sample = hostResources.sample();
+		int runningWorkers = getRunningWorkers();
+		startedMemory = 0;
+		startedCpu = 0;
+		if (!sampled) {
+			availableMemory = sample.availableMemory;
+			cpuQuota = sample.cpuQuota;
+			cpuUsage = sample.cpuUsage;
+			loadAverage = sample.loadAverage;
+			idleRss = sample.processRss;
+			sampled = true;
+			return;
+		}
+
+		availableMemory = smooth(availableMemory, sample.availableMemory);
+		cpuQuota = smooth(cpuQuota, sample.cpuQuota);
+		cpuUsage = smooth(cpuUsage, sample.cpuUsage);
+		loadAverage = smooth(loadAverage, sample.loadAverage);
+		if (runningWorkers == 0)
+			idleRss = smooth(idleRss, sample.processRss);
+		else
+			workerMemory = smooth(workerMemory,
+					Math.max(0, sample.processRss - idleRss) / runningWorkers);
+	}
+
+	private double smooth(double average, double sample) {
+		return average + smoothing * (sample - average);
+	}
+
+	@Override
+	protected void onWorkerStarted(String workerType, List<Job> jobs) {
+		for (Job job : jobs) {
+			int memory = job.getMemory();
+			double cpu = job.getCpu();
+			startedMemory += memory < 0 ? (long) workerMemory : memory * 1024L * 1024;
+			startedCpu += cpu < 0 ? defaultCpu : cpu;
+		}
+	}
+
+	@Override
+	protected void requestWork() {
+		if (!sampled)
+			sampleResources();
+
+		long memory = Math.max(0, (long) availableMemory - reservedMemory - startedMemory);
+		HostCapacityWorkRequest workRequest = new HostCapacityWorkRequest(getSelf(),
+				getWorkerTypes(), memory, cpuQuota, cpuUsage + startedCpu, loadAverage,
+				(long) workerMemory, getRunningWorkers());
+		log.debug("Requesting work: {}", workRequest);
+		getScheduler().tell(workRequest, getSelf());
+	}
+}
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the resources available to this process from the proc filesystem and the control groups
+ * (version 1 or 2) it runs in, so that the limits of a container are respected as well as those
+ * of the host. The control groups of this process are found from /proc/self/cgroup.
+ * 
+ * Any file that can't be read is ignored. Without a memory limit or a CPU quota, the host's
+ * available memory and processors are used instead. As the workers run inside this JVM, the
+ * available memory is never more than the JVM's heap has left.
+ */
+class HostResources {
+
+	/**
+	 * A single reading of the resources
+	 */
+	static class Sample {
+
+		// The memory that can still be used, in bytes
+		long availableMemory;
+
+		// The number of processors this process may use
+		double cpuQuota;
+
+		// The number of processors in use, from the control group's CPU accounting where
+		// possible, otherwise from the load average
+		double cpuUsage;
+
+		// The one minute load average of the host
+		double loadAverage;
+
+		// The resident set size of this process, in bytes
+		long processRss;
+	}
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	// Control groups without a memory limit report a limit near the largest long
+	private static final long UNLIMITED = Long.MAX_VALUE / 2;
+
+	private final File proc;
+
+	// The control group of this process in the version 2 hierarchy
+	private final File unifiedCgroup;
+
+	// The control groups of this process in the version 1 hierarchies
+	private final File memoryCgroup;
+	private final File cpuCgroup;
+	private final File cpuacctCgroup;
+
+	// The previous reading of the control group's CPU time, in nanoseconds
+	private long lastCpuTime = -1;
+
+	// When the previous reading of the CPU time was taken, in nanoseconds
+	private long lastSampledAt;
+
+	/**
+	 * @param proc is the root of the proc filesystem, usually /proc
+	 * @param cgroup is where the control group filesystem is mounted, usually /sys/fs/cgroup
+	 */
+	HostResources(File proc, File cgroup) {
+		this.proc = proc;
+		Map<String, String> paths = readCgroupPaths(new File(proc, "self/cgroup"));
+		unifiedCgroup = resolveCgroup(cgroup, paths.get(""));
+		memoryCgroup = resolveCgroup(new File(cgroup, "memory"), paths.get("memory"));
+		cpuCgroup = resolveCgroup(new File(cgroup, "cpu"), paths.get("cpu"));
+		cpuacctCgroup = resolveCgroup(new File(cgroup, "cpuacct"), paths.get("cpuacct"));
+	}
+
+	/**
+	 * @return the path of this process's control group for each controller, read from a file such
+	 *         as /proc/self/cgroup. The version 2 hierarchy has no controllers, so its path is
+	 *         under the empty string.
+	 */
+	private static Map<String, String> readCgroupPaths(File file) {
+		Map<String, String> paths = new HashMap<>();
+		for (String line : readLines(file)) {
+			String[] fields = line.split(":", 3);
+			if (fields.length < 3)
+				continue;
+			for (String controller : fields[1].split(",")) {
+				paths.put(controller, fields[2]);
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * @return the directory of a control group under the mount of its hierarchy, or the mount
+	 *         itself if the group is not there, as when a container mounts only its own group
+	 */
+	private static File resolveCgroup(File mount, String path) {
+		if (path == null || path.equals("/"))
+			return mount;
+		File group = new File(mount, path);
+		return group.isDirectory() ? group : mount;
+	}
+
+	/**
+	 * Take a reading of the resources
+	 */
+	Sample sample() {
+		Sample sample = new Sample();
+		Runtime runtime = Runtime.getRuntime();
+		long jvmAvailableMemory = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+		sample.availableMemory = Math.min(jvmAvailableMemory,
+				Math.min(readHostAvailableMemory(), readCgroupAvailableMemory()));
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		sample.cpuQuota = Math.min(processors, readCpuQuota());
+		sample.loadAverage = readLoadAverage();
+		sample.cpuUsage = readCpuUsage();
+		if (sample.cpuUsage < 0)
+			sample.cpuUsage = Math.min(sample.loadAverage, sample.cpuQuota);
+		sample.processRss = readKilobytes(new File(proc, "self/status"), "VmRSS:");
+		return sample;
+	}
+
+	/**
+	 * @return the memory available on the host, or Long.MAX_VALUE if it is not known
+	 */
+	private long readHostAvailableMemory() {
+		long available = readKilobytes(new File(proc, "meminfo"), "MemAvailable:");
+		return available < 0 ? Long.MAX_VALUE : available;
+	}
+
+	/**
+	 * @return the memory left before the control group reaches its limit, not counting page cache
+	 *         that can be reclaimed, or Long.MAX_VALUE if there is no limit
+	 */
+	private long readCgroupAvailableMemory() {
+		long limit;
+		long usage;
+		long reclaimable;
+		if (new File(unifiedCgroup, "memory.max").exists()) {
+			limit = readLong(new File(unifiedCgroup, "memory.max"));
+			usage = readLong(new File(unifiedCgroup, "memory.current"));
+			reclaimable = readStat(new File(unifiedCgroup, "memory.stat"), "inactive_file");
+		} else {
+			limit = readLong(new File(memoryCgroup, "memory.limit_in_bytes"));
+			usage = readLong(new File(memoryCgroup, "memory.usage_in_bytes"));
+			reclaimable = readStat(new File(memoryCgroup, "memory.stat"), "total_inactive_file");
+		}
+
+		if (limit < 0 || limit >= UNLIMITED || usage < 0)
+			return Long.MAX_VALUE;
+		return Math.max(0, limit - (usage - Math.max(0, reclaimable)));
+	}
+
+	/**
+	 * @return the number of processors allowed by the control group's CPU quota, or
+	 *         Double.MAX_VALUE if there is no quota
+	 */
+	private double readCpuQuota() {
+		long quota;
+		long period;
+		File cpuMax = new File(unifiedCgroup, "cpu.max");
+		if (cpuMax.exists()) {
+			String[] fields = readFirstLine(cpuMax).trim().split("\\s+");
+			if (fields.length < 2 || fields[0].equals("max"))
+				return Double.MAX_VALUE;
+			quota = parseLong(fields[0]);
+			period = parseLong(fields[1]);
+		} else {
+			quota = readLong(new File(cpuCgroup, "cpu.cfs_quota_us"));
+			period = readLong(new File(cpuCgroup, "cpu.cfs_period_us"));
+		}
+
+		if (quota <= 0 || period <= 0)
+			return Double.MAX_VALUE;
+		return (double) quota / period;
+	}
+
+	/**
+	 * @return the number of processors used by the control group since the previous reading, or
+	 *         -1 if it is not known
+	 */
+	private double readCpuUsage() {
+		long cpuTime;
+		File cpuStat = new File(unifiedCgroup, "cpu.stat");
+		if (cpuStat.exists()) {
+			long usage = readStat(cpuStat, "usage_usec");
+			cpuTime = usage < 0 ? -1 : usage * 1000;
+		} else
+			cpuTime = readLong(new File(cpuacctCgroup, "cpuacct.usage"));
+
+		long now = System.nanoTime();
+		double usage = -1;
+		if (cpuTime >= 0 && lastCpuTime >= 0 && now > lastSampledAt)
+			usage = (double) (cpuTime - lastCpuTime) / (now - lastSampledAt);
+		lastCpuTime = cpuTime;
+		lastSampledAt = now;
+		return usage;
+	}
+
+	/**
+	 * @return the one minute load average, or 0 if it is not known
+	 */
+	private double readLoadAverage() {
+		String line = readFirstLine(new File(proc, "loadavg"));
+		if (line.isEmpty())
+			return 0;
+		try {
+			return Double.parseDouble(line.split("\\s+")[0]);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return a value in kilobytes from a file such as /proc/meminfo, in bytes, or -1 if it is not
+	 *         there
+	 */
+	private static long readKilobytes(File file, String key) {
+		for (String line : readLines(file)) {
+			if (line.startsWith(key)) {
+				String[] fields = line.substring(key.length()).trim().split("\\s+");
+				long kilobytes = parseLong(fields[0]);
+				return kilobytes < 0 ? -1 : kilobytes * 1024;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return a value from a file of keys and values, such as memory.stat, or -1 if it is not there
+	 */
+	private static long readStat(File file, String key) {
+		for (String line : readLines(file)) {
+			String[] fields = line.split("\\s+");
+			if (fields.length == 2 && fields[0].equals(key))
+				return parseLong(fields[1]);
+		}
+		return -1;
+	}
+
+	/**
+	 * @return a file containing a single number, or -1 if it can't be read or holds no limit
+	 */
+	private static long readLong(File file) {
+		String line = readFirstLine(file).trim();
+		if (line.equals("max"))
+			return -1;
+		return parseLong(line);
+	}
+
+	/**
+	 * @return a non-negative number, or -1 if the value is not one
+	 */
+	private static long parseLong(String value) {
+		try {
+			return Math.max(-1, Long.parseLong(value));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static String readFirstLine(File file) {
+		List<String> lines = readLines(file);
+		return lines.isEmpty() ? "" : lines.get(0);
+	}
+
+	private static List<String> readLines(File file) {
+		try {
+			return Files.readAllLines(file.toPath(), ASCII);
+		} catch (IOException e) {
+			return Collections.emptyList();
+		}
+	}
+}
@@ -15,6 +15,10 @@
  ******************************************************************************/
 package oncue.agent;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import oncue.common.messages.ThrottledWorkRequest;
@@ -23,13 +27,59 @@ import com.typesafe.config.Config;
 
 /**
  * This agent will work on the configured maximum number of jobs at any one
- * time, before asking for more work.
+ * time, before asking for more work. A batch of jobs for a batch worker counts
+ * as a single job.
+ * 
+ * Optionally, the agent can also hold a number of prefetched jobs, which start
+ * as soon as a worker finishes, while the agent asks the scheduler to top up
+ * its buffer.
+ * 
+ * In adaptive mode, the maximum number of jobs is only the starting point. The
+ * agent compares the time each job takes with the fastest time recently seen
+ * for its worker type. While jobs run close to that time and the limit is being
+ * reached, the limit grows; as jobs slow down, because they are competing for
+ * the host, the limit shrinks in proportion. The limit is also cut back
+ * whenever the host's load average shows it is saturated. As throughput is
+ * the number of jobs in progress divided by their latency, latency rising
+ * faster than the limit means throughput has stopped improving.
  */
 public class ThrottledAgent extends AbstractAgent {
 
 	// The maximum number of concurrent workers
 	private final Integer MAX_WORKERS;
 
+	// The number of jobs to hold in reserve, beyond the concurrent workers
+	private final int PREFETCH_JOBS;
+
+	// How quickly the fastest time for a worker type is forgotten
+	private static final double BASELINE_DRIFT = 0.01;
+
+	// Whether the concurrency limit adapts to the observed latency and load
+	private final boolean ADAPTIVE;
+	private final int ADAPTIVE_MIN_JOBS;
+	private final int ADAPTIVE_MAX_JOBS;
+	private final int ADAPTIVE_WINDOW;
+	private final double ADAPTIVE_LATENCY_TOLERANCE;
+	private final double ADAPTIVE_SMOOTHING;
+	private final double ADAPTIVE_LOAD_SATURATION;
+	private final double ADAPTIVE_BACKOFF_RATIO;
+
+	// The current concurrency limit
+	private double concurrencyLimit;
+
+	// Map a worker type to the fastest recent time per job, in nanoseconds
+	private final Map<String, Double> baselineLatencies = new HashMap<>();
+
+	// The observations since the concurrency limit was last adjusted
+	private long windowStart = System.nanoTime();
+	private int finishedWorkers;
+	private int finishedJobs;
+	private double latencyRatios;
+	private int peakWorkers;
+
+	private final OperatingSystemMXBean operatingSystem = ManagementFactory
+			.getOperatingSystemMXBean();
+
 	public ThrottledAgent(Set<String> workerTypes) {
 		super(workerTypes);
 		Config config = getContext().system().settings().config();
@@ -39,21 +89,124 @@ public class ThrottledAgent extends AbstractAgent {
 		}
 		MAX_WORKERS = config.getInt("oncue.agent.throttled-agent.max-jobs");
 		log.info("The throttled agent will process a maximum of {} jobs in parallel", MAX_WORKERS);
+
+		if (config.hasPath("oncue.agent.throttled-agent.prefetch-jobs"))
+			PREFETCH_JOBS = config.getInt("oncue.agent.throttled-agent.prefetch-jobs");
+		else
+			PREFETCH_JOBS = 0;
+
+		Config adaptive = config.getConfig("oncue.agent.throttled-agent.adaptive");
+		ADAPTIVE = adaptive.getBoolean("enabled");
+		ADAPTIVE_MIN_JOBS = adaptive.getInt("min-jobs");
+		ADAPTIVE_MAX_JOBS = adaptive.getInt("max-jobs");
+		ADAPTIVE_WINDOW = adaptive.getInt("window");
+		ADAPTIVE_LATENCY_TOLERANCE = adaptive.getDouble("latency-tolerance");
+		ADAPTIVE_SMOOTHING = adaptive.getDouble("smoothing");
+		ADAPTIVE_LOAD_SATURATION = adaptive.getDouble("load-saturation");
+		ADAPTIVE_BACKOFF_RATIO = adaptive.getDouble("backoff-ratio");
+		concurrencyLimit = MAX_WORKERS;
+		if (ADAPTIVE)
+			log.info("The concurrency limit will adapt between {} and {} jobs", ADAPTIVE_MIN_JOBS,
+					ADAPTIVE_MAX_JOBS);
+	}
+
+	/**
+	 * @return the number of jobs this agent currently allows to run at once
+	 */
+	public int getConcurrencyLimit() {
+		return (int) concurrencyLimit;
+	}
+
+	private int getWorkersInProgress() {
+		return jobsInProgress.size() + batchesInProgress.size();
+	}
+
+	@Override
+	protected boolean hasFreeSlot() {
+		return getWorkersInProgress() < getConcurrencyLimit();
+	}
+
+	@Override
+	protected void onWorkerFinished(String workerType, int jobs, long elapsedNanos, boolean failed) {
+		if (!ADAPTIVE || failed)
+			return;
+
+		// Include the worker that just finished
+		peakWorkers = Math.max(peakWorkers, getWorkersInProgress() + 1);
+
+		// Compare the time per job with the fastest recent time for the worker type
+		double latency = (double) elapsedNanos / jobs;
+		Double baseline = baselineLatencies.get(workerType);
+		if (baseline == null || latency < baseline)
+			baseline = latency;
+		else
+			baseline += BASELINE_DRIFT * (latency - baseline);
+		baselineLatencies.put(workerType, baseline);
+
+		latencyRatios += baseline > 0 ? latency / baseline : 1;
+		finishedWorkers++;
+		finishedJobs += jobs;
+		if (finishedWorkers >= ADAPTIVE_WINDOW)
+			adjustConcurrencyLimit();
+	}
+
+	/**
+	 * Move the concurrency limit towards the limit suggested by the latest window of observations
+	 */
+	private void adjustConcurrencyLimit() {
+		double latencyRatio = latencyRatios / finishedWorkers;
+		double throughput = finishedJobs / ((System.nanoTime() - windowStart) / 1e9);
+
+		// Shrink in proportion to how much slower jobs are running than usual
+		double gradient = Math.max(0.5, Math.min(1.0, ADAPTIVE_LATENCY_TOLERANCE / latencyRatio));
+		double targetLimit = concurrencyLimit * gradient;
+
+		// Only probe for more capacity when the current limit is being reached
+		if (gradient == 1.0 && peakWorkers >= getConcurrencyLimit())
+			targetLimit += Math.sqrt(concurrencyLimit);
+
+		double limit = concurrencyLimit + ADAPTIVE_SMOOTHING * (targetLimit - concurrencyLimit);
+
+		// Back off straight away when the host is saturated
+		double load = operatingSystem.getSystemLoadAverage()
+				/ operatingSystem.getAvailableProcessors();
+		if (ADAPTIVE_LOAD_SATURATION > 0 && load > ADAPTIVE_LOAD_SATURATION)
+			limit = Math.min(limit, concurrencyLimit * ADAPTIVE_BACKOFF_RATIO);
+
+		int previousLimit = getConcurrencyLimit();
+		concurrencyLimit = Math.max(ADAPTIVE_MIN_JOBS, Math.min(ADAPTIVE_MAX_JOBS, limit));
+		if (getConcurrencyLimit() != previousLimit)
+			log.debug(
+					"Concurrency limit changed from {} to {} (latency ratio {}, throughput {} jobs/s, load {})",
+					previousLimit, getConcurrencyLimit(), String.format("%.2f", latencyRatio),
+					String.format("%.1f", throughput), String.format("%.2f", load));
+
+		windowStart = System.nanoTime();
+		finishedWorkers = 0;
+		finishedJobs = 0;
+		latencyRatios = 0;
+		peakWorkers = 0;
 	}
 
 	@Override
 	protected void requestWork() {
 		/*
 		 * Don't request work if this agent is already dealing with all the jobs
-		 * it can manage
+		 * it can manage, including those held in reserve
 		 */
-		if (jobsInProgress.size() < MAX_WORKERS) {
-			int jobsToRequest = MAX_WORKERS - jobsInProgress.size();
+		int workersInProgress = getWorkersInProgress();
+		int prefetched = prefetchedJobs.size() + prefetchedBatches.size();
+		int assignedJobs = workersInProgress + prefetched;
+		int limit = getConcurrencyLimit();
+		if (assignedJobs < limit + PREFETCH_JOBS) {
+			int jobsToRequest = limit + PREFETCH_JOBS - assignedJobs;
 			log.debug("Requesting {} new jobs", jobsToRequest);
-			getScheduler().tell(new ThrottledWorkRequest(getSelf(), getWorkerTypes(), jobsToRequest), getSelf());
+			getScheduler().tell(
+					new ThrottledWorkRequest(getSelf(), getWorkerTypes(), jobsToRequest, getBatchSizes(),
+							limit, getFreeWorkerTypeSlots()), getSelf());
 		} else {
-			log.debug("Not requesting work because {} jobs in progress and limited to {} workers",
-					jobsInProgress.size(), MAX_WORKERS);
+			log.debug("Not requesting work because {} jobs in progress, {} prefetched and limited to {} workers",
+					workersInProgress, prefetched, limit);
 		}
 	}
 }
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.agent;
+
+import java.lang.reflect.Constructor;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import oncue.common.settings.Settings;
+import oncue.worker.AbstractBatchWorker;
+import oncue.worker.AbstractWorker;
+import akka.actor.Actor;
+import akka.actor.Props;
+import akka.actor.UntypedActorFactory;
+import akka.event.LoggingAdapter;
+
+/**
+ * Resolves the worker classes of an agent once, when the agent starts, and keeps ready-made
+ * {@linkplain Props} for each worker type. Spawning a worker then needs neither a class lookup nor
+ * a new actor factory.
+ */
+class WorkerRegistry {
+
+	/**
+	 * Creates workers through a cached constructor
+	 */
+	private static class WorkerFactory implements UntypedActorFactory {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Constructor<? extends Actor> constructor;
+
+		WorkerFactory(Constructor<? extends Actor> constructor) {
+			this.constructor = constructor;
+		}
+
+		@Override
+		public Actor create() throws Exception {
+			return constructor.newInstance();
+		}
+	}
+
+	// Map a worker type to the props used to spawn its workers
+	private final Map<String, Props> workerProps = new HashMap<>();
+
+	// Map a worker type to the dispatcher its workers run on
+	private final Map<String, String> workerDispatchers = new HashMap<>();
+
+	// The worker types whose workers process many jobs in turn
+	private final Set<String> reusableWorkerTypes = new HashSet<>();
+
+	// Map a batch worker type to the number of jobs in each of its batches
+	private final Map<String, Integer> batchSizes = new HashMap<>();
+
+	/**
+	 * @param workerTypes are the class names of the workers. Worker types without a class are
+	 *            logged and left out.
+	 * @param settings provide the dispatchers, reusable worker types and batch sizes
+	 * 
+	 * @throws IllegalStateException if a worker class doesn't extend {@linkplain AbstractWorker}
+	 *             or {@linkplain AbstractBatchWorker}, or has no constructor without arguments
+	 */
+	WorkerRegistry(Set<String> workerTypes, Settings settings, LoggingAdapter log) {
+		for (String workerType : workerTypes) {
+			Class<?> workerClass;
+			try {
+				workerClass = Class.forName(workerType.trim());
+			} catch (ClassNotFoundException e) {
+				log.error(String.format("Cannot find a class for the worker type '%s'", workerType));
+				continue;
+			}
+
+			boolean batchWorker = AbstractBatchWorker.class.isAssignableFrom(workerClass);
+			if (!batchWorker && !AbstractWorker.class.isAssignableFrom(workerClass))
+				throw new IllegalStateException(String.format(
+						"The class for worker type '%s' doesn't extend the AbstractWorker base class",
+						workerType));
+
+			Constructor<? extends Actor> constructor;
+			try {
+				constructor = workerClass.asSubclass(Actor.class).getDeclaredConstructor();
+				constructor.setAccessible(true);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException(String.format(
+						"The class for worker type '%s' needs a constructor without arguments",
+						workerType), e);
+			}
+
+			String dispatcher = settings.AGENT_WORKER_TYPE_DISPATCHERS.get(workerType);
+			if (dispatcher == null)
+				dispatcher = settings.AGENT_WORKER_DISPATCHER;
+
+			if (batchWorker) {
+				Integer batchSize = settings.AGENT_WORKER_TYPE_BATCH_SIZES.get(workerType);
+				batchSizes.put(workerType, batchSize == null ? settings.AGENT_BATCH_SIZE
+						: batchSize);
+			} else if (settings.AGENT_REUSABLE_WORKER_TYPES.contains(workerType))
+				reusableWorkerTypes.add(workerType);
+
+			workerDispatchers.put(workerType, dispatcher);
+			workerProps.put(workerType,
+					new Props(new WorkerFactory(constructor)).withDispatcher(dispatcher));
+		}
+	}
+
+	/**
+	 * @return the worker types that have a worker class
+	 */
+	Set<String> getWorkerTypes() {
+		return new LinkedHashSet<>(workerProps.keySet());
+	}
+
+	/**
+	 * @return the props to spawn a worker of a particular type, or null if there is no such worker
+	 */
+	Props getProps(String workerType) {
+		return workerProps.get(workerType);
+	}
+
+	/**
+	 * @return true if workers of a particular type process many jobs in turn
+	 */
+	boolean isReusable(String workerType) {
+		return reusableWorkerTypes.contains(workerType);
+	}
+
+	/**
+	 * @return true if workers of a particular type work through batches of jobs
+	 */
+	boolean isBatch(String workerType) {
+		return batchSizes.containsKey(workerType);
+	}
+
+	/**
+	 * @return the batch sizes of the batch worker types
+	 */
+	Map<String, Integer> getBatchSizes() {
+		return batchSizes;
+	}
+
+	/**
+	 * @return the dispatcher that runs workers of a particular type
+	 */
+	String getDispatcher(String workerType) {
+		return workerDispatchers.get(workerType);
+	}
+}
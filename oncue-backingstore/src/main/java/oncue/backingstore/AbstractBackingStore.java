@@ -15,11 +15,20 @@
  ******************************************************************************/
 package oncue.backingstore;
 
+import java.util.List;
+
+import oncue.common.messages.Job;
 import oncue.common.settings.Settings;
+
+import org.joda.time.Duration;
+
 import akka.actor.ActorSystem;
 
 /**
  * Extend this class to create a new persistent backing store.
+ * 
+ * The batch operations are implemented here by looping over their single-job
+ * counterparts. Override them where the store supports native bulk operations.
  */
 public abstract class AbstractBackingStore implements BackingStore {
 
@@ -31,4 +40,48 @@ public abstract class AbstractBackingStore implements BackingStore {
 		this.settings = settings;
 	}
 
+	@Override
+	public int cleanupJobs(boolean includeFailedJobs, Duration expirationAge) {
+		return cleanupJobs(includeFailedJobs, expirationAge, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public void close() {
+		// NOOP
+	}
+
+	@Override
+	public void addUnscheduledJobs(List<Job> jobs) {
+		for (Job job : jobs) {
+			addUnscheduledJob(job);
+		}
+	}
+
+	@Override
+	public void persistJobsProgress(List<Job> jobs) {
+		for (Job job : jobs) {
+			persistJobProgress(job);
+		}
+	}
+
+	@Override
+	public void removeScheduledJobs(List<Job> jobs) {
+		for (Job job : jobs) {
+			removeScheduledJobById(job.getId());
+		}
+	}
+
+	@Override
+	public void removeUnscheduledJobs(List<Job> jobs) {
+		for (Job job : jobs) {
+			removeUnscheduledJobById(job.getId());
+		}
+	}
+
+	@Override
+	public void scheduleJobs(List<Job> jobs) {
+		removeUnscheduledJobs(jobs);
+		addScheduledJobs(jobs);
+	}
+
 }
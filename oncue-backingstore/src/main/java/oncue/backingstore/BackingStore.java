@@ -18,6 +18,7 @@ package oncue.backingstore;
 import java.util.List;
 
 import oncue.common.messages.Job;
+import oncue.common.messages.JobQuery;
 
 import org.joda.time.Duration;
 
@@ -39,6 +40,20 @@ public interface BackingStore {
 	 */
 	public void addUnscheduledJob(Job job);
 
+	/**
+	 * Add a batch of jobs to the unscheduled jobs queue
+	 * 
+	 * @param jobs
+	 *            is the list of {@linkplain Job}s to enqueue
+	 */
+	public void addUnscheduledJobs(List<Job> jobs);
+
+	/**
+	 * Release any resources held by the backing store, such as files or scheduled tasks. The
+	 * scheduler calls this when it stops.
+	 */
+	public void close();
+
 	/**
 	 * Clean up complete and optionally, failed jobs from the backing store
 	 * 
@@ -53,6 +68,22 @@ public interface BackingStore {
 	 */
 	public int cleanupJobs(boolean includeFailedJobs, Duration expirationAge);
 
+	/**
+	 * Clean up a bounded number of complete and optionally, failed jobs from
+	 * the backing store, oldest first. Call this repeatedly until it returns
+	 * less than the limit to clean up all the expired jobs in chunks.
+	 * 
+	 * @param includeFailedJobs
+	 *            determines whether failed jobs will also be cleaned up
+	 * @param expirationAge
+	 *            is the duration that must have elapsed since a job completed
+	 *            before it is eligible for cleanup
+	 * @param limit
+	 *            is the maximum number of jobs to clean up
+	 * @return the number of jobs that were cleaned up
+	 */
+	public int cleanupJobs(boolean includeFailedJobs, Duration expirationAge, int limit);
+
 	/**
 	 * The backing store makes a note of jobs that complete successfully. Get
 	 * the list of these.
@@ -61,6 +92,11 @@ public interface BackingStore {
 	 */
 	public List<Job> getCompletedJobs();
 
+	/**
+	 * @return the number of jobs that have completed successfully
+	 */
+	public int getCompletedJobsCount();
+
 	/**
 	 * The backing store makes a note of jobs that fail. Get the list of these.
 	 * 
@@ -68,6 +104,11 @@ public interface BackingStore {
 	 */
 	public List<Job> getFailedJobs();
 
+	/**
+	 * @return the number of jobs that have failed
+	 */
+	public int getFailedJobsCount();
+
 	/**
 	 * Fetch the next monotonically-increasing job identifier. NOTE: This action
 	 * *must* increment the job identifier in the persistent store, as well as
@@ -75,6 +116,16 @@ public interface BackingStore {
 	 */
 	public long getNextJobID();
 
+	/**
+	 * Load a single job by ID, without loading any other jobs. This is how the scheduler finds
+	 * complete and failed jobs, which it does not keep in memory.
+	 * 
+	 * @param jobId
+	 *            is the ID of the {@linkplain Job} to load
+	 * @return the {@linkplain Job}, or null if the backing store has no record of it
+	 */
+	public Job loadJobById(long jobId);
+
 	/**
 	 * Persist the details of a failed job
 	 * 
@@ -91,6 +142,26 @@ public interface BackingStore {
 	 */
 	public void persistJobProgress(Job job);
 
+	/**
+	 * Persist the progress made against a batch of jobs
+	 * 
+	 * @param jobs
+	 *            is the list of {@linkplain Job}s containing a record of progress
+	 */
+	public void persistJobsProgress(List<Job> jobs);
+
+	/**
+	 * Find the complete and failed jobs that match a query. Only the jobs that could possibly
+	 * match should be loaded, so the cost depends on the size of the page rather than the size of
+	 * the job history.
+	 * 
+	 * @param query
+	 *            is the {@linkplain JobQuery} describing the jobs to find
+	 * @return the matching {@linkplain Job}s in ascending ID order, limited to the page size of
+	 *         the query
+	 */
+	public List<Job> queryJobs(JobQuery query);
+
 	/**
 	 * Remove a job from the list of completed jobs
 	 */
@@ -109,11 +180,27 @@ public interface BackingStore {
 	 */
 	public void removeScheduledJobById(long jobId);
 
+	/**
+	 * Remove a batch of jobs from the list of scheduled jobs
+	 * 
+	 * @param jobs
+	 *            is the list of {@linkplain Job}s to remove
+	 */
+	public void removeScheduledJobs(List<Job> jobs);
+
 	/**
 	 * Remove a job from the unscheduled jobs queue by ID
 	 */
 	public void removeUnscheduledJobById(long jobId);
 
+	/**
+	 * Remove a batch of jobs from the unscheduled jobs queue
+	 * 
+	 * @param jobs
+	 *            is the list of {@linkplain Job}s to remove
+	 */
+	public void removeUnscheduledJobs(List<Job> jobs);
+
 	/**
 	 * Restore the unscheduled jobs queue from both scheduled and unscheduled
 	 * jobs, as we assume that all agents are dead.
@@ -122,4 +209,14 @@ public interface BackingStore {
 	 */
 	public List<Job> restoreJobs();
 
+	/**
+	 * Move a batch of jobs from the unscheduled jobs queue to the list of
+	 * scheduled jobs. The scheduler uses this to persist an entire schedule
+	 * in one call.
+	 * 
+	 * @param jobs
+	 *            is the list of {@linkplain Job}s that have been scheduled
+	 */
+	public void scheduleJobs(List<Job> jobs);
+
 }
@@ -1,10 +1,18 @@
 package oncue.backingstore;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
 
+import oncue.common.comparators.JobComparator;
 import oncue.common.messages.Job;
+import oncue.common.messages.JobQuery;
 import oncue.common.settings.Settings;
 
 import org.joda.time.DateTime;
@@ -25,6 +33,10 @@ public class InMemoryBackingStore extends AbstractBackingStore {
 	private List<Job> unscheduledJobs = new ArrayList<>();
 	private List<Job> completedJobs = new ArrayList<>();
 	private List<Job> failedJobs = new ArrayList<>();
+
+	// Index the complete and failed jobs by the time they completed, for cleanup
+	private NavigableMap<Long, Set<Long>> completedJobsByTime = new TreeMap<>();
+	private NavigableMap<Long, Set<Long>> failedJobsByTime = new TreeMap<>();
 	private long nextJobID = 1;
 
 	public InMemoryBackingStore(ActorSystem system, Settings settings) {
@@ -41,24 +53,52 @@ public class InMemoryBackingStore extends AbstractBackingStore {
 		this.unscheduledJobs.add(job);
 	}
 
+	@Override
+	public void addUnscheduledJobs(List<Job> jobs) {
+		this.unscheduledJobs.addAll(jobs);
+	}
+
 	@Override
 	public List<Job> getCompletedJobs() {
 		return completedJobs;
 	}
 
+	@Override
+	public int getCompletedJobsCount() {
+		return completedJobs.size();
+	}
+
 	@Override
 	public List<Job> getFailedJobs() {
 		return failedJobs;
 	}
 
+	@Override
+	public int getFailedJobsCount() {
+		return failedJobs.size();
+	}
+
 	@Override
 	public long getNextJobID() {
 		return this.nextJobID++;
 	}
 
+	@Override
+	public Job loadJobById(long jobId) {
+		for (List<Job> jobs : Arrays.asList(completedJobs, failedJobs, scheduledJobs,
+				unscheduledJobs)) {
+			for (Job job : jobs) {
+				if (job.getId() == jobId)
+					return job;
+			}
+		}
+		return null;
+	}
+
 	@Override
 	public void persistJobFailure(Job job) {
 		failedJobs.add(job);
+		index(failedJobsByTime, job);
 	}
 
 	@Override
@@ -68,22 +108,48 @@ public class InMemoryBackingStore extends AbstractBackingStore {
 				scheduledJob.setProgress(job.getProgress());
 				if (job.getState() == Job.State.COMPLETE) {
 					completedJobs.add(job);
+					index(completedJobsByTime, job);
 				}
 				break;
 			}
 		}
 	}
 
+	@Override
+	public List<Job> queryJobs(JobQuery query) {
+		List<Job> jobs = new ArrayList<>();
+		for (List<Job> terminalJobs : Arrays.asList(completedJobs, failedJobs)) {
+			for (Job job : terminalJobs) {
+				if (query.matches(job))
+					jobs.add(job);
+			}
+		}
+		Collections.sort(jobs, new JobComparator());
+		if (query.getPageSize() > 0 && jobs.size() > query.getPageSize())
+			return new ArrayList<>(jobs.subList(0, query.getPageSize()));
+		return jobs;
+	}
+
 	@Override
 	public void removeScheduledJobById(long jobId) {
 		removeJobById(scheduledJobs, jobId);
 	}
 
+	@Override
+	public void removeScheduledJobs(List<Job> jobs) {
+		removeJobs(scheduledJobs, jobs);
+	}
+
 	@Override
 	public void removeUnscheduledJobById(long jobId) {
 		removeJobById(unscheduledJobs, jobId);
 	}
 
+	@Override
+	public void removeUnscheduledJobs(List<Job> jobs) {
+		removeJobs(unscheduledJobs, jobs);
+	}
+
 	@Override
 	public List<Job> restoreJobs() {
 		return Collections.emptyList();
@@ -92,42 +158,99 @@ public class InMemoryBackingStore extends AbstractBackingStore {
 	@Override
 	public void removeCompletedJobById(long jobId) {
 		removeJobById(completedJobs, jobId);
+		unindex(completedJobsByTime, jobId);
 	}
 
 	@Override
 	public void removeFailedJobById(long jobId) {
 		removeJobById(failedJobs, jobId);
+		unindex(failedJobsByTime, jobId);
 	}
 
 	@Override
-	public int cleanupJobs(boolean includeFailedJobs, Duration expirationAge) {
-		List<Job> expiredCompletedJobs = new ArrayList<>();
-		for (Job completedJob : completedJobs) {
-			DateTime expirationThreshold = DateTime.now().minus(expirationAge.getMillis());
-			boolean isExpired = completedJob.getCompletedAt().isBefore(
-					expirationThreshold.toInstant());
-			if (isExpired) {
-				expiredCompletedJobs.add(completedJob);
+	public int cleanupJobs(boolean includeFailedJobs, Duration expirationAge, int limit) {
+		long expirationThreshold = DateTime.now().minus(expirationAge.getMillis()).getMillis();
+
+		List<Job> expiredJobs = findExpiredJobs(completedJobsByTime, expirationThreshold, limit);
+		removeJobs(completedJobs, expiredJobs);
+		int cleanedJobsCount = expiredJobs.size();
+
+		if (includeFailedJobs && cleanedJobsCount < limit) {
+			expiredJobs = findExpiredJobs(failedJobsByTime, expirationThreshold, limit
+					- cleanedJobsCount);
+			removeJobs(failedJobs, expiredJobs);
+			cleanedJobsCount += expiredJobs.size();
+		}
+
+		return cleanedJobsCount;
+	}
+
+	/**
+	 * Take up to a limited number of jobs that completed before a threshold out of a time index,
+	 * oldest first
+	 */
+	private List<Job> findExpiredJobs(NavigableMap<Long, Set<Long>> jobsByTime,
+			long expirationThreshold, int limit) {
+		List<Job> expiredJobs = new ArrayList<>();
+		Iterator<Set<Long>> expiredTimes = jobsByTime.headMap(expirationThreshold, false).values()
+				.iterator();
+		while (expiredTimes.hasNext() && expiredJobs.size() < limit) {
+			Iterator<Long> jobIds = expiredTimes.next().iterator();
+			while (jobIds.hasNext() && expiredJobs.size() < limit) {
+				expiredJobs.add(new Job(jobIds.next(), null));
+				jobIds.remove();
 			}
+			if (!jobIds.hasNext())
+				expiredTimes.remove();
 		}
-		completedJobs.removeAll(expiredCompletedJobs);
+		return expiredJobs;
+	}
 
-		if (!includeFailedJobs) {
-			return expiredCompletedJobs.size();
+	/**
+	 * Add a job to a time index, by the time it completed
+	 */
+	private void index(NavigableMap<Long, Set<Long>> jobsByTime, Job job) {
+		DateTime completedAt = job.getCompletedAt();
+		long time = completedAt == null ? DateTime.now().getMillis() : completedAt.getMillis();
+		Set<Long> jobIds = jobsByTime.get(time);
+		if (jobIds == null) {
+			jobIds = new HashSet<>();
+			jobsByTime.put(time, jobIds);
 		}
+		jobIds.add(job.getId());
+	}
 
-		List<Job> expiredFailedJobs = new ArrayList<>();
-		for (Job failedJob : failedJobs) {
-			DateTime expirationThreshold = DateTime.now().minus(expirationAge.getMillis());
-			boolean isExpired = failedJob.getCompletedAt()
-					.isBefore(expirationThreshold.toInstant());
-			if (isExpired) {
-				expiredFailedJobs.add(failedJob);
+	/**
+	 * Remove a job from a time index
+	 */
+	private void unindex(NavigableMap<Long, Set<Long>> jobsByTime, long jobId) {
+		Iterator<Set<Long>> times = jobsByTime.values().iterator();
+		while (times.hasNext()) {
+			Set<Long> jobIds = times.next();
+			if (jobIds.remove(jobId)) {
+				if (jobIds.isEmpty())
+					times.remove();
+				return;
 			}
 		}
-		expiredFailedJobs.removeAll(expiredFailedJobs);
+	}
+
+	/**
+	 * Remove a batch of jobs from collections by ID, in a single pass over the collection.
+	 */
+	private void removeJobs(List<Job> jobList, List<Job> jobs) {
+		final Set<Long> jobIds = new HashSet<>();
+		for (Job job : jobs) {
+			jobIds.add(job.getId());
+		}
+		Iterables.removeIf(jobList, new Predicate<Job>() {
+
+			@Override
+			public boolean apply(Job input) {
+				return jobIds.contains(input.getId());
+			}
 
-		return expiredFailedJobs.size() + expiredCompletedJobs.size();
+		});
 	}
 
 	/**
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.backingstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal, split into fixed-size segment files that are memory-mapped for writing.
+ *
+ * Each record is written as its length, a CRC32 checksum and the payload. Appending only copies
+ * the record into the mapped segment; the segment is forced to disk by {@linkplain #sync()}, which
+ * is called periodically so that many records share the cost of a single flush (group commit).
+ * Replay stops at the first empty or corrupt record, which is how a torn write at the tail of the
+ * journal after a crash is ignored.
+ */
+class Journal {
+
+	/**
+	 * Receives each record during a replay
+	 */
+	interface RecordHandler {
+		void handle(DataInputStream record) throws IOException;
+	}
+
+	private static final String SEGMENT_PREFIX = "journal-";
+
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	// The length and checksum that precede each record
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private final File directory;
+
+	private final int segmentSize;
+
+	// The number of the segment being appended to
+	private long segment;
+
+	private RandomAccessFile segmentFile;
+
+	private MappedByteBuffer segmentBuffer;
+
+	// Whether anything has been appended since the last sync
+	private boolean dirty;
+
+	/**
+	 * Open a journal for appending. Appends always start in a new segment, after any segments that
+	 * already exist.
+	 *
+	 * @param directory is where the segment files are kept
+	 * @param segmentSize is the size of each segment file, in bytes
+	 */
+	Journal(File directory, int segmentSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create the journal directory " + directory);
+
+		List<Long> segments = listSegments(directory);
+		long lastSegment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+		openSegment(lastSegment + 1, segmentSize);
+	}
+
+	/**
+	 * Replay every record in the segments from a given segment onwards
+	 *
+	 * @param directory is where the segment files are kept
+	 * @param fromSegment is the first segment to replay
+	 * @param handler receives each record
+	 * @return the number of records replayed
+	 */
+	static long replay(File directory, long fromSegment, RecordHandler handler) throws IOException {
+		long records = 0;
+		for (long segment : listSegments(directory)) {
+			if (segment < fromSegment)
+				continue;
+
+			try (RandomAccessFile file = new RandomAccessFile(segmentFile(directory, segment), "r");
+					FileChannel channel = file.getChannel()) {
+				MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+				CRC32 crc = new CRC32();
+				while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+					int length = buffer.getInt();
+					int checksum = buffer.getInt();
+					if (length <= 0 || length > buffer.remaining())
+						break;
+
+					byte[] payload = new byte[length];
+					buffer.get(payload);
+					crc.reset();
+					crc.update(payload);
+					if ((int) crc.getValue() != checksum)
+						break;
+
+					handler.handle(new DataInputStream(new ByteArrayInputStream(payload)));
+					records++;
+				}
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Append a record to the current segment, moving on to a new segment if it does not fit.
+	 */
+	synchronized void append(byte[] payload, int length) throws IOException {
+		if (segmentBuffer.remaining() < length + RECORD_HEADER_SIZE)
+			openSegment(segment + 1, Math.max(segmentSize, length + RECORD_HEADER_SIZE));
+
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, length);
+		segmentBuffer.putInt(length);
+		segmentBuffer.putInt((int) crc.getValue());
+		segmentBuffer.put(payload, 0, length);
+		dirty = true;
+	}
+
+	/**
+	 * Force any records appended since the last sync to disk
+	 */
+	synchronized void sync() {
+		if (!dirty)
+			return;
+		segmentBuffer.force();
+		dirty = false;
+	}
+
+	/**
+	 * Sync the current segment and start a new one
+	 *
+	 * @return the number of the new segment
+	 */
+	synchronized long roll() throws IOException {
+		openSegment(segment + 1, segmentSize);
+		return segment;
+	}
+
+	/**
+	 * Delete the segments before a given segment, which are no longer needed for replay
+	 */
+	void deleteSegmentsBefore(long segment) throws IOException {
+		for (long oldSegment : listSegments(directory)) {
+			if (oldSegment < segment && !segmentFile(directory, oldSegment).delete())
+				throw new IOException("Could not delete journal segment " + oldSegment);
+		}
+	}
+
+	/**
+	 * Sync and close the current segment
+	 */
+	synchronized void close() throws IOException {
+		sync();
+		segmentFile.close();
+	}
+
+	private void openSegment(long segment, int size) throws IOException {
+		if (segmentFile != null) {
+			sync();
+			segmentFile.close();
+		}
+
+		this.segment = segment;
+		segmentFile = new RandomAccessFile(segmentFile(directory, segment), "rw");
+		segmentBuffer = segmentFile.getChannel().map(MapMode.READ_WRITE, 0, size);
+	}
+
+	private static File segmentFile(File directory, long segment) {
+		return new File(directory, String.format("%s%016d%s", SEGMENT_PREFIX, segment,
+				SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * @return the numbers of the segments in a directory, in ascending order
+	 */
+	private static List<Long> listSegments(File directory) {
+		List<Long> segments = new ArrayList<>();
+		String[] names = directory.list(new FilenameFilter() {
+
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		if (names == null)
+			return segments;
+
+		for (String name : names) {
+			segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length()
+					- SEGMENT_SUFFIX.length())));
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+}
@@ -0,0 +1,759 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.backingstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import oncue.common.comparators.JobComparator;
+import oncue.common.messages.Job;
+import oncue.common.messages.Job.State;
+import oncue.common.messages.JobQuery;
+import oncue.common.settings.Settings;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+import scala.concurrent.duration.FiniteDuration;
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+
+import com.typesafe.config.Config;
+
+/**
+ * A backing store that keeps its state in memory and appends every change to a local
+ * {@linkplain Journal}, so it is durable across restarts without an external server.
+ *
+ * The journal is forced to disk every group commit interval, rather than on every change. A change
+ * returns as soon as it is appended to the memory-mapped journal, so the scheduler acknowledges it
+ * before it has been forced to disk. The change survives a crash of the scheduler process, as it is
+ * already in the operating system's page cache, but a crash of the host loses the changes made in
+ * the last group commit interval.
+ *
+ * Every snapshot interval, a compact snapshot of the current state is written and the journal segments
+ * before it are deleted, so a restart only replays the changes made since the last snapshot.
+ */
+public class JournalBackingStore extends AbstractBackingStore {
+
+	// Journal directory config key
+	private static final String JOURNAL_DIRECTORY = "oncue.scheduler.backing-store.journal.directory";
+
+	// Journal segment size config key
+	private static final String JOURNAL_SEGMENT_SIZE = "oncue.scheduler.backing-store.journal.segment-size";
+
+	// Group commit interval config key
+	private static final String JOURNAL_GROUP_COMMIT_INTERVAL = "oncue.scheduler.backing-store.journal.group-commit-interval";
+
+	// Snapshot interval config key
+	private static final String JOURNAL_SNAPSHOT_INTERVAL = "oncue.scheduler.backing-store.journal.snapshot-interval";
+
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+	private static final String SNAPSHOT_SUFFIX = ".dat";
+
+	// Identifies the snapshot file format
+	private static final int SNAPSHOT_VERSION = 1;
+
+	// The journal record types
+	private static final byte NEXT_JOB_ID = 1;
+	private static final byte ADD_UNSCHEDULED = 2;
+	private static final byte ADD_SCHEDULED = 3;
+	private static final byte SCHEDULE = 4;
+	private static final byte PROGRESS = 5;
+	private static final byte FAILURE = 6;
+	private static final byte REMOVE_UNSCHEDULED = 7;
+	private static final byte REMOVE_SCHEDULED = 8;
+	private static final byte REMOVE_COMPLETED = 9;
+	private static final byte REMOVE_FAILED = 10;
+	private static final byte RESTORE = 11;
+
+	private File directory = new File("journal");
+
+	private int segmentSize = 64 * 1024 * 1024;
+
+	private FiniteDuration groupCommitInterval = scala.concurrent.duration.Duration.create(10,
+			TimeUnit.MILLISECONDS);
+
+	private long snapshotInterval = 100000;
+
+	// Map a job ID to the latest state of the job
+	private final Map<Long, Job> jobs = new HashMap<>();
+
+	private final Set<Long> unscheduledJobs = new LinkedHashSet<>();
+	private final Set<Long> scheduledJobs = new LinkedHashSet<>();
+	private final Set<Long> completedJobs = new LinkedHashSet<>();
+	private final Set<Long> failedJobs = new LinkedHashSet<>();
+
+	private long nextJobID = 1;
+
+	private final Journal journal;
+
+	// The periodic group commit
+	private final Cancellable groupCommit;
+
+	// Whether the journal has been closed
+	private boolean closed;
+
+	// The number of records appended since the last snapshot
+	private long recordsSinceSnapshot;
+
+	// Reused to encode each record
+	private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+	private final DataOutputStream record = new DataOutputStream(recordBytes);
+
+	private final LoggingAdapter log;
+
+	public JournalBackingStore(ActorSystem system, Settings settings) {
+		super(system, settings);
+		log = Logging.getLogger(system, this);
+
+		/*
+		 * Override the journal settings from configuration
+		 */
+		Config config = system.settings().config();
+		if (config.hasPath(JOURNAL_DIRECTORY))
+			directory = new File(config.getString(JOURNAL_DIRECTORY));
+		if (config.hasPath(JOURNAL_SEGMENT_SIZE))
+			segmentSize = config.getBytes(JOURNAL_SEGMENT_SIZE).intValue();
+		if (config.hasPath(JOURNAL_GROUP_COMMIT_INTERVAL))
+			groupCommitInterval = scala.concurrent.duration.Duration.create(
+					config.getMilliseconds(JOURNAL_GROUP_COMMIT_INTERVAL), TimeUnit.MILLISECONDS);
+		if (config.hasPath(JOURNAL_SNAPSHOT_INTERVAL))
+			snapshotInterval = config.getLong(JOURNAL_SNAPSHOT_INTERVAL);
+
+		try {
+			long records = recover();
+			journal = new Journal(directory, segmentSize);
+			log.info("Backing store journal at {} recovered {} jobs, replaying {} records",
+					directory.getAbsolutePath(), jobs.size(), records);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to open the journal at " + directory, e);
+		}
+
+		// Group commit: force the journal to disk periodically, rather than on every record
+		groupCommit = system.scheduler().schedule(groupCommitInterval, groupCommitInterval,
+				new Runnable() {
+
+					@Override
+					public void run() {
+						sync();
+					}
+				}, system.dispatcher());
+	}
+
+	/**
+	 * Stop the group commit, then sync and close the journal. The backing store can't be used
+	 * once it is closed.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed)
+			return;
+
+		closed = true;
+		groupCommit.cancel();
+		try {
+			journal.close();
+		} catch (IOException e) {
+			log.error(e, "Failed to close the journal");
+		}
+	}
+
+	private synchronized void sync() {
+		if (!closed)
+			journal.sync();
+	}
+
+	@Override
+	public synchronized void addScheduledJobs(List<Job> jobs) {
+		writeJobIDs(ADD_SCHEDULED, jobs);
+		for (Job job : jobs) {
+			scheduledJobs.add(job.getId());
+		}
+	}
+
+	@Override
+	public synchronized void addUnscheduledJob(Job job) {
+		addUnscheduledJobs(Collections.singletonList(job));
+	}
+
+	@Override
+	public synchronized void addUnscheduledJobs(List<Job> jobs) {
+		try {
+			startRecord(ADD_UNSCHEDULED);
+			record.writeInt(jobs.size());
+			for (Job job : jobs) {
+				writeJob(record, job);
+			}
+			append();
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to journal unscheduled jobs", e);
+		}
+		for (Job job : jobs) {
+			addUnscheduled((Job) job.clone());
+		}
+		snapshotIfDue();
+	}
+
+	@Override
+	public synchronized int cleanupJobs(boolean includeFailedJobs, Duration expirationAge,
+			int limit) {
+		DateTime expirationThreshold = DateTime.now().minus(expirationAge.getMillis());
+
+		List<Job> expiredJobs = findCompletedBefore(completedJobs, expirationThreshold, limit);
+		removeJobs(REMOVE_COMPLETED, expiredJobs);
+		int cleanedJobsCount = expiredJobs.size();
+
+		if (includeFailedJobs && cleanedJobsCount < limit) {
+			expiredJobs = findCompletedBefore(failedJobs, expirationThreshold, limit
+					- cleanedJobsCount);
+			removeJobs(REMOVE_FAILED, expiredJobs);
+			cleanedJobsCount += expiredJobs.size();
+		}
+		return cleanedJobsCount;
+	}
+
+	@Override
+	public synchronized List<Job> getCompletedJobs() {
+		return getJobs(completedJobs);
+	}
+
+	@Override
+	public synchronized int getCompletedJobsCount() {
+		return completedJobs.size();
+	}
+
+	@Override
+	public synchronized List<Job> getFailedJobs() {
+		return getJobs(failedJobs);
+	}
+
+	@Override
+	public synchronized int getFailedJobsCount() {
+		return failedJobs.size();
+	}
+
+	@Override
+	public synchronized long getNextJobID() {
+		long jobID = nextJobID;
+		try {
+			startRecord(NEXT_JOB_ID);
+			record.writeLong(jobID + 1);
+			append();
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to journal the next job ID", e);
+		}
+		nextJobID = jobID + 1;
+		return jobID;
+	}
+
+	@Override
+	public synchronized Job loadJobById(long jobId) {
+		Job job = jobs.get(jobId);
+		return job == null ? null : (Job) job.clone();
+	}
+
+	@Override
+	public synchronized void persistJobFailure(Job job) {
+		try {
+			startRecord(FAILURE);
+			writeJob(record, job);
+			append();
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to journal a job failure", e);
+		}
+		fail((Job) job.clone());
+		snapshotIfDue();
+	}
+
+	@Override
+	public synchronized void persistJobProgress(Job job) {
+		persistJobsProgress(Collections.singletonList(job));
+	}
+
+	@Override
+	public synchronized void persistJobsProgress(List<Job> jobs) {
+		try {
+			startRecord(PROGRESS);
+			record.writeInt(jobs.size());
+			for (Job job : jobs) {
+				record.writeLong(job.getId());
+				record.writeDouble(job.getProgress());
+				writeString(record, job.getState().name());
+				writeDateTime(record, job.getStartedAt());
+				writeDateTime(record, job.getCompletedAt());
+			}
+			append();
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to journal job progress", e);
+		}
+		for (Job job : jobs) {
+			progress(job.getId(), job.getProgress(), job.getState(), job.getStartedAt(),
+					job.getCompletedAt());
+		}
+		snapshotIfDue();
+	}
+
+	@Override
+	public synchronized List<Job> queryJobs(JobQuery query) {
+		List<Job> matchingJobs = new ArrayList<>();
+		for (Set<Long> jobIds : Arrays.asList(completedJobs, failedJobs)) {
+			for (long jobId : jobIds) {
+				Job job = jobs.get(jobId);
+				if (query.matchesId(jobId) && query.matches(job))
+					matchingJobs.add((Job) job.clone());
+			}
+		}
+		Collections.sort(matchingJobs, new JobComparator());
+		if (query.getPageSize() > 0 && matchingJobs.size() > query.getPageSize())
+			return new ArrayList<>(matchingJobs.subList(0, query.getPageSize()));
+		return matchingJobs;
+	}
+
+	@Override
+	public synchronized void removeCompletedJobById(long jobId) {
+		removeJobs(REMOVE_COMPLETED, Collections.singletonList(new Job(jobId, null)));
+	}
+
+	@Override
+	public synchronized void removeFailedJobById(long jobId) {
+		removeJobs(REMOVE_FAILED, Collections.singletonList(new Job(jobId, null)));
+	}
+
+	@Override
+	public synchronized void removeScheduledJobById(long jobId) {
+		removeJobs(REMOVE_SCHEDULED, Collections.singletonList(new Job(jobId, null)));
+	}
+
+	@Override
+	public synchronized void removeScheduledJobs(List<Job> jobs) {
+		removeJobs(REMOVE_SCHEDULED, jobs);
+	}
+
+	@Override
+	public synchronized void removeUnscheduledJobById(long jobId) {
+		removeJobs(REMOVE_UNSCHEDULED, Collections.singletonList(new Job(jobId, null)));
+	}
+
+	@Override
+	public synchronized void removeUnscheduledJobs(List<Job> jobs) {
+		removeJobs(REMOVE_UNSCHEDULED, jobs);
+	}
+
+	@Override
+	public synchronized List<Job> restoreJobs() {
+		try {
+			startRecord(RESTORE);
+			append();
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to journal the restoration of jobs", e);
+		}
+		restore();
+		return getJobs(unscheduledJobs);
+	}
+
+	@Override
+	public synchronized void scheduleJobs(List<Job> jobs) {
+		writeJobIDs(SCHEDULE, jobs);
+		for (Job job : jobs) {
+			unscheduledJobs.remove(job.getId());
+			scheduledJobs.add(job.getId());
+		}
+		snapshotIfDue();
+	}
+
+	/*
+	 * The state changes, shared by the live operations and the replay of the journal
+	 */
+
+	private void addUnscheduled(Job job) {
+		jobs.put(job.getId(), job);
+		unscheduledJobs.add(job.getId());
+	}
+
+	private void fail(Job job) {
+		job.setParams(job.getParams(false));
+		jobs.put(job.getId(), job);
+		failedJobs.add(job.getId());
+	}
+
+	private void progress(long jobId, double progress, State state, DateTime startedAt,
+			DateTime completedAt) {
+		Job job = jobs.get(jobId);
+		if (job == null)
+			return;
+
+		job.setProgress(progress);
+		job.setState(state);
+		if (startedAt != null)
+			job.setStartedAt(startedAt);
+		if (state == State.COMPLETE) {
+			if (completedAt != null)
+				job.setCompletedAt(completedAt);
+			completedJobs.add(jobId);
+		}
+	}
+
+	private void remove(byte type, long jobId) {
+		switch (type) {
+		case REMOVE_UNSCHEDULED:
+			unscheduledJobs.remove(jobId);
+			break;
+		case REMOVE_SCHEDULED:
+			scheduledJobs.remove(jobId);
+			break;
+		case REMOVE_COMPLETED:
+			completedJobs.remove(jobId);
+			jobs.remove(jobId);
+			break;
+		case REMOVE_FAILED:
+			failedJobs.remove(jobId);
+			jobs.remove(jobId);
+			break;
+		}
+	}
+
+	private void restore() {
+		unscheduledJobs.addAll(scheduledJobs);
+		scheduledJobs.clear();
+	}
+
+	/**
+	 * Apply a single journal record to the state
+	 */
+	private void replay(DataInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case NEXT_JOB_ID:
+			nextJobID = Math.max(nextJobID, in.readLong());
+			break;
+		case ADD_UNSCHEDULED:
+			for (int i = in.readInt(); i > 0; i--) {
+				addUnscheduled(readJob(in));
+			}
+			break;
+		case ADD_SCHEDULED:
+			for (int i = in.readInt(); i > 0; i--) {
+				scheduledJobs.add(in.readLong());
+			}
+			break;
+		case SCHEDULE:
+			for (int i = in.readInt(); i > 0; i--) {
+				long jobId = in.readLong();
+				unscheduledJobs.remove(jobId);
+				scheduledJobs.add(jobId);
+			}
+			break;
+		case PROGRESS:
+			for (int i = in.readInt(); i > 0; i--) {
+				progress(in.readLong(), in.readDouble(), State.valueOf(readString(in)),
+						readDateTime(in), readDateTime(in));
+			}
+			break;
+		case FAILURE:
+			fail(readJob(in));
+			break;
+		case REMOVE_UNSCHEDULED:
+		case REMOVE_SCHEDULED:
+		case REMOVE_COMPLETED:
+		case REMOVE_FAILED:
+			for (int i = in.readInt(); i > 0; i--) {
+				remove(type, in.readLong());
+			}
+			break;
+		case RESTORE:
+			restore();
+			break;
+		default:
+			throw new IOException("Unrecognised journal record type " + type);
+		}
+	}
+
+	/**
+	 * Rebuild the state from the latest snapshot and the journal segments written after it
+	 *
+	 * @return the number of journal records replayed
+	 */
+	private long recover() throws IOException {
+		long fromSegment = 0;
+		List<Long> snapshots = listSnapshots();
+		if (!snapshots.isEmpty()) {
+			fromSegment = snapshots.get(snapshots.size() - 1);
+			readSnapshot(snapshotFile(fromSegment));
+		}
+
+		return Journal.replay(directory, fromSegment, new Journal.RecordHandler() {
+
+			@Override
+			public void handle(DataInputStream record) throws IOException {
+				replay(record);
+			}
+		});
+	}
+
+	/*
+	 * Snapshots
+	 */
+
+	/**
+	 * Take a snapshot once enough records have been appended since the last one. The journal is
+	 * rolled to a new segment first, so the snapshot and the segments from that one onwards
+	 * describe the complete state. The older segments and snapshots are then deleted.
+	 */
+	private void snapshotIfDue() {
+		if (recordsSinceSnapshot < snapshotInterval)
+			return;
+
+		long start = System.currentTimeMillis();
+		try {
+			long segment = journal.roll();
+			File snapshot = snapshotFile(segment);
+			File tempSnapshot = new File(directory, snapshot.getName() + ".tmp");
+			try (FileOutputStream file = new FileOutputStream(tempSnapshot);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+				writeSnapshot(out);
+				out.flush();
+				file.getFD().sync();
+			}
+			Files.move(tempSnapshot.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+			for (long oldSnapshot : listSnapshots()) {
+				if (oldSnapshot < segment)
+					Files.delete(snapshotFile(oldSnapshot).toPath());
+			}
+			journal.deleteSegmentsBefore(segment);
+		} catch (IOException e) {
+			// The journal is still intact, so carry on and try again later
+			log.error(e, "Failed to take a snapshot of the backing store journal");
+		}
+		recordsSinceSnapshot = 0;
+		log.debug("Took a snapshot of {} jobs in {}ms", jobs.size(), System.currentTimeMillis()
+				- start);
+	}
+
+	private void writeSnapshot(DataOutput out) throws IOException {
+		out.writeInt(SNAPSHOT_VERSION);
+		out.writeLong(nextJobID);
+		out.writeInt(jobs.size());
+		for (Job job : jobs.values()) {
+			writeJob(out, job);
+		}
+		for (Set<Long> jobIds : Arrays.asList(unscheduledJobs, scheduledJobs, completedJobs,
+				failedJobs)) {
+			out.writeInt(jobIds.size());
+			for (long jobId : jobIds) {
+				out.writeLong(jobId);
+			}
+		}
+	}
+
+	private void readSnapshot(File snapshot) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+				snapshot)))) {
+			int version = in.readInt();
+			if (version != SNAPSHOT_VERSION)
+				throw new IOException("Unrecognised snapshot version " + version);
+
+			nextJobID = in.readLong();
+			for (int i = in.readInt(); i > 0; i--) {
+				Job job = readJob(in);
+				jobs.put(job.getId(), job);
+			}
+			for (Set<Long> jobIds : Arrays.asList(unscheduledJobs, scheduledJobs, completedJobs,
+					failedJobs)) {
+				for (int i = in.readInt(); i > 0; i--) {
+					jobIds.add(in.readLong());
+				}
+			}
+		}
+	}
+
+	private File snapshotFile(long segment) {
+		return new File(directory, String.format("%s%016d%s", SNAPSHOT_PREFIX, segment,
+				SNAPSHOT_SUFFIX));
+	}
+
+	/**
+	 * @return the segment numbers of the snapshots, in ascending order
+	 */
+	private List<Long> listSnapshots() {
+		List<Long> snapshots = new ArrayList<>();
+		String[] names = directory.list(new FilenameFilter() {
+
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+			}
+		});
+		if (names == null)
+			return snapshots;
+
+		for (String name : names) {
+			snapshots.add(Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length()
+					- SNAPSHOT_SUFFIX.length())));
+		}
+		Collections.sort(snapshots);
+		return snapshots;
+	}
+
+	/*
+	 * Encoding
+	 */
+
+	private void startRecord(byte type) throws IOException {
+		recordBytes.reset();
+		record.writeByte(type);
+	}
+
+	private void append() throws IOException {
+		record.flush();
+		journal.append(recordBytes.toByteArray(), recordBytes.size());
+		recordsSinceSnapshot++;
+	}
+
+	private void writeJobIDs(byte type, Collection<Job> jobs) {
+		try {
+			startRecord(type);
+			record.writeInt(jobs.size());
+			for (Job job : jobs) {
+				record.writeLong(job.getId());
+			}
+			append();
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to journal a change to the backing store", e);
+		}
+	}
+
+	private void removeJobs(byte type, List<Job> jobs) {
+		if (jobs.isEmpty())
+			return;
+
+		writeJobIDs(type, jobs);
+		for (Job job : jobs) {
+			remove(type, job.getId());
+		}
+		snapshotIfDue();
+	}
+
+	private static void writeJob(DataOutput out, Job job) throws IOException {
+		out.writeLong(job.getId());
+		writeString(out, job.getWorkerType());
+		writeString(out, job.getState().name());
+		out.writeDouble(job.getProgress());
+		out.writeBoolean(job.isRerun());
+		writeDateTime(out, job.getEnqueuedAt());
+		writeDateTime(out, job.getStartedAt());
+		writeDateTime(out, job.getCompletedAt());
+		out.writeBoolean(job.getErrorMessage() != null);
+		if (job.getErrorMessage() != null)
+			writeString(out, job.getErrorMessage());
+		out.writeInt(job.getParams().size());
+		for (Map.Entry<String, String> param : job.getParams().entrySet()) {
+			writeString(out, param.getKey());
+			writeString(out, param.getValue());
+		}
+	}
+
+	private static Job readJob(DataInput in) throws IOException {
+		Job job = new Job(in.readLong(), readString(in));
+		job.setState(State.valueOf(readString(in)));
+		job.setProgress(in.readDouble());
+		job.setRerun(in.readBoolean());
+		job.setEnqueuedAt(readDateTime(in));
+		job.setStartedAt(readDateTime(in));
+		job.setCompletedAt(readDateTime(in));
+		if (in.readBoolean())
+			job.setErrorMessage(readString(in));
+		for (int i = in.readInt(); i > 0; i--) {
+			job.getParams().put(readString(in), readString(in));
+		}
+		return job;
+	}
+
+	/**
+	 * Write a string as its length followed by its UTF-8 bytes. Unlike
+	 * {@linkplain DataOutput#writeUTF(String)}, this has no 64KB limit, which error messages and
+	 * parameters can exceed.
+	 */
+	private static void writeString(DataOutput out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeDateTime(DataOutput out, DateTime dateTime) throws IOException {
+		out.writeLong(dateTime == null ? Long.MIN_VALUE : dateTime.getMillis());
+	}
+
+	private static DateTime readDateTime(DataInput in) throws IOException {
+		long millis = in.readLong();
+		return millis == Long.MIN_VALUE ? null : new DateTime(millis);
+	}
+
+	private List<Job> getJobs(Collection<Long> jobIds) {
+		List<Job> jobList = new ArrayList<>(jobIds.size());
+		for (long jobId : jobIds) {
+			Job job = jobs.get(jobId);
+			if (job != null)
+				jobList.add((Job) job.clone());
+		}
+		return jobList;
+	}
+
+	private List<Job> findCompletedBefore(Collection<Long> jobIds, DateTime threshold, int limit) {
+		List<Job> expiredJobs = new ArrayList<>();
+		for (long jobId : jobIds) {
+			if (expiredJobs.size() == limit)
+				break;
+			Job job = jobs.get(jobId);
+			if (job != null && job.getCompletedAt() != null
+					&& job.getCompletedAt().isBefore(threshold))
+				expiredJobs.add(job);
+		}
+		return expiredJobs;
+	}
+}
@@ -15,8 +15,15 @@ package oncue.backingstore;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -29,11 +36,15 @@ import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import oncue.common.messages.Job;
 import oncue.common.messages.Job.State;
+import oncue.common.messages.JobQuery;
 import oncue.common.settings.Settings;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.PipelineBase;
 import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.Transaction;
 import redis.clients.jedis.exceptions.JedisException;
 
@@ -73,8 +84,8 @@ public class RedisBackingStore extends AbstractBackingStore {
 			return this.connection.multi();
 		}
 
-		public void lpush(String key, String value) {
-			this.connection.lpush(key, value);
+		public void lpush(String key, String... values) {
+			this.connection.lpush(key, values);
 		}
 
 		public List<String> lrange(String key, int start, int end) {
@@ -89,6 +100,22 @@ public class RedisBackingStore extends AbstractBackingStore {
 			this.connection.hset(key, field, value);
 		}
 
+		public Map<String, String> hgetAll(String key) {
+			return this.connection.hgetAll(key);
+		}
+
+		public void hmset(String key, Map<String, String> hash) {
+			this.connection.hmset(key, hash);
+		}
+
+		public Pipeline pipelined() {
+			return this.connection.pipelined();
+		}
+
+		public Object eval(String script, List<String> keys, List<String> args) {
+			return this.connection.eval(script, keys, args);
+		}
+
 		public void lrem(String key, int count, String value) {
 			this.connection.lrem(key, count, value);
 		}
@@ -108,10 +135,30 @@ public class RedisBackingStore extends AbstractBackingStore {
 			this.connection.flushDB();
 		}
 
+		/**
+		 * Reset the statistics reported by INFO, such as the calls made to each command. This
+		 * should only be used in tests.
+		 */
+		public void configResetStat() {
+			this.connection.configResetStat();
+		}
+
+		public String info(String section) {
+			return this.connection.info(section);
+		}
+
 		public boolean exists(String key) {
 			return this.connection.exists(key);
 		}
 
+		public void set(String key, String value) {
+			this.connection.set(key, value);
+		}
+
+		public Set<String> zrangeByScore(String key, String min, String max, int offset, int count) {
+			return this.connection.zrangeByScore(key, min, max, offset, count);
+		}
+
 		public Long llen(String key) {
 			return this.connection.llen(key);
 		}
@@ -136,6 +183,21 @@ public class RedisBackingStore extends AbstractBackingStore {
 	// The jobs that have failed
 	public static final String FAILED_JOBS = "oncue:jobs:failed";
 
+	// The jobs that have completed successfully, scored by completion time
+	public static final String COMPLETED_JOBS_BY_TIME = "oncue:jobs:complete:by_time";
+
+	// The jobs that have failed, scored by completion time
+	public static final String FAILED_JOBS_BY_TIME = "oncue:jobs:failed:by_time";
+
+	// The jobs that have completed successfully, scored by ID
+	public static final String COMPLETED_JOBS_BY_ID = "oncue:jobs:complete:by_id";
+
+	// The jobs that have failed, scored by ID
+	public static final String FAILED_JOBS_BY_ID = "oncue:jobs:failed:by_id";
+
+	// Marks an index as holding the jobs that were in its list before the index existed
+	private static final String INDEX_BUILT_KEY = "%s:built";
+
 	// Redis host
 	private static String host = "localhost";
 
@@ -187,6 +249,24 @@ public class RedisBackingStore extends AbstractBackingStore {
 	// The unscheduled jobs held by the scheduler
 	public static final String UNSCHEDULED_JOBS = "oncue:jobs:unscheduled";
 
+	// The maximum number of jobs to load in a single pipeline
+	private static final int LOAD_BATCH_SIZE = 1000;
+
+	/*
+	 * Move a batch of job IDs (ARGV) from the unscheduled jobs list (KEYS[1]) to the scheduled
+	 * jobs list (KEYS[2]) in a single, atomic exchange
+	 */
+	private static final String SCHEDULE_JOBS_SCRIPT = "for i, id in ipairs(ARGV) do "
+			+ "redis.call('LREM', KEYS[1], 0, id) " + "redis.call('LPUSH', KEYS[2], id) " + "end "
+			+ "return #ARGV";
+
+	/*
+	 * Move every scheduled job ID (KEYS[1]) back onto the unscheduled jobs list (KEYS[2]) and
+	 * return the resulting list of unscheduled job IDs in a single, atomic exchange
+	 */
+	private static final String RESTORE_JOBS_SCRIPT = "while redis.call('RPOPLPUSH', KEYS[1], KEYS[2]) do end "
+			+ "return redis.call('LRANGE', KEYS[2], 0, -1)";
+
 	/**
 	 * Create a new {@linkplain Job} and persist it in Redis
 	 * 
@@ -219,30 +299,66 @@ public class RedisBackingStore extends AbstractBackingStore {
 	 * @param redis is a connection to Redis
 	 * @return a {@linkplain Job} that represents the job hash in Redis
 	 */
-	@SuppressWarnings("unchecked")
 	public static Job loadJob(long id, RedisConnection redis) {
-		String jobKey = String.format(JOB_KEY, id);
+		return parseJob(id, redis.hgetAll(String.format(JOB_KEY, id)));
+	}
+
+	/**
+	 * Construct a list of jobs from the given Job IDs, fetching the job hashes in pipelined
+	 * batches rather than one round trip per job.
+	 * 
+	 * @param ids is the list of job IDs
+	 * @param redis is a connection to Redis
+	 * @return a list of {@linkplain Job}s, in the same order as the IDs
+	 */
+	public static List<Job> loadJobs(List<Long> ids, RedisConnection redis) {
+		List<Job> jobs = new ArrayList<>(ids.size());
+		for (int start = 0; start < ids.size(); start += LOAD_BATCH_SIZE) {
+			List<Long> batch = ids.subList(start, Math.min(start + LOAD_BATCH_SIZE, ids.size()));
+			Pipeline pipeline = redis.pipelined();
+			List<Response<Map<String, String>>> responses = new ArrayList<>(batch.size());
+			for (Long id : batch) {
+				responses.add(pipeline.hgetAll(String.format(JOB_KEY, id)));
+			}
+			pipeline.sync();
+
+			for (int i = 0; i < batch.size(); i++) {
+				jobs.add(parseJob(batch.get(i), responses.get(i).get()));
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Construct a job from the fields of a job hash
+	 * 
+	 * @param id is the id of the job
+	 * @param hash is the map of fields stored in the job hash
+	 * @return a {@linkplain Job} that represents the job hash
+	 */
+	@SuppressWarnings("unchecked")
+	private static Job parseJob(long id, Map<String, String> hash) {
 		Job job;
 
 		try {
-			DateTime enqueuedAt = DateTime.parse(redis.hget(jobKey, JOB_ENQUEUED_AT));
+			DateTime enqueuedAt = DateTime.parse(hash.get(JOB_ENQUEUED_AT));
 
 			DateTime startedAt = null;
-			String startedAtRaw = redis.hget(jobKey, JOB_STARTED_AT);
+			String startedAtRaw = hash.get(JOB_STARTED_AT);
 			if (startedAtRaw != null)
 				startedAt = DateTime.parse(startedAtRaw);
 
 			DateTime completedAt = null;
-			String completedAtRaw = redis.hget(jobKey, JOB_COMPLETED_AT);
+			String completedAtRaw = hash.get(JOB_COMPLETED_AT);
 			if (completedAtRaw != null)
 				completedAt = DateTime.parse(completedAtRaw);
 
-			String workerType = redis.hget(jobKey, JOB_WORKER_TYPE);
-			String state = redis.hget(jobKey, JOB_STATE);
-			String progress = redis.hget(jobKey, JOB_PROGRESS);
-			String params = redis.hget(jobKey, JOB_PARAMS);
-			String errorMessage = redis.hget(jobKey, JOB_ERROR_MESSAGE);
-			String rerunStatus = redis.hget(jobKey, JOB_RERUN_STATUS);
+			String workerType = hash.get(JOB_WORKER_TYPE);
+			String state = hash.get(JOB_STATE);
+			String progress = hash.get(JOB_PROGRESS);
+			String params = hash.get(JOB_PARAMS);
+			String errorMessage = hash.get(JOB_ERROR_MESSAGE);
+			String rerunStatus = hash.get(JOB_RERUN_STATUS);
 
 			job = new Job(new Long(id), workerType);
 			job.setEnqueuedAt(enqueuedAt);
@@ -275,6 +391,51 @@ public class RedisBackingStore extends AbstractBackingStore {
 		return job;
 	}
 
+	/**
+	 * Describe a job as the map of fields stored in its job hash
+	 * 
+	 * @param job is the {@linkplain Job} to describe
+	 * @return the map of job hash fields
+	 */
+	private static Map<String, String> toHash(Job job) {
+		// Create a map describing the job
+		Map<String, String> hash = new HashMap<>();
+		hash.put(JOB_ENQUEUED_AT, job.getEnqueuedAt().toString());
+
+		if (job.getStartedAt() != null)
+			hash.put(JOB_STARTED_AT, job.getStartedAt().toString());
+
+		if (job.getCompletedAt() != null)
+			hash.put(JOB_COMPLETED_AT, job.getCompletedAt().toString());
+
+		hash.put(JOB_WORKER_TYPE, job.getWorkerType());
+		hash.put(JOB_RERUN_STATUS, Boolean.toString(job.isRerun()));
+
+		if (job.getParams() != null) {
+			Map<String, String> params = null;
+			switch (job.getState()) {
+			case COMPLETE:
+			case FAILED:
+				params = job.getParams(false);
+				break;
+			default:
+				params = job.getParams();
+				break;
+			}
+			hash.put(JOB_PARAMS, JSONValue.toJSONString(params));
+		}
+
+		if (job.getState() != null)
+			hash.put(JOB_STATE, job.getState().toString());
+
+		hash.put(JOB_PROGRESS, String.valueOf(job.getProgress()));
+
+		if (job.getErrorMessage() != null)
+			hash.put(JOB_ERROR_MESSAGE, job.getErrorMessage());
+
+		return hash;
+	}
+
 	/**
 	 * Persist a job as a hash in Redis
 	 * 
@@ -286,40 +447,8 @@ public class RedisBackingStore extends AbstractBackingStore {
 		// Persist the job in a transaction
 		try (Transaction transaction = redis.multi()) {
 
-			// Create a map describing the job
-			String jobKey = String.format(JOB_KEY, job.getId());
-			transaction.hset(jobKey, JOB_ENQUEUED_AT, job.getEnqueuedAt().toString());
-
-			if (job.getStartedAt() != null)
-				transaction.hset(jobKey, JOB_STARTED_AT, job.getStartedAt().toString());
-
-			if (job.getCompletedAt() != null)
-				transaction.hset(jobKey, JOB_COMPLETED_AT, job.getCompletedAt().toString());
-
-			transaction.hset(jobKey, JOB_WORKER_TYPE, job.getWorkerType());
-			transaction.hset(jobKey, JOB_RERUN_STATUS, Boolean.toString(job.isRerun()));
-
-			if (job.getParams() != null) {
-				Map<String, String> params = null;
-				switch (job.getState()) {
-				case COMPLETE:
-				case FAILED:
-					params = job.getParams(false);
-					break;
-				default:
-					params = job.getParams();
-					break;
-				}
-				transaction.hset(jobKey, JOB_PARAMS, JSONValue.toJSONString(params));
-			}
-
-			if (job.getState() != null)
-				transaction.hset(jobKey, JOB_STATE, job.getState().toString());
-
-			transaction.hset(jobKey, JOB_PROGRESS, String.valueOf(job.getProgress()));
-
-			if (job.getErrorMessage() != null)
-				transaction.hset(jobKey, JOB_ERROR_MESSAGE, job.getErrorMessage());
+			// Create a hash describing the job
+			transaction.hmset(String.format(JOB_KEY, job.getId()), toHash(job));
 
 			// Add the job to the specified queue
 			transaction.lpush(queueName, Long.toString(job.getId()));
@@ -357,10 +486,11 @@ public class RedisBackingStore extends AbstractBackingStore {
 
 	@Override
 	public void addScheduledJobs(List<Job> jobs) {
+		if (jobs.isEmpty())
+			return;
+
 		try (RedisConnection redis = new RedisConnection()) {
-			for (Job job : jobs) {
-				redis.lpush(SCHEDULED_JOBS, Long.toString(job.getId()));
-			}
+			redis.lpush(SCHEDULED_JOBS, toJobIDs(jobs));
 		}
 	}
 
@@ -371,27 +501,56 @@ public class RedisBackingStore extends AbstractBackingStore {
 		}
 	}
 
+	/**
+	 * The job hashes are written and the jobs are pushed onto the unscheduled jobs queue in a
+	 * single transaction.
+	 */
+	@Override
+	public void addUnscheduledJobs(List<Job> jobs) {
+		if (jobs.isEmpty())
+			return;
+
+		try (RedisConnection redis = new RedisConnection(); Transaction transaction = redis.multi()) {
+			for (Job job : jobs) {
+				transaction.hmset(String.format(JOB_KEY, job.getId()), toHash(job));
+			}
+			transaction.lpush(UNSCHEDULED_JOBS, toJobIDs(jobs));
+			transaction.exec();
+		} catch (IOException e) {
+			// See persistJob: Transaction.close() cannot actually throw an IOException
+			throw new JedisException(e);
+		}
+	}
+
 	@Override
 	public List<Job> getCompletedJobs() {
 		List<Job> jobs = new ArrayList<>();
 
 		try (RedisConnection redis = new RedisConnection()) {
-			List<String> jobIDs = redis.lrange(COMPLETED_JOBS, 0, -1);
-			for (String jobID : jobIDs) {
-				jobs.add(loadJob(new Long(jobID), redis));
-			}
+			jobs.addAll(loadJobs(parseJobIDs(redis.lrange(COMPLETED_JOBS, 0, -1)), redis));
 		}
 		return jobs;
 	}
 
+	@Override
+	public int getCompletedJobsCount() {
+		try (RedisConnection redis = new RedisConnection()) {
+			return redis.llen(COMPLETED_JOBS).intValue();
+		}
+	}
+
+	@Override
+	public int getFailedJobsCount() {
+		try (RedisConnection redis = new RedisConnection()) {
+			return redis.llen(FAILED_JOBS).intValue();
+		}
+	}
+
 	@Override
 	public List<Job> getFailedJobs() {
 		List<Job> jobs = new ArrayList<>();
 		try (RedisConnection redis = new RedisConnection()) {
-			List<String> jobIDs = redis.lrange(FAILED_JOBS, 0, -1);
-			for (String jobID : jobIDs) {
-				jobs.add(loadJob(new Long(jobID), redis));
-			}
+			jobs.addAll(loadJobs(parseJobIDs(redis.lrange(FAILED_JOBS, 0, -1)), redis));
 		}
 
 		return jobs;
@@ -406,42 +565,177 @@ public class RedisBackingStore extends AbstractBackingStore {
 	}
 
 	@Override
-	public void persistJobFailure(Job job) {
+	public Job loadJobById(long jobId) {
 		try (RedisConnection redis = new RedisConnection()) {
-			persistJob(job, FAILED_JOBS, redis);
+			Map<String, String> hash = redis.hgetAll(String.format(JOB_KEY, jobId));
+			if (hash == null || hash.isEmpty())
+				return null;
+			return parseJob(jobId, hash);
+		}
+	}
+
+	@Override
+	public void persistJobFailure(Job job) {
+		try (RedisConnection redis = new RedisConnection(); Transaction transaction = redis.multi()) {
+			transaction.hmset(String.format(JOB_KEY, job.getId()), toHash(job));
+			transaction.lpush(FAILED_JOBS, Long.toString(job.getId()));
+			transaction.zadd(FAILED_JOBS_BY_TIME, completionTime(job), Long.toString(job.getId()));
+			transaction.zadd(FAILED_JOBS_BY_ID, job.getId(), Long.toString(job.getId()));
+			transaction.exec();
+		} catch (IOException e) {
+			// See persistJob: Transaction.close() cannot actually throw an IOException
+			throw new JedisException(e);
 		}
 	}
 
 	@Override
 	public void persistJobProgress(Job job) {
 		try (RedisConnection redis = new RedisConnection()) {
-			String jobKey = String.format(JOB_KEY, job.getId());
-			redis.hset(jobKey, JOB_PROGRESS, String.valueOf(job.getProgress()));
-			redis.hset(jobKey, JOB_STATE, job.getState().toString());
-			if (job.getStartedAt() != null)
-				redis.hset(jobKey, JOB_STARTED_AT, job.getStartedAt().toString());
-
-			if (job.getState() == Job.State.COMPLETE) {
-				if (job.getCompletedAt() != null)
-					redis.hset(jobKey, JOB_COMPLETED_AT, job.getCompletedAt().toString());
-				redis.lpush(COMPLETED_JOBS, Long.toString(job.getId()));
+			Pipeline pipeline = redis.pipelined();
+			persistJobProgress(job, pipeline);
+			pipeline.sync();
+		}
+	}
+
+	/**
+	 * The progress of every job in the batch is written in a single transaction, so a batch that
+	 * fails can be retried without pushing a completed job twice.
+	 */
+	@Override
+	public void persistJobsProgress(List<Job> jobs) {
+		if (jobs.isEmpty())
+			return;
+
+		try (RedisConnection redis = new RedisConnection(); Transaction transaction = redis.multi()) {
+			for (Job job : jobs) {
+				persistJobProgress(job, transaction);
 			}
+			transaction.exec();
+		} catch (IOException e) {
+			// See persistJob: Transaction.close() cannot actually throw an IOException
+			throw new JedisException(e);
 		}
 	}
 
+	/**
+	 * Add the commands that persist the progress made against a job to a pipeline
+	 */
+	private static void persistJobProgress(Job job, PipelineBase pipeline) {
+		Map<String, String> hash = new HashMap<>();
+		hash.put(JOB_PROGRESS, String.valueOf(job.getProgress()));
+		hash.put(JOB_STATE, job.getState().toString());
+		if (job.getStartedAt() != null)
+			hash.put(JOB_STARTED_AT, job.getStartedAt().toString());
+
+		boolean complete = job.getState() == Job.State.COMPLETE;
+		if (complete && job.getCompletedAt() != null)
+			hash.put(JOB_COMPLETED_AT, job.getCompletedAt().toString());
+
+		pipeline.hmset(String.format(JOB_KEY, job.getId()), hash);
+		if (complete) {
+			pipeline.lpush(COMPLETED_JOBS, Long.toString(job.getId()));
+			pipeline.zadd(COMPLETED_JOBS_BY_TIME, completionTime(job), Long.toString(job.getId()));
+			pipeline.zadd(COMPLETED_JOBS_BY_ID, job.getId(), Long.toString(job.getId()));
+		}
+	}
+
+	/**
+	 * @return the score of a job in a completion time index. Jobs without a completion time are
+	 *         indexed as completing now.
+	 */
+	private static double completionTime(Job job) {
+		if (job.getCompletedAt() == null)
+			return DateTime.now().getMillis();
+		return job.getCompletedAt().getMillis();
+	}
+
+	/**
+	 * The ID range, cursor and state filters are applied by range queries on the ID indexes of
+	 * the complete and failed jobs, so only jobs that pass those filters are loaded to check the
+	 * remaining filters. The indexes are read and the jobs loaded in batches, in ID order, and
+	 * loading stops as soon as the page is full.
+	 */
+	@Override
+	public List<Job> queryJobs(JobQuery query) {
+		List<Job> jobs = new ArrayList<>();
+		try (RedisConnection redis = new RedisConnection()) {
+			List<String> indexNames = new ArrayList<>();
+			if (query.includesState(State.COMPLETE)) {
+				buildIdIndex(COMPLETED_JOBS, COMPLETED_JOBS_BY_ID, redis);
+				indexNames.add(COMPLETED_JOBS_BY_ID);
+			}
+			if (query.includesState(State.FAILED)) {
+				buildIdIndex(FAILED_JOBS, FAILED_JOBS_BY_ID, redis);
+				indexNames.add(FAILED_JOBS_BY_ID);
+			}
+
+			Long lowestId = query.getMinId();
+			if (query.getCursor() != null && (lowestId == null || lowestId <= query.getCursor()))
+				lowestId = query.getCursor() + 1;
+			String min = lowestId == null ? "-inf" : Long.toString(lowestId);
+			String max = query.getMaxId() == null ? "+inf" : Long.toString(query.getMaxId());
+
+			int batchSize = LOAD_BATCH_SIZE;
+			if (query.getPageSize() > 0)
+				batchSize = Math.min(query.getPageSize(), LOAD_BATCH_SIZE);
+
+			while (true) {
+				/*
+				 * Read the next batch from each index. Where a batch is full, there may be more
+				 * jobs in that index, so the candidates can only be taken in ID order up to the
+				 * last ID of the shortest full batch.
+				 */
+				SortedSet<Long> candidates = new TreeSet<>();
+				long horizon = Long.MAX_VALUE;
+				for (String indexName : indexNames) {
+					Set<String> jobIDs = redis.zrangeByScore(indexName, min, max, 0, batchSize);
+					long lastId = 0;
+					for (String jobID : jobIDs) {
+						lastId = Long.parseLong(jobID);
+						candidates.add(lastId);
+					}
+					if (jobIDs.size() == batchSize)
+						horizon = Math.min(horizon, lastId);
+				}
+
+				if (horizon != Long.MAX_VALUE)
+					candidates = candidates.headSet(horizon + 1);
+				for (Job job : loadJobs(new ArrayList<>(candidates), redis)) {
+					if (query.matches(job))
+						jobs.add(job);
+					if (query.getPageSize() > 0 && jobs.size() == query.getPageSize())
+						return jobs;
+				}
+
+				if (horizon == Long.MAX_VALUE)
+					break;
+				min = "(" + horizon;
+			}
+		}
+		return jobs;
+	}
+
 	@Override
 	public void removeCompletedJobById(long jobId) {
 		try (RedisConnection redis = new RedisConnection()) {
-			redis.lrem(COMPLETED_JOBS, 0, Long.toString(jobId));
-			removeJobById(jobId, redis);
+			Pipeline pipeline = redis.pipelined();
+			pipeline.lrem(COMPLETED_JOBS, 0, Long.toString(jobId));
+			pipeline.zrem(COMPLETED_JOBS_BY_TIME, Long.toString(jobId));
+			pipeline.zrem(COMPLETED_JOBS_BY_ID, Long.toString(jobId));
+			pipeline.del(String.format(JOB_KEY, jobId));
+			pipeline.sync();
 		}
 	}
 
 	@Override
 	public void removeFailedJobById(long jobId) {
 		try (RedisConnection redis = new RedisConnection()) {
-			redis.lrem(FAILED_JOBS, 0, Long.toString(jobId));
-			removeJobById(jobId, redis);
+			Pipeline pipeline = redis.pipelined();
+			pipeline.lrem(FAILED_JOBS, 0, Long.toString(jobId));
+			pipeline.zrem(FAILED_JOBS_BY_TIME, Long.toString(jobId));
+			pipeline.zrem(FAILED_JOBS_BY_ID, Long.toString(jobId));
+			pipeline.del(String.format(JOB_KEY, jobId));
+			pipeline.sync();
 		}
 	}
 
@@ -452,6 +746,11 @@ public class RedisBackingStore extends AbstractBackingStore {
 		}
 	}
 
+	@Override
+	public void removeScheduledJobs(List<Job> jobs) {
+		removeJobs(SCHEDULED_JOBS, jobs);
+	}
+
 	@Override
 	public void removeUnscheduledJobById(long jobId) {
 		try (RedisConnection redis = new RedisConnection()) {
@@ -459,6 +758,65 @@ public class RedisBackingStore extends AbstractBackingStore {
 		}
 	}
 
+	@Override
+	public void removeUnscheduledJobs(List<Job> jobs) {
+		removeJobs(UNSCHEDULED_JOBS, jobs);
+	}
+
+	/**
+	 * The jobs are moved from the unscheduled jobs list to the scheduled jobs list by a single
+	 * server-side script.
+	 */
+	@Override
+	public void scheduleJobs(List<Job> jobs) {
+		if (jobs.isEmpty())
+			return;
+
+		try (RedisConnection redis = new RedisConnection()) {
+			redis.eval(SCHEDULE_JOBS_SCRIPT, Arrays.asList(UNSCHEDULED_JOBS, SCHEDULED_JOBS),
+					Arrays.asList(toJobIDs(jobs)));
+		}
+	}
+
+	/**
+	 * Remove a batch of jobs from a list of job IDs in a single pipeline
+	 */
+	private void removeJobs(String listName, List<Job> jobs) {
+		if (jobs.isEmpty())
+			return;
+
+		try (RedisConnection redis = new RedisConnection()) {
+			Pipeline pipeline = redis.pipelined();
+			for (Job job : jobs) {
+				pipeline.lrem(listName, 0, Long.toString(job.getId()));
+			}
+			pipeline.sync();
+		}
+	}
+
+	/**
+	 * Convert a list of jobs into the array of job IDs stored in Redis
+	 */
+	private static String[] toJobIDs(Collection<Job> jobs) {
+		String[] jobIDs = new String[jobs.size()];
+		int i = 0;
+		for (Job job : jobs) {
+			jobIDs[i++] = Long.toString(job.getId());
+		}
+		return jobIDs;
+	}
+
+	/**
+	 * Convert a list of job IDs read from Redis into a list of longs
+	 */
+	private static List<Long> parseJobIDs(List<String> jobIDs) {
+		List<Long> ids = new ArrayList<>(jobIDs.size());
+		for (String jobID : jobIDs) {
+			ids.add(Long.parseLong(jobID));
+		}
+		return ids;
+	}
+
 	public void removeJobById(long jobId, RedisConnection redis) {
 		redis.del(String.format(JOB_KEY, jobId));
 	}
@@ -473,56 +831,112 @@ public class RedisBackingStore extends AbstractBackingStore {
 		List<Job> jobs = new ArrayList<>();
 
 		try (RedisConnection redis = new RedisConnection()) {
-			// Pop all scheduled jobs back onto the unscheduled jobs queue
-			while (redis.rpoplpush(SCHEDULED_JOBS, UNSCHEDULED_JOBS) != null) {
-			}
-
-			// Get all the unscheduled jobs
-			List<String> jobIDs = redis.lrange(UNSCHEDULED_JOBS, 0, -1);
-			for (String jobID : jobIDs) {
-				jobs.add(loadJob(new Long(jobID), redis));
-			}
+			// Pop all scheduled jobs back onto the unscheduled jobs queue and get all their IDs
+			@SuppressWarnings("unchecked")
+			List<String> jobIDs = (List<String>) redis.eval(RESTORE_JOBS_SCRIPT,
+					Arrays.asList(SCHEDULED_JOBS, UNSCHEDULED_JOBS), Collections.<String> emptyList());
+			jobs.addAll(loadJobs(parseJobIDs(jobIDs), redis));
 		}
 
 		return jobs;
 	}
 
+	/**
+	 * The expired jobs are found with a range query on the completion time indexes, oldest first.
+	 * As the lists of complete and failed jobs are kept newest first, each expired job is removed
+	 * by scanning from the tail of its list, which is where the oldest jobs are.
+	 */
 	@Override
-	public int cleanupJobs(boolean includeFailedJobs, Duration expirationAge) {
-		int cleanedJobsCount = 0;
-
-		for (Job completedJob : getCompletedJobs()) {
-			DateTime expirationThreshold = DateTime.now().minus(expirationAge.getMillis());
-			boolean isExpired = completedJob.getCompletedAt()
-					.isBefore(expirationThreshold.toInstant());
-			if (isExpired) {
-				removeCompletedJobById(completedJob.getId());
-				cleanedJobsCount++;
-			}
-		}
+	public int cleanupJobs(boolean includeFailedJobs, Duration expirationAge, int limit) {
+		long expirationThreshold = DateTime.now().minus(expirationAge.getMillis()).getMillis();
+
+		try (RedisConnection redis = new RedisConnection()) {
+			int cleanedJobsCount = cleanupExpiredJobs(COMPLETED_JOBS, COMPLETED_JOBS_BY_TIME,
+					COMPLETED_JOBS_BY_ID, expirationThreshold, limit, redis);
+
+			if (includeFailedJobs && cleanedJobsCount < limit)
+				cleanedJobsCount += cleanupExpiredJobs(FAILED_JOBS, FAILED_JOBS_BY_TIME,
+						FAILED_JOBS_BY_ID, expirationThreshold, limit - cleanedJobsCount, redis);
 
-		if (!includeFailedJobs) {
 			return cleanedJobsCount;
 		}
+	}
 
-		for (Job failedJob : getFailedJobs()) {
-			if (failedJob.getCompletedAt() == null) {
-				log.error(
-						"Found a failed job with no completion time.  Setting completion time to now and defering to next clean up. ("
-								+ failedJob.toString() + ")");
-				failedJob.setCompletedAt(DateTime.now());
-				persistJobFailure(failedJob);
-				continue;
-			}
-			DateTime expirationThreshold = DateTime.now().minus(expirationAge.getMillis());
-			boolean isExpired = failedJob.getCompletedAt()
-					.isBefore(expirationThreshold.toInstant());
-			if (isExpired) {
-				removeFailedJobById(failedJob.getId());
-				cleanedJobsCount++;
+	/**
+	 * Remove up to a limited number of jobs that completed before a threshold
+	 * 
+	 * @param listName is the list of job IDs to remove the jobs from
+	 * @param indexName is the completion time index of the jobs in the list
+	 * @param idIndexName is the ID index of the jobs in the list
+	 * @return the number of jobs removed
+	 */
+	private int cleanupExpiredJobs(String listName, String indexName, String idIndexName,
+			long expirationThreshold, int limit, RedisConnection redis) {
+		buildCompletionTimeIndex(listName, indexName, redis);
+
+		Set<String> jobIDs = redis.zrangeByScore(indexName, "-inf", "(" + expirationThreshold, 0,
+				limit);
+		if (jobIDs.isEmpty())
+			return 0;
+
+		Pipeline pipeline = redis.pipelined();
+		for (String jobID : jobIDs) {
+			pipeline.lrem(listName, -1, jobID);
+			pipeline.del(String.format(JOB_KEY, jobID));
+		}
+		pipeline.zrem(indexName, jobIDs.toArray(new String[jobIDs.size()]));
+		pipeline.zrem(idIndexName, jobIDs.toArray(new String[jobIDs.size()]));
+		pipeline.sync();
+
+		log.debug("Cleaned up {} jobs from {}", jobIDs.size(), listName);
+		return jobIDs.size();
+	}
+
+	/**
+	 * Jobs that completed before the completion time indexes existed are not in them. Build the
+	 * index from the list of jobs the first time it is needed, then set a marker so it is only
+	 * built once. The index itself can't serve as the marker, as jobs completing after an upgrade
+	 * are added to it before it has been built.
+	 */
+	private void buildCompletionTimeIndex(String listName, String indexName, RedisConnection redis) {
+		String builtKey = String.format(INDEX_BUILT_KEY, indexName);
+		if (redis.exists(builtKey))
+			return;
+
+		List<Long> jobIDs = parseJobIDs(redis.lrange(listName, 0, -1));
+		if (!jobIDs.isEmpty())
+			log.info("Indexing {} jobs in {} by completion time", jobIDs.size(), listName);
+		for (int start = 0; start < jobIDs.size(); start += LOAD_BATCH_SIZE) {
+			List<Job> jobs = loadJobs(
+					jobIDs.subList(start, Math.min(start + LOAD_BATCH_SIZE, jobIDs.size())), redis);
+			Pipeline pipeline = redis.pipelined();
+			for (Job job : jobs) {
+				pipeline.zadd(indexName, completionTime(job), Long.toString(job.getId()));
 			}
+			pipeline.sync();
 		}
+		redis.set(builtKey, Boolean.TRUE.toString());
+	}
 
-		return cleanedJobsCount;
+	/**
+	 * Jobs that completed before the ID indexes existed are not in them. Build the index from the
+	 * list of jobs the first time it is needed, as for the completion time indexes.
+	 */
+	private void buildIdIndex(String listName, String indexName, RedisConnection redis) {
+		String builtKey = String.format(INDEX_BUILT_KEY, indexName);
+		if (redis.exists(builtKey))
+			return;
+
+		List<Long> jobIDs = parseJobIDs(redis.lrange(listName, 0, -1));
+		if (!jobIDs.isEmpty())
+			log.info("Indexing {} jobs in {} by ID", jobIDs.size(), listName);
+		for (int start = 0; start < jobIDs.size(); start += LOAD_BATCH_SIZE) {
+			Pipeline pipeline = redis.pipelined();
+			for (Long jobID : jobIDs.subList(start, Math.min(start + LOAD_BATCH_SIZE, jobIDs.size()))) {
+				pipeline.zadd(indexName, jobID, Long.toString(jobID));
+			}
+			pipeline.sync();
+		}
+		redis.set(builtKey, Boolean.TRUE.toString());
 	}
 }
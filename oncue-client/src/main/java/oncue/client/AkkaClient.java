@@ -8,6 +8,7 @@ import java.util.Map;
 
 import oncue.common.messages.EnqueueJob;
 import oncue.common.messages.Job;
+import oncue.common.messages.JobQuery;
 import oncue.common.messages.JobSummary;
 import oncue.common.messages.SimpleMessages.SimpleMessage;
 import oncue.common.settings.Settings;
@@ -74,4 +75,19 @@ public class AkkaClient implements Client {
 		}
 	}
 
+	@Override
+	public JobSummary getJobs(JobQuery query) throws ClientException {
+		try {
+			return (JobSummary) Await.result(
+					ask(scheduler, query, new Timeout(settings.SCHEDULER_TIMEOUT)),
+					settings.SCHEDULER_TIMEOUT);
+		} catch (AskTimeoutException e) {
+			log.error(e, "Timeout waiting for scheduler to respond to job query");
+			throw new ClientException(e);
+		} catch (Exception e) {
+			log.error(e, "Failed to query jobs");
+			throw new ClientException(e);
+		}
+	}
+
 }
@@ -4,6 +4,8 @@ import java.util.Collection;
 import java.util.Map;
 
 import oncue.common.messages.Job;
+import oncue.common.messages.JobQuery;
+import oncue.common.messages.JobSummary;
 
 /**
  * A client for submitting jobs to an OnCue service.
@@ -41,4 +43,15 @@ public interface Client {
 	 */
 	public Collection<Job> getJobs() throws ClientException;
 
+	/**
+	 * Retrieve a page of the jobs in the system that match a query. To fetch the following page,
+	 * set the next cursor of the returned summary on the query and ask again.
+	 * 
+	 * @param query
+	 *            is a {@linkplain JobQuery} describing the jobs to retrieve
+	 * @return a {@linkplain JobSummary} of the matching {@linkplain Job}s
+	 * @throws ClientException
+	 */
+	public JobSummary getJobs(JobQuery query) throws ClientException;
+
 }
\ No newline at end of file
@@ -8,6 +8,8 @@ import java.util.Map;
 
 import oncue.common.messages.EnqueueJob;
 import oncue.common.messages.Job;
+import oncue.common.messages.JobQuery;
+import oncue.common.messages.JobSummary;
 import oncue.common.serializers.ObjectMapperFactory;
 
 import org.codehaus.jackson.map.JsonMappingException;
@@ -20,6 +22,7 @@ import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestFactory;
 import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpTransport;
+import com.google.common.base.Joiner;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 
@@ -94,4 +97,36 @@ public class HttpClient implements Client {
 		}
 	}
 
+	@Override
+	public JobSummary getJobs(JobQuery query) throws ClientException {
+		GenericUrl url = jobsUrl.clone();
+		if (query.getStates() != null && !query.getStates().isEmpty())
+			url.set(JobQuery.STATES_PARAM, Joiner.on(',').join(query.getStates()));
+		if (query.getWorkerTypes() != null && !query.getWorkerTypes().isEmpty())
+			url.set(JobQuery.WORKER_TYPES_PARAM, Joiner.on(',').join(query.getWorkerTypes()));
+		if (query.getMinId() != null)
+			url.set(JobQuery.MIN_ID_PARAM, query.getMinId());
+		if (query.getMaxId() != null)
+			url.set(JobQuery.MAX_ID_PARAM, query.getMaxId());
+		if (query.getEnqueuedAfter() != null)
+			url.set(JobQuery.ENQUEUED_AFTER_PARAM, query.getEnqueuedAfter().toString());
+		if (query.getEnqueuedBefore() != null)
+			url.set(JobQuery.ENQUEUED_BEFORE_PARAM, query.getEnqueuedBefore().toString());
+		if (query.getPageSize() > 0)
+			url.set(JobQuery.PAGE_SIZE_PARAM, query.getPageSize());
+		if (query.getCursor() != null)
+			url.set(JobQuery.CURSOR_PARAM, query.getCursor());
+
+		try {
+			HttpRequest request = requestFactory.buildGetRequest(url);
+			HttpResponse response = request.execute();
+			String nextCursor = response.getHeaders().getFirstHeaderStringValue(
+					JobQuery.NEXT_CURSOR_HEADER);
+			return new JobSummary(parseJobs(response), nextCursor == null ? null
+					: Long.valueOf(nextCursor));
+		} catch (IOException e) {
+			throw new ClientException("Error querying jobs", e);
+		}
+	}
+
 }
@@ -0,0 +1,46 @@
+package oncue.common.events;
+
+import java.io.Serializable;
+
+import oncue.common.messages.Job;
+
+/**
+ * This event is fired when a job is parked, because it is larger than the
+ * capacity of every known agent.
+ */
+public class JobParkedEvent implements Serializable {
+
+	private static final long serialVersionUID = -2284137460527390613L;
+
+	private Job job;
+
+	private long size;
+
+	private long largestCapacity;
+
+	public JobParkedEvent(Job job, long size, long largestCapacity) {
+		super();
+		this.job = (Job) job.clone();
+		this.size = size;
+		this.largestCapacity = largestCapacity;
+	}
+
+	public Job getJob() {
+		return job;
+	}
+
+	/**
+	 * @return the size of the job, such as its memory
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the capacity of the largest agent when the job was parked
+	 */
+	public long getLargestCapacity() {
+		return largestCapacity;
+	}
+
+}
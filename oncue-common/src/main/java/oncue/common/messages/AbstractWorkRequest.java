@@ -16,6 +16,8 @@
 package oncue.common.messages;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 import akka.actor.ActorRef;
@@ -31,10 +33,36 @@ public abstract class AbstractWorkRequest implements Serializable {
 
 	private final ActorRef agent;
 	private final Set<String> workerTypes;
+	private final Map<String, Integer> batchSizes;
+	private final Map<String, Integer> workerTypeSlots;
 
 	public AbstractWorkRequest(ActorRef agent, Set<String> workerTypes) {
+		this(agent, workerTypes, Collections.<String, Integer> emptyMap());
+	}
+
+	/**
+	 * @param batchSizes
+	 *            maps the batch worker types of the agent to the number of
+	 *            jobs it will hand to each batch worker
+	 */
+	public AbstractWorkRequest(ActorRef agent, Set<String> workerTypes, Map<String, Integer> batchSizes) {
+		this(agent, workerTypes, batchSizes, Collections.<String, Integer> emptyMap());
+	}
+
+	/**
+	 * @param batchSizes
+	 *            maps the batch worker types of the agent to the number of
+	 *            jobs it will hand to each batch worker
+	 * @param workerTypeSlots
+	 *            maps the worker types that the agent limits to the number of
+	 *            workers of that type it can still start
+	 */
+	public AbstractWorkRequest(ActorRef agent, Set<String> workerTypes, Map<String, Integer> batchSizes,
+			Map<String, Integer> workerTypeSlots) {
 		this.agent = agent;
 		this.workerTypes = workerTypes;
+		this.batchSizes = batchSizes;
+		this.workerTypeSlots = workerTypeSlots;
 	}
 
 	public ActorRef getAgent() {
@@ -44,4 +72,22 @@ public abstract class AbstractWorkRequest implements Serializable {
 	public Set<String> getWorkerTypes() {
 		return workerTypes;
 	}
+
+	public Map<String, Integer> getBatchSizes() {
+		return batchSizes;
+	}
+
+	/**
+	 * @return the number of jobs of a worker type that make up a single unit
+	 *         of work for the agent, which is 1 unless it is a batch worker
+	 *         type
+	 */
+	public int getBatchSize(String workerType) {
+		Integer batchSize = batchSizes.get(workerType);
+		return batchSize == null ? 1 : batchSize;
+	}
+
+	public Map<String, Integer> getWorkerTypeSlots() {
+		return workerTypeSlots;
+	}
 }
@@ -15,6 +15,8 @@
  ******************************************************************************/
 package oncue.common.messages;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 import akka.actor.ActorRef;
@@ -25,6 +27,8 @@ public class CapacityWorkRequest extends AbstractWorkRequest {
 
 	private int availableMemory;
 
+	private Map<String, Double> memoryWeights = Collections.emptyMap();
+
 	/**
 	 * @param availableMemory
 	 *            is the amount of free memory the agent has.
@@ -34,10 +38,55 @@ public class CapacityWorkRequest extends AbstractWorkRequest {
 		this.availableMemory = availableMemory;
 	}
 
+	/**
+	 * @param availableMemory
+	 *            is the amount of free memory the agent has. A batch of jobs
+	 *            for a batch worker needs the memory of its largest job, as
+	 *            the jobs are worked on one at a time.
+	 */
+	public CapacityWorkRequest(ActorRef agent, Set<String> workerTypes, int availableMemory,
+			Map<String, Integer> batchSizes) {
+		super(agent, workerTypes, batchSizes);
+		this.availableMemory = availableMemory;
+	}
+
+	/**
+	 * @param availableMemory
+	 *            is the amount of free memory the agent has. A batch of jobs
+	 *            for a batch worker needs the memory of its largest job, as
+	 *            the jobs are worked on one at a time.
+	 * @param workerTypeSlots
+	 *            maps the worker types that the agent limits to the number of
+	 *            jobs of that type it can still cope with
+	 * @param memoryWeights
+	 *            maps worker types to the factor by which the "memory" of their
+	 *            jobs is scaled
+	 */
+	public CapacityWorkRequest(ActorRef agent, Set<String> workerTypes, int availableMemory,
+			Map<String, Integer> batchSizes, Map<String, Integer> workerTypeSlots,
+			Map<String, Double> memoryWeights) {
+		super(agent, workerTypes, batchSizes, workerTypeSlots);
+		this.availableMemory = availableMemory;
+		this.memoryWeights = memoryWeights;
+	}
+
 	public int getAvailableMemory() {
 		return availableMemory;
 	}
 
+	public Map<String, Double> getMemoryWeights() {
+		return memoryWeights;
+	}
+
+	/**
+	 * @return the factor by which the "memory" of jobs of a worker type is
+	 *         scaled, which is 1 unless the agent says otherwise
+	 */
+	public double getMemoryWeight(String workerType) {
+		Double memoryWeight = memoryWeights.get(workerType);
+		return memoryWeight == null ? 1.0 : memoryWeight;
+	}
+
 	@Override
 	public String toString() {
 		return "Cube capacity work request for a maximum of " + availableMemory;
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.common.messages;
+
+import java.util.Set;
+
+import akka.actor.ActorRef;
+
+/**
+ * A work request describing the resources an agent's host or container has left, as sampled from
+ * the operating system and smoothed over time.
+ */
+public class HostCapacityWorkRequest extends AbstractWorkRequest {
+
+	private static final long serialVersionUID = 2937713659604741312L;
+
+	private final long availableMemory;
+	private final double cpuQuota;
+	private final double cpuUsage;
+	private final double loadAverage;
+	private final long workerMemory;
+	private final int runningWorkers;
+
+	/**
+	 * @param availableMemory
+	 *            is the memory the agent can still use, in bytes
+	 * @param cpuQuota
+	 *            is the number of processors the agent may use
+	 * @param cpuUsage
+	 *            is the number of processors the agent is using
+	 * @param loadAverage
+	 *            is the load average of the host
+	 * @param workerMemory
+	 *            is the estimated memory used by each running worker, in bytes
+	 * @param runningWorkers
+	 *            is the number of workers running on the agent
+	 */
+	public HostCapacityWorkRequest(ActorRef agent, Set<String> workerTypes, long availableMemory,
+			double cpuQuota, double cpuUsage, double loadAverage, long workerMemory,
+			int runningWorkers) {
+		super(agent, workerTypes);
+		this.availableMemory = availableMemory;
+		this.cpuQuota = cpuQuota;
+		this.cpuUsage = cpuUsage;
+		this.loadAverage = loadAverage;
+		this.workerMemory = workerMemory;
+		this.runningWorkers = runningWorkers;
+	}
+
+	public long getAvailableMemory() {
+		return availableMemory;
+	}
+
+	public double getCpuQuota() {
+		return cpuQuota;
+	}
+
+	public double getCpuUsage() {
+		return cpuUsage;
+	}
+
+	public double getLoadAverage() {
+		return loadAverage;
+	}
+
+	public long getWorkerMemory() {
+		return workerMemory;
+	}
+
+	public int getRunningWorkers() {
+		return runningWorkers;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"Host capacity work request [availableMem = %s, cpuQuota = %.2f, cpuUsage = %.2f, load = %.2f, workerMem = %s, workers = %s]",
+				availableMemory, cpuQuota, cpuUsage, loadAverage, workerMemory, runningWorkers);
+	}
+}
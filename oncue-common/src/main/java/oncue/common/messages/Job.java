@@ -17,7 +17,9 @@ import java.io.Serializable;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Set;
 
+import org.codehaus.jackson.annotate.JsonIgnore;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
 
@@ -59,6 +61,13 @@ public class Job implements Serializable, Cloneable {
 		}
 	}
 
+	/**
+	 * The parameters that schedulers read from a job
+	 */
+	public enum SchedulingParam {
+		PRIORITY, MEMORY, SIZE, CPU
+	}
+
 	private static final long serialVersionUID = -2375588116753600617L;
 
 	private DateTime enqueuedAt = new DateTime(DateTimeUtils.currentTimeMillis());
@@ -73,6 +82,16 @@ public class Job implements Serializable, Cloneable {
 	private long id;
 	private String workerType;
 
+	// The scheduling parameters, parsed from the params the first time they are read
+	private transient boolean priorityParsed;
+	private transient int priority;
+	private transient boolean memoryParsed;
+	private transient int memory;
+	private transient boolean sizeParsed;
+	private transient long size;
+	private transient boolean cpuParsed;
+	private transient double cpu;
+
 	/**
 	 * This default constructor required for Jackson JSON serialization
 	 */
@@ -112,6 +131,16 @@ public class Job implements Serializable, Cloneable {
 			clone.getParams().put(key, this.params.get(key));
 		}
 
+		// The params are the same, so neither are their parsed values
+		clone.priorityParsed = this.priorityParsed;
+		clone.priority = this.priority;
+		clone.memoryParsed = this.memoryParsed;
+		clone.memory = this.memory;
+		clone.sizeParsed = this.sizeParsed;
+		clone.size = this.size;
+		clone.cpuParsed = this.cpuParsed;
+		clone.cpu = this.cpu;
+
 		return clone;
 	}
 
@@ -143,10 +172,131 @@ public class Job implements Serializable, Cloneable {
 		return id;
 	}
 
+	/**
+	 * The scheduling parameters are cached once they have been read, so a caller that changes
+	 * "priority", "memory", "size" or "cpu" in this map after they have been read must replace the map
+	 * with {@linkplain #setParams(Map)}.
+	 */
 	public Map<String, String> getParams() {
 		return params;
 	}
 
+	/**
+	 * @return the "priority" parameter of this job, or 0 if it does not have one. The parameter
+	 *         is only parsed the first time it is read.
+	 * @throws IllegalArgumentException if the parameter is not an integer
+	 */
+	@JsonIgnore
+	public int getPriority() {
+		if (!priorityParsed) {
+			String value = params == null ? null : params.get("priority");
+			priority = value == null ? 0 : parseInt("priority", value);
+			priorityParsed = true;
+		}
+		return priority;
+	}
+
+	/**
+	 * @return the "memory" parameter of this job, or -1 if it does not have one. The parameter is
+	 *         only parsed the first time it is read.
+	 * @throws IllegalArgumentException if the parameter is not a non-negative integer
+	 */
+	@JsonIgnore
+	public int getMemory() {
+		if (!memoryParsed) {
+			String value = params == null ? null : params.get("memory");
+			memory = value == null ? -1 : parseInt("memory", value);
+			if (value != null && memory < 0)
+				throw new IllegalArgumentException(String.format(
+						"Job %s has a negative memory parameter: %s", id, value));
+			memoryParsed = true;
+		}
+		return memory;
+	}
+
+	/**
+	 * @return the "size" parameter of this job, or -1 if it does not have one. The parameter is
+	 *         only parsed the first time it is read.
+	 * @throws IllegalArgumentException if the parameter is not a non-negative integer
+	 */
+	@JsonIgnore
+	public long getSize() {
+		if (!sizeParsed) {
+			String value = params == null ? null : params.get("size");
+			try {
+				size = value == null ? -1 : Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(String.format(
+						"Job %s has a size parameter that is not an integer: %s", id, value), e);
+			}
+			if (value != null && size < 0)
+				throw new IllegalArgumentException(String.format(
+						"Job %s has a negative size parameter: %s", id, value));
+			sizeParsed = true;
+		}
+		return size;
+	}
+
+	/**
+	 * @return the "cpu" parameter of this job, or -1 if it does not have one. The parameter is only
+	 *         parsed the first time it is read.
+	 * @throws IllegalArgumentException if the parameter is not a finite, non-negative number
+	 */
+	@JsonIgnore
+	public double getCpu() {
+		if (!cpuParsed) {
+			String value = params == null ? null : params.get("cpu");
+			try {
+				cpu = value == null ? -1 : Double.parseDouble(value);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(String.format(
+						"Job %s has a cpu parameter that is not a number: %s", id, value), e);
+			}
+			if (value != null && (cpu < 0 || Double.isNaN(cpu) || Double.isInfinite(cpu)))
+				throw new IllegalArgumentException(String.format(
+						"Job %s has a cpu parameter that is not a finite, non-negative number: %s",
+						id, value));
+			cpuParsed = true;
+		}
+		return cpu;
+	}
+
+	/**
+	 * Parse and validate the scheduling parameters that a scheduler reads from this job, so they are
+	 * never parsed again while it is queued. Other parameters are free-form, even if they share a
+	 * name with a scheduling parameter that this scheduler doesn't read.
+	 * 
+	 * @param schedulingParams are the parameters to parse
+	 * @throws IllegalArgumentException if one of the parameters is invalid
+	 */
+	public void parseSchedulingParams(Set<SchedulingParam> schedulingParams) {
+		for (SchedulingParam schedulingParam : schedulingParams) {
+			switch (schedulingParam) {
+			case PRIORITY:
+				getPriority();
+				break;
+			case MEMORY:
+				getMemory();
+				break;
+			case SIZE:
+				getSize();
+				break;
+			case CPU:
+				getCpu();
+				break;
+			}
+		}
+	}
+
+	private int parseInt(String param, String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(String.format(
+					"Job %s has a %s parameter that is not an integer: %s", id, param, value), e);
+		}
+	}
+
 	public double getProgress() {
 		return progress;
 	}
@@ -181,6 +331,10 @@ public class Job implements Serializable, Cloneable {
 
 	public void setParams(Map<String, String> params) {
 		this.params = params;
+		priorityParsed = false;
+		memoryParsed = false;
+		sizeParsed = false;
+		cpuParsed = false;
 	}
 
 	public void setProgress(double progress) {
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.common.messages;
+
+import java.io.Serializable;
+
+/**
+ * A scheduler will send this message in response to a job counts request. It summarises how many
+ * jobs are in each stage of their lifecycle without transferring the jobs themselves.
+ */
+public class JobCounts implements Serializable {
+
+	private static final long serialVersionUID = 6263400434569916455L;
+
+	private int unscheduledJobs;
+	private int scheduledJobs;
+	private int completeJobs;
+	private int failedJobs;
+	private int parkedJobs;
+
+	/**
+	 * empty constructor required for JSON mapping
+	 */
+	public JobCounts() {
+	}
+
+	public JobCounts(int unscheduledJobs, int scheduledJobs, int completeJobs, int failedJobs) {
+		this.unscheduledJobs = unscheduledJobs;
+		this.scheduledJobs = scheduledJobs;
+		this.completeJobs = completeJobs;
+		this.failedJobs = failedJobs;
+	}
+
+	/**
+	 * @param parkedJobs is the number of unscheduled jobs that are too large for any agent
+	 */
+	public JobCounts(int unscheduledJobs, int scheduledJobs, int completeJobs, int failedJobs,
+			int parkedJobs) {
+		this(unscheduledJobs, scheduledJobs, completeJobs, failedJobs);
+		this.parkedJobs = parkedJobs;
+	}
+
+	public int getCompleteJobs() {
+		return completeJobs;
+	}
+
+	public int getFailedJobs() {
+		return failedJobs;
+	}
+
+	public int getScheduledJobs() {
+		return scheduledJobs;
+	}
+
+	public int getUnscheduledJobs() {
+		return unscheduledJobs;
+	}
+
+	/**
+	 * @return the number of unscheduled jobs that are parked, as they are too large for any agent
+	 */
+	public int getParkedJobs() {
+		return parkedJobs;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"Job counts (unscheduled=%s, scheduled=%s, complete=%s, failed=%s, parked=%s)",
+				unscheduledJobs, scheduledJobs, completeJobs, failedJobs, parkedJobs);
+	}
+}
@@ -27,6 +27,13 @@ public class JobProgress implements Serializable {
 		this.job = (Job) job.clone();
 	}
 
+	/**
+	 * For subclasses that carry less than the full job
+	 */
+	protected JobProgress() {
+		this.job = null;
+	}
+
 	public Job getJob() {
 		return job;
 	}
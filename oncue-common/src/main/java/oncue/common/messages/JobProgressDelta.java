@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.common.messages;
+
+import oncue.common.messages.Job.State;
+
+import org.joda.time.DateTime;
+
+/**
+ * A compact progress report, carrying only what changes while a job runs. Workers send one of
+ * these for progress updates that do not change the state of the job, while state transitions are
+ * still reported with the full {@linkplain Job}. The scheduler applies the delta to its own copy of
+ * the job.
+ */
+public class JobProgressDelta extends JobProgress {
+
+	private static final long serialVersionUID = -4620786403916702131L;
+
+	// Marks a timestamp that has not been set
+	private static final long NO_TIMESTAMP = -1;
+
+	private final long jobId;
+
+	private final double progress;
+
+	private final State state;
+
+	private final long startedAt;
+
+	private final long completedAt;
+
+	public JobProgressDelta(Job job) {
+		this.jobId = job.getId();
+		this.progress = job.getProgress();
+		this.state = job.getState();
+		this.startedAt = toMillis(job.getStartedAt());
+		this.completedAt = toMillis(job.getCompletedAt());
+	}
+
+	private static long toMillis(DateTime dateTime) {
+		return dateTime == null ? NO_TIMESTAMP : dateTime.getMillis();
+	}
+
+	private static DateTime toDateTime(long millis) {
+		return millis == NO_TIMESTAMP ? null : new DateTime(millis);
+	}
+
+	/**
+	 * Apply this progress to a full copy of the job
+	 */
+	public void applyTo(Job job) {
+		job.setProgress(progress);
+		job.setState(state);
+		job.setStartedAt(toDateTime(startedAt));
+		job.setCompletedAt(toDateTime(completedAt));
+	}
+
+	/**
+	 * @return a partial job, with only the ID and the fields carried by this delta
+	 */
+	@Override
+	public Job getJob() {
+		Job job = new Job(jobId, null);
+		applyTo(job);
+		return job;
+	}
+
+	public long getJobId() {
+		return jobId;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Job %s (state=%s, progress=%s)", jobId, state, progress);
+	}
+
+}
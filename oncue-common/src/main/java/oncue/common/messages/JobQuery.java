@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.common.messages;
+
+import java.io.Serializable;
+import java.util.Set;
+
+import oncue.common.messages.Job.State;
+
+import org.joda.time.DateTime;
+
+/**
+ * This message is sent to the scheduler in order to retrieve a filtered page of jobs. Every filter
+ * is optional; a query with no filters set matches every job the scheduler knows about.
+ * 
+ * Matching jobs are returned in ascending ID order. When a page is full, the scheduler replies
+ * with a {@linkplain JobSummary} carrying a cursor, which can be set on the next query to fetch
+ * the following page.
+ */
+public class JobQuery implements Serializable {
+
+	private static final long serialVersionUID = -4715512203418305436L;
+
+	/*
+	 * The names of the HTTP query parameters and response header used to express a job query
+	 */
+	public static final String STATES_PARAM = "state";
+	public static final String WORKER_TYPES_PARAM = "worker_type";
+	public static final String MIN_ID_PARAM = "min_id";
+	public static final String MAX_ID_PARAM = "max_id";
+	public static final String ENQUEUED_AFTER_PARAM = "enqueued_after";
+	public static final String ENQUEUED_BEFORE_PARAM = "enqueued_before";
+	public static final String PAGE_SIZE_PARAM = "page_size";
+	public static final String CURSOR_PARAM = "cursor";
+	public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+	private Set<State> states;
+	private Set<String> workerTypes;
+	private Long minId;
+	private Long maxId;
+	private DateTime enqueuedAfter;
+	private DateTime enqueuedBefore;
+	private int pageSize;
+	private Long cursor;
+
+	public JobQuery() {
+	}
+
+	/**
+	 * @return the ID of the last job on the previous page, or null to start from the first job
+	 */
+	public Long getCursor() {
+		return cursor;
+	}
+
+	public DateTime getEnqueuedAfter() {
+		return enqueuedAfter;
+	}
+
+	public DateTime getEnqueuedBefore() {
+		return enqueuedBefore;
+	}
+
+	public Long getMaxId() {
+		return maxId;
+	}
+
+	public Long getMinId() {
+		return minId;
+	}
+
+	/**
+	 * @return the maximum number of jobs to return, where zero means there is no limit
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public Set<State> getStates() {
+		return states;
+	}
+
+	public Set<String> getWorkerTypes() {
+		return workerTypes;
+	}
+
+	/**
+	 * @return true if this query can only match the single job with the given ID
+	 */
+	public boolean isSingleJob() {
+		return minId != null && minId.equals(maxId);
+	}
+
+	/**
+	 * @return true if jobs in the specified state can match this query
+	 */
+	public boolean includesState(State state) {
+		return states == null || states.isEmpty() || states.contains(state);
+	}
+
+	/**
+	 * @return true if the ID of a job is within the ID range and after the cursor
+	 */
+	public boolean matchesId(long id) {
+		if (minId != null && id < minId)
+			return false;
+		if (maxId != null && id > maxId)
+			return false;
+		if (cursor != null && id <= cursor)
+			return false;
+		return true;
+	}
+
+	/**
+	 * @return true if the job satisfies every filter in this query
+	 */
+	public boolean matches(Job job) {
+		if (!matchesId(job.getId()))
+			return false;
+		if (!includesState(job.getState()))
+			return false;
+		if (workerTypes != null && !workerTypes.isEmpty()
+				&& !workerTypes.contains(job.getWorkerType()))
+			return false;
+		if (enqueuedAfter != null && !job.getEnqueuedAt().isAfter(enqueuedAfter))
+			return false;
+		if (enqueuedBefore != null && !job.getEnqueuedAt().isBefore(enqueuedBefore))
+			return false;
+		return true;
+	}
+
+	public void setCursor(Long cursor) {
+		this.cursor = cursor;
+	}
+
+	public void setEnqueuedAfter(DateTime enqueuedAfter) {
+		this.enqueuedAfter = enqueuedAfter;
+	}
+
+	public void setEnqueuedBefore(DateTime enqueuedBefore) {
+		this.enqueuedBefore = enqueuedBefore;
+	}
+
+	public void setMaxId(Long maxId) {
+		this.maxId = maxId;
+	}
+
+	public void setMinId(Long minId) {
+		this.minId = minId;
+	}
+
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public void setStates(Set<State> states) {
+		this.states = states;
+	}
+
+	public void setWorkerTypes(Set<String> workerTypes) {
+		this.workerTypes = workerTypes;
+	}
+
+	@Override
+	public String toString() {
+		return String
+				.format("Job query (states=%s, workerTypes=%s, minId=%s, maxId=%s, enqueuedAfter=%s, enqueuedBefore=%s, pageSize=%s, cursor=%s)",
+						states, workerTypes, minId, maxId, enqueuedAfter, enqueuedBefore,
+						pageSize, cursor);
+	}
+}
@@ -8,7 +8,7 @@ import java.util.List;
 
 /**
  * A scheduler will send this message in response to a simple job summary
- * request.
+ * request or a {@linkplain JobQuery}.
  */
 public class JobSummary implements Serializable {
 
@@ -16,6 +16,9 @@ public class JobSummary implements Serializable {
 
 	private List<Job> jobs = new ArrayList<>();
 
+	// The cursor to query the next page of jobs, if the page is full
+	private Long nextCursor;
+
 	/**
 	 * empty constructor required for JSON mapping
 	 */
@@ -29,10 +32,23 @@ public class JobSummary implements Serializable {
 		}
 	}
 
+	public JobSummary(Collection<Job> jobs, Long nextCursor) {
+		this(jobs);
+		this.nextCursor = nextCursor;
+	}
+
 	public List<Job> getJobs() {
 		return jobs;
 	}
 
+	/**
+	 * @return the cursor to set on a {@linkplain JobQuery} to fetch the next page of jobs, or null
+	 *         if there are no more jobs
+	 */
+	public Long getNextCursor() {
+		return nextCursor;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -18,6 +18,6 @@ package oncue.common.messages;
 public class SimpleMessages {
 
 	public enum SimpleMessage {
-		AGENT_HEARTBEAT, AGENT_REGISTERED, AGENT_SHUTDOWN, AGENT_DEAD, LIST_AGENTS, CHECK_AGENTS, SCHEDULE_JOBS, JOB_SUMMARY, BROADCAST_JOBS
+		AGENT_HEARTBEAT, AGENT_REGISTERED, AGENT_SHUTDOWN, AGENT_DEAD, LIST_AGENTS, CHECK_AGENTS, SCHEDULE_JOBS, JOB_SUMMARY, JOB_COUNTS, BROADCAST_JOBS
 	}
 }
@@ -15,6 +15,7 @@
  ******************************************************************************/
 package oncue.common.messages;
 
+import java.util.Map;
 import java.util.Set;
 
 import akka.actor.ActorRef;
@@ -25,6 +26,8 @@ public class ThrottledWorkRequest extends AbstractWorkRequest {
 
 	private int maxJobs;
 
+	private int concurrencyLimit;
+
 	/**
 	 * @param jobs
 	 *            is the number of jobs the agent can cope with
@@ -34,17 +37,70 @@ public class ThrottledWorkRequest extends AbstractWorkRequest {
 		this.maxJobs = jobs;
 	}
 
+	/**
+	 * @param jobs
+	 *            is the number of jobs the agent can cope with, where a batch
+	 *            of jobs for a batch worker counts as one job
+	 */
+	public ThrottledWorkRequest(ActorRef agent, Set<String> workerTypes, int jobs,
+			Map<String, Integer> batchSizes) {
+		super(agent, workerTypes, batchSizes);
+		this.maxJobs = jobs;
+	}
+
+	/**
+	 * @param jobs
+	 *            is the number of jobs the agent can cope with, where a batch
+	 *            of jobs for a batch worker counts as one job
+	 * @param concurrencyLimit
+	 *            is the number of jobs the agent currently allows to run at
+	 *            once
+	 */
+	public ThrottledWorkRequest(ActorRef agent, Set<String> workerTypes, int jobs,
+			Map<String, Integer> batchSizes, int concurrencyLimit) {
+		super(agent, workerTypes, batchSizes);
+		this.maxJobs = jobs;
+		this.concurrencyLimit = concurrencyLimit;
+	}
+
+	/**
+	 * @param jobs
+	 *            is the number of jobs the agent can cope with, where a batch
+	 *            of jobs for a batch worker counts as one job
+	 * @param concurrencyLimit
+	 *            is the number of jobs the agent currently allows to run at
+	 *            once
+	 * @param workerTypeSlots
+	 *            maps the worker types that the agent limits to the number of
+	 *            jobs of that type it can still cope with
+	 */
+	public ThrottledWorkRequest(ActorRef agent, Set<String> workerTypes, int jobs,
+			Map<String, Integer> batchSizes, int concurrencyLimit, Map<String, Integer> workerTypeSlots) {
+		super(agent, workerTypes, batchSizes, workerTypeSlots);
+		this.maxJobs = jobs;
+		this.concurrencyLimit = concurrencyLimit;
+	}
+
 	public int getMaxJobs() {
 		return maxJobs;
 	}
 
+	/**
+	 * @return the number of jobs the agent currently allows to run at once,
+	 *         or 0 if the agent didn't say
+	 */
+	public int getConcurrencyLimit() {
+		return concurrencyLimit;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
 		for (String workerType : getWorkerTypes()) {
 			builder.append("[" + workerType + "]");
 		}
-		return "Throttled work request for " + maxJobs + " jobs for worker types: " + builder.toString();
+		return "Throttled work request for " + maxJobs + " jobs (concurrency limit " + concurrencyLimit
+				+ ") for worker types: " + builder.toString();
 	}
 
 }
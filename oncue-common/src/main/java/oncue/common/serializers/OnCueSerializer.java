@@ -0,0 +1,649 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.common.serializers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import oncue.common.messages.AbstractWorkRequest;
+import oncue.common.messages.CapacityWorkRequest;
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.HostCapacityWorkRequest;
+import oncue.common.messages.JVMCapacityWorkRequest;
+import oncue.common.messages.Job;
+import oncue.common.messages.Job.State;
+import oncue.common.messages.JobFailed;
+import oncue.common.messages.JobProgress;
+import oncue.common.messages.JobProgressDelta;
+import oncue.common.messages.JobSummary;
+import oncue.common.messages.SimpleWorkRequest;
+import oncue.common.messages.ThrottledWorkRequest;
+import oncue.common.messages.WorkResponse;
+
+import org.joda.time.DateTime;
+
+import akka.actor.ActorRef;
+import akka.actor.Address;
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.JSerializer;
+import akka.serialization.Serialization;
+
+/**
+ * A compact binary encoding for the messages that travel between agents, workers and the
+ * scheduler, replacing Java serialization for those messages.
+ * 
+ * Numbers are written as variable-length integers, timestamps as epoch milliseconds (in the
+ * default time zone when read back) and worker types and parameter names are written once per
+ * message and referred to by index afterwards. Each message starts with the version of the
+ * encoding, and each job is prefixed by its length, so that a later version can append fields to a
+ * job that an earlier version skips. Appended fields must not use the string table, as a reader
+ * that skips them would lose track of its entries.
+ * 
+ * Version 2 appends the batch sizes to throttled and capacity work requests, version 3 appends the
+ * concurrency limit to throttled work requests and version 4 appends the worker type slots to both,
+ * followed by the memory weights for capacity work requests. Earlier readers ignore them.
+ */
+public class OnCueSerializer extends JSerializer {
+
+	// The version of the encoding written by this serializer
+	static final int VERSION = 4;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// The maximum number of distinct strings to intern when reading
+	private static final int MAX_INTERNED_STRINGS = 10000;
+
+	// Message types
+	private static final byte JOB = 1;
+	private static final byte WORK_RESPONSE = 2;
+	private static final byte JOB_PROGRESS = 3;
+	private static final byte JOB_PROGRESS_DELTA = 4;
+	private static final byte JOB_FAILED = 5;
+	private static final byte ENQUEUE_JOB = 6;
+	private static final byte SIMPLE_WORK_REQUEST = 7;
+	private static final byte THROTTLED_WORK_REQUEST = 8;
+	private static final byte JVM_CAPACITY_WORK_REQUEST = 9;
+	private static final byte CAPACITY_WORK_REQUEST = 10;
+	private static final byte JOB_SUMMARY = 11;
+	private static final byte HOST_CAPACITY_WORK_REQUEST = 12;
+
+	// Flags for the optional fields of a job
+	private static final int ENQUEUED_AT = 1;
+	private static final int STARTED_AT = 2;
+	private static final int COMPLETED_AT = 4;
+	private static final int ERROR_MESSAGE = 8;
+	private static final int RERUN = 16;
+
+	private final ExtendedActorSystem system;
+
+	// Share a single instance of each frequently repeated string, such as worker types
+	private final ConcurrentMap<String, String> internedStrings = new ConcurrentHashMap<>();
+
+	public OnCueSerializer(ExtendedActorSystem system) {
+		this.system = system;
+	}
+
+	@Override
+	public int identifier() {
+		return 20130611;
+	}
+
+	@Override
+	public boolean includeManifest() {
+		return false;
+	}
+
+	@Override
+	public byte[] toBinary(Object message) {
+		Writer writer = new Writer();
+		writer.writeVarLong(VERSION);
+
+		if (message instanceof JobProgressDelta) {
+			writer.writeByte(JOB_PROGRESS_DELTA);
+			writeJobProgressDelta(writer, (JobProgressDelta) message);
+		} else if (message instanceof JobProgress) {
+			writer.writeByte(JOB_PROGRESS);
+			writeJob(writer, ((JobProgress) message).getJob());
+		} else if (message instanceof Job) {
+			writer.writeByte(JOB);
+			writeJob(writer, (Job) message);
+		} else if (message instanceof WorkResponse) {
+			writer.writeByte(WORK_RESPONSE);
+			writeJobs(writer, ((WorkResponse) message).getJobs());
+		} else if (message instanceof JobFailed) {
+			writer.writeByte(JOB_FAILED);
+			writeJob(writer, ((JobFailed) message).getJob());
+		} else if (message instanceof EnqueueJob) {
+			EnqueueJob enqueueJob = (EnqueueJob) message;
+			writer.writeByte(ENQUEUE_JOB);
+			writer.writeInternedString(enqueueJob.getWorkerType());
+			writeParams(writer, enqueueJob.getParams());
+		} else if (message instanceof SimpleWorkRequest) {
+			writer.writeByte(SIMPLE_WORK_REQUEST);
+			writeWorkRequest(writer, (AbstractWorkRequest) message);
+		} else if (message instanceof ThrottledWorkRequest) {
+			writer.writeByte(THROTTLED_WORK_REQUEST);
+			writeWorkRequest(writer, (AbstractWorkRequest) message);
+			writer.writeVarLong(((ThrottledWorkRequest) message).getMaxJobs());
+			writeBatchSizes(writer, (AbstractWorkRequest) message);
+			writer.writeVarLong(((ThrottledWorkRequest) message).getConcurrencyLimit());
+			writeCounts(writer, ((AbstractWorkRequest) message).getWorkerTypeSlots());
+		} else if (message instanceof JVMCapacityWorkRequest) {
+			JVMCapacityWorkRequest workRequest = (JVMCapacityWorkRequest) message;
+			writer.writeByte(JVM_CAPACITY_WORK_REQUEST);
+			writeWorkRequest(writer, workRequest);
+			writer.writeVarLong(workRequest.getFreeMemory());
+			writer.writeVarLong(workRequest.getTotalMemory());
+			writer.writeVarLong(workRequest.getMaxMemory());
+		} else if (message instanceof CapacityWorkRequest) {
+			writer.writeByte(CAPACITY_WORK_REQUEST);
+			writeWorkRequest(writer, (AbstractWorkRequest) message);
+			writer.writeVarLong(((CapacityWorkRequest) message).getAvailableMemory());
+			writeBatchSizes(writer, (AbstractWorkRequest) message);
+			writeCounts(writer, ((AbstractWorkRequest) message).getWorkerTypeSlots());
+			writeMemoryWeights(writer, ((CapacityWorkRequest) message).getMemoryWeights());
+		} else if (message instanceof HostCapacityWorkRequest) {
+			HostCapacityWorkRequest workRequest = (HostCapacityWorkRequest) message;
+			writer.writeByte(HOST_CAPACITY_WORK_REQUEST);
+			writeWorkRequest(writer, workRequest);
+			writer.writeVarLong(workRequest.getAvailableMemory());
+			writer.writeDouble(workRequest.getCpuQuota());
+			writer.writeDouble(workRequest.getCpuUsage());
+			writer.writeDouble(workRequest.getLoadAverage());
+			writer.writeVarLong(workRequest.getWorkerMemory());
+			writer.writeVarLong(workRequest.getRunningWorkers());
+		} else if (message instanceof JobSummary) {
+			JobSummary jobSummary = (JobSummary) message;
+			writer.writeByte(JOB_SUMMARY);
+			writeJobs(writer, jobSummary.getJobs());
+			writer.writeBoolean(jobSummary.getNextCursor() != null);
+			if (jobSummary.getNextCursor() != null)
+				writer.writeVarLong(jobSummary.getNextCursor());
+		} else
+			throw new IllegalArgumentException("Cannot serialize " + message.getClass().getName());
+
+		return writer.toByteArray();
+	}
+
+	@Override
+	public Object fromBinaryJava(byte[] bytes, Class<?> manifest) {
+		Reader reader = new Reader(ByteBuffer.wrap(bytes));
+
+		// Fields added by later versions are skipped, as they are appended
+		int version = (int) reader.readVarLong();
+
+		byte type = reader.readByte();
+		switch (type) {
+		case JOB:
+			return readJob(reader);
+		case WORK_RESPONSE:
+			return new WorkResponse(readJobs(reader));
+		case JOB_PROGRESS:
+			return new JobProgress(readJob(reader));
+		case JOB_PROGRESS_DELTA:
+			return readJobProgressDelta(reader);
+		case JOB_FAILED:
+			return new JobFailed(readJob(reader));
+		case ENQUEUE_JOB:
+			String workerType = reader.readInternedString();
+			return new EnqueueJob(workerType, readParams(reader));
+		case SIMPLE_WORK_REQUEST:
+			return new SimpleWorkRequest(readActorRef(reader), readWorkerTypes(reader));
+		case THROTTLED_WORK_REQUEST:
+			ActorRef agent = readActorRef(reader);
+			Set<String> workerTypes = readWorkerTypes(reader);
+			int maxJobs = (int) reader.readVarLong();
+			Map<String, Integer> batchSizes = readBatchSizes(reader, version);
+			int concurrencyLimit = version < 3 ? 0 : (int) reader.readVarLong();
+			Map<String, Integer> workerTypeSlots = version < 4 ? new HashMap<String, Integer>()
+					: readCounts(reader);
+			return new ThrottledWorkRequest(agent, workerTypes, maxJobs, batchSizes,
+					concurrencyLimit, workerTypeSlots);
+		case JVM_CAPACITY_WORK_REQUEST:
+			return new JVMCapacityWorkRequest(readActorRef(reader), readWorkerTypes(reader),
+					reader.readVarLong(), reader.readVarLong(), reader.readVarLong());
+		case CAPACITY_WORK_REQUEST:
+			agent = readActorRef(reader);
+			workerTypes = readWorkerTypes(reader);
+			int availableMemory = (int) reader.readVarLong();
+			batchSizes = readBatchSizes(reader, version);
+			if (version < 4)
+				return new CapacityWorkRequest(agent, workerTypes, availableMemory, batchSizes);
+			workerTypeSlots = readCounts(reader);
+			return new CapacityWorkRequest(agent, workerTypes, availableMemory, batchSizes,
+					workerTypeSlots, readMemoryWeights(reader));
+		case HOST_CAPACITY_WORK_REQUEST:
+			return new HostCapacityWorkRequest(readActorRef(reader), readWorkerTypes(reader),
+					reader.readVarLong(), reader.readDouble(), reader.readDouble(),
+					reader.readDouble(), reader.readVarLong(), (int) reader.readVarLong());
+		case JOB_SUMMARY:
+			List<Job> jobs = readJobs(reader);
+			Long nextCursor = reader.readBoolean() ? reader.readVarLong() : null;
+			return new JobSummary(jobs, nextCursor);
+		default:
+			throw new IllegalArgumentException("Unrecognised message type " + type);
+		}
+	}
+
+	private void writeJob(Writer writer, Job job) {
+		Writer record = writer.record();
+		record.writeVarLong(job.getId());
+		record.writeInternedString(job.getWorkerType());
+		record.writeByte((byte) job.getState().ordinal());
+		record.writeDouble(job.getProgress());
+
+		int flags = (job.getEnqueuedAt() != null ? ENQUEUED_AT : 0)
+				| (job.getStartedAt() != null ? STARTED_AT : 0)
+				| (job.getCompletedAt() != null ? COMPLETED_AT : 0)
+				| (job.getErrorMessage() != null ? ERROR_MESSAGE : 0) | (job.isRerun() ? RERUN : 0);
+		record.writeVarLong(flags);
+		if (job.getEnqueuedAt() != null)
+			record.writeVarLong(job.getEnqueuedAt().getMillis());
+		if (job.getStartedAt() != null)
+			record.writeVarLong(job.getStartedAt().getMillis());
+		if (job.getCompletedAt() != null)
+			record.writeVarLong(job.getCompletedAt().getMillis());
+		if (job.getErrorMessage() != null)
+			record.writeString(job.getErrorMessage());
+
+		writeParams(record, job.getParams());
+		writer.writeRecord(record);
+	}
+
+	private Job readJob(Reader reader) {
+		Reader record = reader.readRecord();
+		Job job = new Job(record.readVarLong(), record.readInternedString());
+		job.setState(State.values()[record.readByte()]);
+		job.setProgress(record.readDouble());
+
+		int flags = (int) record.readVarLong();
+		job.setEnqueuedAt((flags & ENQUEUED_AT) != 0 ? new DateTime(record.readVarLong()) : null);
+		if ((flags & STARTED_AT) != 0)
+			job.setStartedAt(new DateTime(record.readVarLong()));
+		if ((flags & COMPLETED_AT) != 0)
+			job.setCompletedAt(new DateTime(record.readVarLong()));
+		if ((flags & ERROR_MESSAGE) != 0)
+			job.setErrorMessage(record.readString());
+		job.setRerun((flags & RERUN) != 0);
+
+		Map<String, String> params = readParams(record);
+		if (params != null)
+			job.setParams(params);
+		return job;
+	}
+
+	private void writeJobs(Writer writer, List<Job> jobs) {
+		writer.writeVarLong(jobs.size());
+		for (Job job : jobs) {
+			writeJob(writer, job);
+		}
+	}
+
+	private List<Job> readJobs(Reader reader) {
+		int size = (int) reader.readVarLong();
+		List<Job> jobs = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			jobs.add(readJob(reader));
+		}
+		return jobs;
+	}
+
+	private void writeJobProgressDelta(Writer writer, JobProgressDelta delta) {
+		Job job = delta.getJob();
+		writer.writeVarLong(job.getId());
+		writer.writeByte((byte) job.getState().ordinal());
+		writer.writeDouble(job.getProgress());
+		int flags = (job.getStartedAt() != null ? STARTED_AT : 0)
+				| (job.getCompletedAt() != null ? COMPLETED_AT : 0);
+		writer.writeVarLong(flags);
+		if (job.getStartedAt() != null)
+			writer.writeVarLong(job.getStartedAt().getMillis());
+		if (job.getCompletedAt() != null)
+			writer.writeVarLong(job.getCompletedAt().getMillis());
+	}
+
+	private JobProgressDelta readJobProgressDelta(Reader reader) {
+		Job job = new Job(reader.readVarLong(), null);
+		job.setState(State.values()[reader.readByte()]);
+		job.setProgress(reader.readDouble());
+		int flags = (int) reader.readVarLong();
+		if ((flags & STARTED_AT) != 0)
+			job.setStartedAt(new DateTime(reader.readVarLong()));
+		if ((flags & COMPLETED_AT) != 0)
+			job.setCompletedAt(new DateTime(reader.readVarLong()));
+		return new JobProgressDelta(job);
+	}
+
+	/**
+	 * Write a map of parameters, which may be null. Parameter names are interned.
+	 */
+	private void writeParams(Writer writer, Map<String, String> params) {
+		if (params == null) {
+			writer.writeVarLong(0);
+			return;
+		}
+
+		writer.writeVarLong(params.size() + 1);
+		for (Map.Entry<String, String> param : params.entrySet()) {
+			writer.writeInternedString(param.getKey());
+			writer.writeString(param.getValue());
+		}
+	}
+
+	private Map<String, String> readParams(Reader reader) {
+		int size = (int) reader.readVarLong() - 1;
+		if (size < 0)
+			return null;
+
+		Map<String, String> params = new HashMap<>();
+		for (int i = 0; i < size; i++) {
+			params.put(reader.readInternedString(), reader.readString());
+		}
+		return params;
+	}
+
+	private void writeWorkRequest(Writer writer, AbstractWorkRequest workRequest) {
+		writer.writeString(serializeActorRef(workRequest.getAgent()));
+		Set<String> workerTypes = workRequest.getWorkerTypes();
+		writer.writeVarLong(workerTypes.size());
+		for (String workerType : workerTypes) {
+			writer.writeInternedString(workerType);
+		}
+	}
+
+	private void writeBatchSizes(Writer writer, AbstractWorkRequest workRequest) {
+		writeCounts(writer, workRequest.getBatchSizes());
+	}
+
+	/**
+	 * Write a map of worker types to counts, such as batch sizes or slots
+	 */
+	private void writeCounts(Writer writer, Map<String, Integer> counts) {
+		writer.writeVarLong(counts.size());
+		for (Map.Entry<String, Integer> count : counts.entrySet()) {
+			writer.writeInternedString(count.getKey());
+			writer.writeVarLong(count.getValue());
+		}
+	}
+
+	private Map<String, Integer> readCounts(Reader reader) {
+		Map<String, Integer> counts = new HashMap<>();
+		int size = (int) reader.readVarLong();
+		for (int i = 0; i < size; i++) {
+			counts.put(reader.readInternedString(), (int) reader.readVarLong());
+		}
+		return counts;
+	}
+
+	private void writeMemoryWeights(Writer writer, Map<String, Double> memoryWeights) {
+		writer.writeVarLong(memoryWeights.size());
+		for (Map.Entry<String, Double> memoryWeight : memoryWeights.entrySet()) {
+			writer.writeInternedString(memoryWeight.getKey());
+			writer.writeDouble(memoryWeight.getValue());
+		}
+	}
+
+	private Map<String, Double> readMemoryWeights(Reader reader) {
+		Map<String, Double> memoryWeights = new HashMap<>();
+		int size = (int) reader.readVarLong();
+		for (int i = 0; i < size; i++) {
+			memoryWeights.put(reader.readInternedString(), reader.readDouble());
+		}
+		return memoryWeights;
+	}
+
+	/**
+	 * Read the batch sizes of a work request, which version 1 didn't write
+	 */
+	private Map<String, Integer> readBatchSizes(Reader reader, int version) {
+		if (version < 2)
+			return new HashMap<>();
+		return readCounts(reader);
+	}
+
+	private Set<String> readWorkerTypes(Reader reader) {
+		int size = (int) reader.readVarLong();
+		Set<String> workerTypes = new HashSet<>();
+		for (int i = 0; i < size; i++) {
+			workerTypes.add(reader.readInternedString());
+		}
+		return workerTypes;
+	}
+
+	/**
+	 * Write the path to an actor, including the address of this system when sent remotely, in the
+	 * same way as Akka's own serializers.
+	 */
+	private static String serializeActorRef(ActorRef actorRef) {
+		if (actorRef == null)
+			return null;
+
+		Address address = Serialization.currentTransportAddress().value();
+		if (address == null)
+			return actorRef.path().toString();
+		return actorRef.path().toStringWithAddress(address);
+	}
+
+	private ActorRef readActorRef(Reader reader) {
+		String path = reader.readString();
+		if (path == null)
+			return null;
+		return system.actorFor(path);
+	}
+
+	private String intern(String string) {
+		if (string == null)
+			return null;
+
+		String interned = internedStrings.get(string);
+		if (interned != null)
+			return interned;
+		if (internedStrings.size() >= MAX_INTERNED_STRINGS)
+			return string;
+
+		interned = internedStrings.putIfAbsent(string, string);
+		return interned == null ? string : interned;
+	}
+
+	/**
+	 * Writes the encoding, keeping the table of strings written so far
+	 */
+	private static class Writer {
+
+		private byte[] buffer = new byte[128];
+		private int size;
+
+		// Map each string written to the table to its index
+		private final Map<String, Integer> stringTable;
+
+		Writer() {
+			this(new HashMap<String, Integer>());
+		}
+
+		private Writer(Map<String, Integer> stringTable) {
+			this.stringTable = stringTable;
+		}
+
+		/**
+		 * @return a writer for a length-prefixed record, sharing this writer's string table
+		 */
+		Writer record() {
+			return new Writer(stringTable);
+		}
+
+		void writeRecord(Writer record) {
+			writeVarLong(record.size);
+			ensureCapacity(record.size);
+			System.arraycopy(record.buffer, 0, buffer, size, record.size);
+			size += record.size;
+		}
+
+		void writeByte(byte value) {
+			ensureCapacity(1);
+			buffer[size++] = value;
+		}
+
+		void writeBoolean(boolean value) {
+			writeByte((byte) (value ? 1 : 0));
+		}
+
+		void writeVarLong(long value) {
+			ensureCapacity(10);
+			while ((value & ~0x7FL) != 0) {
+				buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[size++] = (byte) value;
+		}
+
+		void writeDouble(double value) {
+			long bits = Double.doubleToLongBits(value);
+			ensureCapacity(8);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				buffer[size++] = (byte) (bits >>> shift);
+			}
+		}
+
+		/**
+		 * Write a string, which may be null, as its length plus one and its UTF-8 bytes
+		 */
+		void writeString(String value) {
+			if (value == null) {
+				writeVarLong(0);
+				return;
+			}
+
+			byte[] bytes = value.getBytes(UTF8);
+			writeVarLong(bytes.length + 1);
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, buffer, size, bytes.length);
+			size += bytes.length;
+		}
+
+		/**
+		 * Write a string, which may be null, to the string table. A string already in the table is
+		 * written as its index plus two, otherwise a one is written followed by the string.
+		 */
+		void writeInternedString(String value) {
+			if (value == null) {
+				writeVarLong(0);
+				return;
+			}
+
+			Integer index = stringTable.get(value);
+			if (index != null) {
+				writeVarLong(index + 2);
+				return;
+			}
+
+			stringTable.put(value, stringTable.size());
+			writeVarLong(1);
+			writeString(value);
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(buffer, size);
+		}
+
+		private void ensureCapacity(int extra) {
+			if (size + extra > buffer.length)
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+		}
+	}
+
+	/**
+	 * Reads the encoding, keeping the table of strings read so far
+	 */
+	private class Reader {
+
+		private final ByteBuffer buffer;
+
+		private final List<String> stringTable;
+
+		Reader(ByteBuffer buffer) {
+			this(buffer, new ArrayList<String>());
+		}
+
+		private Reader(ByteBuffer buffer, List<String> stringTable) {
+			this.buffer = buffer;
+			this.stringTable = stringTable;
+		}
+
+		/**
+		 * @return a reader for the next length-prefixed record, sharing this reader's string
+		 *         table. Any part of the record left unread is skipped.
+		 */
+		Reader readRecord() {
+			int length = (int) readVarLong();
+			ByteBuffer record = buffer.slice();
+			record.limit(length);
+			buffer.position(buffer.position() + length);
+			return new Reader(record, stringTable);
+		}
+
+		byte readByte() {
+			return buffer.get();
+		}
+
+		boolean readBoolean() {
+			return buffer.get() != 0;
+		}
+
+		long readVarLong() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = buffer.get();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw new IllegalArgumentException("Malformed variable-length integer");
+		}
+
+		double readDouble() {
+			return buffer.getDouble();
+		}
+
+		String readString() {
+			int length = (int) readVarLong() - 1;
+			if (length < 0)
+				return null;
+
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			return new String(bytes, UTF8);
+		}
+
+		String readInternedString() {
+			int index = (int) readVarLong();
+			if (index == 0)
+				return null;
+			if (index > 1)
+				return stringTable.get(index - 2);
+
+			String value = intern(readString());
+			stringTable.add(value);
+			return value;
+		}
+	}
+}
@@ -16,15 +16,23 @@
 package oncue.common.settings;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import scala.concurrent.duration.Duration;
 import scala.concurrent.duration.FiniteDuration;
 import akka.actor.Extension;
 
+import com.google.common.base.Joiner;
 import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigUtil;
+import com.typesafe.config.ConfigValue;
+import com.typesafe.config.ConfigValueType;
 
 public class Settings implements Extension {
 
@@ -36,8 +44,20 @@ public class Settings implements Extension {
 	public final FiniteDuration SCHEDULER_TIMEOUT;
 	public final FiniteDuration SCHEDULER_BROADCAST_JOBS_FREQUENCY;
 	public final FiniteDuration SCHEDULER_BROADCAST_JOBS_QUIESCENCE_PERIOD;
+	public final int SCHEDULER_BROADCAST_JOBS_MAX_AGENTS;
 	public final FiniteDuration SCHEDULER_MONITOR_AGENTS_FREQUENCY;
 	public final FiniteDuration SCHEDULER_AGENT_HEARTBEAT_TIMEOUT;
+	public final int SCHEDULER_CLEANUP_CHUNK_SIZE;
+	public final boolean SCHEDULER_WRITE_BEHIND_ENABLED;
+	public final int SCHEDULER_WRITE_BEHIND_MAX_BATCH_SIZE;
+	public final FiniteDuration SCHEDULER_WRITE_BEHIND_FLUSH_INTERVAL;
+	public final int SCHEDULER_WRITE_BEHIND_MAX_RETRIES;
+	public final int SCHEDULER_WRITE_BEHIND_MAX_QUEUE_SIZE;
+	public final boolean SCHEDULER_WRITE_BEHIND_ACK_AFTER_FLUSH;
+	public final boolean SCHEDULER_FAIR_QUEUING_ENABLED;
+	public final String SCHEDULER_FAIR_QUEUING_GROUP_BY;
+	public final Map<String, Double> SCHEDULER_FAIR_QUEUING_WEIGHTS;
+	public final double SCHEDULER_FAIR_QUEUING_PRIORITY_STEP;
 
 	public final FiniteDuration TIMED_JOBS_RETRY_DELAY;
 
@@ -45,6 +65,14 @@ public class Settings implements Extension {
 	public final String AGENT_PATH;
 	public final String AGENT_CLASS;
 	public final FiniteDuration AGENT_HEARTBEAT_FREQUENCY;
+	public final FiniteDuration AGENT_PROGRESS_FLUSH_INTERVAL;
+	public final String AGENT_WORKER_DISPATCHER;
+	public final Map<String, String> AGENT_WORKER_TYPE_DISPATCHERS;
+	public final Set<String> AGENT_REUSABLE_WORKER_TYPES;
+	public final int AGENT_BATCH_SIZE;
+	public final Map<String, Integer> AGENT_WORKER_TYPE_BATCH_SIZES;
+	public final Map<String, Integer> AGENT_WORKER_TYPE_SLOTS;
+	public final Map<String, Double> AGENT_WORKER_TYPE_MEMORY_WEIGHTS;
 
 	public final List<Map<String, Object>> TIMED_JOBS_TIMETABLE;
 
@@ -71,17 +99,79 @@ public class Settings implements Extension {
 		SCHEDULER_BROADCAST_JOBS_QUIESCENCE_PERIOD = Duration.create(
 				oncueConfig.getMilliseconds("scheduler.broadcast-jobs-quiescence-period"), TimeUnit.MILLISECONDS);
 
+		SCHEDULER_BROADCAST_JOBS_MAX_AGENTS = oncueConfig.getInt("scheduler.broadcast-jobs-max-agents");
+
 		SCHEDULER_MONITOR_AGENTS_FREQUENCY = Duration.create(
 				oncueConfig.getMilliseconds("scheduler.monitor-agents-frequency"), TimeUnit.MILLISECONDS);
 
 		SCHEDULER_AGENT_HEARTBEAT_TIMEOUT = Duration.create(
 				oncueConfig.getMilliseconds("scheduler.agent-heartbeat-timeout"), TimeUnit.MILLISECONDS);
 
+		SCHEDULER_CLEANUP_CHUNK_SIZE = oncueConfig.getInt("scheduler.cleanup-chunk-size");
+
+		SCHEDULER_WRITE_BEHIND_ENABLED = oncueConfig.getBoolean("scheduler.write-behind.enabled");
+		SCHEDULER_WRITE_BEHIND_MAX_BATCH_SIZE = oncueConfig.getInt("scheduler.write-behind.max-batch-size");
+		SCHEDULER_WRITE_BEHIND_FLUSH_INTERVAL = Duration.create(
+				oncueConfig.getMilliseconds("scheduler.write-behind.flush-interval"), TimeUnit.MILLISECONDS);
+		SCHEDULER_WRITE_BEHIND_MAX_RETRIES = oncueConfig.getInt("scheduler.write-behind.max-retries");
+		SCHEDULER_WRITE_BEHIND_MAX_QUEUE_SIZE = oncueConfig
+				.getInt("scheduler.write-behind.max-queue-size");
+
+		String durability = oncueConfig.getString("scheduler.write-behind.durability");
+		if ("ack-after-flush".equals(durability))
+			SCHEDULER_WRITE_BEHIND_ACK_AFTER_FLUSH = true;
+		else if ("ack-immediately".equals(durability))
+			SCHEDULER_WRITE_BEHIND_ACK_AFTER_FLUSH = false;
+		else
+			throw new ConfigException.BadValue("oncue.scheduler.write-behind.durability",
+					"Expected either 'ack-after-flush' or 'ack-immediately'");
+
+		SCHEDULER_FAIR_QUEUING_ENABLED = oncueConfig.getBoolean("scheduler.fair-queuing.enabled");
+		SCHEDULER_FAIR_QUEUING_GROUP_BY = oncueConfig.getString("scheduler.fair-queuing.group-by");
+		SCHEDULER_FAIR_QUEUING_WEIGHTS = new HashMap<>();
+		for (Map.Entry<String, ConfigValue> entry : getValues(oncueConfig,
+				"scheduler.fair-queuing.weights", ConfigValueType.NUMBER).entrySet()) {
+			SCHEDULER_FAIR_QUEUING_WEIGHTS.put(entry.getKey(),
+					((Number) entry.getValue().unwrapped()).doubleValue());
+		}
+		SCHEDULER_FAIR_QUEUING_PRIORITY_STEP = oncueConfig
+				.getDouble("scheduler.fair-queuing.priority-step");
+
 		AGENT_NAME = oncueConfig.getString("agent.name");
 		AGENT_PATH = oncueConfig.getString("agent.path");
 		AGENT_CLASS = oncueConfig.getString("agent.class");
 		AGENT_HEARTBEAT_FREQUENCY = Duration.create(oncueConfig.getMilliseconds("agent.heartbeat-frequency"),
 				TimeUnit.MILLISECONDS);
+		AGENT_PROGRESS_FLUSH_INTERVAL = Duration.create(
+				oncueConfig.getMilliseconds("agent.progress-flush-interval"), TimeUnit.MILLISECONDS);
+		AGENT_WORKER_DISPATCHER = oncueConfig.getString("agent.worker-dispatcher");
+		AGENT_WORKER_TYPE_DISPATCHERS = new HashMap<>();
+		for (Map.Entry<String, ConfigValue> entry : getValues(oncueConfig,
+				"agent.worker-type-dispatchers", ConfigValueType.STRING).entrySet()) {
+			AGENT_WORKER_TYPE_DISPATCHERS.put(entry.getKey(), (String) entry.getValue().unwrapped());
+		}
+		AGENT_REUSABLE_WORKER_TYPES = new HashSet<>(
+				oncueConfig.getStringList("agent.reusable-worker-types"));
+		AGENT_BATCH_SIZE = oncueConfig.getInt("agent.batch-size");
+		AGENT_WORKER_TYPE_BATCH_SIZES = new HashMap<>();
+		for (Map.Entry<String, ConfigValue> entry : getValues(oncueConfig,
+				"agent.worker-type-batch-sizes", ConfigValueType.NUMBER).entrySet()) {
+			AGENT_WORKER_TYPE_BATCH_SIZES.put(entry.getKey(),
+					((Number) entry.getValue().unwrapped()).intValue());
+		}
+
+		AGENT_WORKER_TYPE_SLOTS = new HashMap<>();
+		for (Map.Entry<String, ConfigValue> entry : getValues(oncueConfig,
+				"agent.worker-type-slots", ConfigValueType.NUMBER).entrySet()) {
+			AGENT_WORKER_TYPE_SLOTS.put(entry.getKey(), ((Number) entry.getValue().unwrapped()).intValue());
+		}
+
+		AGENT_WORKER_TYPE_MEMORY_WEIGHTS = new HashMap<>();
+		for (Map.Entry<String, ConfigValue> entry : getValues(oncueConfig,
+				"agent.worker-type-memory-weights", ConfigValueType.NUMBER).entrySet()) {
+			AGENT_WORKER_TYPE_MEMORY_WEIGHTS.put(entry.getKey(),
+					((Number) entry.getValue().unwrapped()).doubleValue());
+		}
 
 		TIMED_JOBS_RETRY_DELAY = Duration.create(oncueConfig.getMilliseconds("timed-jobs.retry-delay"),
 				TimeUnit.MILLISECONDS);
@@ -93,4 +183,24 @@ public class Settings implements Extension {
 			TIMED_JOBS_TIMETABLE = null;
 		}
 	}
+
+	/**
+	 * Read a map of names to values, such as worker types to weights. A name that contains dots
+	 * may be quoted or not, as "com.example.MyWorker" = 2 and com.example.MyWorker = 2 both give
+	 * the name com.example.MyWorker.
+	 * 
+	 * @throws ConfigException.WrongType if a value is not of the given type
+	 */
+	private static Map<String, ConfigValue> getValues(Config oncueConfig, String path,
+			ConfigValueType type) {
+		Map<String, ConfigValue> values = new HashMap<>();
+		for (Map.Entry<String, ConfigValue> entry : oncueConfig.getConfig(path).entrySet()) {
+			ConfigValue value = entry.getValue();
+			if (value.valueType() != type)
+				throw new ConfigException.WrongType(value.origin(), "oncue." + path + "."
+						+ entry.getKey(), type.name(), value.valueType().name());
+			values.put(Joiner.on('.').join(ConfigUtil.splitPath(entry.getKey())), value);
+		}
+		return values;
+	}
 }
@@ -18,9 +18,11 @@ import static java.lang.String.format;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -32,6 +34,7 @@ import oncue.common.events.AgentStoppedEvent;
 import oncue.common.events.JobCleanupEvent;
 import oncue.common.events.JobEnqueuedEvent;
 import oncue.common.events.JobFailedEvent;
+import oncue.common.events.JobParkedEvent;
 import oncue.common.events.JobProgressEvent;
 import oncue.common.exceptions.DeleteJobException;
 import oncue.common.messages.AbstractWorkRequest;
@@ -41,9 +44,13 @@ import oncue.common.messages.CleanupJobs;
 import oncue.common.messages.DeleteJob;
 import oncue.common.messages.EnqueueJob;
 import oncue.common.messages.Job;
+import oncue.common.messages.Job.SchedulingParam;
 import oncue.common.messages.Job.State;
 import oncue.common.messages.JobFailed;
+import oncue.common.messages.JobCounts;
 import oncue.common.messages.JobProgress;
+import oncue.common.messages.JobProgressDelta;
+import oncue.common.messages.JobQuery;
 import oncue.common.messages.JobSummary;
 import oncue.common.messages.RerunJob;
 import oncue.common.messages.SimpleMessages.SimpleMessage;
@@ -54,17 +61,26 @@ import oncue.common.settings.SettingsProvider;
 import oncue.scheduler.exceptions.JobNotFoundException;
 import oncue.scheduler.exceptions.ScheduleException;
 import scala.concurrent.duration.Deadline;
+import akka.actor.Actor;
 import akka.actor.ActorInitializationException;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Cancellable;
+import akka.actor.Props;
 import akka.actor.Status.Failure;
 import akka.actor.Status.Success;
 import akka.actor.UntypedActor;
+import akka.actor.UntypedActorFactory;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.remote.RemoteClientShutdown;
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+
 /**
  * A scheduler is responsible for keeping a list of registered agents, broadcasting new work to them
  * when it arrives and distributing the work using a variety of scheduling algorithms, depending on
@@ -73,6 +89,37 @@ import akka.remote.RemoteClientShutdown;
 public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest> extends
 		UntypedActor {
 
+	/**
+	 * A cleanup of expired jobs that is being processed in chunks
+	 */
+	private static final class CleanupInProgress {
+
+		private final CleanupJobs cleanupJobs;
+		private final ActorRef requester;
+		private int cleanedJobsCount;
+
+		private CleanupInProgress(CleanupJobs cleanupJobs, ActorRef requester) {
+			this.cleanupJobs = cleanupJobs;
+			this.requester = requester;
+		}
+	}
+
+	/**
+	 * A request that reads complete or failed jobs, returned to the scheduler by the backing store
+	 * writer once it has flushed the writes made before the request
+	 */
+	private static final class FlushedRead {
+
+		private final Object request;
+
+		private FlushedRead(Object request) {
+			this.request = request;
+		}
+	}
+
+	// Orders jobs by ID, as required to page through query results
+	private static final Ordering<Job> JOB_ID_ORDERING = Ordering.from(new JobComparator());
+
 	// A periodic check for dead agents
 	private Cancellable agentMonitor;
 
@@ -82,6 +129,15 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 	// Map an agent to a the set of worker types it can process
 	private Map<String, Set<String>> agentWorkers = new HashMap<>();
 
+	// The order in which agents are told about available work, least recently told first
+	private Set<String> broadcastRotation = new LinkedHashSet<>();
+
+	// Map an agent to the largest capacity it has reported, for schedulers that park oversized jobs
+	private Map<String, Long> agentCapacities = new HashMap<>();
+
+	// The largest capacity reported by any agent that is still registered
+	private long largestAgentCapacity;
+
 	// The persistent backing store
 	protected BackingStore backingStore;
 
@@ -104,6 +160,9 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 	// The queue of unscheduled jobs
 	protected UnscheduledJobs unscheduledJobs;
 
+	// The actor that persists writes asynchronously, if write-behind is enabled
+	private ActorRef backingStoreWriter;
+
 	public List<Job> getScheduledJobs() {
 		return scheduledJobs.getScheduledJobs();
 	}
@@ -123,7 +182,9 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 		try {
 			this.backingStore = backingStore.getConstructor(ActorSystem.class, Settings.class)
 					.newInstance(getContext().system(), settings);
-			unscheduledJobs = new UnscheduledJobs(this.backingStore, log, getComparator());
+			if (settings.SCHEDULER_WRITE_BEHIND_ENABLED)
+				this.backingStore = createWriteBehindBackingStore(this.backingStore);
+			unscheduledJobs = new UnscheduledJobs(this.backingStore, log, createComparator());
 			scheduledJobs = new ScheduledJobs(this.backingStore);
 			log.info("{} is running, backed by {}", getClass().getSimpleName(),
 					backingStore.getSimpleName());
@@ -134,13 +195,69 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 		}
 	}
 
+	/**
+	 * Wrap the backing store so that writes are persisted asynchronously by a child actor
+	 */
+	private BackingStore createWriteBehindBackingStore(final BackingStore backingStore) {
+		backingStoreWriter = getContext().actorOf(new Props(new UntypedActorFactory() {
+
+			@Override
+			public Actor create() throws Exception {
+				return new BackingStoreWriter(backingStore);
+			}
+		}), "backing-store-writer");
+		log.info("Writing to the backing store asynchronously, with {}",
+				settings.SCHEDULER_WRITE_BEHIND_ACK_AFTER_FLUSH ? "acknowledgements after each flush"
+						: "immediate acknowledgements");
+		return new WriteBehindBackingStore(getContext().system(), settings, backingStore,
+				backingStoreWriter);
+	}
+
+	/**
+	 * Acknowledge a request that changed the backing store. If write-behind is enabled with the
+	 * "ack-after-flush" durability mode, the acknowledgement is held back until the changes have
+	 * been flushed.
+	 * 
+	 * @param recipient is the actor to acknowledge
+	 * @param message is the acknowledgement
+	 */
+	private void acknowledge(ActorRef recipient, Object message) {
+		if (backingStoreWriter != null && settings.SCHEDULER_WRITE_BEHIND_ACK_AFTER_FLUSH)
+			backingStoreWriter.tell(new BackingStoreWriter.AwaitFlush(recipient, message,
+					getSelf()), getSelf());
+		else
+			recipient.tell(message, getSelf());
+	}
+
+	/**
+	 * Create the comparator that orders the queue of unscheduled jobs. If fair queuing is enabled,
+	 * it replaces the scheduler's own comparator.
+	 */
+	private Comparator<Job> createComparator() {
+		if (!settings.SCHEDULER_FAIR_QUEUING_ENABLED)
+			return getComparator();
+
+		log.info("Sharing the queue fairly between jobs grouped by {}",
+				settings.SCHEDULER_FAIR_QUEUING_GROUP_BY.isEmpty() ? "worker type"
+						: settings.SCHEDULER_FAIR_QUEUING_GROUP_BY);
+		return new FairQueuingJobComparator(settings.SCHEDULER_FAIR_QUEUING_GROUP_BY,
+				settings.SCHEDULER_FAIR_QUEUING_WEIGHTS,
+				settings.SCHEDULER_FAIR_QUEUING_PRIORITY_STEP);
+	}
+
 	protected Comparator<Job> getComparator() {
 		return new JobComparator();
 	}
 
 	/**
-	 * While there are jobs in the queue, continue sending a "Work available" message to all
-	 * registered agents.
+	 * While there are jobs in the queue, continue sending a "Work available" message to the
+	 * registered agents that can process them.
+	 * 
+	 * Each agent is only told about the worker types it can process, and agents whose worker types
+	 * are not yet known are told about every worker type. Every notified agent is expected to take
+	 * at least one job, so no more agents are notified in a round than there are jobs queued, up to
+	 * the configured maximum. Notified agents move to the back of the rotation, so that the other
+	 * agents are notified first in the next round.
 	 */
 	private void broadcastJobs() {
 
@@ -153,10 +270,34 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 
 		log.debug("Broadcasting jobs");
 
-		for (String agent : agents.keySet()) {
+		Set<String> pendingWorkerTypes = unscheduledJobs.getWorkerTypes();
+		int maxAgents = unscheduledJobs.getSize();
+		if (settings.SCHEDULER_BROADCAST_JOBS_MAX_AGENTS > 0)
+			maxAgents = Math.min(maxAgents, settings.SCHEDULER_BROADCAST_JOBS_MAX_AGENTS);
+
+		List<String> notifiedAgents = new ArrayList<>();
+		for (String agent : broadcastRotation) {
+			if (notifiedAgents.size() == maxAgents)
+				break;
+
+			Set<String> workerTypes = pendingWorkerTypes;
+			if (agentWorkers.containsKey(agent)) {
+				workerTypes = new HashSet<>(Sets.intersection(pendingWorkerTypes,
+						agentWorkers.get(agent)));
+				if (workerTypes.isEmpty())
+					continue;
+			}
+
+			WorkAvailable workAvailable = new WorkAvailable(workerTypes);
 			if (testProbe != null)
-				testProbe.tell(createWorkAvailable(), getSelf());
-			getContext().actorFor(agent).tell(createWorkAvailable(), getSelf());
+				testProbe.tell(workAvailable, getSelf());
+			getContext().actorFor(agent).tell(workAvailable, getSelf());
+			notifiedAgents.add(agent);
+		}
+
+		for (String agent : notifiedAgents) {
+			broadcastRotation.remove(agent);
+			broadcastRotation.add(agent);
 		}
 
 		// Tee-up another broadcast if necessary
@@ -203,14 +344,32 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 	 */
 	private void cleanupJob(Job job, String agent) {
 		log.debug("Cleaning up {} for agent {}", job, agent);
+		Job scheduledJob = scheduledJobs.getJobById(job.getId());
 		scheduledJobs.removeJobById(job.getId(), agent);
+		if (scheduledJob != null)
+			onJobUnscheduled(scheduledJob);
 	}
 
 	/**
-	 * Construct a message to advertise the type of work available.
+	 * Clean up the next chunk of expired jobs. If the chunk was full, there may be more to clean
+	 * up, so the cleanup continues in another message to avoid blocking the scheduler for the
+	 * whole history of jobs.
 	 */
-	private WorkAvailable createWorkAvailable() {
-		return new WorkAvailable(unscheduledJobs.getWorkerTypes());
+	private void cleanupJobs(CleanupInProgress cleanup) {
+		CleanupJobs cleanupJobs = cleanup.cleanupJobs;
+		int chunkSize = settings.SCHEDULER_CLEANUP_CHUNK_SIZE;
+		int numCleanedJobs = backingStore.cleanupJobs(cleanupJobs.isIncludeFailedJobs(),
+				cleanupJobs.getExpirationAge(), chunkSize);
+		cleanup.cleanedJobsCount += numCleanedJobs;
+
+		if (numCleanedJobs == chunkSize) {
+			getSelf().tell(cleanup, getSelf());
+			return;
+		}
+
+		getContext().system().eventStream().publish(new JobCleanupEvent());
+		cleanup.requester.tell(new Success(format("Removed %d jobs", cleanup.cleanedJobsCount)),
+				getSelf());
 	}
 
 	/**
@@ -241,6 +400,7 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 					+ " is an unrecognised job state");
 		}
 		job.setState(State.DELETED);
+		onJobDeleted(job);
 		return job;
 	}
 
@@ -250,6 +410,13 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 	private void deregisterAgent(String url) {
 		agents.remove(url);
 		agentWorkers.remove(url);
+		broadcastRotation.remove(url);
+		if (agentCapacities.remove(url) != null) {
+			largestAgentCapacity = 0;
+			for (long capacity : agentCapacities.values()) {
+				largestAgentCapacity = Math.max(largestAgentCapacity, capacity);
+			}
+		}
 
 		// Stop listening to remote events
 		getContext().system().eventStream().unsubscribe(getContext().actorFor(url));
@@ -262,19 +429,32 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 
 	/**
 	 * Dispatch jobs to agents according to entries in the schedule. This method will also keep
-	 * record of the jobs scheduled to each agent, in case an agent dies.
+	 * record of the jobs scheduled to each agent, in case an agent dies. The whole schedule is
+	 * persisted in a single call to the backing store before any agent is told about its work.
 	 * 
 	 * @param schedule is the {@linkplain Schedule} that maps agents to jobs
 	 */
 	protected void dispatchJobs(Schedule schedule) {
 		validateSchedule(schedule);
+
+		// Assign the jobs to the agents
+		List<Job> scheduledJobList = new ArrayList<>();
 		for (Map.Entry<String, WorkResponse> entry : schedule.getEntries()) {
 			ActorRef agent = getContext().actorFor(entry.getKey());
-			WorkResponse workResponse = entry.getValue();
+			List<Job> jobs = entry.getValue().getJobs();
+			unscheduledJobs.dequeueJobs(jobs);
+			scheduledJobs.assignJobs(agent.path().toString(), jobs);
+			scheduledJobList.addAll(jobs);
+		}
+		for (Job job : scheduledJobList) {
+			onJobScheduled(job);
+		}
+		if (!scheduledJobList.isEmpty())
+			backingStore.scheduleJobs(scheduledJobList);
 
-			// Assign the jobs to the agent
-			unscheduledJobs.removeJobs(workResponse.getJobs());
-			scheduledJobs.addJobs(agent.path().toString(), workResponse.getJobs());
+		for (Map.Entry<String, WorkResponse> entry : schedule.getEntries()) {
+			ActorRef agent = getContext().actorFor(entry.getKey());
+			WorkResponse workResponse = entry.getValue();
 
 			log.debug("Sending work response with {} jobs to agent {}", workResponse.getJobs()
 					.size(), agent.toString());
@@ -285,7 +465,10 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 	}
 
 	/**
-	 * Enqueue a new job
+	 * Enqueue a new job. Its scheduling parameters are parsed and validated here, once, so the
+	 * queue and the scheduling passes can use the cached values.
+	 * 
+	 * @throws IllegalArgumentException if a scheduling parameter of the job is invalid
 	 */
 	private Job enqueueJob(EnqueueJob enqueueJob) {
 		Job job = new Job(backingStore.getNextJobID(), enqueueJob.getWorkerType());
@@ -294,7 +477,9 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 			job.getParams().putAll(jobParams);
 		}
 		augmentJob(job);
+		job.parseSchedulingParams(getSchedulingParams());
 		unscheduledJobs.addJob(job);
+		onJobEnqueued(job);
 		getContext().system().eventStream().publish(new JobEnqueuedEvent(job));
 		startJobsBroadcast();
 		return job;
@@ -312,19 +497,131 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 	};
 
 	/**
-	 * Look through all jobs to find an existing job
+	 * @return the parameters this scheduler reads from a job, which are validated when the job is
+	 *         enqueued. Every scheduler orders its queue by priority.
+	 */
+	protected Set<SchedulingParam> getSchedulingParams() {
+		return EnumSet.of(SchedulingParam.PRIORITY);
+	}
+
+	/**
+	 * This method can be overridden by a scheduler that parks jobs too large for any agent, to
+	 * read the capacity of an agent, such as its total memory, from its work request.
+	 * 
+	 * @param workRequest The work request
+	 * @return the capacity of the agent, in the same units as the size of a job, or -1 if unknown
+	 */
+	protected long getAgentCapacity(WorkRequest workRequest) {
+		return -1;
+	}
+
+	/**
+	 * Record the capacity of an agent. If an agent reports more capacity than any before it, the
+	 * parked jobs that now fit are returned to the queue.
+	 */
+	private void recordAgentCapacity(ActorRef agent, long capacity) {
+		String url = agent.path().toString();
+		Long knownCapacity = agentCapacities.get(url);
+		if (knownCapacity != null && knownCapacity >= capacity)
+			return;
+
+		agentCapacities.put(url, capacity);
+		if (capacity <= largestAgentCapacity)
+			return;
+
+		largestAgentCapacity = capacity;
+		List<Job> unparkedJobs = unscheduledJobs.unpark(capacity);
+		if (!unparkedJobs.isEmpty())
+			log.info("Unparked {} jobs, as agent {} has a capacity of {}", unparkedJobs.size(), url,
+					capacity);
+	}
+
+	/**
+	 * @return true if a job of the given size is too large for every agent that has reported its
+	 *         capacity
+	 */
+	protected boolean isOversized(long size) {
+		return !agentCapacities.isEmpty() && size > largestAgentCapacity;
+	}
+
+	/**
+	 * Park jobs that are too large for every agent, so that they are no longer offered to agents or
+	 * visited when scheduling, until an agent reports enough capacity. This must not be called
+	 * while iterating over the unscheduled jobs.
+	 * 
+	 * @param jobSizes Maps the ID of each job to park to its size
+	 */
+	protected void parkJobs(Map<Long, Long> jobSizes) {
+		for (Map.Entry<Long, Long> jobSize : jobSizes.entrySet()) {
+			Job job = unscheduledJobs.park(jobSize.getKey(), jobSize.getValue());
+			if (job == null)
+				continue;
+
+			log.warning("Parking {}, which needs {} but the largest agent has a capacity of {}", job,
+					jobSize.getValue(), largestAgentCapacity);
+			getContext().system().eventStream()
+					.publish(new JobParkedEvent(job, jobSize.getValue(), largestAgentCapacity));
+		}
+	}
+
+	/**
+	 * Called when a new or re-run job has been added to the queue. This allows a scheduler
+	 * implementation to work out what it needs from the job once, rather than on every scheduling
+	 * pass.
+	 * 
+	 * @param job The queued job
+	 */
+	protected void onJobEnqueued(Job job) {
+		// NOOP
+	}
+
+	/**
+	 * Called when a job has been deleted, which takes it out of the queue if it was queued.
+	 * 
+	 * @param job The deleted job
+	 */
+	protected void onJobDeleted(Job job) {
+		// NOOP
+	}
+
+	/**
+	 * Called when a job has been scheduled against an agent. This allows a scheduler implementation
+	 * to keep its own records of the scheduled jobs up to date, rather than rebuilding them from
+	 * {@linkplain #getScheduledJobs()}.
+	 * 
+	 * @param job The scheduled job
+	 */
+	protected void onJobScheduled(Job job) {
+		// NOOP
+	}
+
+	/**
+	 * Called when a job is no longer scheduled against an agent, because it has completed or failed
+	 * or because the agent has died.
+	 * 
+	 * @param job The job, as it was scheduled
+	 */
+	protected void onJobUnscheduled(Job job) {
+		// NOOP
+	}
+
+	/**
+	 * Find an existing job by ID. Unscheduled and scheduled jobs are looked up in memory, while
+	 * complete and failed jobs are loaded individually from the backing store.
 	 * 
 	 * @param id is the unique job identifier
 	 * @return the matching job
 	 * @throws JobNotFoundException
 	 */
 	private Job findExistingJob(long id) throws JobNotFoundException {
-		Set<Job> jobs = getAllJobs();
-		for (Job job : jobs) {
-			if (job.getId() == id)
-				return job;
-		}
-		throw new JobNotFoundException("Failed to find an existing job with ID " + id);
+		Job job = unscheduledJobs.getJobById(id);
+		if (job == null)
+			job = scheduledJobs.getJobById(id);
+		if (job == null)
+			job = backingStore.loadJobById(id);
+		if (job == null)
+			throw new JobNotFoundException("Failed to find an existing job with ID " + id);
+		return job;
 	}
 
 	/**
@@ -342,18 +639,21 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 	}
 
 	/**
-	 * @return the full set of unscheduled, scheduled, complete and failed jobs
+	 * Filter an iterator of jobs down to those matching a query, keeping only the lowest IDs if the
+	 * query is limited to a page of jobs
 	 */
-	private Set<Job> getAllJobs() {
-		Set<Job> jobs = new HashSet<>();
-		for (Iterator<Job> iterator = unscheduledJobs.iterator(); iterator.hasNext();) {
-			jobs.add(iterator.next());
-		}
-		jobs.addAll(scheduledJobs.getJobs());
-		jobs.addAll(backingStore.getCompletedJobs());
-		jobs.addAll(backingStore.getFailedJobs());
+	private List<Job> findMatchingJobs(final JobQuery query, Iterator<Job> jobs) {
+		Iterator<Job> matchingJobs = Iterators.filter(jobs, new Predicate<Job>() {
+
+			@Override
+			public boolean apply(Job job) {
+				return query.matches(job);
+			}
+		});
 
-		return jobs;
+		if (query.getPageSize() > 0)
+			return JOB_ID_ORDERING.leastOf(matchingJobs, query.getPageSize());
+		return JOB_ID_ORDERING.sortedCopy(Lists.newArrayList(matchingJobs));
 	}
 
 	/**
@@ -419,6 +719,15 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 	@Override
 	public void onReceive(Object message) throws Exception {
 
+		if (message instanceof FlushedRead)
+			message = ((FlushedRead) message).request;
+		else if (backingStoreWriter != null && readsBackingStore(message)) {
+			// Have the pending writes flushed first, without blocking the scheduler
+			backingStoreWriter.tell(new BackingStoreWriter.Sync(getSelf(),
+					new FlushedRead(message), getSender()), getSelf());
+			return;
+		}
+
 		if (testProbe != null)
 			testProbe.forward(message, getContext());
 
@@ -448,15 +757,20 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 
 		else if (message instanceof EnqueueJob) {
 			log.debug("Got a new job to enqueue: {}", message);
-			Job job = enqueueJob((EnqueueJob) message);
-			getSender().tell(job, getSelf());
+			try {
+				Job job = enqueueJob((EnqueueJob) message);
+				acknowledge(getSender(), job);
+			} catch (IllegalArgumentException e) {
+				log.error(e, "Failed to enqueue job {}", message);
+				getSender().tell(new Failure(e), getSelf());
+			}
 		}
 
 		else if (message instanceof RerunJob) {
 			log.debug("Got an existing job to re-run: {}", message);
 			Job job = findExistingJob(((RerunJob) message).getId());
 			Job rerunJob = rerunJob(job);
-			getSender().tell(rerunJob, getSelf());
+			acknowledge(getSender(), rerunJob);
 		}
 
 		else if (message instanceof DeleteJob) {
@@ -465,7 +779,7 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 			Job deleteJob;
 			try {
 				deleteJob = deleteJob(job);
-				getSender().tell(deleteJob, getSelf());
+				acknowledge(getSender(), deleteJob);
 			} catch (DeleteJobException e) {
 				log.error(e, "Failed to delete job {}", job.getId());
 				getSender().tell(new Failure(e), getSelf());
@@ -474,11 +788,11 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 
 		else if (message instanceof CleanupJobs) {
 			log.debug("Clean up jobs");
-			CleanupJobs cleanupJobs = (CleanupJobs) message;
-			int numCleanedJobs = backingStore.cleanupJobs(cleanupJobs.isIncludeFailedJobs(),
-					cleanupJobs.getExpirationAge());
-			getContext().system().eventStream().publish(new JobCleanupEvent());
-			getSender().tell(new Success(format("Removed %d jobs", numCleanedJobs)), getSelf());
+			cleanupJobs(new CleanupInProgress((CleanupJobs) message, getSender()));
+		}
+
+		else if (message instanceof CleanupInProgress) {
+			cleanupJobs((CleanupInProgress) message);
 		}
 
 		else if (message instanceof AbstractWorkRequest) {
@@ -486,6 +800,12 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 					message);
 			AbstractWorkRequest workRequest = (AbstractWorkRequest) message;
 			agentWorkers.put(getSender().path().toString(), workRequest.getWorkerTypes());
+
+			// Record the capacity first, as it may unpark the jobs this agent can run
+			long capacity = getAgentCapacity((WorkRequest) workRequest);
+			if (capacity >= 0)
+				recordAgentCapacity(getSender(), capacity);
+
 			boolean workAvailable = unscheduledJobs.isWorkAvailable(workRequest.getWorkerTypes());
 			if (!workAvailable || paused)
 				replyWithNoWork(getSender());
@@ -494,6 +814,20 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 			}
 		}
 
+		else if (message instanceof JobProgressDelta) {
+			JobProgressDelta delta = (JobProgressDelta) message;
+			Job scheduledJob = scheduledJobs.getJobById(delta.getJobId());
+			if (scheduledJob == null)
+				log.warning("Agent reported progress on job {}, which is not scheduled",
+						delta.getJobId());
+			else {
+				Job job = (Job) scheduledJob.clone();
+				delta.applyTo(job);
+				log.debug("Agent reported progress of {} on {}", job.getProgress(), job);
+				handleJobProgress(job, getSender().path().toString());
+			}
+		}
+
 		else if (message instanceof JobProgress) {
 			Job job = ((JobProgress) message).getJob();
 			log.debug("Agent reported progress of {} on {}", job.getProgress(), job);
@@ -511,6 +845,16 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 			replyWithJobSummary();
 		}
 
+		else if (message instanceof JobQuery) {
+			log.debug("Received a job query from {}: {}", getSender(), message);
+			getSender().tell(queryJobs((JobQuery) message), getSelf());
+		}
+
+		else if (message == SimpleMessage.JOB_COUNTS) {
+			log.debug("Received a request for job counts from {}", getSender());
+			replyWithJobCounts();
+		}
+
 		else if (message == SimpleMessage.LIST_AGENTS) {
 			log.debug("Received a request for a the list of registered agents from {}", getSender());
 			replyWithAgentSummary();
@@ -527,6 +871,15 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 		}
 	}
 
+	/**
+	 * @return true if handling a request may read complete or failed jobs from the backing store
+	 */
+	private static boolean readsBackingStore(Object message) {
+		return message instanceof RerunJob || message instanceof DeleteJob
+				|| message instanceof CleanupJobs || message instanceof JobQuery
+				|| message == SimpleMessage.JOB_SUMMARY || message == SimpleMessage.JOB_COUNTS;
+	}
+
 	/**
 	 * Pause job scheduling temporarily
 	 */
@@ -543,6 +896,10 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 		if (jobsBroadcast != null)
 			jobsBroadcast.cancel();
 
+		// A restarted scheduler opens a new backing store, so release this one
+		if (backingStore != null)
+			backingStore.close();
+
 		log.info("Shut down.");
 	}
 
@@ -559,27 +916,29 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 	 * @param agent is the Agent to check for incomplete jobs
 	 */
 	private void rebroadcastJobs(String agent) {
-		if (!scheduledJobs.getJobs(agent).isEmpty()) {
 
-			// Grab the list of jobs scheduled for this agent
-			List<Job> agentJobs = new ArrayList<>();
-			for (Job scheduledJob : scheduledJobs.getJobs(agent)) {
-				agentJobs.add(scheduledJob);
-			}
-
-			for (Job job : agentJobs) {
+		// Remove the jobs scheduled for this agent
+		List<Job> agentJobs = scheduledJobs.removeJobs(agent);
+		for (Job job : agentJobs) {
+			onJobUnscheduled(job);
+		}
 
-				// Remove job from the agent
-				scheduledJobs.removeJobById(job.getId(), agent);
+		if (!agentJobs.isEmpty()) {
 
-				// Reset job state and progress
+			// Reset job state and progress
+			for (Job job : agentJobs) {
 				job.setState(State.QUEUED);
 				job.setProgress(0);
-				handleJobProgress(job, agent);
+			}
+			if (backingStore != null)
+				backingStore.persistJobsProgress(agentJobs);
 
-				// Add jobs back onto the unscheduled queue
-				unscheduledJobs.addJob(job);
+			for (Job job : agentJobs) {
+				getContext().system().eventStream().publish(new JobProgressEvent(job));
 			}
+
+			// Add jobs back onto the unscheduled queue
+			unscheduledJobs.addJobs(agentJobs);
 		}
 		broadcastJobs();
 	}
@@ -597,6 +956,7 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 			getContext().system().eventStream().subscribe(getSelf(), RemoteClientShutdown.class);
 			getContext().system().eventStream().publish(new AgentStartedEvent(agent));
 			log.info("Registered agent: {}", url);
+			broadcastRotation.add(url);
 		}
 
 		agents.put(url, settings.SCHEDULER_AGENT_HEARTBEAT_TIMEOUT.fromNow());
@@ -618,7 +978,63 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 	 * Construct and reply with a job summary message
 	 */
 	private void replyWithJobSummary() {
-		getSender().tell(new JobSummary(getAllJobs()), getSelf());
+		getSender().tell(queryJobs(new JobQuery()), getSelf());
+	}
+
+	/**
+	 * Reply with the number of jobs in each stage of their lifecycle
+	 */
+	private void replyWithJobCounts() {
+		getSender().tell(
+				new JobCounts(unscheduledJobs.getSize(), scheduledJobs.getSize(), backingStore
+						.getCompletedJobsCount(), backingStore.getFailedJobsCount(), unscheduledJobs
+						.getParkedSize()), getSelf());
+	}
+
+	/**
+	 * Find the page of jobs that match a query. Unscheduled and scheduled jobs are filtered in
+	 * memory, while the filtering of complete and failed jobs is left to the backing store.
+	 * 
+	 * @param query is the {@linkplain JobQuery} to answer
+	 * @return a {@linkplain JobSummary} containing the matching jobs and the cursor for the next
+	 *         page, if the page is full
+	 */
+	private JobSummary queryJobs(JobQuery query) {
+		List<Job> jobs = new ArrayList<>();
+
+		if (query.isSingleJob()) {
+			try {
+				Job job = findExistingJob(query.getMinId());
+				if (query.matches(job))
+					jobs.add(job);
+			} catch (JobNotFoundException e) {
+				log.debug("No job matches {}", query);
+			}
+			return new JobSummary(jobs);
+		}
+
+		if (query.includesState(State.QUEUED)) {
+			Iterator<Job> iterator;
+			if (query.getWorkerTypes() == null || query.getWorkerTypes().isEmpty())
+				iterator = unscheduledJobs.iterator();
+			else
+				iterator = unscheduledJobs.iterator(query.getWorkerTypes());
+			jobs.addAll(findMatchingJobs(query, iterator));
+		}
+
+		if (query.includesState(State.SCHEDULED) || query.includesState(State.RUNNING))
+			jobs.addAll(findMatchingJobs(query, scheduledJobs.getJobs().iterator()));
+
+		if (query.includesState(State.COMPLETE) || query.includesState(State.FAILED))
+			jobs.addAll(backingStore.queryJobs(query));
+
+		jobs = findMatchingJobs(query, jobs.iterator());
+
+		Long nextCursor = null;
+		if (query.getPageSize() > 0 && jobs.size() == query.getPageSize())
+			nextCursor = jobs.get(jobs.size() - 1).getId();
+
+		return new JobSummary(jobs, nextCursor);
 	}
 
 	/**
@@ -640,6 +1056,7 @@ public abstract class AbstractScheduler<WorkRequest extends AbstractWorkRequest>
 
 		// TODO Find a way to make this transactional
 		unscheduledJobs.addJob(rerunJob);
+		onJobEnqueued(rerunJob);
 		if (job.getState() == Job.State.COMPLETE)
 			backingStore.removeCompletedJobById(job.getId());
 		else if (job.getState() == Job.State.FAILED)
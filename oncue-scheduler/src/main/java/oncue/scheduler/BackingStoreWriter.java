@@ -0,0 +1,520 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.scheduler;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import oncue.backingstore.BackingStore;
+import oncue.common.messages.Job;
+import oncue.common.settings.Settings;
+import oncue.common.settings.SettingsProvider;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.UntypedActor;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+/**
+ * A write-behind stage for a {@linkplain BackingStore}. Writes are buffered in arrival order and
+ * flushed to the backing store in batches, either when the buffer reaches the maximum batch size
+ * or when the flush interval has elapsed since the first pending write.
+ *
+ * Repeated progress updates for the same job are coalesced, so only the latest progress is
+ * written. Consecutive writes of the same kind are persisted with a single call to the batch
+ * operations of the backing store.
+ *
+ * A write that fails is retried with a growing delay, holding back the writes behind it so they
+ * keep their order. Once it has failed too many times it is dropped and reported. New writes are
+ * dropped and reported while the queue is full.
+ */
+public class BackingStoreWriter extends UntypedActor {
+
+	/**
+	 * The kinds of write that can be deferred
+	 */
+	enum Operation {
+		ADD_SCHEDULED, ADD_UNSCHEDULED, PERSIST_FAILURE, PERSIST_PROGRESS, REMOVE_COMPLETED, REMOVE_FAILED, REMOVE_SCHEDULED, REMOVE_UNSCHEDULED, SCHEDULE
+	}
+
+	/**
+	 * A single deferred write against one job
+	 */
+	static class Write implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Operation operation;
+		private final long jobId;
+		private Job job;
+
+		// The number of times this write has failed to flush
+		private int failures;
+
+		Write(Operation operation, Job job) {
+			this.operation = operation;
+			this.jobId = job.getId();
+			this.job = job;
+		}
+
+		Write(Operation operation, long jobId) {
+			this.operation = operation;
+			this.jobId = jobId;
+		}
+	}
+
+	/**
+	 * Ask the writer to deliver a message once every write received before it has been flushed
+	 */
+	static class AwaitFlush implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ActorRef recipient;
+		private final Object message;
+		private final ActorRef sender;
+
+		AwaitFlush(ActorRef recipient, Object message, ActorRef sender) {
+			this.recipient = recipient;
+			this.message = message;
+			this.sender = sender;
+		}
+	}
+
+	/**
+	 * Ask the writer to flush now and then deliver a message, so a read can see the earlier writes.
+	 * Unlike {@linkplain AwaitFlush}, the message is delivered at once if a write is waiting to be
+	 * retried, so the read may miss the writes still in the queue.
+	 */
+	static class Sync extends AwaitFlush {
+
+		private static final long serialVersionUID = 1L;
+
+		Sync(ActorRef recipient, Object message, ActorRef sender) {
+			super(recipient, message, sender);
+		}
+	}
+
+	/**
+	 * A snapshot of the state of the writer, sent in reply to {@linkplain BackingStoreWriter#STATS}
+	 */
+	public static class Stats implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int queueDepth;
+		private final long flushes;
+		private final long writes;
+		private final long coalescedWrites;
+		private final long droppedWrites;
+		private final long lastFlushLatency;
+		private final long maxFlushLatency;
+
+		Stats(int queueDepth, long flushes, long writes, long coalescedWrites,
+				long droppedWrites, long lastFlushLatency, long maxFlushLatency) {
+			this.queueDepth = queueDepth;
+			this.flushes = flushes;
+			this.writes = writes;
+			this.coalescedWrites = coalescedWrites;
+			this.droppedWrites = droppedWrites;
+			this.lastFlushLatency = lastFlushLatency;
+			this.maxFlushLatency = maxFlushLatency;
+		}
+
+		/**
+		 * @return the number of writes waiting to be flushed
+		 */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * @return the number of successful flushes
+		 */
+		public long getFlushes() {
+			return flushes;
+		}
+
+		/**
+		 * @return the number of writes persisted to the backing store
+		 */
+		public long getWrites() {
+			return writes;
+		}
+
+		/**
+		 * @return the number of progress updates that were superseded before being flushed
+		 */
+		public long getCoalescedWrites() {
+			return coalescedWrites;
+		}
+
+		/**
+		 * @return the number of writes dropped because they kept failing or the queue was full
+		 */
+		public long getDroppedWrites() {
+			return droppedWrites;
+		}
+
+		/**
+		 * @return the duration of the most recent flush, in milliseconds
+		 */
+		public long getLastFlushLatency() {
+			return lastFlushLatency;
+		}
+
+		/**
+		 * @return the duration of the slowest flush, in milliseconds
+		 */
+		public long getMaxFlushLatency() {
+			return maxFlushLatency;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"queue depth=%s, flushes=%s, writes=%s, coalesced=%s, dropped=%s, latency=%sms (max %sms)",
+					queueDepth, flushes, writes, coalescedWrites, droppedWrites, lastFlushLatency,
+					maxFlushLatency);
+		}
+	}
+
+	// Flush the pending writes
+	static final String FLUSH = "FLUSH";
+
+	// Reply with a snapshot of the writer's statistics
+	public static final String STATS = "STATS";
+
+	// The longest delay before retrying a write that failed
+	private static final FiniteDuration MAX_RETRY_DELAY = Duration.create(1, TimeUnit.MINUTES);
+
+	// The backing store that receives the writes
+	private final BackingStore backingStore;
+
+	// The pending writes, in arrival order
+	private final LinkedList<Write> pendingWrites = new LinkedList<>();
+
+	// Map a job ID to its pending progress write, so later progress can replace it
+	private final Map<Long, Write> pendingProgress = new HashMap<>();
+
+	// The messages to deliver once the pending writes have been flushed
+	private final List<AwaitFlush> pendingAcks = new ArrayList<>();
+
+	// The scheduled flush, if there is one
+	private Cancellable scheduledFlush;
+
+	// Whether the scheduled flush is a retry of a failed write, which nothing should bring forward
+	private boolean retrying;
+
+	private final Settings settings = SettingsProvider.SettingsProvider.get(getContext().system());
+
+	private final LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+	private long flushes;
+	private long writes;
+	private long coalescedWrites;
+	private long droppedWrites;
+	private long lastFlushLatency;
+	private long maxFlushLatency;
+
+	/**
+	 * @param backingStore is the {@linkplain BackingStore} to write to. It must be safe to use from
+	 *            more than one thread, as the scheduler continues to read from it directly. The
+	 *            writer closes it when the writer stops.
+	 */
+	public BackingStoreWriter(BackingStore backingStore) {
+		this.backingStore = backingStore;
+	}
+
+	@Override
+	public void onReceive(Object message) throws Exception {
+		if (message instanceof Write) {
+			Write write = (Write) message;
+
+			// The queue only grows past a batch while the backing store is failing
+			if (pendingWrites.size() >= settings.SCHEDULER_WRITE_BEHIND_MAX_QUEUE_SIZE) {
+				log.error("Dropping {} write for job {}, as {} writes are waiting to be flushed",
+						write.operation, write.jobId, pendingWrites.size());
+				droppedWrites++;
+				return;
+			}
+
+			addWrite(write);
+			if (pendingWrites.size() >= settings.SCHEDULER_WRITE_BEHIND_MAX_BATCH_SIZE)
+				flush();
+			else
+				scheduleFlush();
+		}
+
+		else if (message instanceof Sync) {
+			flush();
+			deliver((Sync) message);
+		}
+
+		else if (message instanceof AwaitFlush) {
+			AwaitFlush awaitFlush = (AwaitFlush) message;
+			if (pendingWrites.isEmpty())
+				deliver(awaitFlush);
+			else
+				pendingAcks.add(awaitFlush);
+		}
+
+		else if (FLUSH.equals(message)) {
+			scheduledFlush = null;
+			retrying = false;
+			flush();
+		}
+
+		else if (STATS.equals(message)) {
+			getSender().tell(
+					new Stats(pendingWrites.size(), flushes, writes, coalescedWrites,
+							droppedWrites, lastFlushLatency, maxFlushLatency), getSelf());
+		}
+
+		else
+			unhandled(message);
+	}
+
+	@Override
+	public void postStop() {
+		if (scheduledFlush != null)
+			scheduledFlush.cancel();
+
+		// Don't lose any writes on a clean shutdown, then release the backing store
+		retrying = false;
+		flush();
+		backingStore.close();
+		super.postStop();
+	}
+
+	/**
+	 * Buffer a write, coalescing it with the pending progress of the same job where possible. A
+	 * progress update only replaces an earlier one if no other write for that job has arrived in
+	 * between, so the order of writes for a job is never changed.
+	 */
+	private void addWrite(Write write) {
+		if (write.operation == Operation.PERSIST_PROGRESS) {
+			Write pending = pendingProgress.get(write.jobId);
+			if (pending != null) {
+				pending.job = write.job;
+				coalescedWrites++;
+				return;
+			}
+			pendingProgress.put(write.jobId, write);
+		} else
+			pendingProgress.remove(write.jobId);
+
+		pendingWrites.add(write);
+	}
+
+	/**
+	 * Write every pending write to the backing store. Runs of the same operation are persisted with
+	 * a single batch call. If a batch fails, the rest of the flush goes one write at a time, so each
+	 * write that succeeds is removed from the queue and never sent again. A write that fails is
+	 * retried after a delay, holding back the writes behind it, until it has failed too many times
+	 * and is dropped.
+	 * 
+	 * The writes of a batch that failed part way through are sent again, so a backing store must
+	 * either apply a batch all or nothing or be able to apply its writes twice. The Redis backing
+	 * store runs its batches of additions and progress in a transaction or a single command, while
+	 * its batches of removals only remove IDs from lists, which is safe to repeat.
+	 */
+	private void flush() {
+		if (pendingWrites.isEmpty() || retrying)
+			return;
+
+		long start = System.currentTimeMillis();
+		int flushed = 0;
+		boolean batched = true;
+		while (!pendingWrites.isEmpty()) {
+			List<Write> run = nextRun(batched);
+			Write first = run.get(0);
+			try {
+				persist(first.operation, run);
+			} catch (Exception e) {
+				if (run.size() > 1) {
+					log.warning("Failed to flush a batch of {} {} writes, retrying them one at a time: {}",
+							run.size(), first.operation, e);
+					batched = false;
+					continue;
+				}
+
+				first.failures++;
+				if (first.failures < settings.SCHEDULER_WRITE_BEHIND_MAX_RETRIES) {
+					FiniteDuration delay = getRetryDelay(first);
+					log.error(e, "Failed to flush {} write for job {} (attempt {} of {}), will retry in {}",
+							first.operation, first.jobId, first.failures,
+							settings.SCHEDULER_WRITE_BEHIND_MAX_RETRIES, delay);
+					writes += flushed;
+					scheduleFlush(delay);
+					retrying = true;
+					return;
+				}
+
+				log.error(e, "Dropping {} write for job {} after {} failed attempts", first.operation,
+						first.jobId, first.failures);
+				removeFirstWrite(first);
+				droppedWrites++;
+				continue;
+			}
+
+			for (Write write : run) {
+				removeFirstWrite(write);
+			}
+			flushed += run.size();
+		}
+
+		lastFlushLatency = System.currentTimeMillis() - start;
+		maxFlushLatency = Math.max(maxFlushLatency, lastFlushLatency);
+		flushes++;
+		writes += flushed;
+		log.debug("Flushed {} writes in {}ms", flushed, lastFlushLatency);
+
+		for (AwaitFlush awaitFlush : pendingAcks) {
+			deliver(awaitFlush);
+		}
+		pendingAcks.clear();
+	}
+
+	private void deliver(AwaitFlush awaitFlush) {
+		awaitFlush.recipient.tell(awaitFlush.message, awaitFlush.sender);
+	}
+
+	/**
+	 * Take the writes at the head of the queue that can be persisted together. Operations the
+	 * backing store has no batch call for are always persisted one write at a time.
+	 */
+	private List<Write> nextRun(boolean batched) {
+		Write first = pendingWrites.getFirst();
+		switch (first.operation) {
+		case PERSIST_FAILURE:
+		case REMOVE_COMPLETED:
+		case REMOVE_FAILED:
+			batched = false;
+			break;
+		default:
+			break;
+		}
+		if (!batched)
+			return Collections.singletonList(first);
+
+		List<Write> run = new ArrayList<>();
+		for (Write write : pendingWrites) {
+			if (write.operation != first.operation
+					|| run.size() >= settings.SCHEDULER_WRITE_BEHIND_MAX_BATCH_SIZE)
+				break;
+			run.add(write);
+		}
+		return run;
+	}
+
+	/**
+	 * Remove the write at the head of the queue, once it has been persisted or dropped
+	 */
+	private void removeFirstWrite(Write write) {
+		pendingWrites.removeFirst();
+		if (pendingProgress.get(write.jobId) == write)
+			pendingProgress.remove(write.jobId);
+	}
+
+	/**
+	 * @return the delay before retrying a write, which doubles with each failure
+	 */
+	private FiniteDuration getRetryDelay(Write write) {
+		FiniteDuration delay = settings.SCHEDULER_WRITE_BEHIND_FLUSH_INTERVAL;
+		for (int i = 1; i < write.failures && delay.lt(MAX_RETRY_DELAY); i++) {
+			delay = delay.mul(2);
+		}
+		return delay.lt(MAX_RETRY_DELAY) ? delay : MAX_RETRY_DELAY;
+	}
+
+	/**
+	 * Persist a run of writes of the same operation
+	 */
+	private void persist(Operation operation, List<Write> run) {
+		List<Job> jobs = new ArrayList<>(run.size());
+		for (Write write : run) {
+			// Removals by ID only need a job with the right ID
+			if (write.job != null)
+				jobs.add(write.job);
+			else
+				jobs.add(new Job(write.jobId, null));
+		}
+
+		switch (operation) {
+		case ADD_SCHEDULED:
+			backingStore.addScheduledJobs(jobs);
+			break;
+		case ADD_UNSCHEDULED:
+			backingStore.addUnscheduledJobs(jobs);
+			break;
+		case PERSIST_FAILURE:
+			for (Job job : jobs) {
+				backingStore.persistJobFailure(job);
+			}
+			break;
+		case PERSIST_PROGRESS:
+			backingStore.persistJobsProgress(jobs);
+			break;
+		case REMOVE_COMPLETED:
+			for (Write write : run) {
+				backingStore.removeCompletedJobById(write.jobId);
+			}
+			break;
+		case REMOVE_FAILED:
+			for (Write write : run) {
+				backingStore.removeFailedJobById(write.jobId);
+			}
+			break;
+		case REMOVE_SCHEDULED:
+			backingStore.removeScheduledJobs(jobs);
+			break;
+		case REMOVE_UNSCHEDULED:
+			backingStore.removeUnscheduledJobs(jobs);
+			break;
+		case SCHEDULE:
+			backingStore.scheduleJobs(jobs);
+			break;
+		}
+	}
+
+	/**
+	 * Tee-up a flush after the flush interval, unless one is already scheduled
+	 */
+	private void scheduleFlush() {
+		if (scheduledFlush != null)
+			return;
+
+		scheduleFlush(settings.SCHEDULER_WRITE_BEHIND_FLUSH_INTERVAL);
+	}
+
+	/**
+	 * Tee-up a flush after a delay, replacing any flush that is already scheduled
+	 */
+	private void scheduleFlush(FiniteDuration delay) {
+		if (scheduledFlush != null)
+			scheduledFlush.cancel();
+
+		scheduledFlush = getContext().system().scheduler()
+				.scheduleOnce(delay, getSelf(), FLUSH, getContext().dispatcher());
+	}
+}
@@ -0,0 +1,452 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.scheduler;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import oncue.backingstore.BackingStore;
+import oncue.common.messages.CapacityWorkRequest;
+import oncue.common.messages.Job;
+import oncue.common.messages.Job.SchedulingParam;
+import oncue.common.messages.SimpleMessages.SimpleMessage;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+
+/**
+ * A capacity-based scheduler that packs jobs onto many agents at once.
+ *
+ * Rather than filling each agent from the head of the queue as its work request arrives, this
+ * scheduler collects the work requests of <code>oncue.agent.CapacityAgent</code>s for a window of
+ * time (see "oncue.scheduler.bin-packing-scheduler.window"), then assigns jobs to every requesting
+ * agent in a single {@linkplain Schedule}. Each agent is a bin the size of the free memory in its
+ * work request, and each job is an item the size of its "memory" parameter.
+ *
+ * Jobs are packed best-fit: each job goes to the agent that will have the least memory left over
+ * after taking it, which leaves the larger holes for the larger jobs. The "best-fit-decreasing"
+ * strategy packs the largest jobs first, which packs most tightly. The "priority-best-fit"
+ * strategy packs higher priority jobs first, and the largest first within a priority, so a lower
+ * priority job never takes the room a higher priority job needed. Jobs that don't fit any agent
+ * stay queued.
+ *
+ * Agents are kept in a tree ordered by free memory, so the best fit for a job is found without
+ * sorting the agents for every job. The slots and memory weights in each work request are
+ * respected, but every job is charged its full memory, which is conservative for batch workers.
+ * A job with more "memory" than any agent has ever reported free is parked until an agent with
+ * enough memory asks for work.
+ *
+ * The scheduler replies to {@linkplain #STATS} with the packing efficiency and solve time of the
+ * latest schedule.
+ */
+public class BinPackingScheduler extends AbstractScheduler<CapacityWorkRequest> {
+
+	/**
+	 * The order in which jobs are packed
+	 */
+	private enum Strategy {
+		BEST_FIT_DECREASING, PRIORITY_BEST_FIT
+	}
+
+	/**
+	 * A job to pack, with the values it is sorted by
+	 */
+	private static class Item {
+
+		private final Job job;
+		private final int memory;
+		private final int priority;
+
+		// No agent with less free memory than this can take the job
+		private final int leastMemory;
+
+		/**
+		 * @param minimumWeight is the smallest memory weight any agent gives the job's worker type
+		 */
+		Item(Job job, double minimumWeight) {
+			this.job = job;
+			this.memory = job.getMemory();
+			this.priority = job.getPriority();
+			this.leastMemory = minimumWeight == 1.0 ? memory : (int) Math.ceil(memory
+					* minimumWeight);
+		}
+	}
+
+	/**
+	 * An agent being packed with jobs, ordered by its free memory
+	 */
+	private static class Bin implements Comparable<Bin> {
+
+		private final ActorRef agent;
+		private final CapacityWorkRequest workRequest;
+
+		// Breaks ties between agents with the same free memory
+		private final int index;
+
+		private int freeMemory;
+		private final Map<String, Integer> freeSlots;
+		private final List<Job> jobs = new ArrayList<>();
+
+		Bin(ActorRef agent, CapacityWorkRequest workRequest, int index) {
+			this.agent = agent;
+			this.workRequest = workRequest;
+			this.index = index;
+			this.freeMemory = workRequest.getAvailableMemory();
+			this.freeSlots = new HashMap<>(workRequest.getWorkerTypeSlots());
+		}
+
+		/**
+		 * A bin that is only used to search the tree of bins
+		 */
+		Bin(int freeMemory) {
+			this.agent = null;
+			this.workRequest = null;
+			this.index = -1;
+			this.freeMemory = freeMemory;
+			this.freeSlots = null;
+		}
+
+		int getRequiredMemory(Item item) {
+			double memoryWeight = workRequest.getMemoryWeight(item.job.getWorkerType());
+			return memoryWeight == 1.0 ? item.memory : (int) Math.ceil(item.memory * memoryWeight);
+		}
+
+		boolean accepts(Item item, int requiredMemory) {
+			if (requiredMemory > freeMemory
+					|| !workRequest.getWorkerTypes().contains(item.job.getWorkerType()))
+				return false;
+			Integer slots = freeSlots.get(item.job.getWorkerType());
+			return slots == null || slots > 0;
+		}
+
+		void add(Item item, int requiredMemory) {
+			jobs.add(item.job);
+			freeMemory -= requiredMemory;
+			Integer slots = freeSlots.get(item.job.getWorkerType());
+			if (slots != null)
+				freeSlots.put(item.job.getWorkerType(), slots - 1);
+		}
+
+		@Override
+		public int compareTo(Bin other) {
+			if (freeMemory != other.freeMemory)
+				return Integer.compare(freeMemory, other.freeMemory);
+			return Integer.compare(index, other.index);
+		}
+	}
+
+	/**
+	 * The outcome of the latest schedule, sent in reply to {@linkplain BinPackingScheduler#STATS}
+	 */
+	public static class Stats implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long schedules;
+		private final int agents;
+		private final int packedJobs;
+		private final int unpackedJobs;
+		private final long availableMemory;
+		private final long packedMemory;
+		private final long solveTime;
+
+		Stats(long schedules, int agents, int packedJobs, int unpackedJobs, long availableMemory,
+				long packedMemory, long solveTime) {
+			this.schedules = schedules;
+			this.agents = agents;
+			this.packedJobs = packedJobs;
+			this.unpackedJobs = unpackedJobs;
+			this.availableMemory = availableMemory;
+			this.packedMemory = packedMemory;
+			this.solveTime = solveTime;
+		}
+
+		/**
+		 * @return the number of schedules created so far
+		 */
+		public long getSchedules() {
+			return schedules;
+		}
+
+		/**
+		 * @return the number of agents in the latest schedule
+		 */
+		public int getAgents() {
+			return agents;
+		}
+
+		/**
+		 * @return the number of jobs assigned to agents in the latest schedule
+		 */
+		public int getPackedJobs() {
+			return packedJobs;
+		}
+
+		/**
+		 * @return the number of jobs considered in the latest schedule that didn't fit any agent
+		 */
+		public int getUnpackedJobs() {
+			return unpackedJobs;
+		}
+
+		/**
+		 * @return the free memory the agents in the latest schedule asked to fill
+		 */
+		public long getAvailableMemory() {
+			return availableMemory;
+		}
+
+		/**
+		 * @return the memory of the jobs assigned in the latest schedule
+		 */
+		public long getPackedMemory() {
+			return packedMemory;
+		}
+
+		/**
+		 * @return the fraction of the free memory of the agents that was filled, between 0 and 1
+		 */
+		public double getEfficiency() {
+			return availableMemory == 0 ? 0 : (double) packedMemory / availableMemory;
+		}
+
+		/**
+		 * @return the time taken to pack the latest schedule, in microseconds
+		 */
+		public long getSolveTime() {
+			return solveTime;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"schedules=%s, agents=%s, packed=%s, unpacked=%s, efficiency=%.1f%%, solve time=%sus",
+					schedules, agents, packedJobs, unpackedJobs, getEfficiency() * 100, solveTime);
+		}
+	}
+
+	// Reply with the outcome of the latest schedule
+	public static final String STATS = "STATS";
+
+	// How long to collect work requests for
+	private final FiniteDuration window;
+
+	private final Strategy strategy;
+
+	// The maximum number of queued jobs considered in each schedule
+	private final int lookahead;
+
+	// Map each agent to its latest work request in this window
+	private final Map<ActorRef, CapacityWorkRequest> workRequests = new LinkedHashMap<>();
+
+	// The request to create a schedule at the end of the window
+	private Cancellable scheduleJobs;
+
+	private long schedules;
+	private Stats stats = new Stats(0, 0, 0, 0, 0, 0, 0);
+
+	public BinPackingScheduler(Class<? extends BackingStore> backingStore) {
+		super(backingStore);
+		Config config = getContext().system().settings().config()
+				.getConfig("oncue.scheduler.bin-packing-scheduler");
+		window = Duration.create(config.getMilliseconds("window"), TimeUnit.MILLISECONDS);
+		lookahead = config.getInt("lookahead");
+
+		String strategyName = config.getString("strategy");
+		if ("best-fit-decreasing".equals(strategyName))
+			strategy = Strategy.BEST_FIT_DECREASING;
+		else if ("priority-best-fit".equals(strategyName))
+			strategy = Strategy.PRIORITY_BEST_FIT;
+		else
+			throw new ConfigException.BadValue("oncue.scheduler.bin-packing-scheduler.strategy",
+					"Expected either 'best-fit-decreasing' or 'priority-best-fit'");
+	}
+
+	protected Comparator<Job> getComparator() {
+		return new PriorityJobComparator();
+	}
+
+	@Override
+	public void onReceive(Object message) throws Exception {
+		if (message.equals(SimpleMessage.SCHEDULE_JOBS)) {
+			scheduleJobs = null;
+			scheduleJobs();
+		} else if (STATS.equals(message))
+			getSender().tell(stats, getSelf());
+		else
+			super.onReceive(message);
+	}
+
+	@Override
+	public void postStop() {
+		if (scheduleJobs != null)
+			scheduleJobs.cancel();
+		super.postStop();
+	}
+
+	@Override
+	protected void scheduleJobs(CapacityWorkRequest workRequest) {
+
+		// A later request from the same agent has the more recent free memory
+		workRequests.put(getSender(), workRequest);
+
+		// Give other agents time to respond to the same jobs broadcast
+		if (scheduleJobs == null)
+			scheduleJobs = getContext().system().scheduler()
+					.scheduleOnce(window, getSelf(), SimpleMessage.SCHEDULE_JOBS,
+							getContext().dispatcher());
+	}
+
+	/**
+	 * Pack the queued jobs onto the agents that asked for work in this window, and dispatch a
+	 * single schedule for all of them
+	 */
+	private void scheduleJobs() {
+		long start = System.nanoTime();
+
+		TreeSet<Bin> bins = new TreeSet<>();
+		Set<String> workerTypes = new HashSet<>();
+		long availableMemory = 0;
+		for (Map.Entry<ActorRef, CapacityWorkRequest> entry : workRequests.entrySet()) {
+			Bin bin = new Bin(entry.getKey(), entry.getValue(), bins.size());
+			bins.add(bin);
+			workerTypes.addAll(entry.getValue().getWorkerTypes());
+			availableMemory += Math.max(0, bin.freeMemory);
+		}
+		List<Bin> agents = new ArrayList<>(bins);
+		workRequests.clear();
+
+		// Map a worker type to the smallest memory weight any agent gives it
+		Map<String, Double> minimumWeights = new HashMap<>();
+		for (String workerType : workerTypes) {
+			double minimumWeight = Double.MAX_VALUE;
+			for (Bin bin : agents) {
+				minimumWeight = Math.min(minimumWeight, bin.workRequest.getMemoryWeight(workerType));
+			}
+			minimumWeights.put(workerType, minimumWeight);
+		}
+
+		// Take the jobs the agents can run in queue order, then sort them for packing. A job is
+		// only oversized if it is too big for every agent once weighted.
+		List<Item> items = new ArrayList<>();
+		Map<Long, Long> oversizedJobs = new LinkedHashMap<>();
+		Iterator<Job> iterator = unscheduledJobs.iterator(workerTypes);
+		while (iterator.hasNext() && (lookahead == 0 || items.size() < lookahead)) {
+			Job job = iterator.next();
+			Item item = new Item(job, minimumWeights.get(job.getWorkerType()));
+			if (isOversized(item.leastMemory))
+				oversizedJobs.put(job.getId(), (long) item.leastMemory);
+			else
+				items.add(item);
+		}
+		parkJobs(oversizedJobs);
+		Collections.sort(items, new Comparator<Item>() {
+
+			@Override
+			public int compare(Item item1, Item item2) {
+				if (strategy == Strategy.PRIORITY_BEST_FIT && item1.priority != item2.priority)
+					return Integer.compare(item2.priority, item1.priority);
+				return Integer.compare(item2.memory, item1.memory);
+			}
+		});
+
+		int packedJobs = 0;
+		long packedMemory = 0;
+		for (Item item : items) {
+			Bin bestFit = null;
+			int requiredMemory = 0;
+			for (Bin bin : bins.tailSet(new Bin(item.leastMemory), true)) {
+				requiredMemory = bin.getRequiredMemory(item);
+				if (bin.accepts(item, requiredMemory)) {
+					bestFit = bin;
+					break;
+				}
+			}
+			if (bestFit == null)
+				continue;
+
+			// Re-insert the bin at its new place in the tree
+			bins.remove(bestFit);
+			bestFit.add(item, requiredMemory);
+			bins.add(bestFit);
+			packedJobs++;
+			packedMemory += requiredMemory;
+		}
+
+		// Agents that were given nothing are told so, rather than left waiting
+		Schedule schedule = new Schedule();
+		for (Bin bin : agents) {
+			schedule.setJobs(bin.agent, bin.jobs);
+		}
+
+		long solveTime = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+		stats = new Stats(++schedules, agents.size(), packedJobs, items.size() - packedJobs,
+				availableMemory, packedMemory, solveTime);
+		log.debug("Bin packing schedule: {}", stats);
+
+		dispatchJobs(schedule);
+	}
+
+	/**
+	 * An agent's capacity is the most free memory it has reported, which is its total memory when
+	 * it is idle
+	 */
+	@Override
+	protected long getAgentCapacity(CapacityWorkRequest workRequest) {
+		return workRequest.getAvailableMemory();
+	}
+
+	@Override
+	protected void augmentJob(Job job) {
+		ensureRequiredMemory(job);
+	}
+
+	@Override
+	protected Set<SchedulingParam> getSchedulingParams() {
+		return EnumSet.of(SchedulingParam.PRIORITY, SchedulingParam.MEMORY);
+	}
+
+	/**
+	 * Ensure that a job has a "memory" parameter, taking it from the default requirements of the
+	 * job's worker type if it does not. This will crash if neither provides the memory.
+	 * 
+	 * @param job The job
+	 */
+	private void ensureRequiredMemory(Job job) {
+		Map<String, String> params = job.getParams();
+		if (!params.containsKey("memory")) {
+			Config config = getContext().system().settings().config();
+			params.put(
+					"memory",
+					String.valueOf(config.getConfig("oncue.scheduler.bin-packing-scheduler").getInt(
+							"default-requirements." + job.getWorkerType() + ".memory")));
+		}
+	}
+}
@@ -15,8 +15,11 @@ package oncue.scheduler;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -24,8 +27,11 @@ import java.util.Set;
 import oncue.backingstore.BackingStore;
 import oncue.common.messages.CapacityWorkRequest;
 import oncue.common.messages.Job;
+import oncue.common.messages.Job.SchedulingParam;
 
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigObject;
@@ -45,15 +51,47 @@ import com.typesafe.config.ConfigObject;
  * "oncue.scheduler.capacity-scheduler.uniqueness-parameter". I.e. two jobs with the worker type
  * specified by "worker-type" with the same parameter value for the property described by
  * "uniqueness-parameter" will not run at the same time.
+ * 
+ * Jobs for a batch worker are handed out in batches of up to the batch size declared in the work
+ * request. As a batch worker works on one job at a time, a batch only needs the memory of its
+ * largest job.
+ * 
+ * The "memory" of a job is scaled by the memory weight the work request gives its worker type, and
+ * jobs of a worker type are skipped once the slots the work request gives that type are full.
+ * 
+ * A job whose "memory" is more than any agent has ever reported free is parked until an agent with
+ * enough memory asks for work, rather than being looked at again on every work request.
  */
 public class CapacityScheduler extends AbstractScheduler<CapacityWorkRequest> {
 
-	private class WorkerUniquenessParameters extends HashMap<String, Set<Map<String, String>>> {
-		private static final long serialVersionUID = -2463700325426716368L;
+	/**
+	 * A batch of jobs for a batch worker that has room for more jobs
+	 */
+	private static class OpenBatch {
+
+		// The number of jobs the batch can still take
+		private int room;
+
+		// The memory required by the largest job in the batch
+		private int memory;
+
+		OpenBatch(int batchSize) {
+			this.room = batchSize;
+		}
 	}
 
 	private final Config config;
-	private final Map<String, Set<String>> workerTypesToUniqueParameters;
+	private final Map<String, List<String>> workerTypesToUniqueParameters;
+
+	// Map the ID of each queued or scheduled job with a uniqueness constraint to its uniqueness key,
+	// so the key is built once rather than on every scheduling pass
+	private final Map<Long, List<String>> uniquenessKeys = new HashMap<>();
+
+	// Map the ID of each scheduled job with a uniqueness constraint to its uniqueness key
+	private final Map<Long, List<String>> scheduledUniquenessKeys = new HashMap<>();
+
+	// The uniqueness keys held by scheduled jobs, counted in case restored jobs share a key
+	private final Multiset<List<String>> heldUniquenessKeys = HashMultiset.create();
 
 	@SuppressWarnings("unchecked")
 	public CapacityScheduler(Class<? extends BackingStore> backingStore) {
@@ -65,13 +103,15 @@ public class CapacityScheduler extends AbstractScheduler<CapacityWorkRequest> {
 				.getObjectList("uniqueness-constraints");
 		workerTypesToUniqueParameters = Maps.newHashMap();
 		for (ConfigObject value : uniquenessConstraints) {
-			Set<String> keys = Sets.newHashSet();
+			// Sorted, so every job of a worker type builds its uniqueness key in the same order
+			Set<String> keys = Sets.newTreeSet();
 			if (value.containsKey("uniqueness-keys")) {
 				for (String key : (List<String>) value.get("uniqueness-keys").unwrapped()) {
 					keys.add(key);
 				}
 			}
-			workerTypesToUniqueParameters.put((String) value.get("worker-type").unwrapped(), keys);
+			workerTypesToUniqueParameters.put((String) value.get("worker-type").unwrapped(),
+					new ArrayList<>(keys));
 		}
 	}
 
@@ -81,39 +121,73 @@ public class CapacityScheduler extends AbstractScheduler<CapacityWorkRequest> {
 
 	@Override
 	protected void scheduleJobs(CapacityWorkRequest workRequest) {
-		WorkerUniquenessParameters runningUniquenessConstrainedJobTypes = getScheduledUniquenessConstrainedParams();
 		List<Job> jobs = new ArrayList<>();
 		int allocatedMemory = 0;
 
-		Iterator<Job> iterator = unscheduledJobs.iterator();
+		// Map a batch worker type to its latest batch, while it has room for more jobs
+		Map<String, OpenBatch> openBatches = new HashMap<>();
+
+		// Map a limited worker type to its free slots
+		Map<String, Integer> freeSlots = new HashMap<>(workRequest.getWorkerTypeSlots());
+
+		// The uniqueness keys taken by jobs in this schedule
+		Set<List<String>> takenUniquenessKeys = new HashSet<>();
+
+		// Map the ID of each job too large for any agent to its memory
+		Map<Long, Long> oversizedJobs = new LinkedHashMap<>();
+
+		Iterator<Job> iterator = unscheduledJobs.iterator(workRequest.getWorkerTypes());
 
 		while (iterator.hasNext()) {
 			Job job = iterator.next();
-			if (workRequest.getWorkerTypes().contains(job.getWorkerType())) {
-				int requiredMemory = getRequiredMemory(job);
-				if (requiredMemory + allocatedMemory <= workRequest.getAvailableMemory()) {
-					if (workerTypesToUniqueParameters.containsKey(job.getWorkerType())) {
-						if (runningUniquenessConstrainedJobTypes.containsKey(job.getWorkerType())) {
-							boolean blockedByRunningUniquenessConstrainedJob = findRunningUniquenessConstraintedJobConflicts(
-									runningUniquenessConstrainedJobTypes, job);
-							if (!blockedByRunningUniquenessConstrainedJob) {
-								addJob(job, runningUniquenessConstrainedJobTypes);
-								jobs.add(job);
-								allocatedMemory += requiredMemory;
-							}
-						} else {
-							addJob(job, runningUniquenessConstrainedJobTypes);
-							jobs.add(job);
-							allocatedMemory += requiredMemory;
-						}
-					} else {
-						jobs.add(job);
-						allocatedMemory += requiredMemory;
-					}
-				}
+
+			// The agent may scale the memory of the job's worker type
+			int jobMemory = getRequiredMemory(job, workRequest.getMemoryWeight(job.getWorkerType()));
+			if (isOversized(jobMemory)) {
+				oversizedJobs.put(job.getId(), (long) jobMemory);
+				continue;
+			}
+
+			// Skip a job that conflicts with a scheduled job before looking at anything else
+			List<String> uniquenessKey = getUniquenessKey(job);
+			if (uniquenessKey != null
+					&& (heldUniquenessKeys.contains(uniquenessKey) || takenUniquenessKeys
+							.contains(uniquenessKey)))
+				continue;
+
+			// A job joining a batch only needs any memory beyond the largest job in the batch
+			OpenBatch batch = openBatches.get(job.getWorkerType());
+			int requiredMemory = batch == null ? jobMemory : Math.max(0, jobMemory - batch.memory);
+			if (requiredMemory + allocatedMemory > workRequest.getAvailableMemory())
+				continue;
+
+			// A job joining a batch doesn't need a slot of its own
+			Integer slots = freeSlots.get(job.getWorkerType());
+			if (batch == null && slots != null && slots == 0)
+				continue;
+
+			if (uniquenessKey != null)
+				takenUniquenessKeys.add(uniquenessKey);
+			jobs.add(job);
+			allocatedMemory += requiredMemory;
+			if (batch == null && slots != null)
+				freeSlots.put(job.getWorkerType(), slots - 1);
+
+			int batchSize = workRequest.getBatchSize(job.getWorkerType());
+			if (batch == null && batchSize > 1) {
+				batch = new OpenBatch(batchSize);
+				openBatches.put(job.getWorkerType(), batch);
+			}
+			if (batch != null) {
+				batch.room--;
+				batch.memory = Math.max(batch.memory, jobMemory);
+				if (batch.room == 0)
+					openBatches.remove(job.getWorkerType());
 			}
 		}
 
+		parkJobs(oversizedJobs);
+
 		log.debug("Scheduling {} job(s) with a total memory of {}", jobs.size(), allocatedMemory);
 
 		// Create the schedule
@@ -125,35 +199,40 @@ public class CapacityScheduler extends AbstractScheduler<CapacityWorkRequest> {
 	}
 
 	/**
-	 * Check if the uniqueness parameters for the given job conflict with any existing running job's
-	 * uniqueness parameters. I.e., given a map of worker type -> (set of (map of uniqueness key ->
-	 * parameter value for that uniqueness key)), ensure that for each defined uniqueness key for
-	 * the job's worker type there are no entries in the running job's uniquness key/value pairs
-	 * that are identical.
-	 * 
-	 * @param runningUniquenessConstrainedJobTypes Information on the currently running jobs and
-	 * their parameter values for all uniqueness constrained parameters
-	 * @param job The job
-	 * @return
+	 * An agent's capacity is the most free memory it has reported, which is its total memory when
+	 * it is idle
 	 */
-	private boolean findRunningUniquenessConstraintedJobConflicts(
-			WorkerUniquenessParameters runningUniquenessConstrainedJobTypes, Job job) {
-		boolean foundIdentical = false;
-		for (Map<String, String> parameterKeyValues : runningUniquenessConstrainedJobTypes.get(job
-				.getWorkerType())) {
-			boolean identical = true;
-			for (String parameter : parameterKeyValues.keySet()) {
-				if (!job.getParams().get(parameter).equals(parameterKeyValues.get(parameter))) {
-					identical = false;
-					break;
-				}
-			}
-			if (identical) {
-				foundIdentical = true;
-				break;
-			}
+	@Override
+	protected long getAgentCapacity(CapacityWorkRequest workRequest) {
+		return workRequest.getAvailableMemory();
+	}
+
+	@Override
+	protected void onJobEnqueued(Job job) {
+		if (workerTypesToUniqueParameters.containsKey(job.getWorkerType()))
+			uniquenessKeys.put(job.getId(), buildUniquenessKey(job));
+	}
+
+	@Override
+	protected void onJobDeleted(Job job) {
+		uniquenessKeys.remove(job.getId());
+	}
+
+	@Override
+	protected void onJobScheduled(Job job) {
+		List<String> uniquenessKey = getUniquenessKey(job);
+		if (uniquenessKey != null) {
+			scheduledUniquenessKeys.put(job.getId(), uniquenessKey);
+			heldUniquenessKeys.add(uniquenessKey);
 		}
-		return foundIdentical;
+	}
+
+	@Override
+	protected void onJobUnscheduled(Job job) {
+		uniquenessKeys.remove(job.getId());
+		List<String> uniquenessKey = scheduledUniquenessKeys.remove(job.getId());
+		if (uniquenessKey != null)
+			heldUniquenessKeys.remove(uniquenessKey);
 	}
 
 	@Override
@@ -161,6 +240,11 @@ public class CapacityScheduler extends AbstractScheduler<CapacityWorkRequest> {
 		ensureRequiredMemory(job);
 	}
 
+	@Override
+	protected Set<SchedulingParam> getSchedulingParams() {
+		return EnumSet.of(SchedulingParam.PRIORITY, SchedulingParam.MEMORY);
+	}
+
 	/**
 	 * Ensure that a job has a "memory" parameter. If it exists, leave it as it is. If it does not,
 	 * attempt to populate it from the configuration. This will crash if both the job does not have
@@ -184,49 +268,46 @@ public class CapacityScheduler extends AbstractScheduler<CapacityWorkRequest> {
 	 * memory parameter.
 	 * 
 	 * @param job The job
+	 * @param memoryWeight The factor by which the agent scales the memory of the job's worker type
 	 * @return
 	 */
-	private int getRequiredMemory(Job job) {
-		return Integer.parseInt(job.getParams().get("memory"));
+	private int getRequiredMemory(Job job, double memoryWeight) {
+		int memory = job.getMemory();
+		return memoryWeight == 1.0 ? memory : (int) Math.ceil(memory * memoryWeight);
 	}
 
 	/**
-	 * Return a list of all scheduled jobs that have uniqueness constraints and the parameter
-	 * key/values for keys defined in those uniqueness constraints
+	 * Get the uniqueness key for a job, which is its worker type followed by the values of its
+	 * uniqueness parameters. Two jobs with the same uniqueness key will not run at the same time. The
+	 * key is built when the job is enqueued and reused on every scheduling pass.
 	 * 
-	 * @return
+	 * @param job The job
+	 * @return the uniqueness key, or null if the job's worker type has no uniqueness constraint
 	 */
-	private WorkerUniquenessParameters getScheduledUniquenessConstrainedParams() {
-		List<Job> scheduledJobs = getScheduledJobs();
-		WorkerUniquenessParameters scheduledUniquenessConstrainedParams = new WorkerUniquenessParameters();
-		for (Job job : scheduledJobs) {
-			if (workerTypesToUniqueParameters.containsKey(job.getWorkerType())) {
-				addJob(job, scheduledUniquenessConstrainedParams);
-			}
+	private List<String> getUniquenessKey(Job job) {
+		if (!workerTypesToUniqueParameters.containsKey(job.getWorkerType()))
+			return null;
+
+		// Jobs restored from the backing store or put back on the queue were not enqueued here
+		List<String> uniquenessKey = uniquenessKeys.get(job.getId());
+		if (uniquenessKey == null) {
+			uniquenessKey = buildUniquenessKey(job);
+			uniquenessKeys.put(job.getId(), uniquenessKey);
 		}
-		return scheduledUniquenessConstrainedParams;
+		return uniquenessKey;
 	}
 
 	/**
-	 * Add a job and it's uniqueness parameters to a list of active uniqueness constrained jobs.
-	 * 
-	 * @param job
-	 * @param runningUniquenessConstrainedJobTypes
+	 * @return the worker type of a job followed by the values of its uniqueness parameters
 	 */
-	private void addJob(Job job, WorkerUniquenessParameters runningUniquenessConstrainedJobTypes) {
-		Set<String> uniqueParams = workerTypesToUniqueParameters.get(job.getWorkerType());
-		Map<String, String> uniqueParamValues = Maps.newHashMap();
-		for (String key : job.getParams().keySet()) {
-			if (uniqueParams.contains(key)) {
-				uniqueParamValues.put(key, job.getParams().get(key));
-			}
-		}
-		if (!runningUniquenessConstrainedJobTypes.containsKey(job.getWorkerType())) {
-			Set<Map<String, String>> params = Sets.newHashSet();
-			runningUniquenessConstrainedJobTypes.put(job.getWorkerType(), params);
+	private List<String> buildUniquenessKey(Job job) {
+		List<String> uniqueParams = workerTypesToUniqueParameters.get(job.getWorkerType());
+		List<String> uniquenessKey = new ArrayList<>(uniqueParams.size() + 1);
+		uniquenessKey.add(job.getWorkerType());
+		for (String param : uniqueParams) {
+			uniquenessKey.add(job.getParams().get(param));
 		}
-
-		runningUniquenessConstrainedJobTypes.get(job.getWorkerType()).add(uniqueParamValues);
+		return uniquenessKey;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.scheduler;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import oncue.common.messages.Job;
+
+/**
+ * This Comparator shares the queue of unscheduled jobs fairly between groups of jobs, using
+ * start-time fair queuing. Jobs are grouped by worker type, or by a job parameter such as "tenant".
+ * 
+ * Each job is given a tag when it is enqueued. A job starts at the later of the current virtual
+ * time and the point where the previous job in its group finishes, and each job in a group moves
+ * the finish point on by the inverse of the group's weight. Jobs are ordered by their start tag,
+ * so a group that enqueues a large backlog only gets its share of the queue, rather than blocking
+ * every group behind it. Virtual time advances to the start tag of each job that is scheduled.
+ * 
+ * The "priority" parameter moves a job forward by a number of virtual time units per priority
+ * level. Because jobs enqueued later are tagged with a later virtual time, a waiting low priority
+ * job ages: it is eventually ordered ahead of newly enqueued higher priority jobs, so it is never
+ * starved.
+ * 
+ * Tags are fixed while a job is queued, which keeps the queue ordering consistent, so the tags must
+ * be assigned and released by the {@linkplain UnscheduledJobs} queue that uses this comparator.
+ */
+public class FairQueuingJobComparator implements Comparator<Job> {
+
+	/**
+	 * The tags assigned to a queued job
+	 */
+	private static class Tag {
+
+		private final double start;
+		private final double key;
+
+		private Tag(double start, double key) {
+			this.start = start;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * The fair queuing state of a group of jobs
+	 */
+	private static class Group {
+
+		// The virtual time at which the last job enqueued in this group finishes
+		private double finish;
+
+		// The number of queued jobs in this group
+		private int queued;
+	}
+
+	// The job parameter that names the group of a job, or null to group by worker type
+	private final String groupBy;
+
+	// Map a group name to its share of the queue
+	private final Map<String, Double> weights;
+
+	// The virtual time a job gains for each priority level
+	private final double priorityStep;
+
+	// Map the ID of a queued job to its tags
+	private final Map<Long, Tag> tags = new HashMap<>();
+
+	// Map a group name to its state
+	private final Map<String, Group> groups = new HashMap<>();
+
+	// The start tag of the most recently scheduled job
+	private double virtualTime;
+
+	/**
+	 * @param groupBy is the job parameter that names the group of a job. Jobs are grouped by worker
+	 *            type if this is empty, or if a job doesn't have the parameter.
+	 * @param weights maps a group name to its share of the queue. Groups that are not listed have a
+	 *            weight of 1.
+	 * @param priorityStep is the virtual time a job gains for each priority level
+	 */
+	public FairQueuingJobComparator(String groupBy, Map<String, Double> weights,
+			double priorityStep) {
+		for (Map.Entry<String, Double> weight : weights.entrySet()) {
+			if (weight.getValue() <= 0)
+				throw new IllegalArgumentException("The weight of group " + weight.getKey()
+						+ " must be positive");
+		}
+		this.groupBy = groupBy == null || groupBy.isEmpty() ? null : groupBy;
+		this.weights = new HashMap<>(weights);
+		this.priorityStep = priorityStep;
+	}
+
+	@Override
+	public int compare(Job j1, Job j2) {
+		int keyComparison = Double.compare(getKey(j1), getKey(j2));
+		if (keyComparison != 0)
+			return keyComparison;
+
+		// Rely on the ID being unique to keep the Set contract
+		return Long.compare(j1.getId(), j2.getId());
+	}
+
+	/**
+	 * Tag a job as it joins the queue
+	 */
+	void jobEnqueued(Job job) {
+		String name = getGroup(job);
+		Group group = groups.get(name);
+		if (group == null) {
+			group = new Group();
+			groups.put(name, group);
+		}
+
+		double start = Math.max(virtualTime, group.finish);
+		group.finish = start + 1 / getWeight(name);
+		group.queued++;
+		tags.put(job.getId(), new Tag(start, start - job.getPriority() * priorityStep));
+	}
+
+	/**
+	 * Advance the virtual time as a job is scheduled. This must be called before the job is
+	 * released.
+	 */
+	void jobScheduled(Job job) {
+		Tag tag = tags.get(job.getId());
+		if (tag != null)
+			virtualTime = Math.max(virtualTime, tag.start);
+	}
+
+	/**
+	 * Release the tags of a job once it has left every queue
+	 */
+	void jobRemoved(Job job) {
+		if (tags.remove(job.getId()) == null)
+			return;
+
+		String name = getGroup(job);
+		Group group = groups.get(name);
+		group.queued--;
+
+		// A group that has caught up with virtual time would start afresh anyway
+		if (group.queued == 0 && group.finish <= virtualTime)
+			groups.remove(name);
+	}
+
+	/**
+	 * @return the sort key of a job, or the key it would be given now if it isn't queued
+	 */
+	private double getKey(Job job) {
+		Tag tag = tags.get(job.getId());
+		if (tag != null)
+			return tag.key;
+		return virtualTime - job.getPriority() * priorityStep;
+	}
+
+	private String getGroup(Job job) {
+		if (groupBy != null && job.getParams() != null) {
+			String group = job.getParams().get(groupBy);
+			if (group != null)
+				return group;
+		}
+		return job.getWorkerType();
+	}
+
+	private double getWeight(String group) {
+		Double weight = weights.get(group);
+		if (weight == null)
+			return 1;
+		return weight;
+	}
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.scheduler;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import oncue.backingstore.BackingStore;
+import oncue.common.messages.HostCapacityWorkRequest;
+import oncue.common.messages.Job;
+import oncue.common.messages.Job.SchedulingParam;
+
+/**
+ * A scheduler for the <code>oncue.agent.HostCapacityAgent</code>, which packs jobs into the memory
+ * and processors its host or container has left.
+ * 
+ * Jobs are taken in priority order, skipping any that don't fit in what is left of the agent's
+ * capacity. A job may declare the megabytes of memory it needs in a "memory" parameter, otherwise
+ * the agent's estimate of the memory used by each worker is assumed. A job may declare the
+ * processors it needs in a "cpu" parameter, otherwise the configured default is assumed. An idle
+ * agent is always given a job that fits in its memory, even if its host looks busy, so that a
+ * high load average can't starve it.
+ */
+public class HostCapacityScheduler extends AbstractScheduler<HostCapacityWorkRequest> {
+
+	// The memory parameter on the job, in megabytes
+	public static final String JOB_MEMORY = "memory";
+
+	// The processors parameter on the job
+	public static final String JOB_CPU = "cpu";
+
+	// The processors needed by a job without a processors parameter
+	private final double defaultCpu;
+
+	public HostCapacityScheduler(Class<? extends BackingStore> backingStore) {
+		super(backingStore);
+		defaultCpu = getContext().system().settings().config()
+				.getDouble("oncue.scheduler.host-capacity-scheduler.default-cpu");
+	}
+
+	@Override
+	protected Set<SchedulingParam> getSchedulingParams() {
+		return EnumSet.of(SchedulingParam.PRIORITY, SchedulingParam.MEMORY, SchedulingParam.CPU);
+	}
+
+	@Override
+	protected void scheduleJobs(HostCapacityWorkRequest workRequest) {
+		long freeMemory = workRequest.getAvailableMemory();
+		double freeCpu = workRequest.getCpuQuota() - workRequest.getCpuUsage();
+		boolean idle = workRequest.getRunningWorkers() == 0;
+
+		List<Job> jobs = new ArrayList<>();
+		Iterator<Job> iterator = unscheduledJobs.iterator(workRequest.getWorkerTypes());
+		while (iterator.hasNext()) {
+			boolean guaranteedJob = idle && jobs.isEmpty();
+			if (freeCpu <= 0 && !guaranteedJob)
+				break;
+
+			Job job = iterator.next();
+			long memory = getRequiredMemory(job, workRequest);
+			double cpu = getRequiredCpu(job);
+			if (memory <= freeMemory && (cpu <= freeCpu || guaranteedJob)) {
+				jobs.add(job);
+				freeMemory -= memory;
+				freeCpu -= cpu;
+			}
+		}
+
+		log.debug("Scheduling {} job(s) for {}", jobs.size(), workRequest);
+
+		// Create the schedule
+		Schedule schedule = new Schedule();
+		schedule.setJobs(getSender(), jobs);
+
+		// Dispatch the schedule
+		dispatchJobs(schedule);
+	}
+
+	/**
+	 * @return the memory required by a job, in bytes
+	 */
+	private static long getRequiredMemory(Job job, HostCapacityWorkRequest workRequest) {
+		int memory = job.getMemory();
+		if (memory < 0)
+			return workRequest.getWorkerMemory();
+		return memory * 1024L * 1024;
+	}
+
+	/**
+	 * @return the processors required by a job
+	 */
+	private double getRequiredCpu(Job job) {
+		double cpu = job.getCpu();
+		if (cpu < 0)
+			return defaultCpu;
+		return cpu;
+	}
+}
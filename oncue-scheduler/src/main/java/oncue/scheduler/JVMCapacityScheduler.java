@@ -18,14 +18,18 @@ package oncue.scheduler;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import oncue.backingstore.BackingStore;
 import oncue.common.messages.JVMCapacityWorkRequest;
 import oncue.common.messages.Job;
+import oncue.common.messages.Job.SchedulingParam;
 import oncue.common.messages.SimpleMessages.SimpleMessage;
 import scala.concurrent.duration.Duration;
 import scala.concurrent.duration.FiniteDuration;
@@ -77,22 +81,26 @@ public class JVMCapacityScheduler extends AbstractScheduler<JVMCapacityWorkReque
 	 * "greedy", grabbing as many jobs as it can manage.
 	 * 
 	 * If a job is too big to fit into the remaining capacity of any of the
-	 * agents, it will remain unscheduled.
+	 * agents, it will remain unscheduled. If it is bigger than the maximum memory
+	 * of every agent, it is parked until a bigger agent asks for work, rather
+	 * than sitting at the head of the backlog.
 	 * </p>
-	 * 
-	 * <p>
-	 * <b>WARNING:</b> If a job is too big for any of the agents, it will sit on
-	 * the backlog forever!
-	 * <p>
 	 */
 	private void scheduleJobs() {
 
 		Map<ActorRef, List<Job>> agentJobs = new HashMap<ActorRef, List<Job>>();
 		List<Job> scheduledJobs = new ArrayList<>();
-		Iterator<Job> iterator = unscheduledJobs.iterator();
+		Map<Long, Long> oversizedJobs = new LinkedHashMap<>();
+
+		// Visiting the queue for each worker type leaves out parked jobs
+		Iterator<Job> iterator = unscheduledJobs.iterator(unscheduledJobs.getWorkerTypes());
 		while (iterator.hasNext()) {
 			Job job = iterator.next();
-			long jobSize = new Long(job.getParams().get(JVMCapacityScheduler.JOB_SIZE));
+			long jobSize = job.getSize();
+			if (isOversized(jobSize)) {
+				oversizedJobs.put(job.getId(), jobSize);
+				continue;
+			}
 			sortWorkRequestsByFreeMemory();
 
 			for (JVMCapacityWorkRequest workRequest : workRequests) {
@@ -115,6 +123,8 @@ public class JVMCapacityScheduler extends AbstractScheduler<JVMCapacityWorkReque
 			}
 		}
 
+		parkJobs(oversizedJobs);
+
 		// Create a schedule
 		Schedule schedule = new Schedule();
 		for (ActorRef agent : agentJobs.keySet()) {
@@ -154,6 +164,26 @@ public class JVMCapacityScheduler extends AbstractScheduler<JVMCapacityWorkReque
 		}
 	}
 
+	/**
+	 * Reject a job without a size, as it could never be matched against an agent's free memory
+	 */
+	@Override
+	protected void augmentJob(Job job) {
+		if (job.getSize() < 0)
+			throw new IllegalArgumentException(String.format("Job %s has no %s parameter",
+					job.getId(), JOB_SIZE));
+	}
+
+	@Override
+	protected Set<SchedulingParam> getSchedulingParams() {
+		return EnumSet.of(SchedulingParam.PRIORITY, SchedulingParam.SIZE);
+	}
+
+	@Override
+	protected long getAgentCapacity(JVMCapacityWorkRequest workRequest) {
+		return workRequest.getMaxMemory();
+	}
+
 	private void sortWorkRequestsByFreeMemory() {
 		Collections.sort(workRequests, new Comparator<JVMCapacityWorkRequest>() {
 
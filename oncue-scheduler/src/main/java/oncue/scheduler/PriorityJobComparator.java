@@ -13,8 +13,8 @@ public class PriorityJobComparator implements Comparator<Job> {
 
 	@Override
 	public int compare(Job j1, Job j2) {
-		int j1Priority = getPriority(j1);
-		int j2Priority = getPriority(j2);
+		int j1Priority = j1.getPriority();
+		int j2Priority = j2.getPriority();
 
 		// Sort is stable with respect to job enqueued time
 		if (j1Priority == j2Priority) {
@@ -32,15 +32,4 @@ public class PriorityJobComparator implements Comparator<Job> {
 			return -1 * Integer.compare(j1Priority, j2Priority);
 		}
 	}
-
-	private int getPriority(Job j) {
-		if (j.getParams() == null) {
-			return 0;
-		}
-		String priority = j.getParams().get("priority");
-		if (priority == null) {
-			return 0;
-		}
-		return Integer.parseInt(priority);
-	}
 }
\ No newline at end of file
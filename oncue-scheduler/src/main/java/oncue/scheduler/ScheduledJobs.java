@@ -36,6 +36,9 @@ public class ScheduledJobs {
 	// Map a list of scheduled jobs to logical agent address
 	private Map<String, List<Job>> scheduledJobs = new HashMap<String, List<Job>>();
 
+	// Map a job ID to the scheduled job
+	private Map<Long, Job> jobsById = new HashMap<Long, Job>();
+
 	/**
 	 * @param backingStore is an instance of {@linkplain BackingStore}
 	 */
@@ -50,15 +53,46 @@ public class ScheduledJobs {
 	 * @param jobs is the list of {@linkplain Job}s to assign to the agent
 	 */
 	public void addJobs(String agent, List<Job> jobs) {
+		assignJobs(agent, jobs);
+		backingStore.addScheduledJobs(jobs);
+	}
+
+	/**
+	 * Assign a list of jobs to an agent without touching the backing store. This is for callers
+	 * that persist the assignment themselves, such as the scheduler persisting a whole schedule at
+	 * once.
+	 * 
+	 * @param agent is the agent to which the jobs are being assigned
+	 * @param jobs is the list of {@linkplain Job}s to assign to the agent
+	 */
+	void assignJobs(String agent, List<Job> jobs) {
 		List<Job> assignedJobs = scheduledJobs.get(agent);
 		if (assignedJobs == null) {
 			assignedJobs = new ArrayList<Job>();
 			scheduledJobs.put(agent, assignedJobs);
 		}
 		for (Job job : jobs) {
-			assignedJobs.add((Job) job.clone());
+			Job scheduledJob = (Job) job.clone();
+			assignedJobs.add(scheduledJob);
+			jobsById.put(scheduledJob.getId(), scheduledJob);
 		}
-		backingStore.addScheduledJobs(jobs);
+	}
+
+	/**
+	 * Find a scheduled job by its ID
+	 * 
+	 * @param jobId is the ID of the {@linkplain Job} to find
+	 * @return the scheduled job, or null if the job is not scheduled against any agent
+	 */
+	public Job getJobById(long jobId) {
+		return jobsById.get(jobId);
+	}
+
+	/**
+	 * @return the number of jobs scheduled against all agents
+	 */
+	public int getSize() {
+		return jobsById.size();
 	}
 
 	/**
@@ -124,10 +158,32 @@ public class ScheduledJobs {
 				return input.getId() == jobId;
 			}
 		});
+		jobsById.remove(jobId);
 
 		backingStore.removeScheduledJobById(jobId);
 	}
 
+	/**
+	 * Remove every job associated with an agent, in a single call to the backing store
+	 * 
+	 * @param agent is the agent the jobs are associated with
+	 * @return the list of {@linkplain Job}s that were removed
+	 */
+	public List<Job> removeJobs(String agent) {
+		List<Job> assignedJobs = scheduledJobs.get(agent);
+		if (assignedJobs == null)
+			return new ArrayList<>();
+
+		List<Job> jobs = new ArrayList<>(assignedJobs);
+		assignedJobs.clear();
+		for (Job job : jobs) {
+			jobsById.remove(job.getId());
+		}
+		if (!jobs.isEmpty())
+			backingStore.removeScheduledJobs(jobs);
+		return jobs;
+	}
+
 	/**
 	 * Get a list of all scheduled jobs for all agents.
 	 */
@@ -46,11 +46,9 @@ public class SimpleQueuePopScheduler extends AbstractScheduler<SimpleWorkRequest
 
 		// Create the schedule
 		Schedule schedule = new Schedule();
-		Iterator<Job> iterator = unscheduledJobs.iterator();
+		Iterator<Job> iterator = unscheduledJobs.iterator(workRequest.getWorkerTypes());
 		while (iterator.hasNext()) {
-			Job job = iterator.next();
-			if (workRequest.getWorkerTypes().contains(job.getWorkerType()))
-				schedule.setJob(getSender(), job);
+			schedule.setJob(getSender(), iterator.next());
 		}
 
 		// Dispatch the schedule
@@ -16,8 +16,10 @@
 package oncue.scheduler;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import oncue.backingstore.BackingStore;
 import oncue.common.messages.Job;
@@ -31,6 +33,13 @@ import oncue.common.messages.ThrottledWorkRequest;
  * stating the number of jobs it is able to process in parallel. This scheduler
  * will pop just enough jobs off the queue to satisfy this throttled request for
  * work.
+ * 
+ * Jobs for a batch worker are counted in batches, so a batch of up to the batch
+ * size declared in the work request takes the place of a single job.
+ * 
+ * Where the work request limits the slots for a worker type, jobs of that type
+ * are skipped once its slots are full, leaving the rest of the request to be
+ * filled by other worker types.
  */
 public class ThrottledScheduler extends AbstractScheduler<ThrottledWorkRequest> {
 
@@ -42,11 +51,39 @@ public class ThrottledScheduler extends AbstractScheduler<ThrottledWorkRequest>
 	protected void scheduleJobs(ThrottledWorkRequest workRequest) {
 
 		List<Job> jobs = new ArrayList<>();
-		Iterator<Job> iterator = unscheduledJobs.iterator();
-		while (iterator.hasNext() && jobs.size() < workRequest.getMaxJobs()) {
+		int scheduledUnits = 0;
+
+		// Map a batch worker type to the room left in its latest batch
+		Map<String, Integer> openBatches = new HashMap<>();
+
+		// Map a limited worker type to its free slots
+		Map<String, Integer> freeSlots = new HashMap<>(workRequest.getWorkerTypeSlots());
+
+		Iterator<Job> iterator = unscheduledJobs.iterator(workRequest.getWorkerTypes());
+		while (iterator.hasNext()
+				&& (scheduledUnits < workRequest.getMaxJobs() || !openBatches.isEmpty())) {
 			Job job = iterator.next();
-			if (workRequest.getWorkerTypes().contains(job.getWorkerType()))
-				jobs.add(job);
+			Integer room = openBatches.get(job.getWorkerType());
+			if (room != null) {
+				if (room == 1)
+					openBatches.remove(job.getWorkerType());
+				else
+					openBatches.put(job.getWorkerType(), room - 1);
+			} else if (scheduledUnits < workRequest.getMaxJobs()) {
+				Integer slots = freeSlots.get(job.getWorkerType());
+				if (slots != null) {
+					if (slots == 0)
+						continue;
+					freeSlots.put(job.getWorkerType(), slots - 1);
+				}
+				scheduledUnits++;
+				int batchSize = workRequest.getBatchSize(job.getWorkerType());
+				if (batchSize > 1)
+					openBatches.put(job.getWorkerType(), batchSize - 1);
+			} else
+				continue;
+
+			jobs.add(job);
 		}
 
 		// Create the schedule
@@ -13,28 +13,41 @@
  ******************************************************************************/
 package oncue.scheduler;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import oncue.backingstore.BackingStore;
-import oncue.common.comparators.JobComparator;
 import oncue.common.messages.Job;
 import akka.event.LoggingAdapter;
 
-import com.google.common.base.Function;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
-import com.google.common.collect.Sets;
 
 /**
  * An encapsulated job queue of unscheduled {@linkplain Job}s that relies on a backing store for
  * persistence.
+ * 
+ * As well as the prioritised queue of all unscheduled jobs, a prioritised sub-queue is kept for
+ * each worker type. This allows questions about the available work, and the scheduling of work to
+ * an agent, to be answered by looking only at the worker types the agent is able to process.
+ * 
+ * A job too large for any agent can be parked. A parked job stays in the queue of all jobs, so it
+ * can still be found, counted and removed, but it is taken out of the queue for its worker type
+ * until it is unparked, so scheduling passes and work broadcasts no longer visit it.
+ * 
+ * If the comparator is a {@linkplain FairQueuingJobComparator}, jobs are tagged as they are queued
+ * and released once they have left every queue.
  */
 public class UnscheduledJobs {
 
@@ -43,14 +56,37 @@ public class UnscheduledJobs {
 
 	private final LoggingAdapter log;
 
+	// The comparator used to prioritise every queue
+	private final Comparator<Job> jobComparator;
+
+	// The comparator as a fair queuing comparator, or null if it is not one
+	private final FairQueuingJobComparator fairQueuing;
+
 	// The prioritised queue of unscheduled jobs
-	private SortedSet<Job> unscheduledJobs = new TreeSet<>(new JobComparator());
+	private final SortedSet<Job> unscheduledJobs;
+
+	// Map a worker type to the prioritised queue of unscheduled jobs for that worker type
+	private final Map<String, SortedSet<Job>> workerTypeQueues = new HashMap<>();
+
+	// Map a job ID to the unscheduled job
+	private final Map<Long, Job> jobsById = new HashMap<>();
+
+	// Map a size to the parked jobs of that size
+	private final NavigableMap<Long, List<Job>> parkedJobs = new TreeMap<>();
+
+	// Map the ID of a parked job to its size
+	private final Map<Long, Long> parkedJobSizes = new HashMap<>();
 
 	/**
 	 * @param backingStore is an instance of {@linkplain BackingStore}
 	 */
 	public UnscheduledJobs(BackingStore backingStore, LoggingAdapter log,
 			Comparator<Job> jobComparator) {
+		this.jobComparator = jobComparator;
+		if (jobComparator instanceof FairQueuingJobComparator)
+			this.fairQueuing = (FairQueuingJobComparator) jobComparator;
+		else
+			this.fairQueuing = null;
 		this.unscheduledJobs = new TreeSet<>(jobComparator);
 		this.backingStore = backingStore;
 		this.log = log;
@@ -62,7 +98,27 @@ public class UnscheduledJobs {
 	 */
 	public void addJob(Job job) {
 		backingStore.addUnscheduledJob(job);
-		unscheduledJobs.add(job);
+		index(job);
+	}
+
+	/**
+	 * Add a list of jobs to the queue, persisting them in a single call to the backing store
+	 */
+	public void addJobs(List<Job> jobs) {
+		backingStore.addUnscheduledJobs(jobs);
+		for (Job job : jobs) {
+			index(job);
+		}
+	}
+
+	/**
+	 * Find an unscheduled job by its ID
+	 * 
+	 * @param jobId is the ID of the {@linkplain Job} to find
+	 * @return the unscheduled job, or null if there is no such job in the queue
+	 */
+	public Job getJobById(long jobId) {
+		return jobsById.get(jobId);
 	}
 
 	/**
@@ -72,17 +128,28 @@ public class UnscheduledJobs {
 		return unscheduledJobs.size();
 	}
 
+	/**
+	 * @return the number of parked jobs in the queue
+	 */
+	public int getParkedSize() {
+		return parkedJobSizes.size();
+	}
+
+	/**
+	 * @return the number of jobs in the queue for a particular worker type
+	 */
+	public int getSize(String workerType) {
+		SortedSet<Job> queue = workerTypeQueues.get(workerType);
+		if (queue == null)
+			return 0;
+		return queue.size();
+	}
+
 	/**
 	 * @return the set of worker types that enqueued jobs require to process
 	 */
 	public Set<String> getWorkerTypes() {
-		Set<String> workerTypes = new HashSet<>();
-		Iterator<Job> itrJobs = unscheduledJobs.iterator();
-		while (itrJobs.hasNext()) {
-			Job job = itrJobs.next();
-			workerTypes.add(job.getWorkerType());
-		}
-		return workerTypes;
+		return new HashSet<>(workerTypeQueues.keySet());
 	}
 
 	/**
@@ -96,10 +163,8 @@ public class UnscheduledJobs {
 	 * Determine if there are unscheduled jobs for the specified worker type.
 	 */
 	public boolean isWorkAvailable(Set<String> workerTypes) {
-		Iterator<Job> itrJobs = unscheduledJobs.iterator();
-		while (itrJobs.hasNext()) {
-			Job job = itrJobs.next();
-			if (workerTypes.contains(job.getWorkerType()))
+		for (String workerType : workerTypes) {
+			if (workerTypeQueues.containsKey(workerType))
 				return true;
 		}
 		return false;
@@ -113,24 +178,40 @@ public class UnscheduledJobs {
 	}
 
 	/**
-	 * Remove a job from anywhere in the queue
+	 * Iterate over the unscheduled jobs that can be processed by the specified worker types. Only
+	 * the sub-queues for these worker types are visited; the jobs are merged in priority order.
 	 * 
-	 * @return a boolean, indicating if the removal was successful
+	 * @param workerTypes is the set of worker types that can process the jobs
+	 * @return a read-only iterator over the matching unscheduled jobs, in priority order
 	 */
-	public boolean removeJobById(final long jobId) {
-		boolean removed = Iterables.removeIf(unscheduledJobs, new Predicate<Job>() {
-
-			@Override
-			public boolean apply(Job input) {
-				return input.getId() == jobId;
-			}
+	public Iterator<Job> iterator(Collection<String> workerTypes) {
+		List<Iterator<Job>> iterators = new ArrayList<>();
+		for (String workerType : workerTypes) {
+			SortedSet<Job> queue = workerTypeQueues.get(workerType);
+			if (queue != null)
+				iterators.add(queue.iterator());
+		}
 
-		});
+		if (iterators.isEmpty())
+			return Collections.<Job> emptyIterator();
+		if (iterators.size() == 1)
+			return Iterators.unmodifiableIterator(iterators.get(0));
+		return Iterators.mergeSorted(iterators, jobComparator);
+	}
 
-		if (removed)
-			backingStore.removeUnscheduledJobById(jobId);
+	/**
+	 * Remove a job from anywhere in the queue
+	 * 
+	 * @return a boolean, indicating if the removal was successful
+	 */
+	public boolean removeJobById(long jobId) {
+		Job job = jobsById.get(jobId);
+		if (job == null)
+			return false;
 
-		return removed;
+		unindex(job);
+		backingStore.removeUnscheduledJobById(jobId);
+		return true;
 	}
 
 	/**
@@ -139,29 +220,132 @@ public class UnscheduledJobs {
 	 * @return a boolean, indicating if the removal was successful
 	 */
 	public boolean removeJobs(List<Job> jobs) {
-		final Set<Long> jobIds = Sets.newHashSet(Iterators.transform(jobs.iterator(),
-				new Function<Job, Long>() {
+		boolean removed = dequeueJobs(jobs);
 
-					@Override
-					public Long apply(Job input) {
-						return input.getId();
-					}
+		if (backingStore != null && removed)
+			backingStore.removeUnscheduledJobs(jobs);
 
-				}));
+		return removed;
+	}
 
-		boolean removed = Iterables.removeIf(unscheduledJobs, new Predicate<Job>() {
-			@Override
-			public boolean apply(Job input) {
-				return jobIds.contains(input.getId());
+	/**
+	 * Remove a list of jobs from the queue without touching the backing store. This is for callers
+	 * that persist the removal themselves, such as the scheduler persisting a whole schedule at
+	 * once.
+	 * 
+	 * @return a boolean, indicating if any job was removed
+	 */
+	boolean dequeueJobs(List<Job> jobs) {
+		boolean removed = false;
+		for (Job job : jobs) {
+			Job unscheduledJob = jobsById.get(job.getId());
+			if (unscheduledJob != null) {
+				if (fairQueuing != null)
+					fairQueuing.jobScheduled(unscheduledJob);
+				unindex(unscheduledJob);
+				removed = true;
 			}
-		});
+		}
+		return removed;
+	}
 
-		if (backingStore != null && removed)
+	/**
+	 * Park a queued job, taking it out of the queue for its worker type
+	 * 
+	 * @param size is the size of the job, by which it will be unparked
+	 * @return the parked job, or null if the job isn't in the queue or is already parked
+	 */
+	Job park(long jobId, long size) {
+		Job unscheduledJob = jobsById.get(jobId);
+		if (unscheduledJob == null || parkedJobSizes.containsKey(jobId))
+			return null;
+
+		removeFromWorkerTypeQueue(unscheduledJob);
+		parkedJobSizes.put(jobId, size);
+		List<Job> jobs = parkedJobs.get(size);
+		if (jobs == null) {
+			jobs = new ArrayList<>();
+			parkedJobs.put(size, jobs);
+		}
+		jobs.add(unscheduledJob);
+		return unscheduledJob;
+	}
+
+	/**
+	 * Return the parked jobs that fit within a capacity to the queues for their worker types
+	 * 
+	 * @return the jobs that were unparked
+	 */
+	List<Job> unpark(long capacity) {
+		NavigableMap<Long, List<Job>> fittingJobs = parkedJobs.headMap(capacity, true);
+		List<Job> unparkedJobs = new ArrayList<>();
+		for (List<Job> jobs : fittingJobs.values()) {
 			for (Job job : jobs) {
-				backingStore.removeUnscheduledJobById(job.getId());
+				parkedJobSizes.remove(job.getId());
+				addToWorkerTypeQueue(job);
+				unparkedJobs.add(job);
 			}
+		}
+		fittingJobs.clear();
+		return unparkedJobs;
+	}
 
-		return removed;
+	/**
+	 * Add a job to the queue of all jobs, the queue for its worker type and the ID index. Any job
+	 * already queued with the same ID is replaced.
+	 */
+	private void index(Job job) {
+		Job existingJob = jobsById.get(job.getId());
+		if (existingJob != null)
+			unindex(existingJob);
+
+		if (fairQueuing != null)
+			fairQueuing.jobEnqueued(job);
+		jobsById.put(job.getId(), job);
+		unscheduledJobs.add(job);
+		addToWorkerTypeQueue(job);
+	}
+
+	/**
+	 * Remove a job from the queue of all jobs, the ID index and either the parked jobs or the queue
+	 * for its worker type
+	 */
+	private void unindex(Job job) {
+		jobsById.remove(job.getId());
+		unscheduledJobs.remove(job);
+		Long size = parkedJobSizes.remove(job.getId());
+		if (size == null)
+			removeFromWorkerTypeQueue(job);
+		else {
+			List<Job> jobs = parkedJobs.get(size);
+			jobs.remove(job);
+			if (jobs.isEmpty())
+				parkedJobs.remove(size);
+		}
+
+		if (fairQueuing != null)
+			fairQueuing.jobRemoved(job);
+	}
+
+	private void addToWorkerTypeQueue(Job job) {
+		SortedSet<Job> queue = workerTypeQueues.get(job.getWorkerType());
+		if (queue == null) {
+			queue = new TreeSet<>(jobComparator);
+			workerTypeQueues.put(job.getWorkerType(), queue);
+		}
+		queue.add(job);
+	}
+
+	/**
+	 * Remove a job from the queue for its worker type, dropping the queue once it is empty
+	 */
+	private void removeFromWorkerTypeQueue(Job job) {
+		SortedSet<Job> queue = workerTypeQueues.get(job.getWorkerType());
+		if (queue == null)
+			return;
+		queue.remove(job);
+		if (queue.isEmpty())
+			workerTypeQueues.remove(job.getWorkerType());
 	}
 
 	/**
@@ -172,7 +356,9 @@ public class UnscheduledJobs {
 		if (restoredJobs != null && !restoredJobs.isEmpty())
 			log.info("Restoring {} jobs from the backing store", restoredJobs.size());
 
-		unscheduledJobs.addAll(restoredJobs);
+		for (Job job : restoredJobs) {
+			index(job);
+		}
 	}
 
 }
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.scheduler;
+
+import java.util.List;
+
+import oncue.backingstore.AbstractBackingStore;
+import oncue.backingstore.BackingStore;
+import oncue.common.messages.Job;
+import oncue.common.messages.JobQuery;
+import oncue.common.settings.Settings;
+import oncue.scheduler.BackingStoreWriter.Operation;
+import oncue.scheduler.BackingStoreWriter.Write;
+
+import org.joda.time.Duration;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+
+/**
+ * Wraps a {@linkplain BackingStore} so that writes are handed to a {@linkplain BackingStoreWriter}
+ * and persisted asynchronously, while reads go to the wrapped backing store.
+ *
+ * Reads don't wait for the writer. Instead, the scheduler has the writer flush before it handles a
+ * request that reads complete or failed jobs, so the read sees every earlier write (see
+ * {@linkplain BackingStoreWriter.Sync}). Unscheduled and scheduled jobs are unaffected, as the
+ * scheduler keeps them in memory.
+ */
+public class WriteBehindBackingStore extends AbstractBackingStore {
+
+	// The wrapped backing store
+	private final BackingStore backingStore;
+
+	// The actor that persists the writes
+	private final ActorRef writer;
+
+	/**
+	 * @param backingStore is the {@linkplain BackingStore} to wrap
+	 * @param writer is the {@linkplain BackingStoreWriter} that writes to the backing store
+	 */
+	public WriteBehindBackingStore(ActorSystem system, Settings settings,
+			BackingStore backingStore, ActorRef writer) {
+		super(system, settings);
+		this.backingStore = backingStore;
+		this.writer = writer;
+	}
+
+	/**
+	 * Hand a write over to the writer. Jobs are cloned, as the scheduler continues to modify the
+	 * originals.
+	 */
+	private void write(Operation operation, Job job) {
+		writer.tell(new Write(operation, (Job) job.clone()), null);
+	}
+
+	private void write(Operation operation, List<Job> jobs) {
+		for (Job job : jobs) {
+			write(operation, job);
+		}
+	}
+
+	private void write(Operation operation, long jobId) {
+		writer.tell(new Write(operation, jobId), null);
+	}
+
+	@Override
+	public void addScheduledJobs(List<Job> scheduledJobs) {
+		write(Operation.ADD_SCHEDULED, scheduledJobs);
+	}
+
+	@Override
+	public void addUnscheduledJob(Job job) {
+		write(Operation.ADD_UNSCHEDULED, job);
+	}
+
+	@Override
+	public void addUnscheduledJobs(List<Job> jobs) {
+		write(Operation.ADD_UNSCHEDULED, jobs);
+	}
+
+	/**
+	 * The writer closes the wrapped backing store once it has flushed its last writes, as it may
+	 * still be stopping when the scheduler closes this backing store.
+	 */
+	@Override
+	public void close() {
+		// NOOP
+	}
+
+	@Override
+	public int cleanupJobs(boolean includeFailedJobs, Duration expirationAge, int limit) {
+		return backingStore.cleanupJobs(includeFailedJobs, expirationAge, limit);
+	}
+
+	@Override
+	public List<Job> getCompletedJobs() {
+		return backingStore.getCompletedJobs();
+	}
+
+	@Override
+	public int getCompletedJobsCount() {
+		return backingStore.getCompletedJobsCount();
+	}
+
+	@Override
+	public List<Job> getFailedJobs() {
+		return backingStore.getFailedJobs();
+	}
+
+	@Override
+	public int getFailedJobsCount() {
+		return backingStore.getFailedJobsCount();
+	}
+
+	@Override
+	public long getNextJobID() {
+		return backingStore.getNextJobID();
+	}
+
+	@Override
+	public Job loadJobById(long jobId) {
+		return backingStore.loadJobById(jobId);
+	}
+
+	@Override
+	public void persistJobFailure(Job job) {
+		write(Operation.PERSIST_FAILURE, job);
+	}
+
+	@Override
+	public void persistJobProgress(Job job) {
+		write(Operation.PERSIST_PROGRESS, job);
+	}
+
+	@Override
+	public void persistJobsProgress(List<Job> jobs) {
+		write(Operation.PERSIST_PROGRESS, jobs);
+	}
+
+	@Override
+	public List<Job> queryJobs(JobQuery query) {
+		return backingStore.queryJobs(query);
+	}
+
+	@Override
+	public void removeCompletedJobById(long jobId) {
+		write(Operation.REMOVE_COMPLETED, jobId);
+	}
+
+	@Override
+	public void removeFailedJobById(long jobId) {
+		write(Operation.REMOVE_FAILED, jobId);
+	}
+
+	@Override
+	public void removeScheduledJobById(long jobId) {
+		write(Operation.REMOVE_SCHEDULED, jobId);
+	}
+
+	@Override
+	public void removeScheduledJobs(List<Job> jobs) {
+		write(Operation.REMOVE_SCHEDULED, jobs);
+	}
+
+	@Override
+	public void removeUnscheduledJobById(long jobId) {
+		write(Operation.REMOVE_UNSCHEDULED, jobId);
+	}
+
+	@Override
+	public void removeUnscheduledJobs(List<Job> jobs) {
+		write(Operation.REMOVE_UNSCHEDULED, jobs);
+	}
+
+	@Override
+	public List<Job> restoreJobs() {
+		return backingStore.restoreJobs();
+	}
+
+	@Override
+	public void scheduleJobs(List<Job> jobs) {
+		write(Operation.SCHEDULE, jobs);
+	}
+
+}
@@ -2,34 +2,39 @@ package controllers.api;
 
 import static akka.pattern.Patterns.ask;
 
-import java.util.ArrayList;
-
 import java.text.SimpleDateFormat;
+import java.util.HashSet;
+import java.util.Set;
 
 import oncue.OnCueService;
 import oncue.common.messages.DeleteJob;
 import oncue.common.messages.EnqueueJob;
 import oncue.common.messages.Job;
+import oncue.common.messages.JobQuery;
 import oncue.common.messages.JobSummary;
 import oncue.common.messages.RerunJob;
-import oncue.common.messages.SimpleMessages.SimpleMessage;
 import oncue.common.settings.Settings;
 import oncue.common.settings.SettingsProvider;
 
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.PropertyNamingStrategy;
 import org.codehaus.jackson.map.SerializationConfig;
+import org.joda.time.DateTime;
 
 import play.Logger;
 import play.libs.Akka;
 import play.libs.F.Function;
 import play.mvc.Controller;
+import play.mvc.Http;
 import play.mvc.Result;
 import akka.actor.ActorRef;
 import akka.dispatch.Recover;
 import akka.pattern.AskTimeoutException;
 import akka.util.Timeout;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.Sets;
+
 public class Jobs extends Controller {
 
 	private final static Settings settings = SettingsProvider.SettingsProvider.get(OnCueService.system());
@@ -42,23 +47,36 @@ public class Jobs extends Controller {
 	}
 
 	/**
-	 * List all jobs
+	 * List jobs, optionally filtered and paginated by the query parameters described by
+	 * {@linkplain JobQuery}. When a page is full, the cursor for the next page is returned in a
+	 * response header.
 	 * 
 	 * @return a {@linkplain JobSummary}
 	 */
 	public static Result index() {
+		JobQuery query;
+		try {
+			query = parseJobQuery();
+		} catch (IllegalArgumentException e) {
+			Logger.error("Failed to parse job query", e);
+			return badRequest(e.getMessage());
+		}
+
+		// The HTTP context is not available inside the promise callback
+		final Http.Response httpResponse = response();
+
 		ActorRef scheduler = OnCueService.system().actorFor(settings.SCHEDULER_PATH);
 		return async(Akka.asPromise(
-				ask(scheduler, SimpleMessage.JOB_SUMMARY, new Timeout(settings.SCHEDULER_TIMEOUT)).recover(
+				ask(scheduler, query, new Timeout(settings.SCHEDULER_TIMEOUT)).recover(
 						new Recover<Object>() {
 							@Override
 							public Object recover(Throwable t) {
 								if (t instanceof AskTimeoutException) {
-									Logger.error("Timeout waiting for scheduler to respond to job summary request", t);
+									Logger.error("Timeout waiting for scheduler to respond to job query", t);
 									return internalServerError("Timeout");
 								} else {
-									Logger.error("Failed to request jobs from scheduler", t);
-									return internalServerError("Failed to request jobs from scheduler");
+									Logger.error("Failed to query jobs from scheduler", t);
+									return internalServerError("Failed to query jobs from scheduler");
 								}
 							}
 						}, OnCueService.system().dispatcher())).map(new Function<Object, Result>() {
@@ -69,6 +87,9 @@ public class Jobs extends Controller {
 					return (Result) response;
 				} else {
 					JobSummary jobSummary = (JobSummary) response;
+					if (jobSummary.getNextCursor() != null)
+						httpResponse.setHeader(JobQuery.NEXT_CURSOR_HEADER,
+								jobSummary.getNextCursor().toString());
 					return ok(mapper.valueToTree(jobSummary.getJobs()));
 				}
 			}
@@ -81,9 +102,13 @@ public class Jobs extends Controller {
 	 * @return a {@linkplain JobSummary}
 	 */
 	public static Result show(final Long id) {
+		JobQuery query = new JobQuery();
+		query.setMinId(id);
+		query.setMaxId(id);
+
 		ActorRef scheduler = OnCueService.system().actorFor(settings.SCHEDULER_PATH);
 		return async(Akka.asPromise(
-				ask(scheduler, SimpleMessage.JOB_SUMMARY, new Timeout(settings.SCHEDULER_TIMEOUT)).recover(
+				ask(scheduler, query, new Timeout(settings.SCHEDULER_TIMEOUT)).recover(
 						new Recover<Object>() {
 							@Override
 							public Object recover(Throwable t) {
@@ -224,4 +249,53 @@ public class Jobs extends Controller {
 			}
 		}));
 	}
+
+	/**
+	 * Build a job query from the query string of the current request
+	 * 
+	 * @throws IllegalArgumentException if a query parameter cannot be parsed
+	 */
+	private static JobQuery parseJobQuery() {
+		JobQuery query = new JobQuery();
+
+		String states = request().getQueryString(JobQuery.STATES_PARAM);
+		if (states != null) {
+			Set<Job.State> jobStates = new HashSet<>();
+			for (String state : Splitter.on(',').omitEmptyStrings().trimResults().split(states)) {
+				jobStates.add(Job.State.valueOf(state.toUpperCase()));
+			}
+			query.setStates(jobStates);
+		}
+
+		String workerTypes = request().getQueryString(JobQuery.WORKER_TYPES_PARAM);
+		if (workerTypes != null)
+			query.setWorkerTypes(Sets.newHashSet(Splitter.on(',').omitEmptyStrings().trimResults()
+					.split(workerTypes)));
+
+		String minId = request().getQueryString(JobQuery.MIN_ID_PARAM);
+		if (minId != null)
+			query.setMinId(Long.valueOf(minId));
+
+		String maxId = request().getQueryString(JobQuery.MAX_ID_PARAM);
+		if (maxId != null)
+			query.setMaxId(Long.valueOf(maxId));
+
+		String enqueuedAfter = request().getQueryString(JobQuery.ENQUEUED_AFTER_PARAM);
+		if (enqueuedAfter != null)
+			query.setEnqueuedAfter(DateTime.parse(enqueuedAfter));
+
+		String enqueuedBefore = request().getQueryString(JobQuery.ENQUEUED_BEFORE_PARAM);
+		if (enqueuedBefore != null)
+			query.setEnqueuedBefore(DateTime.parse(enqueuedBefore));
+
+		String pageSize = request().getQueryString(JobQuery.PAGE_SIZE_PARAM);
+		if (pageSize != null)
+			query.setPageSize(Integer.parseInt(pageSize));
+
+		String cursor = request().getQueryString(JobQuery.CURSOR_PARAM);
+		if (cursor != null)
+			query.setCursor(Long.valueOf(cursor));
+
+		return query;
+	}
 }
@@ -2,8 +2,7 @@ package controllers.api;
 
 import static akka.pattern.Patterns.ask;
 import oncue.OnCueService;
-import oncue.common.messages.Job;
-import oncue.common.messages.JobSummary;
+import oncue.common.messages.JobCounts;
 import oncue.common.messages.SimpleMessages.SimpleMessage;
 import oncue.common.settings.Settings;
 import oncue.common.settings.SettingsProvider;
@@ -31,16 +30,16 @@ public class Status extends Controller {
 	public static Result index() {
 		ActorRef scheduler = OnCueService.system().actorFor(settings.SCHEDULER_PATH);
 		return async(Akka.asPromise(
-				ask(scheduler, SimpleMessage.JOB_SUMMARY, new Timeout(settings.SCHEDULER_TIMEOUT)).recover(
+				ask(scheduler, SimpleMessage.JOB_COUNTS, new Timeout(settings.SCHEDULER_TIMEOUT)).recover(
 						new Recover<Object>() {
 							@Override
 							public Object recover(Throwable t) {
 								if (t instanceof AskTimeoutException) {
-									Logger.error("Timeout waiting for scheduler to respond to job summary request", t);
+									Logger.error("Timeout waiting for scheduler to respond to job counts request", t);
 									return internalServerError("Timeout");
 								} else {
-									Logger.error("Failed to request jobs from scheduler", t);
-									return internalServerError("Failed to request jobs from scheduler");
+									Logger.error("Failed to request job counts from scheduler", t);
+									return internalServerError("Failed to request job counts from scheduler");
 								}
 							}
 						}, OnCueService.system().dispatcher())).map(new Function<Object, Result>() {
@@ -50,24 +49,10 @@ public class Status extends Controller {
 					// Result objects are returned by the recover handler above
 					return (Result) response;
 				} else {
-					JobSummary jobSummary = (JobSummary) response;
-					int failedJobs = 0;
-					int completeJobs = 0;
-					for (Job job : jobSummary.getJobs()) {
-						switch (job.getState()) {
-						case FAILED:
-							failedJobs++;
-							break;
-						case COMPLETE:
-							completeJobs++;
-							break;
-						default:
-							break;
-						}
-					}
+					JobCounts jobCounts = (JobCounts) response;
 					ObjectNode result = Json.newObject();
-					result.put("complete_jobs_count", completeJobs);
-					result.put("failed_jobs_count", failedJobs);
+					result.put("complete_jobs_count", jobCounts.getCompleteJobs());
+					result.put("failed_jobs_count", jobCounts.getFailedJobs());
 					return ok(result);
 				}
 			}
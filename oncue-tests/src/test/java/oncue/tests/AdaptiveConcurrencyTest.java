@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.tests;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.Job;
+import oncue.common.messages.ThrottledWorkRequest;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.TestWorker;
+
+import org.junit.Test;
+
+import akka.actor.ActorRef;
+import akka.testkit.JavaTestKit;
+
+/**
+ * An adaptive throttled agent raises its concurrency limit while jobs keep
+ * running as fast as usual and every worker slot is in use, and tells the
+ * scheduler about the new limit when it asks for work.
+ */
+public class AdaptiveConcurrencyTest extends ActorSystemTest {
+
+	@Test
+	public void raiseLimitWhileLatencyIsSteady() {
+		new JavaTestKit(system) {
+			{
+				// Create a scheduler probe
+				final JavaTestKit schedulerProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							protected boolean ignore(Object message) {
+								return !(message instanceof ThrottledWorkRequest);
+							}
+						};
+					}
+				};
+
+				// Create a scheduler
+				ActorRef scheduler = createScheduler(system, schedulerProbe.getRef());
+
+				// Enqueue jobs
+				for (int i = 0; i < 4; i++) {
+					scheduler.tell(new EnqueueJob(TestWorker.class.getName()), getRef());
+					expectMsgClass(Job.class);
+				}
+
+				// Create an agent starting with one worker (see config)
+				createAgent(system, new HashSet<String>(Arrays.asList(TestWorker.class.getName())), null);
+
+				// Expect the first request to carry the starting limit
+				ThrottledWorkRequest workRequest = schedulerProbe.expectMsgClass(ThrottledWorkRequest.class);
+				assertEquals(1, workRequest.getConcurrencyLimit());
+
+				// Expect the limit to grow once the first job completes
+				new AwaitCond(duration("10 seconds")) {
+
+					@Override
+					protected boolean cond() {
+						ThrottledWorkRequest workRequest = schedulerProbe.expectMsgClass(duration("5 seconds"),
+								ThrottledWorkRequest.class);
+						return workRequest.getConcurrencyLimit() > 1;
+					}
+				};
+			}
+		};
+	}
+}
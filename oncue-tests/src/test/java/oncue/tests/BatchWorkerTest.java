@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.tests;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.Job;
+import oncue.common.messages.Job.State;
+import oncue.common.messages.JobFailed;
+import oncue.common.messages.JobProgress;
+import oncue.common.messages.WorkResponse;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.BatchTestWorker;
+
+import org.junit.Test;
+
+import akka.actor.ActorRef;
+import akka.testkit.JavaTestKit;
+
+/**
+ * A batch worker is handed a batch of jobs as a single unit of work, and
+ * reports the outcome of each job in the batch.
+ */
+public class BatchWorkerTest extends ActorSystemTest {
+
+	@Test
+	public void batchesCountAsSingleJobs() {
+		new JavaTestKit(system) {
+			{
+				// Create a scheduler
+				ActorRef scheduler = createScheduler(system);
+
+				// Enqueue jobs, one of which will fail
+				for (int i = 0; i < 5; i++) {
+					scheduler.tell(new EnqueueJob(BatchTestWorker.class.getName(),
+							i == 1 ? Collections.singletonMap("fail", "true")
+									: Collections.<String, String> emptyMap()), getRef());
+					expectMsgClass(Job.class);
+				}
+
+				// Create an agent probe
+				final JavaTestKit agentProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							protected boolean ignore(Object message) {
+								return !(message instanceof WorkResponse
+										|| message instanceof JobProgress || message instanceof JobFailed);
+							}
+						};
+					}
+				};
+
+				// Create an agent with one worker and a batch size of three (see config)
+				createAgent(system,
+						new HashSet<String>(Arrays.asList(BatchTestWorker.class.getName())),
+						agentProbe.getRef());
+
+				// Expect the first batch to be scheduled as a single job
+				WorkResponse workResponse = agentProbe.expectMsgClass(WorkResponse.class);
+				assertEquals(3, workResponse.getJobs().size());
+
+				// Expect an outcome for every job, from two batch workers
+				final Set<Long> completedJobs = new HashSet<>();
+				final Set<Long> failedJobs = new HashSet<>();
+				final Set<String> workers = new HashSet<>();
+				new AwaitCond(duration("20 seconds")) {
+
+					@Override
+					protected boolean cond() {
+						Object message = agentProbe.expectMsgAnyClassOf(duration("5 seconds"),
+								WorkResponse.class, JobProgress.class, JobFailed.class);
+						if (message instanceof JobProgress) {
+							Job job = ((JobProgress) message).getJob();
+							assertEquals(State.COMPLETE, job.getState());
+							completedJobs.add(job.getId());
+							workers.add(agentProbe.getLastSender().path().name());
+						} else if (message instanceof JobFailed) {
+							failedJobs.add(((JobFailed) message).getJob().getId());
+							workers.add(agentProbe.getLastSender().path().name());
+						}
+						return completedJobs.size() + failedJobs.size() == 5;
+					}
+				};
+				assertEquals(4, completedJobs.size());
+				assertEquals(new HashSet<Long>(Arrays.asList(2L)), failedJobs);
+				assertEquals(2, workers.size());
+				for (String worker : workers) {
+					assertTrue(worker.startsWith("batch-"));
+				}
+			}
+		};
+	}
+}
@@ -27,6 +27,7 @@ import oncue.common.messages.SimpleMessages.SimpleMessage;
 import oncue.common.messages.WorkAvailable;
 import oncue.common.messages.WorkResponse;
 import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.IncompetentTestWorker;
 import oncue.tests.workers.TestWorker;
 
 import org.junit.Test;
@@ -124,4 +125,59 @@ public class BroadcastWorkTest extends ActorSystemTest {
 		};
 	}
 
+	@Test
+	public void onlyAgentsWithMatchingWorkersAreNotified() {
+		new JavaTestKit(system) {
+			{
+				// Create a probe for an agent that can process the job
+				final JavaTestKit capableAgentProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							protected boolean ignore(Object message) {
+								if (message instanceof WorkResponse || message instanceof WorkAvailable)
+									return false;
+								else
+									return true;
+							}
+						};
+					}
+				};
+
+				// Create a probe for an agent that cannot process the job
+				final JavaTestKit incapableAgentProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							protected boolean ignore(Object message) {
+								if (message instanceof WorkResponse || message instanceof WorkAvailable)
+									return false;
+								else
+									return true;
+							}
+						};
+					}
+				};
+
+				ActorRef scheduler = createScheduler(system);
+
+				// Create both agents and wait for their empty work responses
+				createAgent(system, new HashSet<String>(Arrays.asList(TestWorker.class.getName(),
+						IncompetentTestWorker.class.getName())), capableAgentProbe.getRef());
+				createAgent(system,
+						new HashSet<String>(Arrays.asList(IncompetentTestWorker.class.getName())),
+						incapableAgentProbe.getRef());
+				capableAgentProbe.expectMsgClass(WorkResponse.class);
+				incapableAgentProbe.expectMsgClass(WorkResponse.class);
+
+				// Enqueue a job
+				scheduler.tell(new EnqueueJob(TestWorker.class.getName()), getRef());
+
+				// Expect only the capable agent to hear about the job
+				WorkAvailable workAvailable = capableAgentProbe.expectMsgClass(WorkAvailable.class);
+				assertEquals(new HashSet<String>(Arrays.asList(TestWorker.class.getName())),
+						workAvailable.getWorkerTypes());
+				incapableAgentProbe.expectNoMsg();
+			}
+		};
+	}
+
 }
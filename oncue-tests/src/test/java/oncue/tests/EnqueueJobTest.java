@@ -16,6 +16,10 @@
 package oncue.tests;
 
 import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
 import oncue.common.messages.EnqueueJob;
 import oncue.common.messages.Job;
 import oncue.tests.base.ActorSystemTest;
@@ -24,6 +28,7 @@ import oncue.tests.workers.TestWorker;
 import org.junit.Test;
 
 import akka.actor.ActorRef;
+import akka.actor.Status.Failure;
 import akka.testkit.JavaTestKit;
 
 public class EnqueueJobTest extends ActorSystemTest {
@@ -49,4 +54,29 @@ public class EnqueueJobTest extends ActorSystemTest {
 		};
 	}
 
+	@Test
+	public void testEnqueuingJobWithInvalidPriority() {
+		new JavaTestKit(system) {
+			{
+				// Create a scheduler
+				ActorRef scheduler = createScheduler(system, null);
+
+				// Enqueue a job with a priority that isn't a number
+				Map<String, String> params = new HashMap<>();
+				params.put("priority", "high");
+				scheduler.tell(new EnqueueJob(TestWorker.class.getName(), params), getRef());
+
+				// Expect the job to be rejected
+				Failure failure = expectMsgClass(Failure.class);
+				assertEquals(IllegalArgumentException.class, failure.cause().getClass());
+
+				// Expect the scheduler to carry on enqueuing valid jobs
+				params.put("priority", "2");
+				scheduler.tell(new EnqueueJob(TestWorker.class.getName(), params), getRef());
+				Job job = expectMsgClass(Job.class);
+				assertEquals(2, job.getPriority());
+			}
+		};
+	}
+
 }
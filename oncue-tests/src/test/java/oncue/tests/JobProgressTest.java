@@ -27,6 +27,7 @@ import java.util.concurrent.TimeUnit;
 import oncue.common.messages.EnqueueJob;
 import oncue.common.messages.Job;
 import oncue.common.messages.JobProgress;
+import oncue.common.messages.JobProgressDelta;
 import oncue.tests.base.ActorSystemTest;
 import oncue.tests.workers.TestWorker;
 
@@ -98,6 +99,10 @@ public class JobProgressTest extends ActorSystemTest {
 					assertEquals("Was expecting the job to be running.", Job.State.RUNNING, agentProgress.getJob()
 							.getState());
 
+					// Only the start of the job changes its state, so later reports are compact
+					assertEquals("Was expecting a compact progress report", i > 0,
+							agentProgress instanceof JobProgressDelta);
+
 					// Scheduler progress
 					JobProgress schedulerProgress = schedulerProbe.expectMsgClass(JobProgress.class);
 					job = schedulerProgress.getJob();
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.tests;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.Job;
+import oncue.common.messages.JobProgress;
+import oncue.common.messages.WorkResponse;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.TestWorker;
+
+import org.junit.Test;
+
+import akka.actor.ActorRef;
+import akka.testkit.JavaTestKit;
+
+/**
+ * A throttled agent with a prefetch depth takes more jobs than it has workers,
+ * holding the extra jobs until a worker is free. It then starts them without
+ * asking the scheduler for more work.
+ */
+public class PrefetchTest extends ActorSystemTest {
+
+	@Test
+	public void prefetchJobsBeyondMaxWorkers() {
+		new JavaTestKit(system) {
+			{
+				// Create a scheduler
+				ActorRef scheduler = createScheduler(system);
+
+				// Enqueue jobs
+				for (int i = 0; i < 3; i++) {
+					scheduler.tell(new EnqueueJob(TestWorker.class.getName()), getRef());
+					expectMsgClass(Job.class);
+				}
+
+				// Create an agent probe
+				final JavaTestKit agentProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							protected boolean ignore(Object message) {
+								if (message instanceof WorkResponse || message instanceof JobProgress)
+									return false;
+								else
+									return true;
+							}
+						};
+					}
+				};
+
+				// Create an agent with one worker and two prefetched jobs (see config)
+				createAgent(system, new HashSet<String>(Arrays.asList(TestWorker.class.getName())),
+						agentProbe.getRef());
+
+				// Expect a single work response with all three jobs
+				WorkResponse workResponse = agentProbe.expectMsgClass(WorkResponse.class);
+				assertEquals(3, workResponse.getJobs().size());
+
+				// Stop the scheduler, so the prefetched jobs can only be started from the agent's own
+				// queue, without another work request and response
+				system.stop(scheduler);
+
+				// Expect every job to complete, one at a time
+				final Set<Long> completedJobs = new HashSet<>();
+				final Set<Long> runningJobs = new HashSet<>();
+				new AwaitCond(duration("20 seconds")) {
+
+					@Override
+					protected boolean cond() {
+						Object message = agentProbe.expectMsgAnyClassOf(duration("5 seconds"),
+								WorkResponse.class, JobProgress.class);
+
+						// Only a request made before the scheduler stopped can be answered
+						if (message instanceof WorkResponse) {
+							assertEquals(0, ((WorkResponse) message).getJobs().size());
+							return false;
+						}
+
+						Job job = ((JobProgress) message).getJob();
+						if (job.getProgress() == 1.0) {
+							runningJobs.remove(job.getId());
+							completedJobs.add(job.getId());
+						} else {
+							runningJobs.add(job.getId());
+							assertEquals(1, runningJobs.size());
+						}
+						return completedJobs.size() == 3;
+					}
+				};
+			}
+		};
+	}
+}
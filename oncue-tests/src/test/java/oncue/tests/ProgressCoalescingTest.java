@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.tests;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.Job;
+import oncue.common.messages.JobProgress;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.TestWorker;
+
+import org.junit.Test;
+
+import akka.actor.ActorRef;
+import akka.testkit.JavaTestKit;
+
+/**
+ * When the agent coalesces progress reports, the scheduler only sees state
+ * changes straight away, while the reports in between are superseded.
+ */
+public class ProgressCoalescingTest extends ActorSystemTest {
+
+	@Test
+	public void coalesceProgressBetweenStateChanges() {
+		new JavaTestKit(system) {
+			{
+				// Create a scheduler probe
+				final JavaTestKit schedulerProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							@Override
+							protected boolean ignore(Object message) {
+								return !(message instanceof JobProgress);
+							}
+						};
+					}
+				};
+
+				// Create a scheduler with a probe
+				ActorRef scheduler = createScheduler(system, schedulerProbe.getRef());
+
+				// Enqueue a job
+				scheduler.tell(new EnqueueJob(TestWorker.class.getName()), getRef());
+				expectMsgClass(Job.class);
+
+				// Start an agent that relays progress every 5 seconds (see config)
+				createAgent(system, new HashSet<String>(Arrays.asList(TestWorker.class.getName())));
+
+				// Expect the start of the job to be relayed immediately
+				Job job = schedulerProbe.expectMsgClass(JobProgress.class).getJob();
+				assertEquals(Job.State.RUNNING, job.getState());
+				assertEquals(0.0, job.getProgress());
+
+				// Expect the completion to supersede the progress in between
+				job = schedulerProbe.expectMsgClass(JobProgress.class).getJob();
+				assertEquals(Job.State.COMPLETE, job.getState());
+				assertEquals(1.0, job.getProgress());
+
+				// Expect nothing more to be relayed
+				schedulerProbe.expectNoMsg(duration("6 seconds"));
+			}
+		};
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.tests;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.Job;
+import oncue.common.messages.JobProgress;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.TestWorker;
+
+import org.junit.Test;
+
+import akka.actor.ActorRef;
+import akka.testkit.JavaTestKit;
+
+/**
+ * Workers of a reusable worker type are kept alive after a job completes, and
+ * are given the next job rather than a new worker being created.
+ */
+public class ReusableWorkerTest extends ActorSystemTest {
+
+	@Test
+	public void oneWorkerProcessesEveryJob() {
+		new JavaTestKit(system) {
+			{
+				// Create a scheduler
+				ActorRef scheduler = createScheduler(system);
+
+				// Enqueue jobs
+				for (int i = 0; i < 3; i++) {
+					scheduler.tell(new EnqueueJob(TestWorker.class.getName()), getRef());
+					expectMsgClass(Job.class);
+				}
+
+				// Create an agent probe
+				final JavaTestKit agentProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							protected boolean ignore(Object message) {
+								return !(message instanceof JobProgress);
+							}
+						};
+					}
+				};
+
+				// Create an agent with a single, reusable worker (see config)
+				createAgent(system, new HashSet<String>(Arrays.asList(TestWorker.class.getName())),
+						agentProbe.getRef());
+
+				// Expect every job to complete, all on the same worker
+				final Set<Long> completedJobs = new HashSet<>();
+				final Set<String> workers = new HashSet<>();
+				new AwaitCond(duration("20 seconds")) {
+
+					@Override
+					protected boolean cond() {
+						Job job = agentProbe.expectMsgClass(duration("5 seconds"), JobProgress.class)
+								.getJob();
+						workers.add(agentProbe.getLastSender().path().name());
+						if (job.getProgress() == 1.0)
+							completedJobs.add(job.getId());
+						return completedJobs.size() == 3;
+					}
+				};
+				assertEquals(1, workers.size());
+				assertEquals("worker-1", workers.iterator().next());
+			}
+		};
+	}
+}
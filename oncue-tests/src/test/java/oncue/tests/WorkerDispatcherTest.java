@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.tests;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.Job;
+import oncue.common.messages.JobProgress;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.ThreadRecordingTestWorker;
+import oncue.tests.workers.ThreadRecordingTestWorker2;
+
+import org.junit.Test;
+
+import akka.actor.ActorRef;
+import akka.testkit.JavaTestKit;
+
+/**
+ * Workers run on their own dispatchers, which can be chosen per worker type.
+ */
+public class WorkerDispatcherTest extends ActorSystemTest {
+
+	@Test
+	public void runWorkersOnConfiguredDispatchers() {
+		new JavaTestKit(system) {
+			{
+				// Create a scheduler probe
+				final JavaTestKit schedulerProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							@Override
+							protected boolean ignore(Object message) {
+								return !(message instanceof JobProgress);
+							}
+						};
+					}
+				};
+
+				ActorRef scheduler = createScheduler(system, schedulerProbe.getRef());
+				ThreadRecordingTestWorker.THREADS.clear();
+
+				// Enqueue a job for the pinned dispatcher and one for the default worker dispatcher
+				scheduler.tell(new EnqueueJob(ThreadRecordingTestWorker.class.getName()), getRef());
+				Job pinnedJob = expectMsgClass(Job.class);
+				scheduler.tell(new EnqueueJob(ThreadRecordingTestWorker2.class.getName()), getRef());
+				Job defaultJob = expectMsgClass(Job.class);
+
+				createAgent(system, new HashSet<String>(Arrays.asList(
+						ThreadRecordingTestWorker.class.getName(),
+						ThreadRecordingTestWorker2.class.getName())));
+
+				// Expect both jobs to complete
+				final HashSet<Long> completedJobs = new HashSet<>();
+				new AwaitCond(duration("10 seconds")) {
+
+					@Override
+					protected boolean cond() {
+						Job job = schedulerProbe.expectMsgClass(JobProgress.class).getJob();
+						if (job.getState() == Job.State.COMPLETE)
+							completedJobs.add(job.getId());
+						return completedJobs.size() == 2;
+					}
+				};
+				assertEquals(2, completedJobs.size());
+
+				// Dispatcher threads are named after the dispatcher
+				String pinnedThread = ThreadRecordingTestWorker.THREADS.get(pinnedJob.getId());
+				assertTrue(pinnedThread, pinnedThread.contains("oncue.tests.pinned-worker-dispatcher"));
+
+				String defaultThread = ThreadRecordingTestWorker.THREADS.get(defaultJob.getId());
+				assertTrue(defaultThread, defaultThread.contains(settings.AGENT_WORKER_DISPATCHER));
+				assertFalse(defaultThread, defaultThread.contains("pinned-worker-dispatcher"));
+			}
+		};
+	}
+}
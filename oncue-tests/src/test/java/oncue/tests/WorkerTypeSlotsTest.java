@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.tests;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.Job;
+import oncue.common.messages.WorkResponse;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.TestWorker;
+import oncue.tests.workers.TestWorker2;
+
+import org.junit.Test;
+
+import akka.actor.ActorRef;
+import akka.testkit.JavaTestKit;
+
+/**
+ * When an agent limits the slots for a worker type, a burst of jobs of that
+ * type only takes its own slots, leaving the others for the rest of the queue.
+ */
+public class WorkerTypeSlotsTest extends ActorSystemTest {
+
+	@Test
+	public void fillSlotsPerWorkerType() {
+		new JavaTestKit(system) {
+			{
+				// Create a scheduler
+				ActorRef scheduler = createScheduler(system);
+
+				// Enqueue a burst of "TestWorker" jobs ahead of two "TestWorker2" jobs
+				for (int i = 0; i < 3; i++) {
+					scheduler.tell(new EnqueueJob(TestWorker.class.getName()), getRef());
+					expectMsgClass(Job.class);
+				}
+				for (int i = 0; i < 2; i++) {
+					scheduler.tell(new EnqueueJob(TestWorker2.class.getName()), getRef());
+					expectMsgClass(Job.class);
+				}
+
+				// Create an agent probe
+				final JavaTestKit agentProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							protected boolean ignore(Object message) {
+								return !(message instanceof WorkResponse);
+							}
+						};
+					}
+				};
+
+				// Create an agent with three workers, one of which may run "TestWorker" (see config)
+				createAgent(system,
+						new HashSet<String>(Arrays.asList(TestWorker.class.getName(), TestWorker2.class.getName())),
+						agentProbe.getRef());
+
+				// Expect the first work response to skip the remaining "TestWorker" jobs
+				WorkResponse workResponse = agentProbe.expectMsgClass(WorkResponse.class);
+				assertEquals(3, workResponse.getJobs().size());
+				assertEquals(1, workResponse.getJobs().get(0).getId());
+				assertEquals(TestWorker2.class.getName(), workResponse.getJobs().get(1).getWorkerType());
+				assertEquals(TestWorker2.class.getName(), workResponse.getJobs().get(2).getWorkerType());
+
+				// Expect the next "TestWorker" job, on its own, once the first has finished
+				new AwaitCond(duration("10 seconds")) {
+
+					@Override
+					protected boolean cond() {
+						WorkResponse workResponse = agentProbe.expectMsgClass(duration("5 seconds"),
+								WorkResponse.class);
+						if (workResponse.getJobs().isEmpty())
+							return false;
+						assertEquals(1, workResponse.getJobs().size());
+						assertEquals(2, workResponse.getJobs().get(0).getId());
+						return true;
+					}
+				};
+			}
+		};
+	}
+}
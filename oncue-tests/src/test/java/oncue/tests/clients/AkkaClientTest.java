@@ -2,6 +2,7 @@ package oncue.tests.clients;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import java.util.Collection;
 import java.util.HashMap;
@@ -11,14 +12,19 @@ import java.util.Map;
 import oncue.client.AkkaClient;
 import oncue.common.messages.EnqueueJob;
 import oncue.common.messages.Job;
+import oncue.common.messages.JobQuery;
+import oncue.common.messages.JobSummary;
 import oncue.tests.base.ActorSystemTest;
 import oncue.tests.workers.TestWorker;
+import oncue.tests.workers.TestWorker2;
 
 import org.junit.Test;
 
 import akka.actor.ActorRef;
 import akka.testkit.JavaTestKit;
 
+import com.google.common.collect.Sets;
+
 public class AkkaClientTest extends ActorSystemTest {
 
 	@Test
@@ -127,4 +133,40 @@ public class AkkaClientTest extends ActorSystemTest {
 		};
 	}
 
+	@Test
+	public void getJobsWithQueryReturnsPagesOfMatchingJobs() throws Exception {
+		new JavaTestKit(system) {
+			{
+
+				ActorRef scheduler = createScheduler(system);
+
+				for (int i = 0; i < 3; i++) {
+					scheduler.tell(new EnqueueJob(TestWorker.class.getName()), getRef());
+					expectMsgClass(Job.class);
+				}
+				scheduler.tell(new EnqueueJob(TestWorker2.class.getName()), getRef());
+				expectMsgClass(Job.class);
+
+				AkkaClient client = new AkkaClient(system, scheduler);
+
+				JobQuery query = new JobQuery();
+				query.setWorkerTypes(Sets.newHashSet(TestWorker.class.getName()));
+				query.setPageSize(2);
+
+				JobSummary firstPage = client.getJobs(query);
+				assertEquals(2, firstPage.getJobs().size());
+				assertEquals(1, firstPage.getJobs().get(0).getId());
+				assertEquals(2, firstPage.getJobs().get(1).getId());
+				assertEquals(Long.valueOf(2), firstPage.getNextCursor());
+
+				query.setCursor(firstPage.getNextCursor());
+				JobSummary secondPage = client.getJobs(query);
+				assertEquals(1, secondPage.getJobs().size());
+				assertEquals(3, secondPage.getJobs().get(0).getId());
+				assertNull(secondPage.getNextCursor());
+			}
+
+		};
+	}
+
 }
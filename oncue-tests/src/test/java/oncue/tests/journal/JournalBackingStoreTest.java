@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.tests.journal;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import oncue.backingstore.JournalBackingStore;
+import oncue.common.messages.Job;
+import oncue.common.messages.Job.State;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.TestWorker;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalBackingStoreTest extends ActorSystemTest {
+
+	private static final File JOURNAL_DIRECTORY = new File("target/journal-test");
+
+	@Before
+	public void deleteJournal() {
+		File[] files = JOURNAL_DIRECTORY.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+	}
+
+	private List<Job> enqueueJobs(JournalBackingStore backingStore, int count) {
+		List<Job> jobs = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Job job = new Job(backingStore.getNextJobID(), TestWorker.class.getName());
+			job.getParams().put("index", Integer.toString(i));
+			backingStore.addUnscheduledJob(job);
+			jobs.add(job);
+		}
+		return jobs;
+	}
+
+	@Test
+	public void stateIsRecoveredFromTheJournal() {
+		JournalBackingStore backingStore = new JournalBackingStore(system, settings);
+		List<Job> jobs = enqueueJobs(backingStore, 3);
+
+		// Schedule two jobs, complete one and fail the other
+		backingStore.scheduleJobs(jobs.subList(0, 2));
+
+		Job completedJob = jobs.get(0);
+		completedJob.setState(State.COMPLETE);
+		completedJob.setProgress(1.0);
+		completedJob.setCompletedAt(DateTime.now());
+		backingStore.persistJobProgress(completedJob);
+		backingStore.removeScheduledJobById(completedJob.getId());
+
+		Job failedJob = jobs.get(1);
+		failedJob.setState(State.FAILED);
+		failedJob.setErrorMessage("Failed on purpose");
+		backingStore.persistJobFailure(failedJob);
+		backingStore.removeScheduledJobById(failedJob.getId());
+
+		// Open the same journal again
+		backingStore.close();
+		JournalBackingStore recoveredStore = new JournalBackingStore(system, settings);
+
+		assertEquals(4, recoveredStore.getNextJobID());
+		assertEquals(Arrays.asList(completedJob), recoveredStore.getCompletedJobs());
+		assertEquals(1, recoveredStore.getFailedJobsCount());
+		assertEquals("Failed on purpose", recoveredStore.getFailedJobs().get(0).getErrorMessage());
+
+		List<Job> unscheduledJobs = recoveredStore.restoreJobs();
+		assertEquals(1, unscheduledJobs.size());
+		assertEquals(jobs.get(2), unscheduledJobs.get(0));
+		recoveredStore.close();
+	}
+
+	@Test
+	public void restartReplaysFromTheLatestSnapshot() {
+		JournalBackingStore backingStore = new JournalBackingStore(system, settings);
+
+		// Enough records to take several snapshots
+		List<Job> jobs = enqueueJobs(backingStore, 25);
+		backingStore.removeUnscheduledJobs(jobs.subList(0, 5));
+
+		String[] snapshots = JOURNAL_DIRECTORY.list();
+		int snapshotCount = 0;
+		for (String name : snapshots) {
+			if (name.startsWith("snapshot-"))
+				snapshotCount++;
+		}
+		assertEquals("Expected older snapshots to be deleted", 1, snapshotCount);
+
+		backingStore.close();
+		JournalBackingStore recoveredStore = new JournalBackingStore(system, settings);
+		List<Job> unscheduledJobs = recoveredStore.restoreJobs();
+		assertEquals(jobs.subList(5, 25), unscheduledJobs);
+		assertTrue(recoveredStore.loadJobById(1) != null);
+		assertNull(recoveredStore.loadJobById(26));
+		recoveredStore.close();
+	}
+
+	@Test
+	public void recoversStringsLongerThan64KB() {
+		JournalBackingStore backingStore = new JournalBackingStore(system, settings);
+		Job job = enqueueJobs(backingStore, 1).get(0);
+
+		StringBuilder longString = new StringBuilder();
+		while (longString.length() < 100000) {
+			longString.append("\u00e9 at oncue.tests.journal.JournalBackingStoreTest\n");
+		}
+		job.setState(State.FAILED);
+		job.setErrorMessage(longString.toString());
+		job.getParams().put("payload", longString.toString());
+		backingStore.persistJobFailure(job);
+		backingStore.close();
+
+		JournalBackingStore recoveredStore = new JournalBackingStore(system, settings);
+		Job failedJob = recoveredStore.getFailedJobs().get(0);
+		assertEquals(longString.toString(), failedJob.getErrorMessage());
+		assertEquals(longString.toString(), failedJob.getParams().get("payload"));
+		recoveredStore.close();
+	}
+
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.tests.load;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import oncue.backingstore.BackingStore;
+import oncue.backingstore.InMemoryBackingStore;
+import oncue.backingstore.JournalBackingStore;
+import oncue.backingstore.RedisBackingStore;
+import oncue.common.messages.Job;
+import oncue.common.messages.Job.State;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.load.workers.SimpleLoadTestWorker;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+/**
+ * Compare the enqueue and complete throughput of the backing stores, driving them the way the
+ * scheduler does. Redis must be running locally.
+ */
+public class BackingStoreBenchmark extends ActorSystemTest {
+
+	private static final int JOB_COUNT = 20000;
+
+	private static final int WARMUP_JOB_COUNT = 2000;
+
+	@Test
+	public void compareBackingStores() {
+		File[] journalFiles = new File("target/journal-benchmark").listFiles();
+		if (journalFiles != null)
+			for (File file : journalFiles)
+				file.delete();
+
+		benchmark(new InMemoryBackingStore(system, settings));
+		benchmark(new JournalBackingStore(system, settings));
+		benchmark(new RedisBackingStore(system, settings));
+	}
+
+	private void benchmark(BackingStore backingStore) {
+		String name = backingStore.getClass().getSimpleName();
+		try {
+			run(backingStore, WARMUP_JOB_COUNT);
+
+			long start = System.nanoTime();
+			List<Job> jobs = enqueue(backingStore, JOB_COUNT);
+			long enqueued = System.nanoTime();
+			complete(backingStore, jobs);
+			long completed = System.nanoTime();
+
+			log.info("{}: enqueued {} jobs/s, completed {} jobs/s", name,
+					throughput(JOB_COUNT, enqueued - start),
+					throughput(JOB_COUNT, completed - enqueued));
+		} finally {
+			backingStore.close();
+		}
+	}
+
+	private void run(BackingStore backingStore, int count) {
+		complete(backingStore, enqueue(backingStore, count));
+	}
+
+	private List<Job> enqueue(BackingStore backingStore, int count) {
+		List<Job> jobs = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Job job = new Job(backingStore.getNextJobID(), SimpleLoadTestWorker.class.getName());
+			backingStore.addUnscheduledJob(job);
+			jobs.add(job);
+		}
+		return jobs;
+	}
+
+	private void complete(BackingStore backingStore, List<Job> jobs) {
+		for (Job job : jobs) {
+			List<Job> schedule = Collections.singletonList(job);
+			backingStore.scheduleJobs(schedule);
+
+			job.setState(State.COMPLETE);
+			job.setProgress(1.0);
+			job.setCompletedAt(DateTime.now());
+			backingStore.persistJobProgress(job);
+			backingStore.removeScheduledJobById(job.getId());
+		}
+	}
+
+	private static long throughput(int count, long nanos) {
+		return count * 1000000000L / Math.max(nanos, 1);
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.tests.load;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import oncue.common.messages.Job;
+import oncue.common.messages.Job.State;
+import oncue.common.messages.JobProgress;
+import oncue.common.messages.JobProgressDelta;
+import oncue.common.messages.WorkResponse;
+import oncue.common.serializers.OnCueSerializer;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.load.workers.SimpleLoadTestWorker;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.JavaSerializer;
+import akka.serialization.Serializer;
+
+/**
+ * Compare the size and the encode and decode times of Java serialization and the OnCue serializer,
+ * for the messages sent most often.
+ */
+public class SerializerBenchmark extends ActorSystemTest {
+
+	private static final int ITERATIONS = 20000;
+
+	private static final int WARMUP_ITERATIONS = 5000;
+
+	@Test
+	public void compareSerializers() {
+		Serializer java = new JavaSerializer((ExtendedActorSystem) system);
+		Serializer onCue = new OnCueSerializer((ExtendedActorSystem) system);
+
+		List<Job> jobs = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			Job job = new Job(100000 + i, SimpleLoadTestWorker.class.getName());
+			job.getParams().put("month", "Jan");
+			job.getParams().put("size", "x-large");
+			jobs.add(job);
+		}
+
+		Job runningJob = (Job) jobs.get(0).clone();
+		runningJob.setState(State.RUNNING);
+		runningJob.setStartedAt(DateTime.now());
+		runningJob.setProgress(0.42);
+
+		Object[] messages = { new WorkResponse(jobs), new JobProgress(runningJob),
+				new JobProgressDelta(runningJob) };
+
+		for (Object message : messages) {
+			benchmark(java, message);
+			benchmark(onCue, message);
+		}
+	}
+
+	private void benchmark(Serializer serializer, Object message) {
+		run(serializer, message, WARMUP_ITERATIONS);
+
+		byte[] bytes = serializer.toBinary(message);
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			bytes = serializer.toBinary(message);
+		}
+		long encoded = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			serializer.fromBinary(bytes);
+		}
+		long decoded = System.nanoTime();
+
+		log.info("{} with {}: {} bytes, encode {}ns, decode {}ns", message.getClass()
+				.getSimpleName(), serializer.getClass().getSimpleName(), bytes.length,
+				(encoded - start) / ITERATIONS, (decoded - encoded) / ITERATIONS);
+	}
+
+	private void run(Serializer serializer, Object message, int iterations) {
+		for (int i = 0; i < iterations; i++) {
+			serializer.fromBinary(serializer.toBinary(message));
+		}
+	}
+}
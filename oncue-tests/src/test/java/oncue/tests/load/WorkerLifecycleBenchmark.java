@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.tests.load;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.JobCounts;
+import oncue.common.messages.SimpleMessages.SimpleMessage;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.load.workers.SimpleLoadTestWorker;
+
+import org.junit.Test;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.JavaTestKit;
+
+import com.typesafe.config.ConfigFactory;
+
+/**
+ * Compare the time taken to process many tiny jobs when a worker is created for every job, and
+ * when the workers are reused for one job after another.
+ */
+public class WorkerLifecycleBenchmark extends ActorSystemTest {
+
+	private static final int JOB_COUNT = 20000;
+
+	@Test
+	public void compareWorkerLifecycles() {
+		long perJob = runJobs(system);
+
+		ActorSystem reusableSystem = ActorSystem.create(
+				"oncue-reusable",
+				ConfigFactory.parseString(
+						"oncue.agent.reusable-worker-types = [\""
+								+ SimpleLoadTestWorker.class.getName() + "\"]").withFallback(config));
+		long reusable;
+		try {
+			reusable = runJobs(reusableSystem);
+		} finally {
+			reusableSystem.shutdown();
+			reusableSystem.awaitTermination();
+		}
+
+		log.info("{} jobs: one worker per job {}ms, reusable workers {}ms", JOB_COUNT, perJob,
+				reusable);
+	}
+
+	/**
+	 * Run the jobs to completion on an actor system
+	 *
+	 * @return the time taken, in milliseconds
+	 */
+	private long runJobs(final ActorSystem system) {
+		final long[] elapsed = new long[1];
+		new JavaTestKit(system) {
+			{
+				final ActorRef scheduler = createScheduler(system);
+				for (int i = 0; i < JOB_COUNT; i++) {
+					scheduler.tell(new EnqueueJob(SimpleLoadTestWorker.class.getName()), null);
+				}
+
+				long start = System.currentTimeMillis();
+				createAgent(system,
+						new HashSet<String>(Arrays.asList(SimpleLoadTestWorker.class.getName())));
+
+				new AwaitCond(duration("5 minutes"), duration("100 milliseconds")) {
+
+					@Override
+					protected boolean cond() {
+						scheduler.tell(SimpleMessage.JOB_COUNTS, getRef());
+						JobCounts counts = expectMsgClass(duration("5 seconds"), JobCounts.class);
+						return counts.getCompleteJobs() == JOB_COUNT;
+					}
+				};
+				elapsed[0] = System.currentTimeMillis() - start;
+			}
+		};
+		return elapsed[0];
+	}
+}
@@ -16,9 +16,11 @@ package oncue.tests.redis;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 import static oncue.backingstore.RedisBackingStore.JOB_KEY;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -41,6 +43,7 @@ import oncue.common.messages.Job;
 import oncue.common.messages.Job.State;
 import oncue.common.messages.JobFailed;
 import oncue.common.messages.JobProgress;
+import oncue.common.messages.JobQuery;
 import oncue.tests.base.ActorSystemTest;
 import oncue.tests.workers.IncompetentTestWorker;
 import oncue.tests.workers.TestWorker;
@@ -358,6 +361,31 @@ public class RedisBackingStoreTest extends ActorSystemTest {
 		};
 	}
 
+	@Test
+	public void loadJobById() {
+		new JavaTestKit(system) {
+
+			{
+				RedisBackingStore backingStore = new RedisBackingStore(system, settings);
+
+				// Push a completed job into Redis
+				Job job = new Job(1, TestWorker.class.getName());
+				RedisBackingStore.persistJob(job, RedisBackingStore.SCHEDULED_JOBS, redis);
+				job.setProgress(1.0);
+				job.setState(Job.State.COMPLETE);
+				backingStore.persistJobProgress(job);
+
+				// Load the job directly
+				Job loadedJob = backingStore.loadJobById(job.getId());
+				assertEquals(job.getId(), loadedJob.getId());
+				assertEquals(Job.State.COMPLETE, loadedJob.getState());
+
+				// Unknown jobs are not found
+				assertNull(backingStore.loadJobById(2));
+			}
+		};
+	}
+
 	@Test
 	public void restoreJobs() {
 		new JavaTestKit(system) {
@@ -470,6 +498,162 @@ public class RedisBackingStoreTest extends ActorSystemTest {
 		};
 	}
 
+	@Test
+	public void queryJobsByIdRangeAndPage() {
+		new JavaTestKit(system) {
+
+			private RedisBackingStore backingStore;
+
+			{
+				backingStore = new RedisBackingStore(system, settings);
+
+				// A job completed before the ID index existed
+				Job oldJob = new Job(1, TestWorker.class.getName());
+				oldJob.setState(State.COMPLETE);
+				RedisBackingStore.persistJob(oldJob, RedisBackingStore.COMPLETED_JOBS, redis);
+
+				// Complete and failed jobs, interleaved by ID
+				for (int id = 2; id <= 8; id++) {
+					persistTestJob(id, id % 2 == 0);
+				}
+
+				// Page through every job
+				JobQuery query = new JobQuery();
+				query.setPageSize(3);
+				assertEquals(Arrays.asList(1l, 2l, 3l), getJobIds(backingStore.queryJobs(query)));
+				query.setCursor(3l);
+				assertEquals(Arrays.asList(4l, 5l, 6l), getJobIds(backingStore.queryJobs(query)));
+				query.setCursor(6l);
+				assertEquals(Arrays.asList(7l, 8l), getJobIds(backingStore.queryJobs(query)));
+
+				// Query an ID range of the failed jobs
+				query = new JobQuery();
+				query.setStates(new HashSet<>(Arrays.asList(State.FAILED)));
+				query.setMinId(3l);
+				query.setMaxId(6l);
+				assertEquals(Arrays.asList(4l, 6l), getJobIds(backingStore.queryJobs(query)));
+			}
+
+			private void persistTestJob(int jobNumber, boolean failed) {
+				Job job = new Job(jobNumber, TestWorker.class.getName());
+				job.setCompletedAt(DateTime.now());
+				RedisBackingStore.persistJob(job, RedisBackingStore.SCHEDULED_JOBS, redis);
+
+				if (failed) {
+					job.setState(State.FAILED);
+					job.setErrorMessage(new Exception("Test exception").toString());
+					backingStore.persistJobFailure(job);
+				} else {
+					job.setProgress(1.0);
+					job.setState(Job.State.COMPLETE);
+					backingStore.persistJobProgress(job);
+				}
+			}
+
+			private List<Long> getJobIds(List<Job> jobs) {
+				List<Long> jobIds = new ArrayList<>();
+				for (Job job : jobs) {
+					jobIds.add(job.getId());
+				}
+				return jobIds;
+			}
+		};
+	}
+
+	@Test
+	public void idIndexIsBuiltOnce() {
+		RedisBackingStore backingStore = new RedisBackingStore(system, settings);
+
+		// A job completed before the ID index existed is found by the first query
+		Job oldJob = new Job(1, TestWorker.class.getName());
+		oldJob.setState(State.COMPLETE);
+		RedisBackingStore.persistJob(oldJob, RedisBackingStore.COMPLETED_JOBS, redis);
+		assertEquals(1, backingStore.queryJobs(new JobQuery()).size());
+		assertTrue(redis.exists(RedisBackingStore.COMPLETED_JOBS_BY_ID + ":built"));
+
+		// Once built, the index is not rebuilt from the list
+		Job unindexedJob = new Job(2, TestWorker.class.getName());
+		unindexedJob.setState(State.COMPLETE);
+		RedisBackingStore.persistJob(unindexedJob, RedisBackingStore.COMPLETED_JOBS, redis);
+		assertEquals(1, backingStore.queryJobs(new JobQuery()).size());
+	}
+
+	@Test
+	public void cleanUpJobsCompletedBeforeTheIndexExisted() {
+		new JavaTestKit(system) {
+			{
+				RedisBackingStore backingStore = new RedisBackingStore(system, settings);
+
+				// A job completed before the completion time index existed
+				Job oldJob = new Job(1, TestWorker.class.getName());
+				oldJob.setState(State.COMPLETE);
+				oldJob.setCompletedAt(DateTime.now().minusHours(2));
+				RedisBackingStore.persistJob(oldJob, RedisBackingStore.COMPLETED_JOBS, redis);
+
+				// A job completes after the upgrade, which adds it to the index
+				Job newJob = new Job(2, TestWorker.class.getName());
+				newJob.setCompletedAt(DateTime.now().minusHours(2));
+				RedisBackingStore.persistJob(newJob, RedisBackingStore.SCHEDULED_JOBS, redis);
+				newJob.setProgress(1.0);
+				newJob.setState(State.COMPLETE);
+				backingStore.persistJobProgress(newJob);
+				assertTrue(redis.exists(RedisBackingStore.COMPLETED_JOBS_BY_TIME));
+
+				// Both jobs are still cleaned up
+				assertEquals(2, backingStore.cleanupJobs(false, Duration.standardHours(1)));
+				assertFalse(redis.exists(getJobId(1)));
+				assertFalse(redis.exists(getJobId(2)));
+			}
+		};
+	}
+
+	@Test
+	public void cleanUpJobsInChunks() {
+		new JavaTestKit(system) {
+
+			private RedisBackingStore backingStore;
+
+			{
+				backingStore = new RedisBackingStore(system, settings);
+
+				// Push two expired jobs and one recent job into redis
+				persistTestJob(1, DateTime.now().minusHours(3), false);
+				persistTestJob(2, DateTime.now().minusHours(2), true);
+				persistTestJob(3, DateTime.now(), false);
+
+				// Expired jobs are cleaned up one chunk at a time
+				assertEquals(1, backingStore.cleanupJobs(true, Duration.standardHours(1), 1));
+				assertFalse(redis.exists(getJobId(1)));
+				assertTrue(redis.exists(getJobId(2)));
+
+				assertEquals(1, backingStore.cleanupJobs(true, Duration.standardHours(1), 1));
+				assertFalse(redis.exists(getJobId(2)));
+
+				// The recent job has not expired
+				assertEquals(0, backingStore.cleanupJobs(true, Duration.standardHours(1), 1));
+				assertTrue(redis.exists(getJobId(3)));
+				assertEquals(1, backingStore.getCompletedJobsCount());
+			}
+
+			private void persistTestJob(int jobNumber, DateTime completionTime, boolean failed) {
+				Job job = new Job(jobNumber, TestWorker.class.getName());
+				job.setCompletedAt(completionTime);
+				RedisBackingStore.persistJob(job, RedisBackingStore.SCHEDULED_JOBS, redis);
+
+				if (failed) {
+					job.setState(State.FAILED);
+					job.setErrorMessage(new Exception("Test exception").toString());
+					backingStore.persistJobFailure(job);
+				} else {
+					// Record progress on the job
+					job.setProgress(1.0);
+					job.setState(Job.State.COMPLETE);
+					backingStore.persistJobProgress(job);
+				}
+			}
+		};
+	}
+
 	@Test
 	public void removeJobById() {
 		new JavaTestKit(system) {
@@ -600,6 +784,100 @@ public class RedisBackingStoreTest extends ActorSystemTest {
 		};
 	}
 
+	@Test
+	public void scheduleJobs() {
+		new JavaTestKit(system) {
+
+			{
+				RedisBackingStore backingStore = new RedisBackingStore(system, settings);
+
+				// Enqueue a batch of jobs
+				List<Job> jobs = Arrays.asList(new Job(1, TestWorker.class.getName()), new Job(2,
+						TestWorker.class.getName()), new Job(3, TestWorker.class.getName()));
+				backingStore.addUnscheduledJobs(jobs);
+
+				assertEquals(3, redis.lrange(RedisBackingStore.UNSCHEDULED_JOBS, 0, -1).size());
+				for (Job job : jobs)
+					assertTrue(redis.exists(getJobId(job.getId())));
+
+				// Move two of the jobs to the scheduled jobs list
+				backingStore.scheduleJobs(jobs.subList(0, 2));
+
+				assertEquals(Arrays.asList("3"),
+						redis.lrange(RedisBackingStore.UNSCHEDULED_JOBS, 0, -1));
+				assertEquals(new HashSet<>(Arrays.asList("1", "2")), new HashSet<>(redis.lrange(
+						RedisBackingStore.SCHEDULED_JOBS, 0, -1)));
+
+				// Remove the scheduled jobs in a batch
+				backingStore.removeScheduledJobs(jobs.subList(0, 2));
+				assertEquals(0, redis.lrange(RedisBackingStore.SCHEDULED_JOBS, 0, -1).size());
+			}
+		};
+	}
+
+	@Test
+	public void eachOperationIsASingleExchange() {
+		RedisBackingStore backingStore = new RedisBackingStore(system, settings);
+		List<Job> jobs = new ArrayList<>();
+		for (int id = 1; id <= 3; id++) {
+			Job job = new Job(id, TestWorker.class.getName());
+			job.getParams().put("month", "Jan");
+			jobs.add(job);
+		}
+		backingStore.addUnscheduledJobs(jobs);
+
+		// Moving a batch to the scheduled jobs is one call to a script, rather than a call per job
+		redis.configResetStat();
+		backingStore.scheduleJobs(jobs);
+		Map<String, Long> calls = getCommandCalls();
+		assertEquals(Long.valueOf(1), calls.get("eval"));
+		assertEquals(new HashSet<>(Arrays.asList("1", "2", "3")), new HashSet<>(redis.lrange(
+				RedisBackingStore.SCHEDULED_JOBS, 0, -1)));
+
+		// Progress is written with one HMSET per job
+		redis.configResetStat();
+		Job job = jobs.get(0);
+		job.setState(State.RUNNING);
+		job.setProgress(0.5);
+		job.setStartedAt(DateTime.now());
+		backingStore.persistJobProgress(job);
+		calls = getCommandCalls();
+		assertEquals(Long.valueOf(1), calls.get("hmset"));
+		assertNull(calls.get("hset"));
+
+		// A job is read with one HGETALL, rather than a HGET per field
+		redis.configResetStat();
+		Job loadedJob = RedisBackingStore.loadJob(job.getId(), redis);
+		List<Job> loadedJobs = RedisBackingStore.loadJobs(Arrays.asList(1L, 2L, 3L), redis);
+		calls = getCommandCalls();
+		assertEquals(Long.valueOf(4), calls.get("hgetall"));
+		assertNull(calls.get("hget"));
+
+		assertEquals(0.5, loadedJob.getProgress());
+		assertEquals(State.RUNNING, loadedJob.getState());
+		assertEquals("Jan", loadedJob.getParams().get("month"));
+		assertEquals(3, loadedJobs.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i + 1, loadedJobs.get(i).getId());
+		}
+	}
+
+	/**
+	 * @return the number of calls made to each command since the statistics were reset
+	 */
+	private Map<String, Long> getCommandCalls() {
+		Map<String, Long> calls = new HashMap<>();
+		for (String line : redis.info("commandstats").split("\r?\n")) {
+			// e.g. "cmdstat_hgetall:calls=4,usec=31,usec_per_call=7.75"
+			if (!line.startsWith("cmdstat_"))
+				continue;
+			String command = line.substring("cmdstat_".length(), line.indexOf(':'));
+			String stats = line.substring(line.indexOf("calls=") + "calls=".length());
+			calls.put(command, Long.parseLong(stats.substring(0, stats.indexOf(','))));
+		}
+		return calls;
+	}
+
 	private String getJobId(long id) {
 		return String.format(JOB_KEY, id);
 	}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.tests.redis;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static oncue.backingstore.RedisBackingStore.JOB_KEY;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import akka.actor.Actor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.UntypedActorFactory;
+import akka.testkit.JavaTestKit;
+import oncue.backingstore.BackingStore;
+import oncue.backingstore.InMemoryBackingStore;
+import oncue.backingstore.RedisBackingStore;
+import oncue.backingstore.RedisBackingStore.RedisConnection;
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.Job;
+import oncue.common.messages.Job.State;
+import oncue.common.messages.JobCounts;
+import oncue.common.messages.JobProgress;
+import oncue.common.messages.SimpleMessages.SimpleMessage;
+import oncue.common.messages.SimpleWorkRequest;
+import oncue.common.messages.WorkResponse;
+import oncue.common.settings.Settings;
+import oncue.scheduler.BackingStoreWriter;
+import oncue.scheduler.WriteBehindBackingStore;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.TestWorker;
+
+public class WriteBehindTest extends ActorSystemTest {
+
+	/**
+	 * An in-memory backing store that can't persist the failure of job 1
+	 */
+	public static class FailingBackingStore extends InMemoryBackingStore {
+
+		private int persistedFailures;
+
+		public FailingBackingStore(ActorSystem system, Settings settings) {
+			super(system, settings);
+		}
+
+		@Override
+		public void persistJobFailure(Job job) {
+			if (job.getId() == 1)
+				throw new RuntimeException("Job 1 can't be persisted");
+			persistedFailures++;
+			super.persistJobFailure(job);
+		}
+	}
+
+	/**
+	 * Wrap a backing store in a write-behind backing store, with a writer of its own
+	 */
+	private WriteBehindBackingStore createWriteBehindBackingStore(final BackingStore backingStore) {
+		ActorRef writer = system.actorOf(new Props(new UntypedActorFactory() {
+
+			@Override
+			public Actor create() throws Exception {
+				return new BackingStoreWriter(backingStore);
+			}
+		}), "backing-store-writer");
+		return new WriteBehindBackingStore(system, settings, backingStore, writer);
+	}
+
+	@Test
+	public void readsSeeTheWritesStillInTheQueue() {
+		new JavaTestKit(system) {
+
+			{
+				ActorRef scheduler = createScheduler(system);
+				scheduler.tell(new EnqueueJob(TestWorker.class.getName()), getRef());
+				Job job = expectMsgClass(Job.class);
+
+				// Act as an agent that completes the job at once
+				scheduler.tell(new SimpleWorkRequest(getRef(), new HashSet<String>(Arrays
+						.asList(TestWorker.class.getName()))), getRef());
+				assertEquals(1, expectMsgClass(WorkResponse.class).getJobs().size());
+				job.setState(State.COMPLETE);
+				job.setProgress(1.0);
+				scheduler.tell(new JobProgress(job), getRef());
+
+				// The read should flush the completion, rather than wait for the flush interval
+				scheduler.tell(SimpleMessage.JOB_COUNTS, getRef());
+				JobCounts jobCounts = expectMsgClass(JobCounts.class);
+				assertEquals(0, jobCounts.getScheduledJobs());
+				assertEquals(1, jobCounts.getCompleteJobs());
+			}
+		};
+	}
+
+	@Test
+	public void aWriteThatKeepsFailingIsDroppedWithoutRepeatingOtherWrites() {
+		new JavaTestKit(system) {
+
+			{
+				final FailingBackingStore backingStore = new FailingBackingStore(system, settings);
+				WriteBehindBackingStore writeBehind = createWriteBehindBackingStore(backingStore);
+
+				writeBehind.persistJobFailure(new Job(1, TestWorker.class.getName()));
+				writeBehind.persistJobFailure(new Job(2, TestWorker.class.getName()));
+
+				// Job 1 should be retried until it is dropped, letting job 2 through
+				final ActorRef writer = system.actorFor("/user/backing-store-writer");
+				new AwaitCond(duration("5 seconds")) {
+
+					@Override
+					protected boolean cond() {
+						writer.tell(BackingStoreWriter.STATS, getRef());
+						return expectMsgClass(BackingStoreWriter.Stats.class).getDroppedWrites() == 1;
+					}
+				};
+
+				writer.tell(BackingStoreWriter.STATS, getRef());
+				BackingStoreWriter.Stats stats = expectMsgClass(BackingStoreWriter.Stats.class);
+				assertEquals(0, stats.getQueueDepth());
+				assertEquals(1, stats.getWrites());
+				assertEquals(1, backingStore.getFailedJobsCount());
+				assertEquals(1, backingStore.persistedFailures);
+			}
+		};
+	}
+
+	@Test
+	public void enqueuedJobsArePersistedBeforeTheyAreAcknowledged() {
+		new JavaTestKit(system) {
+
+			{
+				ActorRef scheduler = createScheduler(system);
+
+				// Enqueue a burst of jobs, without waiting for each acknowledgement
+				for (int i = 0; i < 3; i++) {
+					scheduler.tell(new EnqueueJob(TestWorker.class.getName()), getRef());
+				}
+
+				// Each job should be in Redis by the time it is acknowledged
+				try (RedisConnection redis = new RedisConnection()) {
+					for (int i = 0; i < 3; i++) {
+						Job job = expectMsgClass(Job.class);
+						assertTrue(redis.exists(String.format(JOB_KEY, job.getId())));
+					}
+					assertEquals(3, redis.lrange(RedisBackingStore.UNSCHEDULED_JOBS, 0, -1).size());
+				}
+
+				// The writer should have nothing left to flush
+				system.actorFor(settings.SCHEDULER_PATH + "/backing-store-writer").tell(
+						BackingStoreWriter.STATS, getRef());
+				BackingStoreWriter.Stats stats = expectMsgClass(BackingStoreWriter.Stats.class);
+				assertEquals(0, stats.getQueueDepth());
+				assertEquals(3, stats.getWrites());
+			}
+		};
+	}
+
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.tests.schedulers;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import oncue.backingstore.InMemoryBackingStore;
+import oncue.common.messages.Job;
+import oncue.common.settings.Settings;
+import oncue.scheduler.FairQueuingJobComparator;
+import oncue.scheduler.UnscheduledJobs;
+import oncue.tests.base.ActorSystemTest;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigFactory;
+
+public class FairQueuingJobComparatorTest extends ActorSystemTest {
+
+	private static final String WORKER = "worker.A";
+
+	@Test
+	public void interleavesJobsFromEachGroup() {
+		UnscheduledJobs queue = createQueue(Collections.<String, Double> emptyMap(), 10);
+		for (int id = 1; id <= 6; id++) {
+			queue.addJob(makeJob(id, "tenant-a", 0));
+		}
+		for (int id = 7; id <= 9; id++) {
+			queue.addJob(makeJob(id, "tenant-b", 0));
+		}
+
+		assertEquals(Lists.newArrayList(1l, 7l, 2l, 8l, 3l, 9l, 4l, 5l, 6l), extractJobIds(queue));
+	}
+
+	@Test
+	public void readsWeightsWithDottedNames() {
+		Settings settings = new Settings(ConfigFactory.parseString(
+				"oncue.scheduler.fair-queuing.weights { com.example.TenantA = 2, "
+						+ "\"com.example.TenantB\" = 3 }").withFallback(config));
+
+		assertEquals(2.0, settings.SCHEDULER_FAIR_QUEUING_WEIGHTS.get("com.example.TenantA"));
+		assertEquals(3.0, settings.SCHEDULER_FAIR_QUEUING_WEIGHTS.get("com.example.TenantB"));
+	}
+
+	@Test(expected = ConfigException.WrongType.class)
+	public void rejectsAWeightThatIsNotANumber() {
+		new Settings(ConfigFactory.parseString(
+				"oncue.scheduler.fair-queuing.weights { tenant-a = heavy }").withFallback(config));
+	}
+
+	@Test
+	public void sharesTheQueueByWeight() {
+		Map<String, Double> weights = new HashMap<>();
+		weights.put("tenant-a", 2.0);
+		UnscheduledJobs queue = createQueue(weights, 10);
+		for (int id = 1; id <= 4; id++) {
+			queue.addJob(makeJob(id, "tenant-a", 0));
+		}
+		for (int id = 5; id <= 6; id++) {
+			queue.addJob(makeJob(id, "tenant-b", 0));
+		}
+
+		assertEquals(Lists.newArrayList(1l, 5l, 2l, 3l, 6l, 4l), extractJobIds(queue));
+	}
+
+	@Test
+	public void agesLowPriorityJobs() {
+		UnscheduledJobs queue = createQueue(Collections.<String, Double> emptyMap(), 2);
+		queue.addJob(makeJob(1, "tenant-a", 0));
+		for (int id = 2; id <= 5; id++) {
+			queue.addJob(makeJob(id, "tenant-b", 1));
+		}
+
+		// The waiting job overtakes the later, higher priority jobs
+		assertEquals(Lists.newArrayList(2l, 3l, 1l, 4l, 5l), extractJobIds(queue));
+	}
+
+	@Test
+	public void startsNewGroupsAtTheVirtualTime() {
+		UnscheduledJobs queue = createQueue(Collections.<String, Double> emptyMap(), 10);
+		queue.addJob(makeJob(1, "tenant-a", 0));
+		queue.addJob(makeJob(2, "tenant-a", 0));
+		queue.removeJobs(Lists.newArrayList(queue.getJobById(1), queue.getJobById(2)));
+
+		// A new group starts at the virtual time, and a returning group where it left off
+		queue.addJob(makeJob(3, "tenant-a", 0));
+		queue.addJob(makeJob(4, "tenant-b", 0));
+		queue.addJob(makeJob(5, "tenant-b", 0));
+
+		assertEquals(Lists.newArrayList(4l, 3l, 5l), extractJobIds(queue));
+	}
+
+	private UnscheduledJobs createQueue(Map<String, Double> weights, double priorityStep) {
+		return new UnscheduledJobs(new InMemoryBackingStore(system, settings), log,
+				new FairQueuingJobComparator("tenant", weights, priorityStep));
+	}
+
+	private List<Long> extractJobIds(UnscheduledJobs queue) {
+		List<Long> jobIds = Lists.newArrayList();
+		Iterator<Job> iterator = queue.iterator();
+		while (iterator.hasNext()) {
+			jobIds.add(iterator.next().getId());
+		}
+		return jobIds;
+	}
+
+	private Job makeJob(int id, String tenant, int priority) {
+		Job job = new Job(id, WORKER);
+		job.setParams(new HashMap<String, String>());
+		job.getParams().put("tenant", tenant);
+		job.getParams().put("priority", String.valueOf(priority));
+		return job;
+	}
+}
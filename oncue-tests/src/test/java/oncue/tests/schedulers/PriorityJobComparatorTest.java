@@ -46,6 +46,20 @@ public class PriorityJobComparatorTest {
 		assertEquals(Lists.newArrayList(2l, 3l, 1l), extractJobIds(jobs));
 	}
 
+	@Test
+	public void reordersJobsWhenTheirParamsAreReplaced() {
+		Job job = makeJob(1, 1);
+		ArrayList<Job> jobs = Lists.newArrayList(job, makeJob(2, 2));
+		Collections.sort(jobs, comparator);
+		assertEquals(Lists.newArrayList(2l, 1l), extractJobIds(jobs));
+
+		HashMap<String, String> params = new HashMap<>();
+		params.put("priority", "3");
+		job.setParams(params);
+		Collections.sort(jobs, comparator);
+		assertEquals(Lists.newArrayList(1l, 2l), extractJobIds(jobs));
+	}
+
 	private List<Long> extractJobIds(ArrayList<Job> jobs) {
 		return Lists.transform(jobs, new Function<Job, Long>() {
 
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.tests.schedulers;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import oncue.backingstore.InMemoryBackingStore;
+import oncue.common.comparators.JobComparator;
+import oncue.common.messages.Job;
+import oncue.scheduler.UnscheduledJobs;
+import oncue.tests.base.ActorSystemTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class UnscheduledJobsTest extends ActorSystemTest {
+
+	private static final String WORKER_A = "worker.A";
+	private static final String WORKER_B = "worker.B";
+	private static final String WORKER_C = "worker.C";
+
+	private UnscheduledJobs unscheduledJobs;
+
+	@Before
+	public void createQueue() {
+		unscheduledJobs = new UnscheduledJobs(new InMemoryBackingStore(system, settings), log,
+				new JobComparator());
+		unscheduledJobs.addJob(new Job(1, WORKER_A));
+		unscheduledJobs.addJob(new Job(2, WORKER_B));
+		unscheduledJobs.addJob(new Job(3, WORKER_A));
+		unscheduledJobs.addJob(new Job(4, WORKER_C));
+		unscheduledJobs.addJob(new Job(5, WORKER_B));
+	}
+
+	@Test
+	public void tracksWorkerTypesAndCounts() {
+		assertEquals(5, unscheduledJobs.getSize());
+		assertEquals(2, unscheduledJobs.getSize(WORKER_A));
+		assertEquals(2, unscheduledJobs.getSize(WORKER_B));
+		assertEquals(1, unscheduledJobs.getSize(WORKER_C));
+		assertEquals(new HashSet<>(Arrays.asList(WORKER_A, WORKER_B, WORKER_C)),
+				unscheduledJobs.getWorkerTypes());
+		assertTrue(unscheduledJobs.isWorkAvailable(new HashSet<>(Arrays.asList(WORKER_C))));
+		assertFalse(unscheduledJobs.isWorkAvailable(new HashSet<>(Arrays.asList("worker.D"))));
+	}
+
+	@Test
+	public void iteratesOverRequestedWorkerTypesInOrder() {
+		Iterator<Job> iterator = unscheduledJobs.iterator(Arrays.asList(WORKER_A, WORKER_B));
+		List<Long> jobIds = Lists.newArrayList();
+		while (iterator.hasNext()) {
+			jobIds.add(iterator.next().getId());
+		}
+		assertEquals(Lists.newArrayList(1l, 2l, 3l, 5l), jobIds);
+	}
+
+	@Test
+	public void removesJobsFromWorkerTypeQueues() {
+		unscheduledJobs.removeJobs(Lists.newArrayList(new Job(4, WORKER_C), new Job(1, WORKER_A)));
+		assertTrue(unscheduledJobs.removeJobById(5));
+
+		assertEquals(2, unscheduledJobs.getSize());
+		assertEquals(1, unscheduledJobs.getSize(WORKER_A));
+		assertEquals(0, unscheduledJobs.getSize(WORKER_C));
+		assertEquals(new HashSet<>(Arrays.asList(WORKER_A, WORKER_B)),
+				unscheduledJobs.getWorkerTypes());
+		assertFalse(unscheduledJobs.isWorkAvailable(new HashSet<>(Arrays.asList(WORKER_C))));
+	}
+}
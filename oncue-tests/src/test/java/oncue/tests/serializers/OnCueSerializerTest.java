@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.tests.serializers;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import oncue.common.messages.CapacityWorkRequest;
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.Job;
+import oncue.common.messages.Job.State;
+import oncue.common.messages.JobProgress;
+import oncue.common.messages.JobProgressDelta;
+import oncue.common.messages.JobSummary;
+import oncue.common.messages.ThrottledWorkRequest;
+import oncue.common.messages.WorkResponse;
+import oncue.common.serializers.OnCueSerializer;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.TestWorker;
+import oncue.tests.workers.TestWorker2;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.JavaSerializer;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.testkit.JavaTestKit;
+
+public class OnCueSerializerTest extends ActorSystemTest {
+
+	private Object roundTrip(Object message) {
+		Serializer serializer = SerializationExtension.get(system).findSerializerFor(message);
+		assertTrue("Expected the OnCue serializer", serializer instanceof OnCueSerializer);
+		return ((OnCueSerializer) serializer).fromBinaryJava(serializer.toBinary(message), null);
+	}
+
+	private static Job createJob(long id, String workerType) {
+		Job job = new Job(id, workerType);
+		job.getParams().put("month", "Jan");
+		job.getParams().put("$password", "secret");
+		job.setState(State.FAILED);
+		job.setProgress(0.5);
+		job.setStartedAt(DateTime.now());
+		job.setCompletedAt(DateTime.now());
+		job.setErrorMessage("Something went wrong");
+		job.setRerun(true);
+		return job;
+	}
+
+	@Test
+	public void roundTripJob() {
+		Job job = createJob(1, TestWorker.class.getName());
+		assertEquals(job, roundTrip(job));
+
+		// A fresh job has no optional fields set
+		Job freshJob = new Job(Long.MAX_VALUE, TestWorker.class.getName());
+		assertEquals(freshJob, roundTrip(freshJob));
+	}
+
+	@Test
+	public void roundTripWorkResponseWithSharedWorkerTypes() {
+		List<Job> jobs = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			jobs.add(createJob(i, i % 2 == 0 ? TestWorker.class.getName() : TestWorker2.class
+					.getName()));
+		}
+
+		WorkResponse workResponse = (WorkResponse) roundTrip(new WorkResponse(jobs));
+		assertEquals(jobs, workResponse.getJobs());
+
+		// Repeated worker types are read back as the same instance
+		assertSame(workResponse.getJobs().get(0).getWorkerType(), workResponse.getJobs().get(2)
+				.getWorkerType());
+	}
+
+	@Test
+	public void roundTripProgress() {
+		Job job = createJob(1, TestWorker.class.getName());
+		assertEquals(job, ((JobProgress) roundTrip(new JobProgress(job))).getJob());
+
+		job.setState(State.RUNNING);
+		job.setCompletedAt(null);
+		JobProgressDelta delta = (JobProgressDelta) roundTrip(new JobProgressDelta(job));
+		assertEquals(job.getId(), delta.getJobId());
+		assertEquals(job.getProgress(), delta.getJob().getProgress());
+		assertEquals(job.getState(), delta.getJob().getState());
+		assertEquals(job.getStartedAt(), delta.getJob().getStartedAt());
+		assertNull(delta.getJob().getCompletedAt());
+	}
+
+	@Test
+	public void roundTripRequests() {
+		new JavaTestKit(system) {
+			{
+				EnqueueJob enqueueJob = (EnqueueJob) roundTrip(new EnqueueJob(
+						TestWorker.class.getName(), createJob(1, null).getParams()));
+				assertEquals(TestWorker.class.getName(), enqueueJob.getWorkerType());
+				assertEquals(createJob(1, null).getParams(), enqueueJob.getParams());
+
+				ThrottledWorkRequest workRequest = (ThrottledWorkRequest) roundTrip(new ThrottledWorkRequest(
+						getRef(), new HashSet<String>(Arrays.asList(TestWorker.class.getName(),
+								TestWorker2.class.getName())), 5));
+				assertEquals(getRef(), workRequest.getAgent());
+				assertEquals(2, workRequest.getWorkerTypes().size());
+				assertEquals(5, workRequest.getMaxJobs());
+				assertEquals(1, workRequest.getBatchSize(TestWorker.class.getName()));
+
+				workRequest = (ThrottledWorkRequest) roundTrip(new ThrottledWorkRequest(getRef(),
+						new HashSet<String>(Arrays.asList(TestWorker.class.getName())), 5, Collections
+								.singletonMap(TestWorker.class.getName(), 20), 12));
+				assertEquals(20, workRequest.getBatchSize(TestWorker.class.getName()));
+				assertEquals(12, workRequest.getConcurrencyLimit());
+
+				workRequest = (ThrottledWorkRequest) roundTrip(new ThrottledWorkRequest(getRef(),
+						new HashSet<String>(Arrays.asList(TestWorker.class.getName())), 5, Collections
+								.<String, Integer> emptyMap(), 12, Collections.singletonMap(
+								TestWorker.class.getName(), 2)));
+				assertEquals(Integer.valueOf(2), workRequest.getWorkerTypeSlots().get(TestWorker.class.getName()));
+
+				CapacityWorkRequest capacityWorkRequest = (CapacityWorkRequest) roundTrip(new CapacityWorkRequest(
+						getRef(), new HashSet<String>(Arrays.asList(TestWorker.class.getName())), 1000,
+						Collections.<String, Integer> emptyMap(), Collections.singletonMap(
+								TestWorker.class.getName(), 3), Collections.singletonMap(
+								TestWorker.class.getName(), 1.5)));
+				assertEquals(1000, capacityWorkRequest.getAvailableMemory());
+				assertEquals(Integer.valueOf(3),
+						capacityWorkRequest.getWorkerTypeSlots().get(TestWorker.class.getName()));
+				assertEquals(1.5, capacityWorkRequest.getMemoryWeight(TestWorker.class.getName()), 0);
+				assertEquals(1.0, capacityWorkRequest.getMemoryWeight(TestWorker2.class.getName()), 0);
+
+				JobSummary jobSummary = (JobSummary) roundTrip(new JobSummary(Arrays.asList(createJob(
+						1, TestWorker.class.getName())), 1L));
+				assertEquals(1, jobSummary.getJobs().size());
+				assertEquals(Long.valueOf(1), jobSummary.getNextCursor());
+			}
+		};
+	}
+
+	@Test
+	public void smallerThanJavaSerialization() {
+		WorkResponse workResponse = new WorkResponse(Arrays.asList(createJob(1,
+				TestWorker.class.getName()), createJob(2, TestWorker.class.getName())));
+		byte[] compact = SerializationExtension.get(system).findSerializerFor(workResponse)
+				.toBinary(workResponse);
+		byte[] java = new JavaSerializer((ExtendedActorSystem) system).toBinary(workResponse);
+		assertTrue("Expected " + compact.length + " bytes to be less than half of " + java.length,
+				compact.length * 2 < java.length);
+	}
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.tests.strategies;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import oncue.common.events.JobParkedEvent;
+import oncue.common.messages.CapacityWorkRequest;
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.Job;
+import oncue.common.messages.WorkResponse;
+import oncue.scheduler.BinPackingScheduler;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.TestWorker;
+
+import org.junit.Test;
+
+import akka.actor.ActorRef;
+import akka.testkit.JavaTestKit;
+
+/**
+ * Test that the bin packing scheduler packs the jobs asked for by several
+ * agents in one window into a single schedule, largest job first, each into
+ * the agent it fits most tightly.
+ */
+public class BinPackingStrategyTest extends ActorSystemTest {
+
+	private static Map<String, String> memory(int memory) {
+		Map<String, String> params = new HashMap<>();
+		params.put("memory", String.valueOf(memory));
+		return params;
+	}
+
+	@Test
+	public void packLargestJobsIntoTightestAgents() {
+		new JavaTestKit(system) {
+			{
+				// Create a scheduler
+				ActorRef scheduler = createScheduler(system);
+
+				// Enqueue jobs, smallest first
+				for (int memory : new int[] { 300, 300, 400, 600 }) {
+					scheduler.tell(new EnqueueJob(TestWorker.class.getName(), memory(memory)), getRef());
+					expectMsgClass(Job.class);
+				}
+
+				// Two agents ask for work in the same window
+				Set<String> workerTypes = new HashSet<>(Arrays.asList(TestWorker.class.getName()));
+				JavaTestKit largeAgent = new JavaTestKit(system);
+				JavaTestKit smallAgent = new JavaTestKit(system);
+				scheduler.tell(new CapacityWorkRequest(largeAgent.getRef(), workerTypes, 1000),
+						largeAgent.getRef());
+				scheduler.tell(new CapacityWorkRequest(smallAgent.getRef(), workerTypes, 600),
+						smallAgent.getRef());
+
+				// Expect the largest job to fill the small agent exactly
+				WorkResponse smallResponse = smallAgent.expectMsgClass(duration("5 seconds"),
+						WorkResponse.class);
+				assertEquals(1, smallResponse.getJobs().size());
+				assertEquals(4, smallResponse.getJobs().get(0).getId());
+
+				// Expect the remaining jobs to fill the large agent, largest first
+				WorkResponse largeResponse = largeAgent.expectMsgClass(duration("5 seconds"),
+						WorkResponse.class);
+				assertEquals(3, largeResponse.getJobs().size());
+				assertEquals(3, largeResponse.getJobs().get(0).getId());
+				assertEquals(1, largeResponse.getJobs().get(1).getId());
+				assertEquals(2, largeResponse.getJobs().get(2).getId());
+
+				// Expect the schedule to have filled all of the free memory
+				scheduler.tell(BinPackingScheduler.STATS, getRef());
+				BinPackingScheduler.Stats stats = expectMsgClass(BinPackingScheduler.Stats.class);
+				assertEquals(1, stats.getSchedules());
+				assertEquals(2, stats.getAgents());
+				assertEquals(4, stats.getPackedJobs());
+				assertEquals(0, stats.getUnpackedJobs());
+				assertEquals(1.0, stats.getEfficiency(), 0);
+			}
+		};
+	}
+
+	@Test
+	public void parksJobsThatExceedEveryAgentOnceWeighted() {
+		new JavaTestKit(system) {
+			{
+				system.eventStream().subscribe(getRef(), JobParkedEvent.class);
+				ActorRef scheduler = createScheduler(system);
+
+				// Enqueue a job that fits the agent, unless its memory is doubled, then one that fits
+				for (int memory : new int[] { 600, 300 }) {
+					scheduler.tell(new EnqueueJob(TestWorker.class.getName(), memory(memory)), getRef());
+					expectMsgClass(Job.class);
+				}
+
+				// An agent that doubles the memory of its workers asks for work
+				Set<String> workerTypes = new HashSet<>(Arrays.asList(TestWorker.class.getName()));
+				Map<String, Double> memoryWeights = new HashMap<>();
+				memoryWeights.put(TestWorker.class.getName(), 2.0);
+				JavaTestKit agent = new JavaTestKit(system);
+				scheduler.tell(new CapacityWorkRequest(agent.getRef(), workerTypes, 1000,
+						new HashMap<String, Integer>(), new HashMap<String, Integer>(),
+						memoryWeights), agent.getRef());
+
+				// Expect the weighted job to be parked and only the small job scheduled
+				JobParkedEvent jobParked = expectMsgClass(duration("5 seconds"), JobParkedEvent.class);
+				assertEquals(1, jobParked.getJob().getId());
+				assertEquals(1200, jobParked.getSize());
+
+				WorkResponse workResponse = agent.expectMsgClass(duration("5 seconds"),
+						WorkResponse.class);
+				assertEquals(1, workResponse.getJobs().size());
+				assertEquals(2, workResponse.getJobs().get(0).getId());
+			}
+		};
+	}
+}
@@ -9,9 +9,11 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import oncue.backingstore.BackingStore;
+import oncue.common.events.JobParkedEvent;
 import oncue.common.messages.AbstractWorkRequest;
 import oncue.common.messages.EnqueueJob;
 import oncue.common.messages.Job;
+import oncue.common.messages.JobCounts;
 import oncue.common.messages.JobSummary;
 import oncue.common.messages.SimpleMessages.SimpleMessage;
 import oncue.common.messages.WorkResponse;
@@ -500,6 +502,100 @@ public class CapacityStrategyTest extends ActorSystemTest {
 		};
 	}
 
+	@Test
+	public void parksJobsThatExceedEveryAgent() {
+		new JavaTestKit(system) {
+			{
+				system.eventStream().subscribe(getRef(), JobParkedEvent.class);
+
+				// Create a scheduler
+				ActorRef scheduler = createScheduler(system);
+
+				// Enqueue a job larger than the agent's total memory, then one that fits
+				scheduler.tell(new EnqueueJob(TEST_WORKER, withParams(memory("6000"), code("foo1"))),
+						getRef());
+				expectMsgClass(Job.class);
+				scheduler.tell(new EnqueueJob(TEST_WORKER, withParams(memory("100"), code("foo2"))),
+						getRef());
+				expectMsgClass(Job.class);
+
+				// Create an agent that can run "TestWorker" workers
+				final JavaTestKit agentProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							protected boolean ignore(Object message) {
+								if (message instanceof WorkResponse)
+									return false;
+								else
+									return true;
+							}
+						};
+					}
+				};
+				createAgent(system, Sets.newHashSet(TEST_WORKER), agentProbe.getRef());
+
+				// Expect the large job to be parked and only the small job scheduled
+				JobParkedEvent jobParked = expectMsgClass(duration("5 seconds"), JobParkedEvent.class);
+				assertEquals(1, jobParked.getJob().getId());
+				assertEquals(6000, jobParked.getSize());
+				assertEquals(5000, jobParked.getLargestCapacity());
+
+				WorkResponse workResponse = agentProbe.expectMsgClass(WorkResponse.class);
+				assertEquals(1, workResponse.getJobs().size());
+				assertEquals(2, workResponse.getJobs().get(0).getId());
+
+				// Expect the parked job to still be counted as unscheduled
+				scheduler.tell(SimpleMessage.JOB_COUNTS, getRef());
+				JobCounts jobCounts = expectMsgClass(JobCounts.class);
+				assertEquals(1, jobCounts.getUnscheduledJobs());
+				assertEquals(1, jobCounts.getParkedJobs());
+			}
+		};
+	}
+
+	@Test
+	public void parksJobsThatExceedEveryAgentOnceWeighted() {
+		new JavaTestKit(system) {
+			{
+				system.eventStream().subscribe(getRef(), JobParkedEvent.class);
+
+				// Create a scheduler
+				ActorRef scheduler = createScheduler(system);
+
+				// Enqueue a job that fits the agent, unless its memory is doubled, then one that fits
+				scheduler.tell(new EnqueueJob(SimpleLoadTestWorker.class.getName(),
+						withParams(memory("3000"))), getRef());
+				expectMsgClass(Job.class);
+				scheduler.tell(new EnqueueJob(TEST_WORKER, withParams(memory("100"), code("foo1"))),
+						getRef());
+				expectMsgClass(Job.class);
+
+				// Create an agent that doubles the memory of "SimpleLoadTestWorker" workers
+				final JavaTestKit agentProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							protected boolean ignore(Object message) {
+								return !(message instanceof WorkResponse);
+							}
+						};
+					}
+				};
+				createAgent(system,
+						Sets.newHashSet(TEST_WORKER, SimpleLoadTestWorker.class.getName()),
+						agentProbe.getRef());
+
+				// Expect the weighted job to be parked and only the small job scheduled
+				JobParkedEvent jobParked = expectMsgClass(duration("5 seconds"), JobParkedEvent.class);
+				assertEquals(1, jobParked.getJob().getId());
+				assertEquals(6000, jobParked.getSize());
+
+				WorkResponse workResponse = agentProbe.expectMsgClass(WorkResponse.class);
+				assertEquals(1, workResponse.getJobs().size());
+				assertEquals(2, workResponse.getJobs().get(0).getId());
+			}
+		};
+	}
+
 	@SafeVarargs
 	private final Map<String, String> withParams(Map<String, String>... params) {
 		Map<String, String> parameters = Maps.newHashMap();
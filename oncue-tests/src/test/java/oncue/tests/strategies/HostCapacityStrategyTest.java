@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.tests.strategies;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import oncue.common.messages.EnqueueJob;
+import oncue.common.messages.HostCapacityWorkRequest;
+import oncue.common.messages.Job;
+import oncue.common.messages.WorkResponse;
+import oncue.tests.base.ActorSystemTest;
+import oncue.tests.workers.TestWorker;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import akka.actor.ActorRef;
+import akka.actor.Status.Failure;
+import akka.testkit.JavaTestKit;
+
+/**
+ * Test the host capacity strategy against a fake proc filesystem and a
+ * control group with a memory limit of 128MB, of which 32MB is in use once
+ * reclaimable page cache is discounted, and a quota of two processors. The
+ * limits at the root of the control group filesystem belong to another group,
+ * so they must be ignored.
+ */
+public class HostCapacityStrategyTest extends ActorSystemTest {
+
+	private static final long MB = 1024 * 1024;
+
+	private static final File ROOT = new File("target/host-capacity");
+
+	@Before
+	public void createHostFiles() throws IOException {
+		write("proc/meminfo", "MemTotal:       8388608 kB\nMemAvailable:   4194304 kB\n");
+		write("proc/loadavg", "0.50 0.40 0.30 1/100 1234\n");
+		write("proc/self/status", "Name:\tjava\nVmRSS:\t  102400 kB\n");
+		write("proc/self/cgroup", "0::/oncue.slice/agent.scope\n");
+		write("cgroup/memory.max", String.valueOf(4096 * MB));
+		write("cgroup/memory.current", "0");
+		write("cgroup/cpu.max", "max 100000\n");
+		write("cgroup/oncue.slice/agent.scope/memory.max", String.valueOf(128 * MB));
+		write("cgroup/oncue.slice/agent.scope/memory.current", String.valueOf(64 * MB));
+		write("cgroup/oncue.slice/agent.scope/memory.stat", "anon " + 32 * MB
+				+ "\ninactive_file " + 32 * MB + "\n");
+		write("cgroup/oncue.slice/agent.scope/cpu.max", "200000 100000\n");
+	}
+
+	private static void write(String path, String content) throws IOException {
+		File file = new File(ROOT, path);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(Charset.forName("US-ASCII")));
+	}
+
+	private static Map<String, String> params(String memory, String cpu) {
+		Map<String, String> params = new HashMap<>();
+		params.put("memory", memory);
+		params.put("cpu", cpu);
+		return params;
+	}
+
+	@Test
+	public void reportsControlGroupLimits() {
+		new JavaTestKit(system) {
+			{
+				final JavaTestKit schedulerProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							protected boolean ignore(Object message) {
+								return !(message instanceof HostCapacityWorkRequest);
+							}
+						};
+					}
+				};
+				createScheduler(system, schedulerProbe.getRef());
+				createAgent(system, new HashSet<String>(Arrays.asList(TestWorker.class.getName())));
+
+				HostCapacityWorkRequest workRequest = schedulerProbe
+						.expectMsgClass(HostCapacityWorkRequest.class);
+				assertEquals(96 * MB, workRequest.getAvailableMemory());
+				assertEquals(Math.min(2.0, Runtime.getRuntime().availableProcessors()),
+						workRequest.getCpuQuota());
+				assertEquals(0.5, workRequest.getLoadAverage());
+				assertEquals(0, workRequest.getRunningWorkers());
+				assertEquals(256 * MB, workRequest.getWorkerMemory());
+			}
+		};
+	}
+
+	@Test
+	public void chargesWorkersStartedSinceTheLatestSample() {
+		new JavaTestKit(system) {
+			{
+				final JavaTestKit schedulerProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							protected boolean ignore(Object message) {
+								return !(message instanceof HostCapacityWorkRequest);
+							}
+						};
+					}
+				};
+				ActorRef scheduler = createScheduler(system, schedulerProbe.getRef());
+				scheduler.tell(new EnqueueJob(TestWorker.class.getName(), params("60", "0.5")),
+						getRef());
+				expectMsgClass(Job.class);
+				createAgent(system, new HashSet<String>(Arrays.asList(TestWorker.class.getName())));
+
+				HostCapacityWorkRequest workRequest = schedulerProbe
+						.expectMsgClass(HostCapacityWorkRequest.class);
+				assertEquals(96 * MB, workRequest.getAvailableMemory());
+				assertEquals(0.5, workRequest.getCpuUsage());
+
+				// No sample is taken while the job runs, so it is still charged once it is done
+				workRequest = schedulerProbe.expectMsgClass(HostCapacityWorkRequest.class);
+				assertEquals(36 * MB, workRequest.getAvailableMemory());
+				assertEquals(1.0, workRequest.getCpuUsage());
+			}
+		};
+	}
+
+	@Test
+	public void packsJobsIntoAvailableMemory() {
+		new JavaTestKit(system) {
+			{
+				ActorRef scheduler = createScheduler(system);
+				for (String memory : Arrays.asList("60", "60", "30")) {
+					scheduler.tell(new EnqueueJob(TestWorker.class.getName(), params(memory, "0.1")),
+							getRef());
+					expectMsgClass(Job.class);
+				}
+
+				final JavaTestKit agentProbe = new JavaTestKit(system) {
+					{
+						new IgnoreMsg() {
+							protected boolean ignore(Object message) {
+								return !(message instanceof WorkResponse);
+							}
+						};
+					}
+				};
+				createAgent(system, new HashSet<String>(Arrays.asList(TestWorker.class.getName())),
+						agentProbe.getRef());
+
+				// The second job doesn't fit alongside the first, but the third does
+				WorkResponse workResponse = agentProbe.expectMsgClass(WorkResponse.class);
+				assertEquals(2, workResponse.getJobs().size());
+				assertEquals(1, workResponse.getJobs().get(0).getId());
+				assertEquals(3, workResponse.getJobs().get(1).getId());
+			}
+		};
+	}
+
+	@Test
+	public void rejectsJobsWithAnInvalidCpuParameter() {
+		new JavaTestKit(system) {
+			{
+				ActorRef scheduler = createScheduler(system);
+				for (String cpu : Arrays.asList("lots", "-1", "NaN")) {
+					scheduler.tell(new EnqueueJob(TestWorker.class.getName(), params("60", cpu)),
+							getRef());
+					Failure failure = expectMsgClass(Failure.class);
+					assertEquals(IllegalArgumentException.class, failure.cause().getClass());
+				}
+
+				scheduler.tell(new EnqueueJob(TestWorker.class.getName(), params("60", "0.5")),
+						getRef());
+				assertEquals(0.5, expectMsgClass(Job.class).getCpu());
+			}
+		};
+	}
+}
@@ -32,6 +32,7 @@ import org.junit.Test;
 import akka.actor.Actor;
 import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.actor.Status.Failure;
 import akka.actor.UntypedActorFactory;
 import akka.testkit.JavaTestKit;
 import akka.testkit.TestActorRef;
@@ -170,6 +171,24 @@ public class JVMCapacityStrategyTest extends ActorSystemTest {
 		};
 	}
 
+	@Test
+	public void rejectsJobsWithoutASize() {
+		new JavaTestKit(system) {
+
+			{
+				ActorRef scheduler = createScheduler(system);
+
+				scheduler.tell(new EnqueueJob(TestWorker.class.getName()), getRef());
+				Failure failure = expectMsgClass(Failure.class);
+				Assert.assertEquals(IllegalArgumentException.class, failure.cause().getClass());
+
+				enqueueJob(scheduler, getRef(), 100);
+				Job job = expectMsgClass(Job.class);
+				Assert.assertEquals(100, job.getSize());
+			}
+		};
+	}
+
 	private JavaTestKit createAgentProbe() {
 		return new JavaTestKit(system) {
 
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.tests.workers;
+
+import java.util.List;
+
+import oncue.common.messages.Job;
+import oncue.worker.AbstractBatchWorker;
+
+/**
+ * Completes each job in a batch, except for jobs with a "fail" parameter
+ */
+public class BatchTestWorker extends AbstractBatchWorker {
+
+	@Override
+	protected void doWork(List<Job> jobs) throws Exception {
+		for (Job job : jobs) {
+			Thread.sleep(100);
+			if (job.getParams().containsKey("fail"))
+				jobFailed(job, "Asked to fail");
+			else
+				jobComplete(job);
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package oncue.tests.workers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import oncue.common.messages.Job;
+import oncue.worker.AbstractWorker;
+
+/**
+ * Records the name of the thread each job runs on, so a test can tell which dispatcher ran it.
+ */
+public class ThreadRecordingTestWorker extends AbstractWorker {
+
+	// Map the ID of each job to the name of the thread it ran on
+	public static final Map<Long, String> THREADS = new ConcurrentHashMap<>();
+
+	@Override
+	public void doWork(Job job) {
+		THREADS.put(job.getId(), Thread.currentThread().getName());
+	}
+
+	@Override
+	protected void redoWork(Job job) {
+		doWork(job);
+	}
+
+}
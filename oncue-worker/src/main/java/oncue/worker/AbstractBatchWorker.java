@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright 2013 Michael Marconi
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package oncue.worker;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import oncue.client.AkkaClient;
+import oncue.client.Client;
+import oncue.common.messages.Job;
+import oncue.common.messages.Job.State;
+import oncue.common.messages.JobBatch;
+import oncue.common.messages.JobFailed;
+import oncue.common.messages.JobProgress;
+import oncue.common.settings.Settings;
+import oncue.common.settings.SettingsProvider;
+
+import org.joda.time.DateTime;
+
+import akka.actor.UntypedActor;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+
+/**
+ * A worker for very small jobs, which works through a batch of jobs of the same worker type at
+ * once, so that the cost of scheduling and spawning a worker is shared by the whole batch.
+ * 
+ * Only the outcome of each job is reported to the agent. Jobs that are neither completed nor
+ * failed by the worker are completed once {@linkplain #doWork(List)} returns. If the worker
+ * throws an exception, the jobs it had not reported on yet are failed by the agent.
+ */
+public abstract class AbstractBatchWorker extends UntypedActor {
+
+	protected String agent;
+
+	protected LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+	protected Settings settings = SettingsProvider.SettingsProvider.get(getContext().system());
+
+	private Client client = new AkkaClient(getContext().system(), getContext().actorFor(settings.SCHEDULER_PATH));
+
+	// The IDs of the jobs in the batch that have been reported on
+	private final Set<Long> reportedJobs = new HashSet<>();
+
+	/**
+	 * Work through a batch of jobs. Use {@linkplain Job#isRerun()} to find any jobs that are being
+	 * run again.
+	 * 
+	 * @param jobs
+	 *            are the jobs in the batch, all of the same worker type
+	 */
+	protected abstract void doWork(List<Job> jobs) throws Exception;
+
+	/**
+	 * @return an implementation of {@linkplain Client}, which represents the functionality
+	 *         available on the remote scheduler component.
+	 */
+	protected Client getSchedulerClient() {
+		return client;
+	}
+
+	@Override
+	public void onReceive(Object message) throws Exception {
+		if (agent == null)
+			agent = getSender().path().toString();
+
+		if (message instanceof JobBatch) {
+			List<Job> jobs = ((JobBatch) message).getJobs();
+			DateTime startedAt = DateTime.now();
+			for (Job job : jobs) {
+				job.setState(State.RUNNING);
+				job.setProgress(0.0);
+				job.setStartedAt(startedAt);
+			}
+
+			doWork(jobs);
+
+			for (Job job : jobs) {
+				if (!reportedJobs.contains(job.getId()))
+					jobComplete(job);
+			}
+			log.debug("Work on a batch of {} jobs is complete.", jobs.size());
+			getContext().stop(getSelf());
+		}
+	}
+
+	/**
+	 * Indicate that work on a job in the batch is complete.
+	 */
+	protected void jobComplete(Job job) {
+		job.setState(State.COMPLETE);
+		job.setProgress(1);
+		job.setCompletedAt(DateTime.now());
+		reportedJobs.add(job.getId());
+		getContext().actorFor(agent).tell(new JobProgress(job), getSelf());
+	}
+
+	/**
+	 * Indicate that a job in the batch has failed, without affecting the rest of the batch.
+	 * 
+	 * @param errorMessage
+	 *            describes why the job failed
+	 */
+	protected void jobFailed(Job job, String errorMessage) {
+		job.setState(State.FAILED);
+		job.setErrorMessage(errorMessage);
+		reportedJobs.add(job.getId());
+		getContext().actorFor(agent).tell(new JobFailed(job), getSelf());
+	}
+}
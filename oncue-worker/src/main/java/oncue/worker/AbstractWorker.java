@@ -18,6 +18,7 @@ import oncue.client.Client;
 import oncue.common.messages.Job;
 import oncue.common.messages.Job.State;
 import oncue.common.messages.JobProgress;
+import oncue.common.messages.JobProgressDelta;
 import oncue.common.settings.Settings;
 import oncue.common.settings.SettingsProvider;
 
@@ -95,7 +96,8 @@ public abstract class AbstractWorker extends UntypedActor {
 	protected abstract void redoWork(Job job) throws Exception;
 
 	/**
-	 * Report on the percentage progress made on this job.
+	 * Report on the percentage progress made on this job. As the state of the job does not change,
+	 * only a compact {@linkplain JobProgressDelta} is sent.
 	 * 
 	 * @param progress
 	 *            is a double, between 0 and 1
@@ -104,11 +106,12 @@ public abstract class AbstractWorker extends UntypedActor {
 		if (progress < 0 || progress > 1)
 			throw new RuntimeException("Job progress must be reported as a double between 0 and 1");
 		job.setProgress(progress);
-		getContext().actorFor(agent).tell(new JobProgress(job), getSelf());
+		getContext().actorFor(agent).tell(new JobProgressDelta(job), getSelf());
 	}
 
 	/**
-	 * Indicate that work on this job is complete.
+	 * Indicate that work on this job is complete. The worker then stops, unless its worker type is
+	 * configured to be reused for further jobs.
 	 */
 	private void workComplete() {
 		job.setState(State.COMPLETE);
@@ -116,6 +119,9 @@ public abstract class AbstractWorker extends UntypedActor {
 		job.setCompletedAt(DateTime.now());
 		log.debug("Work on {} is complete.", job);
 		getContext().actorFor(agent).tell(new JobProgress(job), getSelf());
-		getContext().stop(getSelf());
+		if (settings.AGENT_REUSABLE_WORKER_TYPES.contains(getClass().getName()))
+			job = null;
+		else
+			getContext().stop(getSelf());
 	}
 }